@@ -0,0 +1,101 @@
+package com.dashtech.smartfactory.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dashtech.smartfactory.alarm.AlarmEngine;
+import com.dashtech.smartfactory.model.AlarmRule;
+import com.dashtech.smartfactory.model.AlarmSeverity;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.service.SensorRegistry;
+
+/**
+ * Alarm evaluation on one thread for batches of readings spread over every sensor, with
+ * {@code rules} rules split evenly over {@code sensors} sensors plus one type rule. Readings
+ * wander around the limits, so alarms keep being raised and cleared. Scores are readings per
+ * second; the target is at least 100,000 with 50,000 rules over 10,000 sensors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(AlarmEngineBenchmark.READINGS)
+public class AlarmEngineBenchmark {
+    static final int READINGS = 1024;
+    private static final int BATCHES = 64;
+
+    @Param({"10000"})
+    public int sensors;
+
+    @Param({"5000", "50000"})
+    public int rules;
+
+    private AlarmEngine engine;
+    private SensorBatch[] batches;
+    private int next;
+    private long epochMillis;
+
+    @Setup
+    public void setUp() {
+        SensorRegistry registry = new SensorRegistry(sensors);
+        engine = new AlarmEngine(registry);
+        String type = SensorType.TEMPERATURE.getName();
+        List<AlarmRule> ruleList = new ArrayList<>(rules + 1);
+        AlarmRule.Kind[] kinds = AlarmRule.Kind.values();
+        for (int i = 0; i < rules; i++) {
+            int sensorId = i % sensors + 1;
+            AlarmRule.Kind kind = kinds[i % kinds.length];
+            double limit = kind == AlarmRule.Kind.LOW ? 15 : kind == AlarmRule.Kind.HIGH ? 25 : 50;
+            ruleList.add(new AlarmRule("r" + i, sensorId, null, kind, limit, 1.0, i % 2 == 0 ? 0.0 : 0.1,
+                i % 4 == 0 ? 500 : 0, AlarmSeverity.WARNING));
+        }
+        ruleList.add(AlarmRule.forType("type", type, AlarmRule.Kind.HIGH, 29, 1.0));
+        engine.setRules(ruleList);
+        // Compile every sensor's evaluator up front so iterations measure evaluation only
+        for (int sensorId = 1; sensorId <= sensors; sensorId++) {
+            engine.evaluate(registry.codeOf(sensorId, type), 20.0, ++epochMillis);
+        }
+
+        Random random = new Random(42);
+        batches = new SensorBatch[BATCHES];
+        for (int b = 0; b < BATCHES; b++) {
+            SensorBatch batch = new SensorBatch(READINGS);
+            for (int i = 0; i < READINGS; i++) {
+                int sensorId = random.nextInt(sensors) + 1;
+                int row = batch.add(sensorId, SensorType.TEMPERATURE.getCode(), 0L,
+                    20.0 + random.nextGaussian() * 6.0, 0L);
+                batch.setCode(row, registry.codeOf(sensorId, type));
+            }
+            batches[b] = batch;
+        }
+    }
+
+    @Benchmark
+    public long evaluateBatch() {
+        SensorBatch batch = batches[next];
+        next = (next + 1) % BATCHES;
+        // One millisecond per reading, so duration rules and rates see real intervals
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            engine.evaluate(batch.code(i), batch.value(i), ++epochMillis);
+        }
+        return engine.getReadingsEvaluated();
+    }
+}
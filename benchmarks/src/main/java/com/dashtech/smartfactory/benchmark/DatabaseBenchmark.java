@@ -0,0 +1,71 @@
+package com.dashtech.smartfactory.benchmark;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dashtech.smartfactory.model.DatabaseConfig;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.service.DatabaseService;
+
+/**
+ * Persisting readings into a private in-memory H2 database, one per transaction and in
+ * batches as the SensorDataWriter does. Batch scores are per batch; divide by batchSize
+ * for the cost per reading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private DatabaseService database;
+    private SensorData reading;
+    private List<SensorData> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = DatabaseService.createIsolated(DatabaseConfig.createInMemory("bench-" + UUID.randomUUID()));
+        reading = new SensorData(7, "Pressure", 101.3, Instant.now());
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new SensorData(i % 200 + 1, "Temperature", 20.0 + i % 50, Instant.now()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public void storeSensorData() {
+        database.storeSensorData(reading);
+    }
+
+    @Benchmark
+    public void storeSensorDataBatch() {
+        database.storeSensorDataBatch(batch);
+    }
+}
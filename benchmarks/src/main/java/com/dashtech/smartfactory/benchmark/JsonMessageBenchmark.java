@@ -0,0 +1,54 @@
+package com.dashtech.smartfactory.benchmark;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.AlarmRule;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.websocket.SmartFactoryWebSocket;
+
+/**
+ * Building the JSON text frames pushed to dashboards with Jackson ObjectNodes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonMessageBenchmark {
+    private SensorBatch readings;
+    private AlarmEvent alarm;
+
+    @Setup
+    public void setUp() {
+        readings = new SensorBatch(1);
+        readings.add(new SensorData(42, "Temperature", 23.456, Instant.now()));
+        AlarmRule rule = AlarmRule.forSensor("temp-high", 42, AlarmRule.Kind.HIGH, 80.0, 2.0);
+        alarm = AlarmEvent.of(rule, 42, "Temperature", AlarmEvent.State.RAISED, 81.2, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public String readingMessage() {
+        return SmartFactoryWebSocket.readingMessage("COM3", readings, 0);
+    }
+
+    @Benchmark
+    public String alarmMessage() {
+        return JsonUtil.alarmEvent(alarm).toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.dashtech.smartfactory.benchmark;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dashtech.smartfactory.model.ActuatorCommand;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.SerialPacket;
+import com.dashtech.smartfactory.service.SensorIngestService;
+
+/**
+ * Wire encoding and decoding of single packets, commands and text lines
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+    private byte[] sensorFrame;
+    private SerialPacket packet;
+    private ActuatorCommand command;
+    private String line;
+    private float value;
+
+    @Setup
+    public void setUp() {
+        packet = SerialPacket.createSensorPacket((byte) 17, SerialPacket.DataType.PRESSURE, 101.325f);
+        sensorFrame = packet.toBytes();
+        command = new ActuatorCommand(3, "ON", Instant.now());
+        line = "Sensor[11] Type[02] Value[101.33]";
+        value = 20.5f;
+    }
+
+    @Benchmark
+    public SerialPacket serialPacketFromBytes() {
+        return SerialPacket.fromBytes(sensorFrame);
+    }
+
+    @Benchmark
+    public byte[] serialPacketToBytes() {
+        return packet.toBytes();
+    }
+
+    @Benchmark
+    public byte[] serialPacketCreateAndEncode() {
+        value += 0.01f;
+        return SerialPacket.createSensorPacket((byte) 17, SerialPacket.DataType.TEMPERATURE, value).toBytes();
+    }
+
+    @Benchmark
+    public byte[] actuatorCommandToBinary() {
+        return command.toBinary();
+    }
+
+    /**
+     * The parse behind SmartFactoryService.processSerialData and every text line from a port
+     */
+    @Benchmark
+    public SensorData parseTextLine() {
+        return SensorIngestService.parseLine(line);
+    }
+}
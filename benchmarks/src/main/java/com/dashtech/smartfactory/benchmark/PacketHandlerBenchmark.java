@@ -0,0 +1,93 @@
+package com.dashtech.smartfactory.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.dashtech.smartfactory.model.SerialPacket;
+import com.dashtech.smartfactory.service.PacketHandler;
+
+/**
+ * Decoding a stream of readings delivered in chunks of different sizes, from single
+ * bytes (a slow UART) to large reads (a busy port or the load generator).
+ * Scores are per decoded reading.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(PacketHandlerBenchmark.READINGS)
+public class PacketHandlerBenchmark {
+    static final int READINGS = 1024;
+
+    @Param({"1", "9", "64", "512", "4096"})
+    public int chunkSize;
+
+    @Param({"binary", "text", "mixed"})
+    public String format;
+
+    private byte[] stream;
+    private PacketHandler handler;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < READINGS; i++) {
+            int sensorId = i % 200 + 1;
+            float value = 20.0f + (i % 100) / 10.0f;
+            boolean binary = format.equals("binary") || (format.equals("mixed") && i % 2 == 0);
+            if (binary) {
+                out.writeBytes(SerialPacket.createSensorPacket((byte) sensorId, SerialPacket.DataType.TEMPERATURE, value).toBytes());
+            } else {
+                out.writeBytes(String.format("Sensor[%02X] Type[01] Value[%.2f]%n", sensorId, value)
+                    .getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        stream = out.toByteArray();
+        handler = new PacketHandler(new PacketHandler.PacketCallback() {
+            @Override
+            public void onSensorData(byte sensorId, byte dataType, float value) {
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void onCommandResponse(byte actuatorId, byte commandType) {
+                blackhole.consume(commandType);
+            }
+
+            @Override
+            public void onError(String error) {
+                throw new IllegalStateException(error);
+            }
+
+            @Override
+            public void onTextLine(String line) {
+                blackhole.consume(line);
+            }
+        });
+    }
+
+    @Benchmark
+    public int processIncomingData() {
+        for (int offset = 0; offset < stream.length; offset += chunkSize) {
+            handler.processIncomingData(stream, offset, Math.min(chunkSize, stream.length - offset));
+        }
+        return handler.getPendingBytes();
+    }
+}
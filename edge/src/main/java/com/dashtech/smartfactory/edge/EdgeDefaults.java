@@ -0,0 +1,72 @@
+package com.dashtech.smartfactory.edge;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * System property defaults for small gateways. Each is applied only when the property
+ * has not been set on the command line, so any of them can be overridden with -D.
+ * <p>
+ * The defaults bound every queue and cache the services size from properties, shrink
+ * the H2 page cache and pool, and replace the console-logging Log4j configuration with
+ * a file-only one. They are applied before any service or logger class is loaded.
+ */
+final class EdgeDefaults {
+
+    /**
+     * JVM options the startup targets are measured with; see the README's Edge Runtime section
+     */
+    static final List<String> JVM_OPTIONS = List.of(
+        "-Xms16m",
+        "-Xmx64m",
+        "-Xss512k",
+        "-XX:+UseSerialGC",
+        "-XX:MaxMetaspaceSize=64m",
+        "-XX:ReservedCodeCacheSize=32m",
+        "-XX:TieredStopAtLevel=1",
+        "-XX:CICompilerCount=1"
+    );
+
+    private EdgeDefaults() {} // Prevent instantiation
+
+    static Map<String, String> forHome(Path home) {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        // Tomcat points catalina.base at its work directory, so data and log locations are explicit
+        defaults.put("smartfactory.edge.home", home.toString());
+        defaults.put("smartfactory.db.path", home.resolve("data").resolve("smartfactory").toString());
+        defaults.put("smartfactory.jfr.dir", home.resolve("logs").toString());
+
+        // Bounded queues and caches
+        defaults.put("smartfactory.sensors.capacity", "4096");
+        defaults.put("smartfactory.history.pointsPerSensor", "600");
+        defaults.put("smartfactory.history.budgetMb", "8");
+        defaults.put("smartfactory.writer.queueCapacity", "8192");
+        defaults.put("smartfactory.journal.queueCapacity", "1024");
+        defaults.put("smartfactory.websocket.outboxCapacity", "256");
+        defaults.put("smartfactory.trace.keep", "20");
+
+        // Small H2 page cache and pool
+        defaults.put("smartfactory.db.cacheKb", "4096");
+        defaults.put("smartfactory.db.maxPoolSize", "4");
+
+        // File-only logging with a tight hot-path budget; Tomcat's JUL output goes through Log4j too
+        defaults.put("log4j2.configurationFile", "log4j2-edge.xml");
+        defaults.put("log4j2.isWebapp", "false");
+        defaults.put("smartfactory.log.hotPathBudget", "100");
+        defaults.put("smartfactory.log.level.serial", "INFO");
+        defaults.put("smartfactory.log.level.websocket", "INFO");
+        defaults.put("smartfactory.log.level.database", "INFO");
+        defaults.put("java.util.logging.manager", "org.apache.logging.log4j.jul.LogManager");
+        return defaults;
+    }
+
+    static void apply(Path home) {
+        forHome(home).forEach((name, value) -> {
+            if (System.getProperty(name) == null) {
+                System.setProperty(name, value);
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+package com.dashtech.smartfactory.edge;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.websocket.DeploymentException;
+import javax.websocket.server.ServerContainer;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.servlets.DefaultServlet;
+import org.apache.catalina.session.StandardManager;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.tomcat.util.modeler.Registry;
+import org.apache.tomcat.websocket.server.WsSci;
+
+import com.dashtech.smartfactory.config.SmartFactoryContextListener;
+import com.dashtech.smartfactory.servlet.AlarmServlet;
+import com.dashtech.smartfactory.servlet.AnomalyServlet;
+import com.dashtech.smartfactory.servlet.HealthCheckServlet;
+import com.dashtech.smartfactory.servlet.HistoryServlet;
+import com.dashtech.smartfactory.servlet.LatencyServlet;
+import com.dashtech.smartfactory.servlet.PerformanceTestServlet;
+import com.dashtech.smartfactory.servlet.PlantStateServlet;
+import com.dashtech.smartfactory.servlet.StatisticsServlet;
+import com.dashtech.smartfactory.servlet.SuppressionServlet;
+import com.dashtech.smartfactory.servlet.VirtualSensorServlet;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.dashtech.smartfactory.websocket.SmartFactoryWebSocket;
+
+/**
+ * Runs the application without an external Tomcat or war deployment. Embeds a single
+ * Tomcat context with no annotation or jar scanning, JMX or session persistence, and
+ * registers the lifecycle listener, servlets, WebSocket endpoint and static files
+ * explicitly.
+ * <p>
+ * Usage: java [EdgeDefaults.JVM_OPTIONS] -jar smartfactory-edge.jar
+ * <p>
+ * Properties: smartfactory.edge.home (default: the jar's directory) holds the database,
+ * logs and work files; smartfactory.edge.port [8080]; smartfactory.edge.maxThreads [8];
+ * smartfactory.edge.webroot (default: webapp under the home). All of {@link EdgeDefaults}
+ * can be overridden with -D as well.
+ */
+public final class EdgeLauncher {
+
+    // New servlets must be listed here; there is no classpath scanning
+    private static final List<Class<? extends HttpServlet>> SERVLETS = List.of(
+        AlarmServlet.class,
+        AnomalyServlet.class,
+        HealthCheckServlet.class,
+        HistoryServlet.class,
+        LatencyServlet.class,
+        PerformanceTestServlet.class,
+        PlantStateServlet.class,
+        StatisticsServlet.class,
+        SuppressionServlet.class,
+        VirtualSensorServlet.class
+    );
+
+    private EdgeLauncher() {}
+
+    public static void main(String[] args) throws Exception {
+        long started = System.nanoTime();
+        Path home = resolveHome();
+        // Must run before the first logger or service class is initialized
+        EdgeDefaults.apply(home);
+        Logger logger = LogManager.getLogger(EdgeLauncher.class);
+
+        Registry.disableRegistry();
+        int port = Integer.getInteger("smartfactory.edge.port", 8080);
+        Tomcat tomcat = createTomcat(home, port);
+        Context context = createContext(tomcat, resolveWebroot(home, logger));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(tomcat, logger), "EdgeShutdown"));
+        tomcat.start();
+
+        logger.info("Edge runtime ready on port {} in {} ms (home {}, context {})", port,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), home, context.getName());
+        tomcat.getServer().await();
+    }
+
+    private static Tomcat createTomcat(Path home, int port) throws IOException {
+        Path work = Files.createDirectories(home.resolve("work"));
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(work.toString());
+        tomcat.setPort(port);
+        tomcat.getHost().setAutoDeploy(false);
+        tomcat.getHost().setDeployOnStartup(false);
+
+        Connector connector = tomcat.getConnector();
+        connector.setProperty("maxThreads", System.getProperty("smartfactory.edge.maxThreads", "8"));
+        connector.setProperty("minSpareThreads", "1");
+        connector.setProperty("acceptCount", "16");
+        connector.setProperty("maxConnections", "64");
+        connector.setProperty("connectionTimeout", "20000");
+        connector.setProperty("keepAliveTimeout", "5000");
+        return tomcat;
+    }
+
+    private static Context createContext(Tomcat tomcat, Path webroot) {
+        Context context = tomcat.addContext("", webroot.toString());
+
+        // WebSocket upgrades are stateless; no session persistence between restarts
+        StandardManager sessions = new StandardManager();
+        sessions.setPathname(null);
+        context.setManager(sessions);
+
+        context.addServletContainerInitializer(new WsSci(), null);
+        // Listener instances are a StandardContext feature; the Context interface only takes class names
+        StandardContext standard = (StandardContext) context;
+        standard.addApplicationLifecycleListener(new SmartFactoryContextListener());
+        standard.addApplicationLifecycleListener(new EndpointRegistrar());
+
+        for (Class<? extends HttpServlet> type : SERVLETS) {
+            String name = type.getSimpleName();
+            WebServlet mapping = type.getAnnotation(WebServlet.class);
+            Tomcat.addServlet(context, name, type.getName()).setAsyncSupported(mapping.asyncSupported());
+            for (String pattern : mapping.urlPatterns()) {
+                context.addServletMappingDecoded(pattern, name);
+            }
+            for (String pattern : mapping.value()) {
+                context.addServletMappingDecoded(pattern, name);
+            }
+        }
+
+        Tomcat.addServlet(context, "default", new DefaultServlet());
+        context.addServletMappingDecoded("/", "default");
+        Tomcat.addDefaultMimeTypeMappings(context);
+        context.addWelcomeFile("index.html");
+        return context;
+    }
+
+    // Adds the endpoint once WsSci has created the server container; replaces @ServerEndpoint scanning
+    private static final class EndpointRegistrar implements ServletContextListener {
+        @Override
+        public void contextInitialized(ServletContextEvent sce) {
+            ServerContainer container = (ServerContainer) sce.getServletContext()
+                .getAttribute(ServerContainer.class.getName());
+            try {
+                container.addEndpoint(SmartFactoryWebSocket.class);
+            } catch (DeploymentException e) {
+                throw new IllegalStateException("Failed to register WebSocket endpoint", e);
+            }
+        }
+    }
+
+    private static void stop(Tomcat tomcat, Logger logger) {
+        try {
+            tomcat.stop();
+            tomcat.destroy();
+        } catch (LifecycleException e) {
+            LoggingUtil.logError(logger, "Edge Shutdown", "Failed to stop embedded Tomcat", e);
+        } finally {
+            LogManager.shutdown();
+        }
+    }
+
+    private static Path resolveHome() throws IOException, URISyntaxException {
+        String configured = System.getProperty("smartfactory.edge.home");
+        Path home;
+        if (configured != null && !configured.isBlank()) {
+            home = Paths.get(configured);
+        } else {
+            Path code = Paths.get(EdgeLauncher.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            home = Files.isRegularFile(code) ? code.getParent() : Paths.get("");
+        }
+        return Files.createDirectories(home.toAbsolutePath());
+    }
+
+    private static Path resolveWebroot(Path home, Logger logger) throws IOException {
+        Path webroot = Paths.get(System.getProperty("smartfactory.edge.webroot", home.resolve("webapp").toString()));
+        if (!Files.isDirectory(webroot)) {
+            // Tomcat needs a document base even when only the API and WebSocket are used
+            logger.warn("No web root at {}; serving the API and WebSocket only", webroot);
+            webroot = Files.createDirectories(home.resolve("work" + File.separator + "empty-webroot"));
+        }
+        return webroot;
+    }
+}
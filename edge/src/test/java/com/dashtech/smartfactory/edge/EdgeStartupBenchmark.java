@@ -0,0 +1,156 @@
+package com.dashtech.smartfactory.edge;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the edge runtime in a child JVM with {@link EdgeDefaults#JVM_OPTIONS}, several
+ * times against one home directory, and checks the results against the documented targets.
+ * The first run is cold and creates the database; the others are restarts that reopen it.
+ * <p>
+ * Startup is the time from launching the process until GET /metrics answers 200. Resident
+ * memory is read from /proc after a short settle period. It is only available on Linux,
+ * and is reported as unknown and not checked elsewhere.
+ * <p>
+ * Properties: edge.benchmark.runs [5], edge.target.startupMillis [3000] (median restart),
+ * edge.target.rssMb [160] (largest of all runs), edge.benchmark.jar (the runtime started, by
+ * default this class path). Exits with status 1 if a target is missed.
+ * <p>
+ * Lives in the test sources so it is not shipped in smartfactory-edge.jar; the startup-benchmark
+ * profile runs it against the packaged jar.
+ */
+public final class EdgeStartupBenchmark {
+    private static final long READY_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long SETTLE_MILLIS = 2000;
+    private static final long POLL_MILLIS = 20;
+
+    private record Sample(int run, boolean cold, long readyMillis, long rssMb, long shutdownMillis) {}
+
+    private EdgeStartupBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int runs = Math.max(2, Integer.getInteger("edge.benchmark.runs", 5));
+        long targetMillis = Long.getLong("edge.target.startupMillis", 3000);
+        long targetRssMb = Long.getLong("edge.target.rssMb", 160);
+        Path home = Files.createTempDirectory("smartfactory-edge-startup");
+
+        List<Sample> samples = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            Sample sample = runOnce(home, run);
+            samples.add(sample);
+            System.out.printf("run %d %-8s ready %5d ms   rss %s   shutdown %5d ms%n", run,
+                sample.cold() ? "(cold)" : "(restart)", sample.readyMillis(),
+                sample.rssMb() < 0 ? "unknown" : sample.rssMb() + " MB", sample.shutdownMillis());
+        }
+
+        long[] restarts = samples.stream().filter(s -> !s.cold()).mapToLong(Sample::readyMillis).sorted().toArray();
+        long medianRestart = restarts[restarts.length / 2];
+        long maxRss = samples.stream().mapToLong(Sample::rssMb).max().orElse(-1);
+        System.out.printf("cold start %d ms, median restart %d ms (target %d), peak rss %s (target %d MB)%n",
+            samples.get(0).readyMillis(), medianRestart, targetMillis,
+            maxRss < 0 ? "unknown" : maxRss + " MB", targetRssMb);
+
+        boolean failed = false;
+        if (medianRestart > targetMillis) {
+            System.out.println("FAIL: median restart exceeds " + targetMillis + " ms");
+            failed = true;
+        }
+        if (maxRss > targetRssMb) {
+            System.out.println("FAIL: resident memory exceeds " + targetRssMb + " MB");
+            failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static Sample runOnce(Path home, int run) throws IOException, InterruptedException {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(EdgeDefaults.JVM_OPTIONS);
+        command.add("-Dsmartfactory.edge.home=" + home);
+        command.add("-Dsmartfactory.edge.port=" + port);
+        command.add("-cp");
+        command.add(System.getProperty("edge.benchmark.jar", System.getProperty("java.class.path")));
+        command.add(EdgeLauncher.class.getName());
+
+        boolean cold = !Files.exists(home.resolve("data"));
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(home.resolve("run-" + run + ".out").toFile())
+            .start();
+        try {
+            long readyMillis = awaitReady(process, port, started);
+            Thread.sleep(SETTLE_MILLIS);
+            long rssMb = residentMegabytes(process.pid());
+
+            long stopping = System.nanoTime();
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Run " + run + " did not shut down within 30 s");
+            }
+            return new Sample(run, cold, readyMillis, rssMb,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopping));
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    private static long awaitReady(Process process, int port, long started) throws InterruptedException {
+        URL metrics;
+        try {
+            metrics = new URL("http://127.0.0.1:" + port + "/metrics");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(READY_TIMEOUT_MILLIS);
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Edge runtime exited with status " + process.exitValue());
+            }
+            try {
+                HttpURLConnection connection = (HttpURLConnection) metrics.openConnection();
+                connection.setConnectTimeout(200);
+                connection.setReadTimeout(1000);
+                int status = connection.getResponseCode();
+                connection.disconnect();
+                if (status == HttpURLConnection.HTTP_OK) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        throw new IllegalStateException("Edge runtime not ready within " + READY_TIMEOUT_MILLIS + " ms");
+    }
+
+    // VmRSS from /proc/<pid>/status, or -1 where /proc is not available
+    private static long residentMegabytes(long pid) throws IOException {
+        Path status = Paths.get("/proc", Long.toString(pid), "status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                long kb = Long.parseLong(line.replaceAll("[^0-9]", ""));
+                return (kb + 1023) / 1024;
+            }
+        }
+        return -1;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.dashtech.smartfactory.alarm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.AlarmRule;
+import com.dashtech.smartfactory.model.AlarmSeverity;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.service.SensorRegistry;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Evaluates alarm rules on every ingested reading. Rules are bound to a sensor or to a
+ * {@link com.dashtech.smartfactory.model.SensorType} name and are compiled, per sensor,
+ * into a {@link SensorAlarms} evaluator held in an array indexed by the {@link SensorRegistry}
+ * code. A reading therefore costs one array load plus a pass over that sensor's own rules,
+ * independent of the total number of rules.
+ * <p>
+ * Changing the rule set bumps a generation number; each sensor recompiles lazily on its next
+ * reading and keeps the state of rules that survived. Raised and cleared events go to the
+ * registered {@link AlarmListener}s (WebSocket broadcast, alarm journal).
+ * <p>
+ * Rules are loaded at startup from the JSON file named by smartfactory.alarms.rules, an array of
+ * {"id", "sensorId" | "sensorType", "kind", "limit", "hysteresis", "deadband", "durationMillis", "severity"}.
+ */
+public class AlarmEngine implements SensorIngestService.BatchListener {
+    private static final Logger logger = LogManager.getLogger(AlarmEngine.class);
+    private static final AlarmEngine instance = new AlarmEngine(SensorRegistry.getInstance());
+
+    @FunctionalInterface
+    public interface AlarmListener {
+        void onAlarm(AlarmEvent event);
+    }
+
+    /**
+     * Immutable rule set, indexed for compilation
+     */
+    private record RuleSet(int generation, List<AlarmRule> rules,
+            Map<Integer, List<AlarmRule>> bySensor, Map<String, List<AlarmRule>> byType) {
+    }
+
+    private final SensorRegistry registry;
+    private final AtomicReferenceArray<SensorAlarms> evaluators;
+    private final List<AlarmListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, AlarmEvent> activeAlarms = new ConcurrentHashMap<>();
+    private final Consumer<AlarmEvent> dispatcher = this::dispatch;
+    private final AtomicLong readingsEvaluated = new AtomicLong();
+    private final AtomicLong eventsRaised = new AtomicLong();
+    private final AtomicLong eventsCleared = new AtomicLong();
+    private volatile AlarmJournal journal;
+    private volatile RuleSet ruleSet = new RuleSet(0, List.of(), Map.of(), Map.of());
+
+    public AlarmEngine(SensorRegistry registry) {
+        this.registry = registry;
+        this.evaluators = new AtomicReferenceArray<>(registry.capacity());
+    }
+
+    public static AlarmEngine getInstance() {
+        return instance;
+    }
+
+    public void addListener(AlarmListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AlarmListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Attaches the journal that persists events, replacing any previous one
+     */
+    public void setJournal(AlarmJournal newJournal) {
+        AlarmJournal previous = journal;
+        if (previous != null) {
+            listeners.remove(previous);
+        }
+        journal = newJournal;
+        if (newJournal != null) {
+            listeners.add(newJournal);
+        }
+    }
+
+    public AlarmJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code != SensorRegistry.NO_CODE) {
+                evaluate(code, batch.value(i), batch.epochMillis(i));
+            }
+        }
+    }
+
+    public void evaluate(int code, double value, long epochMillis) {
+        while (true) {
+            SensorAlarms alarms = current(code);
+            synchronized (alarms) {
+                if (alarms.retired) {
+                    // Recompiled while this thread waited; evaluate against the successor
+                    continue;
+                }
+                if (alarms.size() > 0) {
+                    alarms.evaluate(value, epochMillis, dispatcher);
+                }
+            }
+            break;
+        }
+        readingsEvaluated.incrementAndGet();
+    }
+
+    private SensorAlarms current(int code) {
+        RuleSet rules = ruleSet;
+        SensorAlarms alarms = evaluators.get(code);
+        if (alarms != null && alarms.generation == rules.generation()) {
+            return alarms;
+        }
+        return compile(code, rules, alarms);
+    }
+
+    private SensorAlarms compile(int code, RuleSet rules, SensorAlarms previous) {
+        int sensorId = registry.sensorIdOf(code);
+        String type = registry.typeOf(code);
+        List<AlarmRule> matching = new ArrayList<>(rules.bySensor().getOrDefault(sensorId, List.of()));
+        if (type != null) {
+            matching.addAll(rules.byType().getOrDefault(type, List.of()));
+        }
+        SensorAlarms compiled = new SensorAlarms(rules.generation(), sensorId, type, matching);
+        if (previous == null) {
+            return evaluators.compareAndSet(code, null, compiled) ? compiled : evaluators.get(code);
+        }
+        synchronized (previous) {
+            if (previous.retired) {
+                // Another thread recompiled first
+                return evaluators.get(code);
+            }
+            compiled.inherit(previous);
+            previous.retired = true;
+            evaluators.set(code, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Replaces the whole rule set. Active alarms of rules that no longer exist are cleared.
+     */
+    public synchronized void setRules(List<AlarmRule> rules) {
+        Map<Integer, List<AlarmRule>> bySensor = new HashMap<>();
+        Map<String, List<AlarmRule>> byType = new HashMap<>();
+        Set<String> ids = new HashSet<>();
+        for (AlarmRule rule : rules) {
+            if (!ids.add(rule.id())) {
+                throw new IllegalArgumentException("Duplicate alarm rule id: " + rule.id());
+            }
+            if (rule.sensorId() != null) {
+                bySensor.computeIfAbsent(rule.sensorId(), k -> new ArrayList<>()).add(rule);
+            } else {
+                byType.computeIfAbsent(rule.sensorType(), k -> new ArrayList<>()).add(rule);
+            }
+        }
+        ruleSet = new RuleSet(ruleSet.generation() + 1, List.copyOf(rules), bySensor, byType);
+
+        for (AlarmEvent active : List.copyOf(activeAlarms.values())) {
+            if (!ids.contains(active.ruleId())) {
+                dispatch(new AlarmEvent(active.ruleId(), active.sensorId(), active.sensorType(),
+                    AlarmEvent.State.CLEARED, active.severity(), active.value(), active.limit(),
+                    "Rule " + active.ruleId() + " removed", Instant.now()));
+            }
+        }
+        LoggingUtil.logStartup(logger, "AlarmEngine", Map.of(
+            "rules", String.valueOf(rules.size()),
+            "sensorRules", String.valueOf(rules.size() - byType.values().stream().mapToInt(List::size).sum()),
+            "typeRules", String.valueOf(byType.values().stream().mapToInt(List::size).sum())
+        ));
+    }
+
+    public List<AlarmRule> getRules() {
+        return ruleSet.rules();
+    }
+
+    /**
+     * Loads rules from the file named by smartfactory.alarms.rules, if set
+     */
+    public void loadConfiguredRules() {
+        String file = System.getProperty("smartfactory.alarms.rules");
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        try {
+            setRules(readRules(Paths.get(file)));
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Alarm Rules", "Failed to load alarm rules from " + file, e);
+        }
+    }
+
+    public static List<AlarmRule> readRules(Path file) throws IOException {
+        JsonNode array = JsonUtil.mapper().readTree(Files.readString(file));
+        if (!array.isArray()) {
+            throw new IllegalArgumentException("Alarm rule file must contain a JSON array: " + file);
+        }
+        List<AlarmRule> rules = new ArrayList<>(array.size());
+        for (JsonNode node : array) {
+            rules.add(new AlarmRule(
+                node.path("id").asText(null),
+                node.hasNonNull("sensorId") ? node.get("sensorId").asInt() : null,
+                node.hasNonNull("sensorType") ? node.get("sensorType").asText() : null,
+                AlarmRule.Kind.valueOf(node.path("kind").asText("HIGH").toUpperCase()),
+                node.path("limit").asDouble(),
+                node.path("hysteresis").asDouble(0.0),
+                node.path("deadband").asDouble(0.0),
+                node.path("durationMillis").asLong(0),
+                AlarmSeverity.valueOf(node.path("severity").asText("WARNING").toUpperCase())
+            ));
+        }
+        return rules;
+    }
+
+    private void dispatch(AlarmEvent event) {
+        String key = event.ruleId() + "/" + event.sensorId();
+        if (event.state() == AlarmEvent.State.RAISED) {
+            activeAlarms.put(key, event);
+            eventsRaised.incrementAndGet();
+        } else {
+            activeAlarms.remove(key);
+            eventsCleared.incrementAndGet();
+        }
+        for (AlarmListener listener : listeners) {
+            try {
+                listener.onAlarm(event);
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Alarm Dispatch", "Alarm listener failed for rule " + event.ruleId(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the currently raised alarms, oldest first
+     */
+    public List<AlarmEvent> getActiveAlarms() {
+        List<AlarmEvent> active = new ArrayList<>(activeAlarms.values());
+        active.sort((a, b) -> a.timestamp().compareTo(b.timestamp()));
+        return Collections.unmodifiableList(active);
+    }
+
+    public long getReadingsEvaluated() {
+        return readingsEvaluated.get();
+    }
+
+    public long getEventsRaised() {
+        return eventsRaised.get();
+    }
+
+    public long getEventsCleared() {
+        return eventsCleared.get();
+    }
+}
@@ -0,0 +1,37 @@
+package com.dashtech.smartfactory.alarm;
+
+import java.util.List;
+
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.service.BatchingJournal;
+import com.dashtech.smartfactory.service.DatabaseService;
+
+/**
+ * Persists raised and cleared alarms to the ALARM_JOURNAL table. Events are written by a
+ * dedicated thread, so an alarm storm never stalls the readings that caused it.
+ */
+public class AlarmJournal extends BatchingJournal<AlarmEvent> implements AlarmEngine.AlarmListener {
+    private final DatabaseService databaseService;
+
+    public AlarmJournal(DatabaseService databaseService) {
+        super("AlarmJournal", "alarm events");
+        this.databaseService = databaseService;
+    }
+
+    @Override
+    public void onAlarm(AlarmEvent event) {
+        append(event);
+    }
+
+    @Override
+    protected void store(List<AlarmEvent> batch) {
+        databaseService.storeAlarmEvents(batch);
+    }
+
+    /**
+     * Returns the most recent persisted events, newest first
+     */
+    public List<AlarmEvent> recent(int limit) {
+        return databaseService.recentAlarmEvents(limit);
+    }
+}
@@ -0,0 +1,150 @@
+package com.dashtech.smartfactory.alarm;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.AlarmRule;
+
+/**
+ * The rules of one sensor compiled into parallel primitive arrays, together with their
+ * evaluation state. Evaluating a reading is a single pass over these arrays and allocates
+ * only when an alarm changes state.
+ * <p>
+ * A sensor can be fed by more than one source thread, such as two ports, a network device
+ * and a virtual sensor, so {@link AlarmEngine} evaluates and recompiles while holding this
+ * object's monitor. A recompiled evaluator marks its predecessor retired, so rule state is
+ * carried over exactly once and no reading is evaluated against a replaced evaluator.
+ */
+final class SensorAlarms {
+    private static final byte HIGH = 0;
+    private static final byte LOW = 1;
+    private static final byte RATE_OF_CHANGE = 2;
+    private static final long NONE = Long.MIN_VALUE;
+
+    final int generation;
+    final int sensorId;
+    final String sensorType;
+    final AlarmRule[] rules;
+    private final byte[] kinds;
+    private final double[] limits;
+    private final double[] clearLimits;
+    private final double[] deadbands;
+    private final long[] durations;
+
+    private final boolean[] active;
+    private final long[] pendingSince;
+    private final double[] lastEvaluated;
+    private final double[] previousValue;
+    private final long[] previousTime;
+    // Guarded by this; set once a recompiled evaluator has inherited the state
+    boolean retired;
+
+    SensorAlarms(int generation, int sensorId, String sensorType, List<AlarmRule> compiled) {
+        this.generation = generation;
+        this.sensorId = sensorId;
+        this.sensorType = sensorType;
+        int n = compiled.size();
+        rules = compiled.toArray(new AlarmRule[0]);
+        kinds = new byte[n];
+        limits = new double[n];
+        clearLimits = new double[n];
+        deadbands = new double[n];
+        durations = new long[n];
+        active = new boolean[n];
+        pendingSince = new long[n];
+        lastEvaluated = new double[n];
+        previousValue = new double[n];
+        previousTime = new long[n];
+        for (int i = 0; i < n; i++) {
+            AlarmRule rule = rules[i];
+            kinds[i] = switch (rule.kind()) {
+                case HIGH -> HIGH;
+                case LOW -> LOW;
+                case RATE_OF_CHANGE -> RATE_OF_CHANGE;
+            };
+            limits[i] = rule.limit();
+            clearLimits[i] = kinds[i] == LOW ? rule.limit() + rule.hysteresis() : rule.limit() - rule.hysteresis();
+            deadbands[i] = rule.deadband();
+            durations[i] = rule.durationMillis();
+            pendingSince[i] = NONE;
+            lastEvaluated[i] = Double.NaN;
+            previousTime[i] = NONE;
+        }
+    }
+
+    /**
+     * Carries alarm and timer state over from the previous compilation of this sensor's rules
+     */
+    void inherit(SensorAlarms previous) {
+        if (previous == null || previous.rules.length == 0) {
+            return;
+        }
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < previous.rules.length; i++) {
+            index.put(previous.rules[i].id(), i);
+        }
+        for (int i = 0; i < rules.length; i++) {
+            Integer old = index.get(rules[i].id());
+            if (old != null) {
+                active[i] = previous.active[old];
+                pendingSince[i] = previous.pendingSince[old];
+                previousValue[i] = previous.previousValue[old];
+                previousTime[i] = previous.previousTime[old];
+            }
+        }
+    }
+
+    void evaluate(double value, long epochMillis, Consumer<AlarmEvent> events) {
+        for (int i = 0; i < kinds.length; i++) {
+            double measured = value;
+            if (kinds[i] == RATE_OF_CHANGE) {
+                long lastTime = previousTime[i];
+                double lastValue = previousValue[i];
+                previousValue[i] = value;
+                previousTime[i] = epochMillis;
+                if (lastTime == NONE || epochMillis <= lastTime) {
+                    continue;
+                }
+                measured = Math.abs(value - lastValue) * 1000.0 / (epochMillis - lastTime);
+            }
+
+            // Inside the deadband nothing can change, unless a duration timer is waiting to fire
+            if (pendingSince[i] == NONE && Math.abs(measured - lastEvaluated[i]) < deadbands[i]) {
+                continue;
+            }
+            lastEvaluated[i] = measured;
+
+            if (active[i]) {
+                boolean clear = kinds[i] == LOW ? measured >= clearLimits[i] : measured <= clearLimits[i];
+                if (clear) {
+                    active[i] = false;
+                    events.accept(AlarmEvent.of(rules[i], sensorId, sensorType, AlarmEvent.State.CLEARED,
+                        measured, epochMillis));
+                }
+                continue;
+            }
+
+            boolean violated = kinds[i] == LOW ? measured < limits[i] : measured > limits[i];
+            if (!violated) {
+                pendingSince[i] = NONE;
+                continue;
+            }
+            if (pendingSince[i] == NONE) {
+                pendingSince[i] = epochMillis;
+            }
+            if (epochMillis - pendingSince[i] >= durations[i]) {
+                active[i] = true;
+                pendingSince[i] = NONE;
+                events.accept(AlarmEvent.of(rules[i], sensorId, sensorType, AlarmEvent.State.RAISED,
+                    measured, epochMillis));
+            }
+        }
+    }
+
+    int size() {
+        return rules.length;
+    }
+}
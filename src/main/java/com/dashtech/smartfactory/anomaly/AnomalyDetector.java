@@ -0,0 +1,298 @@
+package com.dashtech.smartfactory.anomaly;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.Anomaly;
+import com.dashtech.smartfactory.model.AnomalyKind;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.service.LatestValueStore;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.service.SensorRegistry;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Online anomaly detection on every sensor stream, in constant memory and time per reading.
+ * Three detectors share one exponentially weighted baseline per sensor:
+ * <ul>
+ *   <li>rolling z-score: the reading is far from the rolling mean</li>
+ *   <li>CUSUM: small deviations accumulate into a sustained drift up or down</li>
+ *   <li>spike: the rate of change is far outside its own rolling distribution</li>
+ * </ul>
+ * Nothing is flagged until a sensor has completed its warm-up. Flagged readings update the
+ * baseline clipped to the threshold, so one outlier does not blind the detector.
+ * <p>
+ * State lives in arrays indexed by the {@link SensorRegistry} code. Scoring a reading reads and
+ * rewrites a sensor's mean, variances, CUSUM sums and previous sample together, and the same
+ * sensor can arrive from a serial port, a network device and the Modbus master at once, so each
+ * reading is scored under a lock striped by code. The listeners run after the lock is released,
+ * so a slow journal write holds up only its own caller.
+ * <p>
+ * Configuration (system properties, defaults in brackets): smartfactory.anomaly.alpha [0.01],
+ * smartfactory.anomaly.warmup [50], smartfactory.anomaly.zThreshold [4], smartfactory.anomaly.cusumSlack [0.5],
+ * smartfactory.anomaly.cusumThreshold [8], smartfactory.anomaly.spikeThreshold [6],
+ * smartfactory.anomaly.minStdDev [0.01].
+ */
+public class AnomalyDetector implements SensorIngestService.BatchListener {
+    private static final Logger logger = LogManager.getLogger(AnomalyDetector.class);
+    private static final AnomalyDetector instance = create(SensorRegistry.getInstance(), LatestValueStore.getInstance());
+
+    @FunctionalInterface
+    public interface AnomalyListener {
+        void onAnomaly(Anomaly anomaly);
+    }
+
+    private final SensorRegistry registry;
+    private final LatestValueStore latestValues;
+    private final double alpha;
+    private final int warmup;
+    private final double zThreshold;
+    private final double cusumSlack;
+    private final double cusumThreshold;
+    private final double spikeThreshold;
+    private final double minStdDev;
+    private final List<AnomalyListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile AnomalyJournal journal;
+
+    private final int[] counts;
+    private final double[] means;
+    private final double[] variances;
+    private final double[] rateMeans;
+    private final double[] rateVariances;
+    private final double[] cusumUp;
+    private final double[] cusumDown;
+    private final double[] previousValues;
+    private final long[] previousTimes;
+
+    private static final int LOCK_STRIPES = 64;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong readingsChecked = new AtomicLong();
+    private final AtomicLong anomaliesFlagged = new AtomicLong();
+
+    public AnomalyDetector(SensorRegistry registry, LatestValueStore latestValues, double alpha, int warmup,
+            double zThreshold, double cusumSlack, double cusumThreshold, double spikeThreshold, double minStdDev) {
+        if (alpha <= 0 || alpha >= 1 || warmup < 2) {
+            throw new IllegalArgumentException("alpha must be in (0, 1) and warmup at least 2");
+        }
+        this.registry = registry;
+        this.latestValues = latestValues;
+        this.alpha = alpha;
+        this.warmup = warmup;
+        this.zThreshold = zThreshold;
+        this.cusumSlack = cusumSlack;
+        this.cusumThreshold = cusumThreshold;
+        this.spikeThreshold = spikeThreshold;
+        this.minStdDev = minStdDev;
+        int capacity = registry.capacity();
+        counts = new int[capacity];
+        means = new double[capacity];
+        variances = new double[capacity];
+        rateMeans = new double[capacity];
+        rateVariances = new double[capacity];
+        cusumUp = new double[capacity];
+        cusumDown = new double[capacity];
+        previousValues = new double[capacity];
+        previousTimes = new long[capacity];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        LoggingUtil.logStartup(logger, "AnomalyDetector", Map.of(
+            "alpha", String.valueOf(alpha),
+            "warmup", String.valueOf(warmup),
+            "zThreshold", String.valueOf(zThreshold),
+            "cusum", cusumSlack + "/" + cusumThreshold,
+            "spikeThreshold", String.valueOf(spikeThreshold)
+        ));
+    }
+
+    public static AnomalyDetector getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a detector with the thresholds listed above, reading and flagging the given stages
+     */
+    public static AnomalyDetector create(SensorRegistry registry, LatestValueStore latestValues) {
+        return new AnomalyDetector(
+            registry,
+            latestValues,
+            doubleProperty("smartfactory.anomaly.alpha", 0.01),
+            Integer.getInteger("smartfactory.anomaly.warmup", 50),
+            doubleProperty("smartfactory.anomaly.zThreshold", 4.0),
+            doubleProperty("smartfactory.anomaly.cusumSlack", 0.5),
+            doubleProperty("smartfactory.anomaly.cusumThreshold", 8.0),
+            doubleProperty("smartfactory.anomaly.spikeThreshold", 6.0),
+            doubleProperty("smartfactory.anomaly.minStdDev", 0.01));
+    }
+
+    public void addListener(AnomalyListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AnomalyListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Attaches the journal that stores flagged readings, replacing any previous one
+     */
+    public void setJournal(AnomalyJournal newJournal) {
+        AnomalyJournal previous = journal;
+        if (previous != null) {
+            listeners.remove(previous);
+        }
+        journal = newJournal;
+        if (newJournal != null) {
+            listeners.add(newJournal);
+        }
+    }
+
+    public AnomalyJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Scores every reading of the batch and marks flagged rows with {@link QualityFlags#anomaly(int)},
+     * so report-by-exception always passes them on and the broadcast can name the kinds
+     */
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code == SensorRegistry.NO_CODE) {
+                continue;
+            }
+            int flags = check(code, batch.value(i), batch.epochMillis(i));
+            if (flags != 0) {
+                batch.markQuality(i, QualityFlags.anomaly(flags));
+                // A later reading of the sensor in the same batch has already replaced the latest value
+                if (latestValues.getEpochNanos(code) == batch.epochNanos(i)) {
+                    latestValues.markQuality(code, QualityFlags.ANOMALY, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores one reading and updates the sensor's baseline
+     * @return {@link AnomalyKind} flags, 0 for a normal reading
+     */
+    public int check(int code, double value, long epochMillis) {
+        readingsChecked.incrementAndGet();
+        Anomaly anomaly;
+        synchronized (locks[code & (LOCK_STRIPES - 1)]) {
+            anomaly = score(code, value, epochMillis);
+        }
+        if (anomaly == null) {
+            return 0;
+        }
+        anomaliesFlagged.incrementAndGet();
+        dispatch(anomaly);
+        return anomaly.kinds();
+    }
+
+    /**
+     * Updates the sensor's baseline with one reading; caller holds the sensor's lock
+     * @return The anomaly, or null for a normal reading
+     */
+    private Anomaly score(int code, double value, long epochMillis) {
+        int n = counts[code];
+        if (n == 0) {
+            means[code] = value;
+            previousValues[code] = value;
+            previousTimes[code] = epochMillis;
+            counts[code] = 1;
+            return null;
+        }
+
+        double mean = means[code];
+        double std = Math.max(Math.sqrt(variances[code]), minStdDev);
+        double elapsedSeconds = (epochMillis - previousTimes[code]) / 1000.0;
+        boolean hasRate = elapsedSeconds > 0;
+        double rate = hasRate ? (value - previousValues[code]) / elapsedSeconds : 0.0;
+        double rateMean = rateMeans[code];
+        double rateStd = Math.max(Math.sqrt(rateVariances[code]), minStdDev);
+
+        int flags = 0;
+        double z = (value - mean) / std;
+        double rateZ = hasRate ? (rate - rateMean) / rateStd : 0.0;
+        boolean warm = n >= warmup;
+        if (warm) {
+            if (Math.abs(z) > zThreshold) {
+                flags |= AnomalyKind.Z_SCORE.bit();
+            }
+            cusumUp[code] = Math.max(0.0, cusumUp[code] + z - cusumSlack);
+            cusumDown[code] = Math.max(0.0, cusumDown[code] - z - cusumSlack);
+            if (cusumUp[code] > cusumThreshold) {
+                flags |= AnomalyKind.DRIFT_UP.bit();
+            }
+            if (cusumDown[code] > cusumThreshold) {
+                flags |= AnomalyKind.DRIFT_DOWN.bit();
+            }
+            if (hasRate && Math.abs(rateZ) > spikeThreshold) {
+                flags |= AnomalyKind.SPIKE.bit();
+            }
+        }
+
+        // Exponentially weighted mean and variance; plain averages while warming up
+        double weight = Math.max(alpha, 1.0 / (n + 1));
+        double x = (flags & AnomalyKind.Z_SCORE.bit()) != 0 ? mean + Math.signum(z) * zThreshold * std : value;
+        double diff = x - mean;
+        double increment = weight * diff;
+        means[code] = mean + increment;
+        variances[code] = (1 - weight) * (variances[code] + diff * increment);
+        if (hasRate) {
+            double r = (flags & AnomalyKind.SPIKE.bit()) != 0 ? rateMean + Math.signum(rateZ) * spikeThreshold * rateStd : rate;
+            double rateDiff = r - rateMean;
+            double rateIncrement = (n == 1 ? 1.0 : weight) * rateDiff;
+            rateMeans[code] = rateMean + rateIncrement;
+            rateVariances[code] = n == 1 ? 0.0 : (1 - weight) * (rateVariances[code] + rateDiff * rateIncrement);
+        }
+        previousValues[code] = value;
+        previousTimes[code] = epochMillis;
+        counts[code] = n == Integer.MAX_VALUE ? n : n + 1;
+
+        if (flags == 0) {
+            return null;
+        }
+        double cusum = Math.max(cusumUp[code], cusumDown[code]);
+        if ((flags & (AnomalyKind.DRIFT_UP.bit() | AnomalyKind.DRIFT_DOWN.bit())) != 0) {
+            // Report the drift once, then start accumulating again
+            cusumUp[code] = 0.0;
+            cusumDown[code] = 0.0;
+        }
+        return new Anomaly(registry.sensorIdOf(code), registry.typeOf(code), flags, value, mean, std,
+            z, cusum, rateZ, Instant.ofEpochMilli(epochMillis));
+    }
+
+    private void dispatch(Anomaly anomaly) {
+        for (AnomalyListener listener : listeners) {
+            try {
+                listener.onAnomaly(anomaly);
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Anomaly Dispatch", "Anomaly listener failed", e);
+            }
+        }
+    }
+
+    public long getReadingsChecked() {
+        return readingsChecked.get();
+    }
+
+    public long getAnomaliesFlagged() {
+        return anomaliesFlagged.get();
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
@@ -0,0 +1,37 @@
+package com.dashtech.smartfactory.anomaly;
+
+import java.util.List;
+
+import com.dashtech.smartfactory.model.Anomaly;
+import com.dashtech.smartfactory.service.BatchingJournal;
+import com.dashtech.smartfactory.service.DatabaseService;
+
+/**
+ * Persists flagged readings to the ANOMALY table on a dedicated thread, so a burst of
+ * anomalies never stalls the stream they were found in.
+ */
+public class AnomalyJournal extends BatchingJournal<Anomaly> implements AnomalyDetector.AnomalyListener {
+    private final DatabaseService databaseService;
+
+    public AnomalyJournal(DatabaseService databaseService) {
+        super("AnomalyJournal", "anomalies");
+        this.databaseService = databaseService;
+    }
+
+    @Override
+    public void onAnomaly(Anomaly anomaly) {
+        append(anomaly);
+    }
+
+    @Override
+    protected void store(List<Anomaly> batch) {
+        databaseService.storeAnomalies(batch);
+    }
+
+    /**
+     * Returns the most recent persisted anomalies, newest first, optionally for one sensor
+     */
+    public List<Anomaly> recent(Integer sensorId, int limit) {
+        return databaseService.recentAnomalies(sensorId, limit);
+    }
+}
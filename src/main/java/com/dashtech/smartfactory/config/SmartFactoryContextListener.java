@@ -1,4 +1,117 @@
 package com.dashtech.smartfactory.config;
 
-public class SmartFactoryContextListener {
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.alarm.AlarmEngine;
+import com.dashtech.smartfactory.model.DatabaseConfig;
+import com.dashtech.smartfactory.service.DatabaseService;
+import com.dashtech.smartfactory.service.ReportByExceptionFilter;
+import com.dashtech.smartfactory.service.SmartFactoryService;
+import com.dashtech.smartfactory.service.StaleSensorWatchdog;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.dashtech.smartfactory.virtual.VirtualSensorEngine;
+import com.dashtech.smartfactory.websocket.SmartFactoryWebSocket;
+
+/**
+ * The application's only context listener. Opens storage once, wires the ingest pipeline
+ * once and tears both down in reverse order.
+ * <p>
+ * Startup overlaps independent work: the database opens and verifies its schema on one
+ * startup thread, configuration files (alarm rules, virtual sensors, watchdog intervals,
+ * deadbands) are read on others, and the in-memory pipeline is wired on the container
+ * thread meanwhile. Storage is attached and traffic sources started only once all of it
+ * has finished. Caches are not warmed here; history rings backfill on first use.
+ * <p>
+ * The database lives at smartfactory.db.path, defaulting to data/smartfactory under
+ * catalina.base.
+ */
+@WebListener
+public class SmartFactoryContextListener implements ServletContextListener {
+    private static final Logger logger = LogManager.getLogger(SmartFactoryContextListener.class);
+    private static final int STARTUP_THREADS = 4;
+
+    private final SmartFactoryService service = new SmartFactoryService();
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        long started = System.nanoTime();
+        Path dbPath = resolveDatabasePath();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService startup = Executors.newFixedThreadPool(STARTUP_THREADS, r -> {
+            Thread t = new Thread(r, "Startup-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        CompletableFuture<DatabaseService> storage = CompletableFuture.supplyAsync(
+            () -> DatabaseService.getInstance(DatabaseConfig.createDefault(dbPath)), startup);
+        boolean attached = false;
+        try {
+            List<CompletableFuture<Void>> configuration = new ArrayList<>();
+            configuration.add(CompletableFuture.runAsync(AlarmEngine.getInstance()::loadConfiguredRules, startup));
+            configuration.add(CompletableFuture.runAsync(VirtualSensorEngine.getInstance()::loadConfiguredDefinitions, startup));
+            configuration.add(CompletableFuture.runAsync(StaleSensorWatchdog.getInstance()::loadConfiguredIntervals, startup));
+            if (SmartFactoryService.isReportByExceptionEnabled()) {
+                configuration.add(CompletableFuture.runAsync(
+                    ReportByExceptionFilter.getInstance()::loadConfiguredOverrides, startup));
+            }
+
+            service.wirePipeline();
+            CompletableFuture.allOf(configuration.toArray(new CompletableFuture<?>[0])).join();
+
+            DatabaseService database = storage.join();
+            // From here the service owns the database and closes it on stop
+            attached = true;
+            service.attachStorage(database);
+            SmartFactoryWebSocket.setDatabaseService(database);
+            service.startSources();
+
+            LoggingUtil.logStartup(logger, "SmartFactory", Map.of(
+                "dbPath", dbPath.toString(),
+                "startupMillis", String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)),
+                "status", "initialized"
+            ));
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            LoggingUtil.logError(logger, "Context Initialization", "Failed to initialize Smart Factory", cause);
+            service.stop();
+            if (!attached) {
+                // Storage may still be opening if something else failed first
+                storage.thenAccept(DatabaseService::close);
+            }
+            throw new RuntimeException("Failed to initialize Smart Factory", cause);
+        } finally {
+            startup.shutdown();
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        service.stop();
+        SmartFactoryWebSocket.setDatabaseService(null);
+    }
+
+    private static Path resolveDatabasePath() {
+        String configured = System.getProperty("smartfactory.db.path");
+        if (configured != null && !configured.isBlank()) {
+            return Paths.get(configured);
+        }
+        return Paths.get(System.getProperty("catalina.base", "."), "data", "smartfactory");
+    }
 }
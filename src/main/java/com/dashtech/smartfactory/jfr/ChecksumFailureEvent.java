@@ -0,0 +1,27 @@
+package com.dashtech.smartfactory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A binary frame rejected by its checksum or framing
+ */
+@Name("smartfactory.ChecksumFailure")
+@Label("Checksum Failure")
+@Category({"Smart Factory", "Decode"})
+@Description("A binary frame rejected by its checksum or framing; the decoder resynchronises on the next byte")
+@StackTrace(false)
+public class ChecksumFailureEvent extends jdk.jfr.Event {
+    @Label("Port")
+    public String port;
+
+    @Label("Sensor")
+    @Description("Sensor id byte of the rejected frame")
+    public int sensorId;
+
+    @Label("Reason")
+    public String reason;
+}
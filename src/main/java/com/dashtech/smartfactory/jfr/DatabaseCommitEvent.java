@@ -0,0 +1,27 @@
+package com.dashtech.smartfactory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One batch inserted and committed by the DatabaseService
+ */
+@Name("smartfactory.DatabaseCommit")
+@Label("Database Batch Commit")
+@Category({"Smart Factory", "Database"})
+@Description("A batch of rows inserted and committed in one transaction")
+@StackTrace(false)
+public class DatabaseCommitEvent extends jdk.jfr.Event {
+    @Label("Table")
+    public String table;
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Committed")
+    @Description("False when the batch was rolled back")
+    public boolean committed;
+}
@@ -0,0 +1,27 @@
+package com.dashtech.smartfactory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Decode of one binary frame or text line, including the dispatch of its reading
+ */
+@Name("smartfactory.FrameDecode")
+@Label("Frame Decode")
+@Category({"Smart Factory", "Decode"})
+@Description("A binary frame or text line decoded and its reading dispatched")
+@StackTrace(false)
+public class FrameDecodeEvent extends jdk.jfr.Event {
+    @Label("Port")
+    public String port;
+
+    @Label("Sensor")
+    public int sensorId;
+
+    @Label("Format")
+    @Description("binary or text")
+    public String format;
+}
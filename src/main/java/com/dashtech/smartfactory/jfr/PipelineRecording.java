@@ -0,0 +1,107 @@
+package com.dashtech.smartfactory.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Continuous in-process flight recording for deployments that cannot change the JVM
+ * command line. Combines the JDK "default" profile with the bundled
+ * jfr/smartfactory.jfc, keeps a bounded rolling window on disk and dumps it when the
+ * application stops.
+ * <p>
+ * Enabled with smartfactory.jfr.enabled=true; smartfactory.jfr.maxAgeMinutes,
+ * smartfactory.jfr.maxSizeMb and smartfactory.jfr.dir size and place the recording.
+ */
+public final class PipelineRecording implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(PipelineRecording.class);
+    public static final String SETTINGS_RESOURCE = "/jfr/smartfactory.jfc";
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Recording recording;
+    private final Path dumpDirectory;
+
+    private PipelineRecording(Recording recording, Path dumpDirectory) {
+        this.recording = recording;
+        this.dumpDirectory = dumpDirectory;
+    }
+
+    /**
+     * Starts a recording when smartfactory.jfr.enabled is set, otherwise returns null
+     */
+    public static PipelineRecording startIfConfigured() {
+        if (!Boolean.getBoolean("smartfactory.jfr.enabled")) {
+            return null;
+        }
+        try {
+            Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            settings.putAll(loadBundledSettings().getSettings());
+
+            Recording recording = new Recording(settings);
+            recording.setName("smartfactory");
+            recording.setToDisk(true);
+            recording.setMaxAge(Duration.ofMinutes(Long.getLong("smartfactory.jfr.maxAgeMinutes", 360)));
+            recording.setMaxSize(Long.getLong("smartfactory.jfr.maxSizeMb", 512) * 1024 * 1024);
+            recording.start();
+
+            Path dir = Paths.get(System.getProperty("smartfactory.jfr.dir",
+                System.getProperty("catalina.base", ".") + "/logs"));
+            logger.info("Flight recording started, dumps go to {}", dir);
+            return new PipelineRecording(recording, dir);
+        } catch (IOException | ParseException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Flight Recorder", "Failed to start flight recording", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the bundled pipeline event settings from the classpath
+     */
+    public static Configuration loadBundledSettings() throws IOException, ParseException {
+        try (InputStream in = PipelineRecording.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + SETTINGS_RESOURCE);
+            }
+            return Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Writes the current rolling window to a timestamped file and returns its path
+     */
+    public Path dump() throws IOException {
+        Files.createDirectories(dumpDirectory);
+        Path file = dumpDirectory.resolve("smartfactory-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+        recording.dump(file);
+        return file;
+    }
+
+    @Override
+    public void close() {
+        try {
+            logger.info("Flight recording dumped to {}", dump());
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Flight Recorder", "Failed to dump flight recording", e);
+        } finally {
+            recording.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.dashtech.smartfactory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One batch of bytes read from a port, spanning its decode and the dispatch of every
+ * reading it completed
+ */
+@Name("smartfactory.SerialRead")
+@Label("Serial Read")
+@Category({"Smart Factory", "Serial"})
+@Description("Bytes read from a port, decoded and dispatched")
+@StackTrace(false)
+public class SerialReadEvent extends jdk.jfr.Event {
+    @Label("Port")
+    public String port;
+
+    @Label("Bytes")
+    @DataAmount
+    public int bytes;
+
+    @Label("Backlog")
+    @Description("Bytes left waiting for the rest of a frame or line")
+    @DataAmount
+    public int backlog;
+}
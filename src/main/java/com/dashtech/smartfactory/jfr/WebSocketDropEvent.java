@@ -0,0 +1,28 @@
+package com.dashtech.smartfactory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A queued reading frame discarded because a session's outbox was full
+ */
+@Name("smartfactory.WebSocketDrop")
+@Label("WebSocket Queue Drop")
+@Category({"Smart Factory", "WebSocket"})
+@Description("The oldest queued reading frame was discarded because a slow session's outbox was full")
+@StackTrace(false)
+public class WebSocketDropEvent extends jdk.jfr.Event {
+    @Label("Session")
+    public String session;
+
+    @Label("Sensor")
+    @Description("Sensor of the dropped reading")
+    public int sensorId;
+
+    @Label("Dropped")
+    @Description("Frames dropped for this session so far")
+    public long dropped;
+}
@@ -0,0 +1,33 @@
+package com.dashtech.smartfactory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One text frame written to a dashboard session
+ */
+@Name("smartfactory.WebSocketSend")
+@Label("WebSocket Send")
+@Category({"Smart Factory", "WebSocket"})
+@Description("A text frame written to a dashboard session")
+@StackTrace(false)
+public class WebSocketSendEvent extends jdk.jfr.Event {
+    @Label("Session")
+    public String session;
+
+    @Label("Port")
+    @Description("Port the reading arrived on, when the frame carries a reading")
+    public String port;
+
+    @Label("Sensor")
+    @Description("Sensor of the reading, or -1 when the frame carries no reading")
+    public int sensorId;
+
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
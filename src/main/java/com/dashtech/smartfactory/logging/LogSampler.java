@@ -0,0 +1,113 @@
+package com.dashtech.smartfactory.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Decides which hot-path log events are written. Each category logs one event in N,
+ * and everything that passes sampling shares a budget of events per second; events
+ * over the budget are counted and reported once the second is over.
+ * <p>
+ * Sampling is read from smartfactory.log.sample.&lt;category&gt; (for example
+ * smartfactory.log.sample.sensor=100) and the budget from smartfactory.log.hotPathBudget,
+ * where 0 disables it. Callers check that the logger is enabled first, so a disabled
+ * level never touches the counters.
+ */
+public final class LogSampler {
+    private static final Logger logger = LoggerFactory.getLogger(LogSampler.class);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int DEFAULT_BUDGET = 1000;
+
+    /**
+     * Hot-path event families that can be sampled independently
+     */
+    public enum Category {
+        SENSOR("sensor"),
+        SERIAL("serial"),
+        WEBSOCKET("websocket"),
+        TRANSACTION("transaction");
+
+        private final String key;
+        private final int every;
+        private final AtomicLong seen = new AtomicLong();
+
+        Category(String key) {
+            this.key = key;
+            this.every = Math.max(1, Integer.getInteger("smartfactory.log.sample." + key, 1));
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Logs one event in this many
+         */
+        public int getSampleEvery() {
+            return every;
+        }
+
+        private boolean sample() {
+            return every == 1 || seen.getAndIncrement() % every == 0;
+        }
+    }
+
+    private static final int budget = Math.max(0, Integer.getInteger("smartfactory.log.hotPathBudget", DEFAULT_BUDGET));
+    private static final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private static final AtomicInteger usedInWindow = new AtomicInteger();
+    private static final AtomicLong suppressedInWindow = new AtomicLong();
+    private static final LongAdder sampledOut = new LongAdder();
+    private static final LongAdder overBudget = new LongAdder();
+
+    private LogSampler() {} // Prevent instantiation
+
+    /**
+     * Returns whether an event of the given category should be written now
+     */
+    public static boolean shouldLog(Category category) {
+        if (!category.sample()) {
+            sampledOut.increment();
+            return false;
+        }
+        if (budget == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            usedInWindow.set(0);
+            long suppressed = suppressedInWindow.getAndSet(0);
+            if (suppressed > 0) {
+                logger.info("Hot-path logging budget of {}/s exceeded, suppressed {} events", budget, suppressed);
+            }
+        }
+        if (usedInWindow.incrementAndGet() <= budget) {
+            return true;
+        }
+        suppressedInWindow.incrementAndGet();
+        overBudget.increment();
+        return false;
+    }
+
+    public static int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Events skipped because they fell between samples
+     */
+    public static long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    /**
+     * Events skipped because the per-second budget was spent
+     */
+    public static long getSuppressed() {
+        return overBudget.sum();
+    }
+}
@@ -0,0 +1,66 @@
+package com.dashtech.smartfactory.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Fixed-bucket histogram in the Prometheus style. Recording is a binary search over
+ * the bucket bounds and two atomic adds, so it is safe and cheap from any thread.
+ */
+public class Histogram {
+    private final double[] bounds;
+    private final AtomicLongArray counts;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * @param bounds Inclusive upper bounds of the buckets, ascending; +Inf is implicit
+     */
+    public Histogram(double... bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds must be ascending");
+            }
+        }
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public void record(double value) {
+        int lo = 0;
+        int hi = bounds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (value <= bounds[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        counts.incrementAndGet(lo);
+        sum.add(value);
+    }
+
+    public int getBucketCount() {
+        return bounds.length;
+    }
+
+    public double getBound(int bucket) {
+        return bounds[bucket];
+    }
+
+    /**
+     * Writes the histogram as cumulative {@code _bucket}, {@code _sum} and {@code _count} series
+     */
+    void writeTo(StringBuilder out, String name, String help) {
+        PipelineMetrics.header(out, name, help, "histogram");
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts.get(i);
+            out.append(name).append("_bucket{le=\"").append(PipelineMetrics.format(bounds[i])).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += counts.get(bounds.length);
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum ").append(PipelineMetrics.format(sum.sum())).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
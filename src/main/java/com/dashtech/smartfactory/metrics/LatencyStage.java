@@ -0,0 +1,25 @@
+package com.dashtech.smartfactory.metrics;
+
+/**
+ * Points on a reading's path at which its latency since arrival is recorded
+ */
+public enum LatencyStage {
+    /** Bytes arrived until the reading was decoded and about to be dispatched */
+    DECODE("decode"),
+    /** Bytes arrived until every ingest listener had run */
+    DISPATCH("dispatch"),
+    /** Bytes arrived until the batch holding the reading was committed */
+    PERSIST("persist"),
+    /** Bytes arrived until the reading's frame was written to a WebSocket session */
+    BROADCAST("broadcast");
+
+    private final String label;
+
+    LatencyStage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,200 @@
+package com.dashtech.smartfactory.metrics;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.SlowTrace;
+
+/**
+ * End-to-end latency of readings from byte arrival to decode, dispatch, database commit
+ * and WebSocket send. Every stamped reading is recorded in one {@link LatencyHistogram}
+ * per stage; readings slower than {@code smartfactory.trace.slowMillis} (default 250) are
+ * also kept as {@link SlowTrace}s, at most {@code smartfactory.trace.maxSlowPerSecond}
+ * (default 10) per second, and the latest {@code smartfactory.trace.keep} (default 100)
+ * are retained. Tracing is disabled with {@code smartfactory.trace.enabled=false}.
+ */
+public class LatencyTracer {
+    private static final LatencyTracer instance = new LatencyTracer();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[LatencyStage.values().length];
+    private final ArrayDeque<SlowTrace> slowTraces = new ArrayDeque<>();
+    private final AtomicLong slowSecond = new AtomicLong();
+    private final AtomicLong slowInSecond = new AtomicLong();
+    private final AtomicLong slowSkipped = new AtomicLong();
+    private final int maxSlowPerSecond;
+    private final int keep;
+    private volatile boolean enabled;
+    private volatile long slowNanos;
+
+    private LatencyTracer() {
+        for (LatencyStage stage : LatencyStage.values()) {
+            histograms[stage.ordinal()] = new LatencyHistogram();
+        }
+        enabled = Boolean.parseBoolean(System.getProperty("smartfactory.trace.enabled", "true"));
+        slowNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("smartfactory.trace.slowMillis", 250));
+        maxSlowPerSecond = Integer.getInteger("smartfactory.trace.maxSlowPerSecond", 10);
+        keep = Integer.getInteger("smartfactory.trace.keep", 100);
+    }
+
+    public static LatencyTracer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records that a batch of readings has been decoded or has been through every ingest listener
+     */
+    public void reached(LatencyStage stage, String source, SensorBatch batch, long nowNanos) {
+        if (!enabled) {
+            return;
+        }
+        LatencyHistogram histogram = histograms[stage.ordinal()];
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            if (!batch.isStamped(i)) {
+                continue;
+            }
+            long total = nowNanos - batch.arrivalNanos(i);
+            histogram.record(total);
+            if (total >= slowNanos) {
+                slow(stage, source, batch.sensorId(i), total, total, 0, null);
+            }
+        }
+    }
+
+    /**
+     * Records the committed rows [from, to) of a batch; {@code startNanos} is when the writer
+     * began storing them
+     */
+    public void committed(SensorBatch batch, int from, int to, long startNanos, long endNanos) {
+        if (!enabled) {
+            return;
+        }
+        LatencyHistogram histogram = histograms[LatencyStage.PERSIST.ordinal()];
+        int n = to - from;
+        for (int i = from; i < to; i++) {
+            if (!batch.isStamped(i)) {
+                continue;
+            }
+            long arrival = batch.arrivalNanos(i);
+            long total = endNanos - arrival;
+            histogram.record(total);
+            if (total >= slowNanos) {
+                slow(LatencyStage.PERSIST, null, batch.sensorId(i), total, startNanos - arrival,
+                    endNanos - startNanos, "batch of " + n);
+            }
+        }
+    }
+
+    /**
+     * Records a reading's frame written to one session; {@code startNanos} is when the write began
+     */
+    public void sent(String source, int sensorId, long arrivalNanos, String sessionId, long startNanos, long endNanos) {
+        if (!enabled || arrivalNanos == SensorData.NOT_STAMPED) {
+            return;
+        }
+        long total = endNanos - arrivalNanos;
+        histograms[LatencyStage.BROADCAST.ordinal()].record(total);
+        if (total >= slowNanos) {
+            slow(LatencyStage.BROADCAST, source, sensorId, total, startNanos - arrivalNanos,
+                endNanos - startNanos, "session " + sessionId);
+        }
+    }
+
+    private void slow(LatencyStage stage, String source, int sensorId, long total, long wait, long work, String detail) {
+        // Rate-limit per wall-clock second so a stall cannot flood the trace buffer
+        long second = System.currentTimeMillis() / 1000;
+        long current = slowSecond.get();
+        if (second != current && slowSecond.compareAndSet(current, second)) {
+            slowInSecond.set(0);
+        }
+        if (slowInSecond.incrementAndGet() > maxSlowPerSecond) {
+            slowSkipped.incrementAndGet();
+            return;
+        }
+        SlowTrace trace = new SlowTrace(stage.getLabel(), source, sensorId,
+            total / 1e6, wait / 1e6, work / 1e6, detail, Instant.now());
+        synchronized (slowTraces) {
+            if (slowTraces.size() == keep) {
+                slowTraces.removeFirst();
+            }
+            slowTraces.addLast(trace);
+        }
+    }
+
+    public LatencyHistogram getHistogram(LatencyStage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Retained slow traces, newest first
+     */
+    public List<SlowTrace> getSlowTraces() {
+        synchronized (slowTraces) {
+            List<SlowTrace> traces = new ArrayList<>(slowTraces);
+            Collections.reverse(traces);
+            return traces;
+        }
+    }
+
+    /**
+     * Slow readings not kept because the per-second limit was reached
+     */
+    public long getSlowTracesSkipped() {
+        return slowSkipped.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getSlowThresholdMillis() {
+        return slowNanos / 1e6;
+    }
+
+    public void setSlowThresholdMillis(double millis) {
+        this.slowNanos = (long) (millis * 1e6);
+    }
+
+    /**
+     * Clears the histograms and slow traces, starting a new measurement interval
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        synchronized (slowTraces) {
+            slowTraces.clear();
+        }
+        slowSkipped.set(0);
+    }
+
+    /**
+     * Appends the stage latencies as a Prometheus summary
+     */
+    public void writeTo(StringBuilder out) {
+        String name = "smartfactory_stage_latency_seconds";
+        PipelineMetrics.header(out, name, "Latency from byte arrival to each pipeline stage", "summary");
+        double[] quantiles = {0.5, 0.9, 0.99, 0.999};
+        for (LatencyStage stage : LatencyStage.values()) {
+            LatencyHistogram histogram = histograms[stage.ordinal()];
+            for (double q : quantiles) {
+                out.append(name).append("{stage=\"").append(stage.getLabel()).append("\",quantile=\"").append(q)
+                    .append("\"} ").append(histogram.getValueAtQuantile(q) / 1e9).append('\n');
+            }
+            out.append(name).append("_sum{stage=\"").append(stage.getLabel()).append("\"} ")
+                .append(histogram.getMean() * histogram.getCount() / 1e9).append('\n');
+            out.append(name).append("_count{stage=\"").append(stage.getLabel()).append("\"} ")
+                .append(histogram.getCount()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.dashtech.smartfactory.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide pipeline metrics rendered in the Prometheus text exposition format.
+ * <p>
+ * The hot path only touches {@link java.util.concurrent.atomic.LongAdder}s and
+ * {@link Histogram} buckets; everything derived (rates, queue depths, pool usage) is
+ * computed when the metrics are scraped. Components that own a queue or pool register
+ * a supplier for it on start and remove it on shutdown.
+ */
+public class PipelineMetrics {
+    private static final PipelineMetrics instance = new PipelineMetrics();
+
+    private final Map<String, PortMetrics> ports = new ConcurrentHashMap<>();
+    private final Map<String, QueueGauge> queues = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Histogram dbBatchSize = new Histogram(1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000);
+    private final Histogram dbCommitSeconds = new Histogram(
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5);
+
+    private record QueueGauge(IntSupplier depth, LongSupplier dropped) {
+    }
+
+    private record Gauge(String help, DoubleSupplier value) {
+    }
+
+    private PipelineMetrics() {
+    }
+
+    public static PipelineMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates metrics that are not exported through {@link #getInstance}, so a load test can
+     * count its own traffic without it showing up as plant traffic
+     */
+    public static PipelineMetrics createIsolated() {
+        return new PipelineMetrics();
+    }
+
+    /**
+     * Returns the counters for an ingest source, creating them on first use.
+     * Callers on the hot path should keep the returned object rather than look it up per reading.
+     */
+    public PortMetrics port(String port) {
+        PortMetrics metrics = ports.get(port);
+        return metrics != null ? metrics : ports.computeIfAbsent(port, PortMetrics::new);
+    }
+
+    /**
+     * Removes the counters of a source that has gone away, so it is no longer exported
+     */
+    public void unregisterPort(String port) {
+        ports.remove(port);
+    }
+
+    /**
+     * Records one committed database batch
+     */
+    public void recordBatch(int size, long commitNanos) {
+        dbBatchSize.record(size);
+        dbCommitSeconds.record(commitNanos / 1e9);
+    }
+
+    public void registerQueue(String name, IntSupplier depth, LongSupplier dropped) {
+        queues.put(name, new QueueGauge(depth, dropped));
+    }
+
+    public void unregisterQueue(String name) {
+        queues.remove(name);
+    }
+
+    /**
+     * Registers a gauge sampled at scrape time; {@code name} must be a valid Prometheus metric name
+     */
+    public void registerGauge(String name, String help, DoubleSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public Histogram getDbBatchSize() {
+        return dbBatchSize;
+    }
+
+    public Histogram getDbCommitSeconds() {
+        return dbCommitSeconds;
+    }
+
+    /**
+     * Appends every pipeline metric in the Prometheus text format
+     */
+    public synchronized void writeTo(StringBuilder out) {
+        long now = System.nanoTime();
+
+        header(out, "smartfactory_readings_total", "Readings ingested per source", "counter");
+        ports.values().forEach(p -> sample(out, "smartfactory_readings_total", "port", p.getPort(), p.getReadings()));
+        header(out, "smartfactory_readings_per_second", "Readings per second per source since the previous scrape", "gauge");
+        ports.values().forEach(p -> sample(out, "smartfactory_readings_per_second", "port", p.getPort(), p.sampleRate(now)));
+        header(out, "smartfactory_checksum_failures_total", "Binary frames rejected by checksum or framing", "counter");
+        ports.values().forEach(p -> sample(out, "smartfactory_checksum_failures_total", "port", p.getPort(), p.getChecksumFailures()));
+        header(out, "smartfactory_parse_failures_total", "Text lines that could not be parsed and NaN or infinite values", "counter");
+        ports.values().forEach(p -> sample(out, "smartfactory_parse_failures_total", "port", p.getPort(), p.getParseFailures()));
+        header(out, "smartfactory_decoder_backlog_bytes", "Bytes received but not yet decoded", "gauge");
+        ports.values().forEach(p -> sample(out, "smartfactory_decoder_backlog_bytes", "port", p.getPort(), p.getBacklog()));
+        header(out, "smartfactory_command_queue_depth", "Actuator commands waiting to be sent, queued or held for their minimum interval", "gauge");
+        ports.values().stream().filter(PortMetrics::hasCommands)
+            .forEach(p -> sample(out, "smartfactory_command_queue_depth", "port", p.getPort(), p.getCommandsQueued()));
+        header(out, "smartfactory_command_in_flight", "Actuator commands sent and awaiting their acknowledgement", "gauge");
+        ports.values().stream().filter(PortMetrics::hasCommands)
+            .forEach(p -> sample(out, "smartfactory_command_in_flight", "port", p.getPort(), p.getCommandsInFlight()));
+
+        dbBatchSize.writeTo(out, "smartfactory_db_batch_size", "Readings per committed database batch");
+        dbCommitSeconds.writeTo(out, "smartfactory_db_commit_seconds", "Time to insert and commit a database batch");
+
+        header(out, "smartfactory_queue_depth", "Items waiting in a pipeline queue", "gauge");
+        queues.forEach((name, q) -> sample(out, "smartfactory_queue_depth", "queue", name, q.depth().getAsInt()));
+        header(out, "smartfactory_queue_dropped_total", "Items dropped because a pipeline queue was full or their batch failed to store", "counter");
+        queues.forEach((name, q) -> sample(out, "smartfactory_queue_dropped_total", "queue", name, q.dropped().getAsLong()));
+
+        gauges.forEach((name, gauge) -> gauge(out, name, gauge.help(), gauge.value().getAsDouble()));
+
+        header(out, "smartfactory_metrics_scrape_seconds", "Time spent rendering these metrics", "gauge");
+        out.append("smartfactory_metrics_scrape_seconds ")
+            .append((System.nanoTime() - now) / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+    }
+
+    /**
+     * Appends an unlabelled gauge with its HELP and TYPE lines
+     */
+    public static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * Appends an unlabelled counter with its HELP and TYPE lines
+     */
+    public static void counter(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String labelValue, double value) {
+        out.append(name).append('{').append(label).append("=\"");
+        for (int i = 0; i < labelValue.length(); i++) {
+            char c = labelValue.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        out.append("\"} ").append(format(value)).append('\n');
+    }
+
+    static String format(double value) {
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.isNaN(value) ? "NaN" : Double.toString(value);
+    }
+}
@@ -0,0 +1,118 @@
+package com.dashtech.smartfactory.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters for one ingest source (a serial port, the load generator, virtual sensors).
+ * Counters are {@link LongAdder}s, so port threads never contend on a shared cache line.
+ */
+public class PortMetrics {
+    private final String port;
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder checksumFailures = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private volatile IntSupplier backlog = () -> 0;
+    // Null for sources that do not send actuator commands
+    private volatile IntSupplier commandsQueued;
+    private volatile IntSupplier commandsInFlight;
+
+    // Previous scrape, for readings per second; only touched under the scrape lock
+    private long lastReadings;
+    private long lastScrapeNanos;
+
+    PortMetrics(String port) {
+        this.port = port;
+        this.lastScrapeNanos = System.nanoTime();
+    }
+
+    public void reading() {
+        readings.increment();
+    }
+
+    public void readings(int count) {
+        readings.add(count);
+    }
+
+    /**
+     * Counts a binary frame rejected by its checksum or framing
+     */
+    public void checksumFailure() {
+        checksumFailures.increment();
+    }
+
+    /**
+     * Counts a text line that could not be parsed or processed, or a decoded value that is NaN or infinite
+     */
+    public void parseFailure() {
+        parseFailures.increment();
+    }
+
+    /**
+     * Sets where the decoder backlog (bytes received but not yet decoded) is read from
+     */
+    public void setBacklog(IntSupplier backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Sets where the depth of the source's actuator command queue and send window is read from,
+     * or clears it with nulls when the command channel closes
+     */
+    public void setCommands(IntSupplier queued, IntSupplier inFlight) {
+        this.commandsQueued = queued;
+        this.commandsInFlight = inFlight;
+    }
+
+    public String getPort() {
+        return port;
+    }
+
+    public long getReadings() {
+        return readings.sum();
+    }
+
+    public long getChecksumFailures() {
+        return checksumFailures.sum();
+    }
+
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    public int getBacklog() {
+        return backlog.getAsInt();
+    }
+
+    public boolean hasCommands() {
+        return commandsQueued != null;
+    }
+
+    /**
+     * Commands waiting to be sent, or 0 when the source has no command channel
+     */
+    public int getCommandsQueued() {
+        IntSupplier queued = commandsQueued;
+        return queued != null ? queued.getAsInt() : 0;
+    }
+
+    /**
+     * Commands sent and awaiting their acknowledgement, or 0 when the source has no command channel
+     */
+    public int getCommandsInFlight() {
+        IntSupplier inFlight = commandsInFlight;
+        return inFlight != null ? inFlight.getAsInt() : 0;
+    }
+
+    /**
+     * Readings per second since the previous call
+     */
+    synchronized double sampleRate(long nowNanos) {
+        long total = readings.sum();
+        double seconds = (nowNanos - lastScrapeNanos) / 1e9;
+        double rate = seconds > 0 ? (total - lastReadings) / seconds : 0;
+        lastReadings = total;
+        lastScrapeNanos = nowNanos;
+        return rate;
+    }
+}
@@ -0,0 +1,114 @@
+package com.dashtech.smartfactory.modbus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Modbus RTU framing: CRC-16, read request and response layout, and bus timing.
+ */
+public final class ModbusRtu {
+    /**
+     * Most registers one read request may ask for
+     */
+    public static final int MAX_READ_REGISTERS = 125;
+    public static final int REQUEST_LENGTH = 8;
+    public static final int EXCEPTION_LENGTH = 5;
+    public static final int EXCEPTION_FLAG = 0x80;
+    public static final int ILLEGAL_DATA_ADDRESS = 0x02;
+
+    // Start, 8 data, parity and stop bits; without parity the second stop bit takes its place
+    private static final int BITS_PER_CHARACTER = 11;
+    // Above 19200 baud the gap is fixed by the specification rather than scaled
+    private static final long FIXED_FRAME_GAP_NANOS = TimeUnit.MICROSECONDS.toNanos(1750);
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+            CRC_TABLE[i] = crc;
+        }
+    }
+
+    private ModbusRtu() {} // Prevent instantiation
+
+    public static int crc(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * Whether the last two bytes of the frame hold the CRC of the rest, low byte first
+     */
+    public static boolean hasValidCrc(byte[] frame, int length) {
+        if (length < 4) {
+            return false;
+        }
+        int crc = crc(frame, 0, length - 2);
+        return (frame[length - 2] & 0xFF) == (crc & 0xFF) && (frame[length - 1] & 0xFF) == (crc >>> 8);
+    }
+
+    /**
+     * Writes the CRC of the first length - 2 bytes into the last two
+     */
+    public static void appendCrc(byte[] frame, int length) {
+        int crc = crc(frame, 0, length - 2);
+        frame[length - 2] = (byte) crc;
+        frame[length - 1] = (byte) (crc >>> 8);
+    }
+
+    /**
+     * Builds a read holding registers (0x03) or read input registers (0x04) request
+     */
+    public static byte[] readRequest(int slaveId, int functionCode, int start, int count) {
+        if (count < 1 || count > MAX_READ_REGISTERS) {
+            throw new IllegalArgumentException("count must be in [1, " + MAX_READ_REGISTERS + "]: " + count);
+        }
+        byte[] frame = new byte[REQUEST_LENGTH];
+        frame[0] = (byte) slaveId;
+        frame[1] = (byte) functionCode;
+        frame[2] = (byte) (start >>> 8);
+        frame[3] = (byte) start;
+        frame[4] = (byte) (count >>> 8);
+        frame[5] = (byte) count;
+        appendCrc(frame, REQUEST_LENGTH);
+        return frame;
+    }
+
+    /**
+     * Length of a normal response to a read of count registers
+     */
+    public static int readResponseLength(int count) {
+        return 5 + 2 * count;
+    }
+
+    /**
+     * Unsigned register at the given index of a read response's data
+     */
+    public static int register(byte[] response, int index) {
+        int at = 3 + 2 * index;
+        return ((response[at] & 0xFF) << 8) | (response[at + 1] & 0xFF);
+    }
+
+    /**
+     * Minimum silence between frames, 3.5 character times
+     */
+    public static long frameGapNanos(int baudRate) {
+        if (baudRate > 19200) {
+            return FIXED_FRAME_GAP_NANOS;
+        }
+        return 35 * BITS_PER_CHARACTER * TimeUnit.SECONDS.toNanos(1) / (10L * baudRate);
+    }
+
+    /**
+     * Time the given number of bytes takes on the wire
+     */
+    public static long transmitNanos(int bytes, int baudRate) {
+        return bytes * BITS_PER_CHARACTER * TimeUnit.SECONDS.toNanos(1) / baudRate;
+    }
+}
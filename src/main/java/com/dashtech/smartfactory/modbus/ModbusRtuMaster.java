@@ -0,0 +1,400 @@
+package com.dashtech.smartfactory.modbus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.ModbusConfig;
+import com.dashtech.smartfactory.model.ModbusPoint;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.serial.JSerialCommChannel;
+import com.dashtech.smartfactory.serial.SerialPortChannel;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.util.EpochClock;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Modbus RTU master that polls register points over an RS-485 port and ingests them as
+ * {@link SensorData} under the source "modbus/&lt;port&gt;".
+ * <p>
+ * Points are merged into the fewest read requests by {@link PollPlanner}, and each request
+ * runs at its own period. RTU allows one outstanding request on the bus, so the scan rate
+ * is bounded by transmission time and turnaround. A single bus thread therefore sends the
+ * next due request, with its frame already built, as soon as the 3.5-character gap after
+ * the previous response has passed, and never waits on a fixed tick. A request that falls
+ * behind its period is sent once when the bus frees up, not repeated to catch up.
+ * <p>
+ * A merged request that a slave rejects with "illegal data address", because it spans
+ * registers the slave does not implement, is split into gap-free requests.
+ */
+public class ModbusRtuMaster implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ModbusRtuMaster.class);
+
+    private final SerialPortChannel channel;
+    private final ModbusConfig config;
+    private final SensorIngestService ingestService;
+    private final String source;
+    private final long frameGapNanos;
+    private final PriorityQueue<PollGroup> schedule = new PriorityQueue<>(Comparator.comparingLong(g -> g.nextDueNanos));
+    private final List<PollGroup> plan = new CopyOnWriteArrayList<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final Object responseLock = new Object();
+    private Thread busThread;
+    private volatile boolean running;
+    private long startedNanos;
+
+    // Response being assembled from the receive thread; guarded by responseLock
+    private final byte[] response = new byte[ModbusRtu.readResponseLength(ModbusRtu.MAX_READ_REGISTERS)];
+    private int responseLength;
+    private int expectedLength;
+    private long responseNanos;
+    // Readings of one response, ingested together; used by the bus thread only
+    private final SensorBatch polled = new SensorBatch();
+
+    public ModbusRtuMaster(SerialPortChannel channel, ModbusConfig config, List<ModbusPoint> points,
+            SensorIngestService ingestService) {
+        this(channel, config, ingestService, PollPlanner.plan(points, config.maxGapRegisters()));
+    }
+
+    private ModbusRtuMaster(SerialPortChannel channel, ModbusConfig config, SensorIngestService ingestService,
+            List<PollGroup> plan) {
+        this.channel = channel;
+        this.config = config;
+        this.ingestService = ingestService;
+        this.source = "modbus/" + channel.getName();
+        this.frameGapNanos = ModbusRtu.frameGapNanos(config.serial().baudRate())
+            + TimeUnit.MILLISECONDS.toNanos(config.turnaroundMillis());
+        this.plan.addAll(plan);
+    }
+
+    /**
+     * Creates a master that runs a plan built by the caller, e.g. {@link PollPlanner#planUncoalesced} for comparison
+     */
+    public static ModbusRtuMaster forPlan(SerialPortChannel channel, ModbusConfig config, List<PollGroup> plan,
+            SensorIngestService ingestService) {
+        return new ModbusRtuMaster(channel, config, ingestService, plan);
+    }
+
+    /**
+     * Opens the port and polls the points in smartfactory.modbus.points when
+     * smartfactory.modbus.port is set, otherwise returns null
+     */
+    public static ModbusRtuMaster startIfConfigured() {
+        ModbusConfig config = ModbusConfig.fromSystemProperties();
+        if (config == null) {
+            return null;
+        }
+        try {
+            if (config.pointsFile() == null || config.pointsFile().isBlank()) {
+                throw new IllegalArgumentException("smartfactory.modbus.points is not set");
+            }
+            List<ModbusPoint> points = readPoints(Paths.get(config.pointsFile()));
+            ModbusRtuMaster master = new ModbusRtuMaster(new JSerialCommChannel(config.serial()), config, points,
+                SensorIngestService.getInstance());
+            return master.start() ? master : null;
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Modbus Master", "Failed to start Modbus master on " + config.serial().portName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a JSON array of points, e.g.
+     * {"sensorId": 10, "type": "TEMPERATURE", "slave": 1, "table": "HOLDING_REGISTERS",
+     * "address": 100, "format": "FLOAT32", "scale": 1.0, "offset": 0.0, "pollMillis": 1000}
+     */
+    public static List<ModbusPoint> readPoints(Path file) throws IOException {
+        JsonNode array = JsonUtil.mapper().readTree(Files.readString(file));
+        if (!array.isArray()) {
+            throw new IllegalArgumentException("Modbus point file must contain a JSON array: " + file);
+        }
+        List<ModbusPoint> points = new ArrayList<>(array.size());
+        for (JsonNode node : array) {
+            points.add(new ModbusPoint(
+                node.path("sensorId").asInt(),
+                SensorType.valueOf(node.path("type").asText("UNKNOWN").toUpperCase()),
+                node.path("slave").asInt(1),
+                ModbusPoint.Table.valueOf(node.path("table").asText("HOLDING_REGISTERS").toUpperCase()),
+                node.path("address").asInt(),
+                ModbusPoint.Format.valueOf(node.path("format").asText("UINT16").toUpperCase()),
+                node.path("scale").asDouble(1.0),
+                node.path("offset").asDouble(0.0),
+                node.path("pollMillis").asLong(1000)
+            ));
+        }
+        return points;
+    }
+
+    /**
+     * Opens the port and starts the bus thread
+     * @return false if the port could not be opened
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        channel.setReceiver(this::onBytes);
+        if (!channel.open()) {
+            LoggingUtil.logError(logger, "Modbus Master", "Failed to open port " + channel.getName(),
+                new Exception("Port open failed"));
+            return false;
+        }
+        startedNanos = System.nanoTime();
+        for (PollGroup group : plan) {
+            group.nextDueNanos = startedNanos;
+            schedule.add(group);
+        }
+        running = true;
+        busThread = new Thread(this::pollLoop, "ModbusMaster-" + channel.getName());
+        busThread.setDaemon(true);
+        busThread.start();
+
+        int pointCount = plan.stream().mapToInt(g -> g.getPoints().size()).sum();
+        LoggingUtil.logStartup(logger, "ModbusRtuMaster", Map.of(
+            "port", channel.getName(),
+            "baudRate", String.valueOf(config.serial().baudRate()),
+            "points", String.valueOf(pointCount),
+            "requests", String.valueOf(plan.size()),
+            "busLoad", String.format("%.2f", PollPlanner.busLoad(plan, config.serial().baudRate(),
+                TimeUnit.MILLISECONDS.toNanos(config.turnaroundMillis())))
+        ));
+        plan.forEach(group -> logger.debug("Poll group: {}", group));
+        return true;
+    }
+
+    private void pollLoop() {
+        long busQuietAt = System.nanoTime();
+        while (running) {
+            PollGroup group = schedule.peek();
+            if (group == null) {
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+                continue;
+            }
+            // Wait for the group to fall due and for the inter-frame gap, whichever is later
+            long sendAt = Math.max(group.nextDueNanos, busQuietAt + frameGapNanos);
+            long wait = sendAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            schedule.poll();
+            long sent = System.nanoTime();
+            try {
+                transact(group);
+            } catch (RuntimeException e) {
+                failures.increment();
+                group.failures++;
+                LoggingUtil.logError(logger, "Modbus Master", "Poll failed for " + group, e);
+            }
+            busQuietAt = System.nanoTime();
+            busyNanos.add(busQuietAt - sent);
+
+            long next = group.nextDueNanos + group.getPeriodNanos();
+            if (next < busQuietAt) {
+                group.overruns++;
+                next = busQuietAt;
+            }
+            group.nextDueNanos = next;
+            if (running && !group.retired) {
+                schedule.add(group);
+            }
+        }
+    }
+
+    private void transact(PollGroup group) {
+        int expected = group.responseLength();
+        synchronized (responseLock) {
+            responseLength = 0;
+            expectedLength = expected;
+        }
+        byte[] request = group.request();
+        requests.increment();
+        group.polls++;
+        if (channel.write(request, 0, request.length) != request.length) {
+            throw new IllegalStateException("Short write to " + channel.getName());
+        }
+
+        int baud = config.serial().baudRate();
+        long deadline = System.nanoTime() + ModbusRtu.transmitNanos(request.length + expected, baud)
+            + TimeUnit.MILLISECONDS.toNanos(config.responseTimeoutMillis());
+        int length;
+        long arrivalNanos;
+        synchronized (responseLock) {
+            long remaining;
+            while (responseLength < expectedLength && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(responseLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            length = responseLength;
+            arrivalNanos = responseNanos;
+            expectedLength = 0;
+        }
+
+        if (length == 0 || length < expected && length != ModbusRtu.EXCEPTION_LENGTH) {
+            timeouts.increment();
+            group.timeouts++;
+            LoggingUtil.logSerialEvent(logger, "MODBUS_TIMEOUT", channel.getName(), "No complete response for {}", group);
+            return;
+        }
+        handleResponse(group, length, arrivalNanos);
+    }
+
+    private void handleResponse(PollGroup group, int length, long arrivalNanos) {
+        if (!ModbusRtu.hasValidCrc(response, length)) {
+            reject(group, "CRC mismatch");
+            return;
+        }
+        if ((response[0] & 0xFF) != group.getSlaveId()) {
+            reject(group, "Response from slave " + (response[0] & 0xFF));
+            return;
+        }
+        int function = response[1] & 0xFF;
+        if (function == (group.getTable().functionCode() | ModbusRtu.EXCEPTION_FLAG)) {
+            int code = response[2] & 0xFF;
+            if (code == ModbusRtu.ILLEGAL_DATA_ADDRESS && group.hasGaps()) {
+                split(group);
+            } else {
+                reject(group, "Exception code " + code);
+            }
+            return;
+        }
+        if (function != group.getTable().functionCode() || (response[2] & 0xFF) != 2 * group.getCount()) {
+            reject(group, "Unexpected response layout");
+            return;
+        }
+
+        long now = EpochClock.nowNanos();
+        try {
+            for (ModbusPoint point : group.getPoints()) {
+                double raw = decode(point, point.address() - group.getStart());
+                polled.add(point.sensorId(), point.type().getCode(), now, raw * point.scale() + point.offset(),
+                    arrivalNanos);
+            }
+            ingestService.ingest(source, polled);
+        } finally {
+            polled.clear();
+        }
+    }
+
+    private double decode(ModbusPoint point, int index) {
+        int high = ModbusRtu.register(response, index);
+        return switch (point.format()) {
+            case INT16 -> (short) high;
+            case UINT16 -> high;
+            case INT32 -> (high << 16) | ModbusRtu.register(response, index + 1);
+            case UINT32 -> ((long) high << 16) | ModbusRtu.register(response, index + 1);
+            case FLOAT32 -> Float.intBitsToFloat((high << 16) | ModbusRtu.register(response, index + 1));
+        };
+    }
+
+    // The slave does not implement every register in the merged range; read only what the points use
+    private void split(PollGroup group) {
+        List<PollGroup> parts = PollPlanner.plan(group.getPoints(), 0);
+        group.retired = true;
+        plan.remove(group);
+        for (PollGroup part : parts) {
+            part.nextDueNanos = System.nanoTime();
+            plan.add(part);
+            schedule.add(part);
+        }
+        logger.warn("Slave {} rejected {} registers from {}; split into {} requests",
+            group.getSlaveId(), group.getCount(), group.getStart(), parts.size());
+    }
+
+    private void reject(PollGroup group, String reason) {
+        failures.increment();
+        group.failures++;
+        LoggingUtil.logSerialEvent(logger, "MODBUS_ERROR", channel.getName(), reason + " for " + group);
+    }
+
+    // Called on the port's receive thread
+    private void onBytes(byte[] buffer, int length) {
+        synchronized (responseLock) {
+            if (expectedLength == 0) {
+                return; // Late or unsolicited bytes
+            }
+            int copy = Math.min(length, response.length - responseLength);
+            System.arraycopy(buffer, 0, response, responseLength, copy);
+            responseLength += copy;
+            if (responseLength >= 2 && (response[1] & ModbusRtu.EXCEPTION_FLAG) != 0) {
+                expectedLength = ModbusRtu.EXCEPTION_LENGTH;
+            }
+            if (responseLength >= expectedLength) {
+                responseNanos = System.nanoTime();
+                responseLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Current requests; merged groups a slave rejected have been replaced by their parts
+     */
+    public List<PollGroup> getPlan() {
+        return List.copyOf(plan);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Fraction of the time since start the bus spent in transactions
+     */
+    public double getBusUtilization() {
+        long elapsed = System.nanoTime() - startedNanos;
+        return elapsed > 0 ? (double) busyNanos.sum() / elapsed : 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(busThread);
+        try {
+            busThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        LoggingUtil.logShutdown(logger, "ModbusRtuMaster", Map.of(
+            "port", channel.getName(),
+            "requests", String.valueOf(getRequests()),
+            "timeouts", String.valueOf(getTimeouts()),
+            "failures", String.valueOf(getFailures())
+        ));
+    }
+}
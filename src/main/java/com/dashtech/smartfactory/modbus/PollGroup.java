@@ -0,0 +1,88 @@
+package com.dashtech.smartfactory.modbus;
+
+import java.util.List;
+
+import com.dashtech.smartfactory.model.ModbusPoint;
+
+/**
+ * One read request in a poll plan: a register range on one slave that covers one or more
+ * points polled at the same period. The request frame is built once.
+ */
+public final class PollGroup {
+    private final int slaveId;
+    private final ModbusPoint.Table table;
+    private final int start;
+    private final int count;
+    private final long periodNanos;
+    private final List<ModbusPoint> points;
+    private final byte[] request;
+
+    // Scheduling and counters, only touched by the bus thread
+    long nextDueNanos;
+    long polls;
+    long timeouts;
+    long failures;
+    long overruns;
+    boolean retired;
+
+    PollGroup(int slaveId, ModbusPoint.Table table, int start, int count, long periodNanos, List<ModbusPoint> points) {
+        this.slaveId = slaveId;
+        this.table = table;
+        this.start = start;
+        this.count = count;
+        this.periodNanos = periodNanos;
+        this.points = List.copyOf(points);
+        this.request = ModbusRtu.readRequest(slaveId, table.functionCode(), start, count);
+    }
+
+    public int getSlaveId() {
+        return slaveId;
+    }
+
+    public ModbusPoint.Table getTable() {
+        return table;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    public List<ModbusPoint> getPoints() {
+        return points;
+    }
+
+    byte[] request() {
+        return request;
+    }
+
+    int responseLength() {
+        return ModbusRtu.readResponseLength(count);
+    }
+
+    /**
+     * Whether the range reads registers that no point uses
+     */
+    boolean hasGaps() {
+        int used = 0;
+        int covered = start;
+        for (ModbusPoint point : points) {
+            used += Math.max(0, point.endAddress() - Math.max(point.address(), covered));
+            covered = Math.max(covered, point.endAddress());
+        }
+        return used < count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("slave %d %s %d+%d every %d ms (%d points)",
+            slaveId, table, start, count, periodNanos / 1_000_000, points.size());
+    }
+}
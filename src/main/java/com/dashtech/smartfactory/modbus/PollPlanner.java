@@ -0,0 +1,99 @@
+package com.dashtech.smartfactory.modbus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.dashtech.smartfactory.model.ModbusPoint;
+
+/**
+ * Turns a set of points into the fewest read requests. Points on the same slave, table
+ * and poll period are sorted by address and merged into one request while the merged
+ * range stays within {@link ModbusRtu#MAX_READ_REGISTERS} and the unused registers
+ * between neighbours do not exceed the gap limit. For a fixed gap limit this greedy
+ * sweep yields the minimum number of requests.
+ */
+public final class PollPlanner {
+
+    private PollPlanner() {} // Prevent instantiation
+
+    private record GroupKey(int slaveId, ModbusPoint.Table table, long pollMillis) {
+    }
+
+    /**
+     * @param maxGapRegisters Unused registers a request may read between two points; 0 merges only adjacent points
+     */
+    public static List<PollGroup> plan(Collection<ModbusPoint> points, int maxGapRegisters) {
+        Map<GroupKey, List<ModbusPoint>> byKey = new TreeMap<>(Comparator
+            .comparingInt(GroupKey::slaveId)
+            .thenComparing(GroupKey::table)
+            .thenComparingLong(GroupKey::pollMillis));
+        for (ModbusPoint point : points) {
+            byKey.computeIfAbsent(new GroupKey(point.slaveId(), point.table(), point.pollMillis()),
+                k -> new ArrayList<>()).add(point);
+        }
+
+        List<PollGroup> plan = new ArrayList<>();
+        byKey.forEach((key, members) -> {
+            members.sort(Comparator.comparingInt(ModbusPoint::address));
+            List<ModbusPoint> current = new ArrayList<>();
+            int start = 0;
+            int end = 0;
+            for (ModbusPoint point : members) {
+                boolean fits = !current.isEmpty()
+                    && point.address() - end <= maxGapRegisters
+                    && Math.max(end, point.endAddress()) - start <= ModbusRtu.MAX_READ_REGISTERS;
+                if (!fits && !current.isEmpty()) {
+                    plan.add(group(key, start, end, current));
+                    current = new ArrayList<>();
+                }
+                if (current.isEmpty()) {
+                    start = point.address();
+                    end = point.endAddress();
+                }
+                current.add(point);
+                end = Math.max(end, point.endAddress());
+            }
+            if (!current.isEmpty()) {
+                plan.add(group(key, start, end, current));
+            }
+        });
+        return plan;
+    }
+
+    /**
+     * One request per point; the baseline a coalesced plan is measured against
+     */
+    public static List<PollGroup> planUncoalesced(Collection<ModbusPoint> points) {
+        List<PollGroup> plan = new ArrayList<>(points.size());
+        for (ModbusPoint point : points) {
+            plan.add(new PollGroup(point.slaveId(), point.table(), point.address(), point.format().registers(),
+                TimeUnit.MILLISECONDS.toNanos(point.pollMillis()), List.of(point)));
+        }
+        return plan;
+    }
+
+    /**
+     * Bus time per second the plan needs at the given baud rate, assuming slaves answer
+     * immediately; above 1.0 the bus cannot keep up with the requested periods
+     */
+    public static double busLoad(List<PollGroup> plan, int baudRate, long turnaroundNanos) {
+        double load = 0;
+        long gap = ModbusRtu.frameGapNanos(baudRate);
+        for (PollGroup group : plan) {
+            long transaction = ModbusRtu.transmitNanos(ModbusRtu.REQUEST_LENGTH + group.responseLength(), baudRate)
+                + 2 * gap + turnaroundNanos;
+            load += (double) transaction / group.getPeriodNanos();
+        }
+        return load;
+    }
+
+    private static PollGroup group(GroupKey key, int start, int end, List<ModbusPoint> points) {
+        return new PollGroup(key.slaveId(), key.table(), start, end - start,
+            TimeUnit.MILLISECONDS.toNanos(key.pollMillis()), points);
+    }
+}
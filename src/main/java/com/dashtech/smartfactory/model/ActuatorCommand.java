@@ -13,9 +13,10 @@ public record ActuatorCommand(
     String command,
     Instant timestamp
 ) {
-    private static final byte PACKET_START = (byte) 0xAA;
-    private static final byte PACKET_END = (byte) 0x55;
+    static final byte PACKET_START = (byte) 0xAA;
+    static final byte PACKET_END = (byte) 0x55;
     private static final byte COMMAND_PACKET_TYPE = 0x02;
+    public static final int PACKET_SIZE = 6;
     
     /**
      * Factory method to create a new ActuatorCommand instance with current timestamp
@@ -25,18 +26,25 @@ public record ActuatorCommand(
     }
     
     /**
-     * Converts the command to its binary representation
+     * Command byte sent on the wire and echoed in the device's acknowledgement
      * @return 1 for "ON", 0 for "OFF"
      */
-    public byte[] toBinary() {
-        byte commandValue = switch (command) {
+    public byte commandCode() {
+        return switch (command) {
             case "ON" -> 0x01;
             case "OFF" -> 0x00;
             default -> throw new IllegalArgumentException("Invalid command: " + command);
         };
+    }
+    
+    /**
+     * Converts the command to its binary representation
+     */
+    public byte[] toBinary() {
+        byte commandValue = commandCode();
         
         // Packet format: START(1) + TYPE(1) + ACTUATOR_ID(1) + COMMAND(1) + CHECKSUM(1) + END(1)
-        byte[] packet = new byte[6];
+        byte[] packet = new byte[PACKET_SIZE];
         packet[0] = PACKET_START;
         packet[1] = COMMAND_PACKET_TYPE;
         packet[2] = (byte) actuatorId;
@@ -47,7 +55,7 @@ public record ActuatorCommand(
         return packet;
     }
     
-    private static byte calculateChecksum(byte[] data, int start, int length) {
+    static byte calculateChecksum(byte[] data, int start, int length) {
         byte sum = 0;
         for (int i = start; i < start + length; i++) {
             sum ^= data[i]; // XOR checksum
@@ -0,0 +1,48 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing an alarm being raised or cleared.
+ * @param ruleId The rule that changed state
+ * @param sensorId The sensor the rule was evaluated for
+ * @param sensorType The type of that sensor
+ * @param state RAISED or CLEARED
+ * @param severity Severity of the rule
+ * @param value Reading (or rate, for rate-of-change rules) that caused the transition
+ * @param limit Limit of the rule
+ * @param message Human readable description
+ * @param timestamp Time of the reading that caused the transition
+ */
+public record AlarmEvent(
+    String ruleId,
+    int sensorId,
+    String sensorType,
+    State state,
+    AlarmSeverity severity,
+    double value,
+    double limit,
+    String message,
+    Instant timestamp
+) {
+    public enum State {
+        RAISED,
+        CLEARED
+    }
+
+    /**
+     * Factory method describing a transition of the given rule
+     */
+    public static AlarmEvent of(AlarmRule rule, int sensorId, String sensorType, State state, double value,
+            long epochMillis) {
+        String condition = switch (rule.kind()) {
+            case HIGH -> "above";
+            case LOW -> "below";
+            case RATE_OF_CHANGE -> "changing faster than";
+        };
+        String message = String.format("%s sensor %d %s %s %.2f (value %.2f)",
+            sensorType, sensorId, state == State.RAISED ? "is" : "no longer", condition, rule.limit(), value);
+        return new AlarmEvent(rule.id(), sensorId, sensorType, state, rule.severity(), value, rule.limit(),
+            message, Instant.ofEpochMilli(epochMillis));
+    }
+}
@@ -0,0 +1,63 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing an alarm rule, bound either to one sensor or to every sensor of a type.
+ * @param id Unique rule identifier
+ * @param sensorId Sensor the rule applies to, or null when bound by type
+ * @param sensorType Sensor type name the rule applies to (e.g., "Temperature"), or null when bound to a sensor
+ * @param kind Condition checked against each reading
+ * @param limit Threshold; for RATE_OF_CHANGE in units per second
+ * @param hysteresis Distance back inside the limit a value must reach before an active alarm clears
+ * @param deadband Minimum change from the last evaluated value before a reading is evaluated again
+ * @param durationMillis How long the condition must hold before the alarm is raised (0 raises immediately)
+ * @param severity Severity reported with raised and cleared events
+ */
+public record AlarmRule(
+    String id,
+    Integer sensorId,
+    String sensorType,
+    Kind kind,
+    double limit,
+    double hysteresis,
+    double deadband,
+    long durationMillis,
+    AlarmSeverity severity
+) {
+    public enum Kind {
+        HIGH,
+        LOW,
+        RATE_OF_CHANGE
+    }
+
+    public AlarmRule {
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("Alarm rule id is required");
+        }
+        if ((sensorId == null) == (sensorType == null)) {
+            throw new IllegalArgumentException("Alarm rule " + id + " must set exactly one of sensorId and sensorType");
+        }
+        if (kind == null) {
+            throw new IllegalArgumentException("Alarm rule " + id + " has no kind");
+        }
+        if (hysteresis < 0 || deadband < 0 || durationMillis < 0) {
+            throw new IllegalArgumentException("Alarm rule " + id + " has a negative hysteresis, deadband or duration");
+        }
+        if (severity == null) {
+            severity = AlarmSeverity.WARNING;
+        }
+    }
+
+    /**
+     * Factory method for an immediate limit alarm on one sensor
+     */
+    public static AlarmRule forSensor(String id, int sensorId, Kind kind, double limit, double hysteresis) {
+        return new AlarmRule(id, sensorId, null, kind, limit, hysteresis, 0.0, 0, AlarmSeverity.WARNING);
+    }
+
+    /**
+     * Factory method for an immediate limit alarm on every sensor of a type
+     */
+    public static AlarmRule forType(String id, String sensorType, Kind kind, double limit, double hysteresis) {
+        return new AlarmRule(id, null, sensorType, kind, limit, hysteresis, 0.0, 0, AlarmSeverity.WARNING);
+    }
+}
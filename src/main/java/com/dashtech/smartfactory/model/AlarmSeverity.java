@@ -0,0 +1,7 @@
+package com.dashtech.smartfactory.model;
+
+public enum AlarmSeverity {
+    INFO,
+    WARNING,
+    CRITICAL
+}
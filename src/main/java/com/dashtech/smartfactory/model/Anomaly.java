@@ -0,0 +1,33 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing a reading flagged by the online anomaly detector.
+ * @param sensorId The sensor
+ * @param type The sensor type name
+ * @param kinds {@link AnomalyKind} bit flags
+ * @param value The flagged reading
+ * @param expected Rolling mean before this reading
+ * @param stdDev Rolling standard deviation before this reading
+ * @param zScore Deviation of the reading from the rolling mean in standard deviations
+ * @param cusum Larger of the upward and downward CUSUM statistics, in standard deviations
+ * @param rateScore Deviation of the rate of change from its rolling mean in standard deviations
+ * @param timestamp Time of the reading
+ */
+public record Anomaly(
+    int sensorId,
+    String type,
+    int kinds,
+    double value,
+    double expected,
+    double stdDev,
+    double zScore,
+    double cusum,
+    double rateScore,
+    Instant timestamp
+) {
+    public String describeKinds() {
+        return AnomalyKind.describe(kinds);
+    }
+}
@@ -0,0 +1,48 @@
+package com.dashtech.smartfactory.model;
+
+import java.util.StringJoiner;
+
+/**
+ * Kinds of anomaly flagged by the online detector, combinable as bit flags.
+ */
+public enum AnomalyKind {
+    /** Reading far from the rolling mean in units of rolling standard deviation */
+    Z_SCORE,
+    /** CUSUM detected a sustained upward shift */
+    DRIFT_UP,
+    /** CUSUM detected a sustained downward shift */
+    DRIFT_DOWN,
+    /** Change since the previous reading far outside the usual rate of change */
+    SPIKE;
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public boolean isSet(int flags) {
+        return (flags & bit()) != 0;
+    }
+
+    /**
+     * Returns the names of the kinds set in flags, comma separated
+     */
+    public static String describe(int flags) {
+        StringJoiner names = new StringJoiner(",");
+        for (AnomalyKind kind : values()) {
+            if (kind.isSet(flags)) {
+                names.add(kind.name());
+            }
+        }
+        return names.toString();
+    }
+
+    public static int parse(String names) {
+        int flags = 0;
+        if (names != null && !names.isBlank()) {
+            for (String name : names.split(",")) {
+                flags |= valueOf(name.trim()).bit();
+            }
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,55 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing how actuator commands are paced on one port.
+ * @param window Commands that may await an acknowledgement at once; 1 is stop-and-wait
+ * @param queueCapacity Commands that may wait for room in the window before submissions are rejected
+ * @param ackTimeoutMillis Time to wait for an acknowledgement before retransmitting
+ * @param maxAttempts Transmissions per command, including the first
+ * @param groupFrames Send groups as one multi-command frame; false concatenates single command packets
+ * @param minIntervalMillis Shortest time between two commands to the same actuator; 0 sends them as they come
+ */
+public record CommandChannelConfig(
+    int window,
+    int queueCapacity,
+    long ackTimeoutMillis,
+    int maxAttempts,
+    boolean groupFrames,
+    long minIntervalMillis
+) {
+    public static final int DEFAULT_WINDOW = 8;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_ACK_TIMEOUT_MILLIS = 500;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 50;
+
+    public CommandChannelConfig {
+        if (window < 1 || queueCapacity < 0 || ackTimeoutMillis < 1 || maxAttempts < 1 || minIntervalMillis < 0) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid command channel settings: window=%d, queueCapacity=%d, ackTimeoutMillis=%d, "
+                    + "maxAttempts=%d, minIntervalMillis=%d",
+                window, queueCapacity, ackTimeoutMillis, maxAttempts, minIntervalMillis));
+        }
+    }
+
+    /**
+     * Factory method to create a config with the default pacing
+     */
+    public static CommandChannelConfig defaultConfig() {
+        return new CommandChannelConfig(DEFAULT_WINDOW, DEFAULT_QUEUE_CAPACITY, DEFAULT_ACK_TIMEOUT_MILLIS,
+            DEFAULT_MAX_ATTEMPTS, false, DEFAULT_MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Reads the smartfactory.command.* system properties, falling back to the defaults
+     */
+    public static CommandChannelConfig fromSystemProperties() {
+        return new CommandChannelConfig(
+            Integer.getInteger("smartfactory.command.window", DEFAULT_WINDOW),
+            Integer.getInteger("smartfactory.command.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+            Long.getLong("smartfactory.command.ackTimeoutMillis", DEFAULT_ACK_TIMEOUT_MILLIS),
+            Integer.getInteger("smartfactory.command.maxAttempts", DEFAULT_MAX_ATTEMPTS),
+            Boolean.getBoolean("smartfactory.command.groupFrames"),
+            Long.getLong("smartfactory.command.minIntervalMillis", DEFAULT_MIN_INTERVAL_MILLIS));
+    }
+}
@@ -0,0 +1,83 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Record representing a scene: commands to several actuators that are sent together,
+ * such as a line changeover.
+ * @param name The name the operator gave the scene, used in logs
+ * @param commands One command per actuator, in the order they are sent
+ * @param timestamp The time when the scene was issued
+ */
+public record CommandGroup(
+    String name,
+    List<ActuatorCommand> commands,
+    Instant timestamp
+) {
+    private static final byte GROUP_PACKET_TYPE = 0x03;
+    // START + TYPE + COUNT + CHECKSUM + END around the actuator/command pairs
+    private static final int GROUP_FRAME_OVERHEAD = 5;
+    public static final int MAX_COMMANDS = 255;
+
+    public CommandGroup {
+        commands = List.copyOf(commands);
+        if (commands.isEmpty() || commands.size() > MAX_COMMANDS) {
+            throw new IllegalArgumentException(String.format(
+                "A command group needs 1 to %d commands, got %d", MAX_COMMANDS, commands.size()));
+        }
+        // Acks carry only actuator and command, so one scene may address each actuator once
+        Set<Integer> actuators = new HashSet<>();
+        for (ActuatorCommand command : commands) {
+            command.commandCode(); // Rejects anything but ON and OFF before a byte is sent
+            if (!actuators.add(command.actuatorId())) {
+                throw new IllegalArgumentException("Actuator " + command.actuatorId() + " appears twice in group " + name);
+            }
+        }
+    }
+
+    /**
+     * Factory method to create a new CommandGroup instance with current timestamp
+     */
+    public static CommandGroup create(String name, List<ActuatorCommand> commands) {
+        return new CommandGroup(name, commands, Instant.now());
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Encodes the whole group as one multi-command frame for devices that support it
+     * Packet format: START(1) + TYPE(1) + COUNT(1) + (ACTUATOR_ID(1) + COMMAND(1)) * COUNT + CHECKSUM(1) + END(1)
+     */
+    public byte[] toFrame() {
+        byte[] frame = new byte[GROUP_FRAME_OVERHEAD + 2 * commands.size()];
+        frame[0] = ActuatorCommand.PACKET_START;
+        frame[1] = GROUP_PACKET_TYPE;
+        frame[2] = (byte) commands.size();
+        int position = 3;
+        for (ActuatorCommand command : commands) {
+            frame[position++] = (byte) command.actuatorId();
+            frame[position++] = command.commandCode();
+        }
+        frame[position] = ActuatorCommand.calculateChecksum(frame, 1, position - 1); // Checksum over TYPE to last COMMAND
+        frame[position + 1] = ActuatorCommand.PACKET_END;
+        return frame;
+    }
+
+    /**
+     * Concatenates the individual command packets, for devices that only understand single
+     * commands; written at once they still leave back to back
+     */
+    public byte[] toCoalescedPackets() {
+        byte[] packets = new byte[ActuatorCommand.PACKET_SIZE * commands.size()];
+        for (int i = 0; i < commands.size(); i++) {
+            System.arraycopy(commands.get(i).toBinary(), 0, packets, i * ActuatorCommand.PACKET_SIZE,
+                ActuatorCommand.PACKET_SIZE);
+        }
+        return packets;
+    }
+}
@@ -0,0 +1,22 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing the command round-trip latency observed for one actuator.
+ * Only commands acknowledged on their first transmission are sampled, since an ack
+ * after a retransmit cannot be attributed to either copy.
+ * @param actuatorId The actuator the samples were taken for
+ * @param samples Number of round trips measured
+ * @param lastMillis The most recent round trip
+ * @param smoothedMillis Exponentially weighted average of the round trips
+ * @param minMillis The fastest round trip
+ * @param maxMillis The slowest round trip
+ */
+public record CommandLatency(
+    int actuatorId,
+    long samples,
+    double lastMillis,
+    double smoothedMillis,
+    double minMillis,
+    double maxMillis
+) {
+}
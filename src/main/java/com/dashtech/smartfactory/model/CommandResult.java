@@ -1,4 +1,28 @@
 package com.dashtech.smartfactory.model;
 
-public class CommandResult {
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record representing an actuator command the device has acknowledged.
+ * @param sequence The sequence number the command was tagged with when submitted
+ * @param command The command that was confirmed
+ * @param attempts How many times the command was transmitted, 1 when no retransmit was needed
+ * @param roundTripNanos Time from the last transmission to the acknowledgement
+ */
+public record CommandResult(
+    long sequence,
+    ActuatorCommand command,
+    int attempts,
+    long roundTripNanos
+) {
+    /**
+     * Factory method to create a new CommandResult instance
+     */
+    public static CommandResult acknowledged(long sequence, ActuatorCommand command, int attempts, long roundTripNanos) {
+        return new CommandResult(sequence, command, attempts, roundTripNanos);
+    }
+
+    public double roundTripMillis() {
+        return roundTripNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
 }
@@ -25,17 +25,22 @@ public record DatabaseConfig(
          * WRITE_DELAY=0            : Ensures all writes are immediate (disable writer thread)
          * TRACE_LEVEL_FILE=0       : Minimizes shutdown logging in file
          * MODE=MySQL               : Use MySQL compatibility mode for better identifier handling
+         * CACHE_SIZE               : Page cache in KB, only when smartfactory.db.cacheKb is set
          */
         String url = String.format(
             "jdbc:h2:file:%s;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;WRITE_DELAY=0;TRACE_LEVEL_FILE=0;MODE=MySQL",
             dbPath.toAbsolutePath().toString()
         );
+        Integer cacheKb = Integer.getInteger("smartfactory.db.cacheKb");
+        if (cacheKb != null) {
+            url += ";CACHE_SIZE=" + cacheKb;
+        }
         
         return new DatabaseConfig(
             url,
             "sa",
             "",
-            DEFAULT_MAX_POOL_SIZE,
+            Integer.getInteger("smartfactory.db.maxPoolSize", DEFAULT_MAX_POOL_SIZE),
             DEFAULT_MIN_POOL_SIZE
         );
     }
@@ -46,4 +51,12 @@ public record DatabaseConfig(
     public static DatabaseConfig createInMemory() {
         return new DatabaseConfig("jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1", "sa", "", 5, 1);
     }
+    
+    /**
+     * Creates a private in-memory H2 database configuration. The database is
+     * discarded as soon as its last connection is closed.
+     */
+    public static DatabaseConfig createInMemory(String name) {
+        return new DatabaseConfig("jdbc:h2:mem:" + name, "sa", "", 5, 1);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing report-by-exception settings for one sensor, for every sensor of a type,
+ * or, with neither set, the default for all sensors.
+ * @param sensorId Sensor the settings apply to, or null
+ * @param sensorType Sensor type name the settings apply to, or null
+ * @param mode DEADBAND compares each reading with the last reported one; SWINGING_DOOR reports
+ *             only the points needed to reconstruct the signal within the deviation
+ * @param absolute Absolute deadband (or swinging-door deviation) in sensor units
+ * @param percent Deadband (or deviation) as a percentage of the last reported value; the larger of
+ *                the absolute and percent bands applies
+ * @param maxIntervalMillis Heartbeat: a reading is always reported when this long has passed since
+ *                          the last report (0 disables the heartbeat)
+ */
+public record DeadbandConfig(
+    Integer sensorId,
+    String sensorType,
+    Mode mode,
+    double absolute,
+    double percent,
+    long maxIntervalMillis
+) {
+    public enum Mode {
+        DEADBAND,
+        SWINGING_DOOR
+    }
+
+    public DeadbandConfig {
+        if (sensorId != null && sensorType != null) {
+            throw new IllegalArgumentException("Deadband config must not set both sensorId and sensorType");
+        }
+        if (absolute < 0 || percent < 0 || maxIntervalMillis < 0) {
+            throw new IllegalArgumentException("Deadband, percent and max interval must not be negative");
+        }
+        if (mode == null) {
+            mode = Mode.DEADBAND;
+        }
+    }
+
+    /**
+     * Factory method reading the default settings from smartfactory.rbe.* system properties.
+     * Without any properties only repeated identical readings are suppressed, with a one minute heartbeat.
+     */
+    public static DeadbandConfig defaultsFromSystemProperties() {
+        return new DeadbandConfig(
+            null,
+            null,
+            Mode.valueOf(System.getProperty("smartfactory.rbe.mode", Mode.DEADBAND.name()).toUpperCase()),
+            Double.parseDouble(System.getProperty("smartfactory.rbe.absolute", "0")),
+            Double.parseDouble(System.getProperty("smartfactory.rbe.percent", "0")),
+            Long.getLong("smartfactory.rbe.maxIntervalMillis", 60_000L)
+        );
+    }
+
+    /**
+     * Returns the band for a reference value: the larger of the absolute and percent bands
+     */
+    public double bandFor(double reference) {
+        return Math.max(absolute, Math.abs(reference) * percent / 100.0);
+    }
+}
@@ -0,0 +1,20 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing the most recent reading of a sensor.
+ * @param sensorId The unique identifier of the sensor
+ * @param type The type of sensor (e.g., "Temperature", "Pressure")
+ * @param value The last measured value
+ * @param timestamp The time when the last measurement was taken
+ * @param quality Quality flags of the last measurement, see {@link QualityFlags}
+ */
+public record LatestValue(
+    int sensorId,
+    String type,
+    double value,
+    Instant timestamp,
+    int quality
+) {
+}
@@ -0,0 +1,96 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record describing a synthetic load generated by the virtual serial service.
+ * @param portName Name of the in-process port the load is injected into
+ * @param sensorCount Number of simulated sensors, numbered from 1
+ * @param targetRate Target readings per second across all sensors, above 0 and at most {@link #MAX_RATE}
+ * @param binaryRatio Fraction of readings sent as binary SerialPacket frames; the rest are text lines
+ * @param waveform Signal shape used by every sensor, or MIXED to vary it per sensor
+ * @param noise Gaussian noise as a fraction of each sensor's amplitude
+ * @param jitter Random variation of the emission interval, as a fraction of it (0 to 1)
+ * @param burstProbability Chance per second of entering a burst
+ * @param burstMultiplier Rate multiplier while a burst lasts
+ * @param burstMillis Duration of a burst in milliseconds
+ * @param seed Random seed, so a profile always produces the same signals
+ */
+public record LoadProfile(
+    String portName,
+    int sensorCount,
+    double targetRate,
+    double binaryRatio,
+    Waveform waveform,
+    double noise,
+    double jitter,
+    double burstProbability,
+    double burstMultiplier,
+    long burstMillis,
+    long seed
+) {
+    public static final double MAX_RATE = 1_000_000;
+
+    public enum Waveform {
+        SINE,
+        RAMP,
+        STEP,
+        RANDOM_WALK,
+        MIXED
+    }
+
+    public LoadProfile {
+        if (sensorCount <= 0) {
+            throw new IllegalArgumentException("sensorCount must be positive: " + sensorCount);
+        }
+        if (targetRate <= 0 || targetRate > MAX_RATE) {
+            throw new IllegalArgumentException("targetRate must be in (0, 1000000]: " + targetRate);
+        }
+        if (binaryRatio < 0 || binaryRatio > 1) {
+            throw new IllegalArgumentException("binaryRatio must be in [0, 1]: " + binaryRatio);
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be in [0, 1]: " + jitter);
+        }
+        if (burstMultiplier < 1) {
+            throw new IllegalArgumentException("burstMultiplier must be at least 1: " + burstMultiplier);
+        }
+    }
+
+    /**
+     * Factory method matching the original mock: three sensors, one reading every two seconds
+     */
+    public static LoadProfile defaultProfile() {
+        return new LoadProfile("LOADGEN", 3, 0.5, 0.5, Waveform.MIXED, 0.05, 0.1, 0.0, 1.0, 0, 42L);
+    }
+
+    /**
+     * Factory method for a steady load with the given sensor count and rate
+     */
+    public static LoadProfile steady(int sensorCount, double targetRate) {
+        return new LoadProfile("LOADGEN", sensorCount, targetRate, 0.5, Waveform.MIXED, 0.05, 0.1, 0.0, 1.0, 0, 42L);
+    }
+
+    /**
+     * Factory method reading smartfactory.loadgen.* system properties, falling back to the default profile
+     */
+    public static LoadProfile fromSystemProperties() {
+        LoadProfile d = defaultProfile();
+        return new LoadProfile(
+            System.getProperty("smartfactory.loadgen.port", d.portName()),
+            Integer.getInteger("smartfactory.loadgen.sensors", d.sensorCount()),
+            doubleProperty("smartfactory.loadgen.rate", d.targetRate()),
+            doubleProperty("smartfactory.loadgen.binaryRatio", d.binaryRatio()),
+            Waveform.valueOf(System.getProperty("smartfactory.loadgen.waveform", d.waveform().name())),
+            doubleProperty("smartfactory.loadgen.noise", d.noise()),
+            doubleProperty("smartfactory.loadgen.jitter", d.jitter()),
+            doubleProperty("smartfactory.loadgen.burstProbability", d.burstProbability()),
+            doubleProperty("smartfactory.loadgen.burstMultiplier", d.burstMultiplier()),
+            Long.getLong("smartfactory.loadgen.burstMillis", d.burstMillis()),
+            Long.getLong("smartfactory.loadgen.seed", d.seed())
+        );
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
@@ -0,0 +1,36 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing load generator progress at a point in time.
+ * @param readingsEmitted Total readings written to the port
+ * @param binaryFrames Readings written as binary SerialPacket frames
+ * @param textLines Readings written as text lines
+ * @param bytesEmitted Total bytes written to the port
+ * @param bursts Number of bursts started
+ * @param elapsedSeconds Time since the generator was started
+ * @param achievedRate Average readings per second since start
+ * @param timestamp Time when these statistics were captured
+ */
+public record LoadStats(
+    long readingsEmitted,
+    long binaryFrames,
+    long textLines,
+    long bytesEmitted,
+    long bursts,
+    double elapsedSeconds,
+    double achievedRate,
+    Instant timestamp
+) {
+    /**
+     * Returns a formatted string representation of the statistics
+     */
+    @Override
+    public String toString() {
+        return String.format(
+            "Load Stats [Readings: %d, Binary: %d, Text: %d, Bytes: %d, Bursts: %d, Elapsed: %.1fs, Rate: %.0f/s]",
+            readingsEmitted, binaryFrames, textLines, bytesEmitted, bursts, elapsedSeconds, achievedRate
+        );
+    }
+}
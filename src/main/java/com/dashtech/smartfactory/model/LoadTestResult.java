@@ -0,0 +1,66 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing the outcome of an in-app load test.
+ * @param sensorCount Number of simulated sensors
+ * @param targetRate Requested readings per second
+ * @param injectSeconds Time readings were injected for
+ * @param elapsedSeconds Time from the first injected reading until the last one was persisted
+ * @param readingsEmitted Readings written to the loopback port
+ * @param readingsIngested Readings decoded and dispatched
+ * @param readingsReported Readings report-by-exception passed on to storage and broadcast, all of
+ *        them when it is disabled
+ * @param decodeFailures Frames or lines the decoder rejected
+ * @param readingsPersisted Readings committed to the database
+ * @param persistDropped Readings dropped because the writer queue was full or their batch failed to store
+ * @param readingsBroadcast WebSocket frames delivered to the broadcast sink
+ * @param broadcastDropped WebSocket frames dropped because the outbox was full
+ * @param ingestRate Readings ingested per second while injecting
+ * @param sustainedThroughput Readings persisted per second over the whole run
+ * @param persistLatency Latency from byte arrival to database commit
+ * @param broadcastLatency Latency from byte arrival to delivery of the WebSocket frame
+ * @param gcPauses Number of stop-the-world collections during injection
+ * @param gcPauseMillis Total stop-the-world time during injection
+ * @param gcMaxPauseMillis Longest single pause during injection
+ * @param allocatedBytes Bytes allocated by the whole process during injection
+ * @param allocationRate Allocated bytes per second during injection
+ * @param completedAt Time when the test finished
+ */
+public record LoadTestResult(
+    int sensorCount,
+    double targetRate,
+    double injectSeconds,
+    double elapsedSeconds,
+    long readingsEmitted,
+    long readingsIngested,
+    long readingsReported,
+    long decodeFailures,
+    long readingsPersisted,
+    long persistDropped,
+    long readingsBroadcast,
+    long broadcastDropped,
+    double ingestRate,
+    double sustainedThroughput,
+    Latency persistLatency,
+    Latency broadcastLatency,
+    long gcPauses,
+    double gcPauseMillis,
+    double gcMaxPauseMillis,
+    long allocatedBytes,
+    double allocationRate,
+    Instant completedAt
+) {
+    /**
+     * Record representing a latency distribution in milliseconds.
+     * @param count Number of samples
+     * @param p50 Median
+     * @param p95 95th percentile
+     * @param p99 99th percentile
+     * @param p999 99.9th percentile
+     * @param max Largest sample
+     */
+    public record Latency(long count, double p50, double p95, double p99, double p999, double max) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing a Modbus RTU master's bus settings.
+ * @param serial Port, baud rate and framing; Modbus RTU defaults to 8 data bits, even parity, 1 stop bit
+ * @param responseTimeoutMillis Time a slave has to start answering, on top of the frames' transmission time
+ * @param turnaroundMillis Extra silence after each response before the next request, for slow RS-485 converters
+ * @param maxGapRegisters Unused registers a merged read may span between two points
+ * @param pointsFile JSON file listing the points to poll
+ */
+public record ModbusConfig(
+    SerialConfig serial,
+    long responseTimeoutMillis,
+    long turnaroundMillis,
+    int maxGapRegisters,
+    String pointsFile
+) {
+    /**
+     * Gap that costs about as much bus time as a separate request: 8 request bytes, 5 bytes
+     * of response overhead and two inter-frame gaps, at 2 bytes per register
+     */
+    public static final int DEFAULT_MAX_GAP = 10;
+
+    public ModbusConfig {
+        if (responseTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("responseTimeoutMillis must be positive: " + responseTimeoutMillis);
+        }
+        if (turnaroundMillis < 0) {
+            throw new IllegalArgumentException("turnaroundMillis must not be negative: " + turnaroundMillis);
+        }
+    }
+
+    /**
+     * Factory method with Modbus RTU framing and default timing for the given port
+     */
+    public static ModbusConfig defaultConfig(String portName, int baudRate) {
+        return new ModbusConfig(new SerialConfig(portName, baudRate, 8, 1, 2), 100, 0, DEFAULT_MAX_GAP, null);
+    }
+
+    /**
+     * Factory method reading smartfactory.modbus.* system properties, or null when no port is configured
+     */
+    public static ModbusConfig fromSystemProperties() {
+        String port = System.getProperty("smartfactory.modbus.port");
+        if (port == null || port.isBlank()) {
+            return null;
+        }
+        return new ModbusConfig(
+            new SerialConfig(
+                port,
+                Integer.getInteger("smartfactory.modbus.baudrate", 9600),
+                8,
+                Integer.getInteger("smartfactory.modbus.stopBits", 1),
+                Integer.getInteger("smartfactory.modbus.parity", 2)
+            ),
+            Long.getLong("smartfactory.modbus.responseTimeoutMillis", 100),
+            Long.getLong("smartfactory.modbus.turnaroundMillis", 0),
+            Integer.getInteger("smartfactory.modbus.maxGap", DEFAULT_MAX_GAP),
+            System.getProperty("smartfactory.modbus.points")
+        );
+    }
+}
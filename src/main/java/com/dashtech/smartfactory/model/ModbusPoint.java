@@ -0,0 +1,87 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing one Modbus register value mapped to a sensor.
+ * @param sensorId Sensor id the value is ingested under
+ * @param type Sensor type reported with the value
+ * @param slaveId Modbus slave address (1 to 247)
+ * @param table Register table the value is read from
+ * @param address Address of the value's first register (0 to 65535)
+ * @param format How the register or registers encode the value; 32-bit values are high word first
+ * @param scale Factor applied to the raw value
+ * @param offset Added to the raw value after scaling
+ * @param pollMillis Poll period
+ */
+public record ModbusPoint(
+    int sensorId,
+    SensorType type,
+    int slaveId,
+    Table table,
+    int address,
+    Format format,
+    double scale,
+    double offset,
+    long pollMillis
+) {
+    public enum Table {
+        HOLDING_REGISTERS(0x03),
+        INPUT_REGISTERS(0x04);
+
+        private final int functionCode;
+
+        Table(int functionCode) {
+            this.functionCode = functionCode;
+        }
+
+        /**
+         * Read function code for this table
+         */
+        public int functionCode() {
+            return functionCode;
+        }
+    }
+
+    public enum Format {
+        INT16(1),
+        UINT16(1),
+        INT32(2),
+        UINT32(2),
+        FLOAT32(2);
+
+        private final int registers;
+
+        Format(int registers) {
+            this.registers = registers;
+        }
+
+        public int registers() {
+            return registers;
+        }
+    }
+
+    public ModbusPoint {
+        if (slaveId < 1 || slaveId > 247) {
+            throw new IllegalArgumentException("slaveId must be in [1, 247]: " + slaveId);
+        }
+        if (address < 0 || address + format.registers() > 0x10000) {
+            throw new IllegalArgumentException("address out of range: " + address);
+        }
+        if (pollMillis <= 0) {
+            throw new IllegalArgumentException("pollMillis must be positive: " + pollMillis);
+        }
+    }
+
+    /**
+     * Factory method for an unscaled holding register value
+     */
+    public static ModbusPoint holding(int sensorId, SensorType type, int slaveId, int address, Format format, long pollMillis) {
+        return new ModbusPoint(sensorId, type, slaveId, Table.HOLDING_REGISTERS, address, format, 1.0, 0.0, pollMillis);
+    }
+
+    /**
+     * First register address after this value
+     */
+    public int endAddress() {
+        return address + format.registers();
+    }
+}
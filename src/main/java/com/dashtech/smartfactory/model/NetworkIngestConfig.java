@@ -0,0 +1,61 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing the network ingest listener's configuration.
+ * @param bindAddress Local address to listen on; 0.0.0.0 for all interfaces
+ * @param tcpPort TCP port for serial device servers and Ethernet sensors; 0 picks a free port, negative disables TCP
+ * @param udpPort UDP port for datagram sensors; 0 picks a free port, negative disables UDP
+ * @param ioThreads Selector threads sharing the connections
+ * @param maxConnections Open TCP connections (and tracked UDP senders) above which new ones are refused
+ * @param idleTimeoutSeconds Seconds without data after which a TCP connection is closed; 0 never closes
+ * @param readBufferBytes Size of each selector thread's direct read buffer
+ */
+public record NetworkIngestConfig(
+    String bindAddress,
+    int tcpPort,
+    int udpPort,
+    int ioThreads,
+    int maxConnections,
+    int idleTimeoutSeconds,
+    int readBufferBytes
+) {
+    public static final int DISABLED = -1;
+
+    public NetworkIngestConfig {
+        if (ioThreads <= 0) {
+            throw new IllegalArgumentException("ioThreads must be positive: " + ioThreads);
+        }
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+        }
+        if (readBufferBytes < 512) {
+            throw new IllegalArgumentException("readBufferBytes must be at least 512: " + readBufferBytes);
+        }
+    }
+
+    public boolean isEnabled() {
+        return tcpPort >= 0 || udpPort >= 0;
+    }
+
+    /**
+     * Factory method for a listener on the loopback interface, e.g. for local tests with loopback clients
+     */
+    public static NetworkIngestConfig loopback(int tcpPort, int udpPort) {
+        return new NetworkIngestConfig("127.0.0.1", tcpPort, udpPort, 2, 10_000, 0, 64 * 1024);
+    }
+
+    /**
+     * Factory method reading smartfactory.net.* system properties; both ports are disabled by default
+     */
+    public static NetworkIngestConfig fromSystemProperties() {
+        return new NetworkIngestConfig(
+            System.getProperty("smartfactory.net.bind", "0.0.0.0"),
+            Integer.getInteger("smartfactory.net.tcpPort", DISABLED),
+            Integer.getInteger("smartfactory.net.udpPort", DISABLED),
+            Integer.getInteger("smartfactory.net.ioThreads", Math.min(4, Runtime.getRuntime().availableProcessors())),
+            Integer.getInteger("smartfactory.net.maxConnections", 10_000),
+            Integer.getInteger("smartfactory.net.idleTimeoutSeconds", 300),
+            Integer.getInteger("smartfactory.net.readBufferBytes", 64 * 1024)
+        );
+    }
+}
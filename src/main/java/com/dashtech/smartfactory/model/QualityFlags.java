@@ -0,0 +1,31 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Bit flags describing the quality of a sensor value. Zero means good.
+ */
+public final class QualityFlags {
+    private QualityFlags() {} // Prevent instantiation
+
+    public static final int GOOD = 0;
+    /** The sensor has not reported within its expected interval; the value is the last one received */
+    public static final int STALE = 1;
+    /** The anomaly detector flagged this value */
+    public static final int ANOMALY = 2;
+    /** Readings in a {@link SensorBatch} flagged ANOMALY carry their {@link AnomalyKind} flags above this bit */
+    public static final int ANOMALY_KIND_SHIFT = 8;
+
+    public static boolean isGood(int quality) {
+        return quality == GOOD;
+    }
+
+    public static int anomaly(int anomalyKinds) {
+        return ANOMALY | anomalyKinds << ANOMALY_KIND_SHIFT;
+    }
+
+    /**
+     * Returns the {@link AnomalyKind} flags of a batch row's quality, 0 if it was not flagged
+     */
+    public static int anomalyKinds(int quality) {
+        return quality >>> ANOMALY_KIND_SHIFT;
+    }
+}
@@ -0,0 +1,218 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Readings stored column by column in parallel primitive arrays, the form in which the ingest
+ * pipeline hands readings from stage to stage. A row holds the sensor id, its registry code,
+ * the {@link SensorType} code, the timestamp in epoch nanoseconds, the value, {@link QualityFlags}
+ * and the {@link System#nanoTime()} the bytes arrived at, so a reading costs no objects of its own.
+ * <p>
+ * Batches are reused: a stage may read a batch only while it is being handed the batch, and
+ * copies the rows it keeps with {@link #add(SensorBatch, int)}. {@link SensorData} is built only
+ * where a reading leaves the pipeline through an API, by {@link #toSensorData(int)}.
+ */
+public final class SensorBatch {
+    /** Code of a row whose sensor has not been registered */
+    public static final int NO_CODE = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private int size;
+    private int[] codes;
+    private int[] sensorIds;
+    private byte[] typeCodes;
+    // Set only for types that have no SensorType code, e.g. virtual sensors
+    private String[] typeNames;
+    private long[] epochNanos;
+    private double[] values;
+    private int[] qualities;
+    private long[] arrivalNanos;
+    // Records built by toSensorData, or the record a row was added from
+    private SensorData[] records;
+
+    public SensorBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SensorBatch(int capacity) {
+        int initial = Math.max(1, capacity);
+        codes = new int[initial];
+        sensorIds = new int[initial];
+        typeCodes = new byte[initial];
+        typeNames = new String[initial];
+        epochNanos = new long[initial];
+        values = new double[initial];
+        qualities = new int[initial];
+        arrivalNanos = new long[initial];
+        records = new SensorData[initial];
+    }
+
+    /**
+     * Appends a reading of a {@link SensorType}
+     * @return The row index
+     */
+    public int add(int sensorId, byte typeCode, long epochNanos, double value, long arrivalNanos) {
+        int row = size;
+        if (row == codes.length) {
+            grow();
+        }
+        codes[row] = NO_CODE;
+        sensorIds[row] = sensorId;
+        typeCodes[row] = typeCode;
+        this.epochNanos[row] = epochNanos;
+        values[row] = value;
+        qualities[row] = QualityFlags.GOOD;
+        this.arrivalNanos[row] = arrivalNanos;
+        size = row + 1;
+        return row;
+    }
+
+    /**
+     * Appends a reading whose type is given by name, such as a virtual sensor
+     * @return The row index
+     */
+    public int add(int sensorId, String type, long epochNanos, double value, long arrivalNanos) {
+        SensorType known = SensorType.fromName(type);
+        int row = add(sensorId, known.getCode(), epochNanos, value, arrivalNanos);
+        if (known == SensorType.UNKNOWN) {
+            typeNames[row] = type;
+        }
+        return row;
+    }
+
+    /**
+     * Appends a reading that arrived as a record; the record is kept and returned by {@link #toSensorData(int)}
+     * @return The row index
+     */
+    public int add(SensorData data) {
+        int row = add(data.sensorId(), data.type(), toEpochNanos(data.timestamp()), data.value(), data.arrivalNanos());
+        records[row] = data;
+        return row;
+    }
+
+    /**
+     * Appends a copy of a row of another batch, including its code and quality
+     * @return The row index
+     */
+    public int add(SensorBatch from, int fromRow) {
+        int row = add(from.sensorIds[fromRow], from.typeCodes[fromRow], from.epochNanos[fromRow],
+            from.values[fromRow], from.arrivalNanos[fromRow]);
+        codes[row] = from.codes[fromRow];
+        qualities[row] = from.qualities[fromRow];
+        typeNames[row] = from.typeNames[fromRow];
+        records[row] = from.records[fromRow];
+        return row;
+    }
+
+    private void grow() {
+        int capacity = codes.length * 2;
+        codes = Arrays.copyOf(codes, capacity);
+        sensorIds = Arrays.copyOf(sensorIds, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        typeNames = Arrays.copyOf(typeNames, capacity);
+        epochNanos = Arrays.copyOf(epochNanos, capacity);
+        values = Arrays.copyOf(values, capacity);
+        qualities = Arrays.copyOf(qualities, capacity);
+        arrivalNanos = Arrays.copyOf(arrivalNanos, capacity);
+        records = Arrays.copyOf(records, capacity);
+    }
+
+    /**
+     * Empties the batch, keeping its arrays for the next readings
+     */
+    public void clear() {
+        Arrays.fill(typeNames, 0, size, null);
+        Arrays.fill(records, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The sensor's registry code, or {@link #NO_CODE} if it has none
+     */
+    public int code(int row) {
+        return codes[row];
+    }
+
+    public void setCode(int row, int code) {
+        codes[row] = code;
+    }
+
+    public int sensorId(int row) {
+        return sensorIds[row];
+    }
+
+    public byte typeCode(int row) {
+        return typeCodes[row];
+    }
+
+    /**
+     * The sensor type's name, as carried by {@link SensorData#type()}
+     */
+    public String type(int row) {
+        String name = typeNames[row];
+        return name != null ? name : SensorType.fromCode(typeCodes[row]).getName();
+    }
+
+    public long epochNanos(int row) {
+        return epochNanos[row];
+    }
+
+    public long epochMillis(int row) {
+        return Math.floorDiv(epochNanos[row], NANOS_PER_MILLI);
+    }
+
+    public double value(int row) {
+        return values[row];
+    }
+
+    public int quality(int row) {
+        return qualities[row];
+    }
+
+    /**
+     * Sets quality flags on a row, e.g. {@link QualityFlags#ANOMALY}
+     */
+    public void markQuality(int row, int flags) {
+        qualities[row] |= flags;
+    }
+
+    public long arrivalNanos(int row) {
+        return arrivalNanos[row];
+    }
+
+    public boolean isStamped(int row) {
+        return arrivalNanos[row] != SensorData.NOT_STAMPED;
+    }
+
+    /**
+     * Returns the row as a record, building it on first use
+     */
+    public SensorData toSensorData(int row) {
+        SensorData data = records[row];
+        if (data == null) {
+            data = new SensorData(sensorIds[row], type(row), values[row], toInstant(epochNanos[row]), arrivalNanos[row]);
+            records[row] = data;
+        }
+        return data;
+    }
+
+    public static long toEpochNanos(Instant instant) {
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    public static Instant toInstant(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+            Math.floorMod(epochNanos, NANOS_PER_SECOND));
+    }
+}
@@ -8,17 +8,30 @@ import java.time.Instant;
  * @param type The type of sensor (e.g., "Temperature", "Pressure")
  * @param value The measured value from the sensor
  * @param timestamp The time when the measurement was taken
+ * @param arrivalNanos {@link System#nanoTime()} when the bytes carrying the reading arrived,
+ *                     or {@link #NOT_STAMPED} for readings that did not come from a port
  */
 public record SensorData(
     int sensorId,
     String type,
     double value,
-    Instant timestamp
+    Instant timestamp,
+    long arrivalNanos
 ) {
+    public static final long NOT_STAMPED = Long.MIN_VALUE;
+
+    public SensorData(int sensorId, String type, double value, Instant timestamp) {
+        this(sensorId, type, value, timestamp, NOT_STAMPED);
+    }
+
     /**
      * Factory method to create a new SensorData instance with current timestamp
      */
     public static SensorData create(int sensorId, String type, double value) {
         return new SensorData(sensorId, type, value, Instant.now());
     }
-} 
\ No newline at end of file
+
+    public boolean isStamped() {
+        return arrivalNanos != NOT_STAMPED;
+    }
+}
@@ -0,0 +1,28 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing a sensor going stale or recovering.
+ * @param sensorId The sensor
+ * @param type The sensor type name
+ * @param state STALE when the sensor stopped reporting, RECOVERED when it reported again
+ * @param lastSeen Time of the last reading before the event
+ * @param silentMillis How long the sensor had been silent when the event fired
+ * @param expectedIntervalMillis The sensor's expected reporting interval
+ * @param timestamp Time the event fired
+ */
+public record SensorHealthEvent(
+    int sensorId,
+    String type,
+    State state,
+    Instant lastSeen,
+    long silentMillis,
+    long expectedIntervalMillis,
+    Instant timestamp
+) {
+    public enum State {
+        STALE,
+        RECOVERED
+    }
+}
@@ -1,11 +1,24 @@
 package com.dashtech.smartfactory.model;
 
+import java.util.Arrays;
+
 public enum SensorType {
     TEMPERATURE((byte) 0x01, "Temperature", "°C"),
     PRESSURE((byte) 0x02, "Pressure", "kPa"),
     HUMIDITY((byte) 0x03, "Humidity", "%"),
     UNKNOWN((byte) 0x00, "Unknown", "");
 
+    // values() copies its array on every call, so lookups go through these
+    private static final SensorType[] VALUES = values();
+    private static final SensorType[] BY_CODE = new SensorType[256];
+
+    static {
+        Arrays.fill(BY_CODE, UNKNOWN);
+        for (SensorType type : VALUES) {
+            BY_CODE[type.code & 0xFF] = type;
+        }
+    }
+
     private final byte code;
     private final String name;
     private final String unit;
@@ -29,8 +42,15 @@ public enum SensorType {
     }
 
     public static SensorType fromCode(byte code) {
-        for (SensorType type : values()) {
-            if (type.code == code) {
+        return BY_CODE[code & 0xFF];
+    }
+
+    /**
+     * Returns the type with the given display name, or UNKNOWN
+     */
+    public static SensorType fromName(String name) {
+        for (SensorType type : VALUES) {
+            if (type.name.equals(name)) {
                 return type;
             }
         }
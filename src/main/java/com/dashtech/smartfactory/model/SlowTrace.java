@@ -0,0 +1,26 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing one reading that was slow to reach a pipeline stage.
+ * @param stage Stage that was reached late (decode, dispatch, persist or broadcast)
+ * @param source Port the reading arrived on, or null when not known at that stage
+ * @param sensorId Sensor that produced the reading
+ * @param totalMillis Time from byte arrival until the stage completed
+ * @param waitMillis Part of the total spent before the stage started, e.g. queued for the writer or outbox
+ * @param workMillis Part of the total spent in the stage itself, e.g. the commit or the socket write
+ * @param detail Stage-specific context such as the batch size or WebSocket session
+ * @param timestamp Time when the stage completed
+ */
+public record SlowTrace(
+    String stage,
+    String source,
+    int sensorId,
+    double totalMillis,
+    double waitMillis,
+    double workMillis,
+    String detail,
+    Instant timestamp
+) {
+}
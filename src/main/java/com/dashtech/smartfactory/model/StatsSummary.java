@@ -0,0 +1,38 @@
+package com.dashtech.smartfactory.model;
+
+import java.time.Instant;
+
+/**
+ * Record representing streaming statistics of one sensor over one window.
+ * @param sensorId The unique identifier of the sensor
+ * @param window Window name (lifetime, tumbling, tumbling_previous, sliding)
+ * @param windowStart Start of the window, null for lifetime
+ * @param windowEnd End of the window
+ * @param count Number of readings in the window
+ * @param min Smallest reading
+ * @param max Largest reading
+ * @param mean Arithmetic mean
+ * @param variance Sample variance
+ * @param stdDev Sample standard deviation
+ * @param ewma Exponentially weighted moving average over all readings
+ * @param p50 Estimated median
+ * @param p95 Estimated 95th percentile
+ * @param p99 Estimated 99th percentile
+ */
+public record StatsSummary(
+    int sensorId,
+    String window,
+    Instant windowStart,
+    Instant windowEnd,
+    long count,
+    double min,
+    double max,
+    double mean,
+    double variance,
+    double stdDev,
+    double ewma,
+    double p50,
+    double p95,
+    double p99
+) {
+}
@@ -0,0 +1,30 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing how many readings of a sensor report-by-exception let through.
+ * @param sensorId The sensor, or -1 for the plant-wide total
+ * @param received Readings received from the ingest path
+ * @param reported Readings passed on to storage and broadcast
+ * @param suppressedRatio Fraction of received readings that were suppressed (0 to 1)
+ * @param reductionFactor Received readings per reported reading
+ */
+public record SuppressionStats(
+    int sensorId,
+    long received,
+    long reported,
+    double suppressedRatio,
+    double reductionFactor
+) {
+    /**
+     * Factory method deriving the ratios from the two counters
+     */
+    public static SuppressionStats of(int sensorId, long received, long reported) {
+        return new SuppressionStats(
+            sensorId,
+            received,
+            reported,
+            received > 0 ? (double) (received - reported) / received : 0.0,
+            reported > 0 ? (double) received / reported : 0.0
+        );
+    }
+}
@@ -0,0 +1,22 @@
+package com.dashtech.smartfactory.model;
+
+/**
+ * Record representing a virtual sensor computed from other sensors.
+ * @param sensorId Id the computed readings are published under; must not be used by a physical sensor
+ * @param type Type name published with the readings (e.g., "DifferentialPressure")
+ * @param expression Arithmetic expression over other sensors, e.g. "s2 - s5" or "s7 * (1 + 0.02 * (s3 - 20))"
+ */
+public record VirtualSensorDefinition(
+    int sensorId,
+    String type,
+    String expression
+) {
+    public VirtualSensorDefinition {
+        if (type == null || type.isBlank()) {
+            type = "Virtual";
+        }
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("Virtual sensor " + sensorId + " has no expression");
+        }
+    }
+}
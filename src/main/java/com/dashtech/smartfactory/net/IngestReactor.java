@@ -0,0 +1,311 @@
+package com.dashtech.smartfactory.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.NetworkIngestConfig;
+import com.dashtech.smartfactory.service.PacketHandler;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * One selector thread of a {@link NetworkIngestListener}. Owns a share of the TCP
+ * connections and, on the first thread, the listening socket and the UDP socket. Every
+ * read lands in the thread's single direct buffer and is decoded before the next one.
+ */
+final class IngestReactor {
+    private static final Logger logger = LogManager.getLogger(IngestReactor.class);
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Bounds the time one busy UDP socket can keep the thread from its TCP connections
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+
+    private final NetworkIngestListener owner;
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final long idleTimeoutNanos;
+    private final Queue<SocketChannel> handedOver = new ConcurrentLinkedQueue<>();
+    private final Map<SocketAddress, PacketHandler> datagramDecoders;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean started;
+    private long lastSweepNanos = System.nanoTime();
+
+    // State of one TCP connection, attached to its selection key
+    private static final class Connection {
+        final SocketChannel channel;
+        final String source;
+        final PacketHandler decoder;
+        long lastReadNanos;
+
+        Connection(SocketChannel channel, String source, PacketHandler decoder) {
+            this.channel = channel;
+            this.source = source;
+            this.decoder = decoder;
+            this.lastReadNanos = System.nanoTime();
+        }
+    }
+
+    IngestReactor(NetworkIngestListener owner, int index, NetworkIngestConfig config) throws IOException {
+        this.owner = owner;
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocateDirect(config.readBufferBytes());
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(config.idleTimeoutSeconds());
+        int maxSenders = config.maxConnections();
+        // One decoder per sender, so a frame split across datagrams still reassembles; least recently heard evicted
+        this.datagramDecoders = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SocketAddress, PacketHandler> eldest) {
+                return size() > maxSenders;
+            }
+        };
+        this.thread = new Thread(this::run, "NetworkIngest-" + index);
+        this.thread.setDaemon(true);
+    }
+
+    void registerAcceptor(ServerSocketChannel channel) throws ClosedChannelException {
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    void registerDatagrams(DatagramChannel channel) throws ClosedChannelException {
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    void start() {
+        started = true;
+        thread.start();
+    }
+
+    /**
+     * Hands an accepted connection to this thread; safe to call from any thread
+     */
+    void assign(SocketChannel channel) {
+        if (Thread.currentThread() == thread) {
+            register(channel);
+        } else {
+            handedOver.add(channel);
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                SocketChannel channel;
+                while ((channel = handedOver.poll()) != null) {
+                    register(channel);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else if (key.attachment() instanceof Connection connection) {
+                        read(key, connection);
+                    } else if (key.channel() instanceof DatagramChannel datagrams) {
+                        receive(datagrams);
+                    }
+                }
+                sweepIdle();
+            }
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Network Ingest", "Selector thread " + thread.getName() + " failed", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept(ServerSocketChannel server) {
+        SocketChannel channel;
+        try {
+            while ((channel = server.accept()) != null) {
+                if (!owner.tryOpen()) {
+                    logger.debug("Refused connection from {}: connection limit reached", channel.getRemoteAddress());
+                    channel.close();
+                    continue;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                } catch (IOException e) {
+                    owner.connectionClosed();
+                    channel.close();
+                    continue;
+                }
+                owner.nextReactor().assign(channel);
+            }
+        } catch (IOException e) {
+            // Closed while stopping, or out of file descriptors; the selector retries on the next wakeup
+            if (running && server.isOpen()) {
+                LoggingUtil.logError(logger, "Network Ingest", "Failed to accept connection", e);
+            }
+        }
+    }
+
+    private void register(SocketChannel channel) {
+        try {
+            String source = "tcp/" + hostOf(channel.getRemoteAddress());
+            channel.register(selector, SelectionKey.OP_READ,
+                new Connection(channel, source, owner.createTcpDecoder(source)));
+            logger.debug("Device connected from {} on {}", channel.getRemoteAddress(), thread.getName());
+        } catch (IOException e) {
+            owner.connectionClosed();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+        }
+    }
+
+    private void read(SelectionKey key, Connection connection) {
+        readBuffer.clear();
+        int read;
+        try {
+            read = connection.channel.read(readBuffer);
+        } catch (IOException e) {
+            close(key, connection, e.getMessage());
+            return;
+        }
+        if (read < 0) {
+            close(key, connection, "closed by device");
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+        long arrivalNanos = System.nanoTime();
+        connection.lastReadNanos = arrivalNanos;
+        owner.received(read);
+        readBuffer.flip();
+        try {
+            connection.decoder.processIncomingData(readBuffer, arrivalNanos);
+        } catch (RuntimeException e) {
+            LoggingUtil.logError(logger, "Network Ingest", "Failed to decode data from " + connection.source, e);
+            close(key, connection, "decode failed");
+        }
+    }
+
+    private void receive(DatagramChannel channel) {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            readBuffer.clear();
+            SocketAddress sender;
+            try {
+                sender = channel.receive(readBuffer);
+            } catch (IOException e) {
+                if (running && channel.isOpen()) {
+                    LoggingUtil.logError(logger, "Network Ingest", "Failed to receive datagram", e);
+                }
+                return;
+            }
+            if (sender == null) {
+                return;
+            }
+            long arrivalNanos = System.nanoTime();
+            owner.received(readBuffer.position());
+            readBuffer.flip();
+            PacketHandler decoder = datagramDecoders.get(sender);
+            if (decoder == null) {
+                decoder = owner.createUdpDecoder("udp/" + hostOf(sender));
+                datagramDecoders.put(sender, decoder);
+            }
+            try {
+                decoder.processIncomingData(readBuffer, arrivalNanos);
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Network Ingest", "Failed to decode datagram from " + sender, e);
+                datagramDecoders.remove(sender);
+            }
+        }
+    }
+
+    // Devices that lose power or network never send a FIN; drop them once they have been silent too long
+    private void sweepIdle() {
+        long now = System.nanoTime();
+        if (idleTimeoutNanos <= 0 || now - lastSweepNanos < SWEEP_INTERVAL_NANOS) {
+            return;
+        }
+        lastSweepNanos = now;
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection && now - connection.lastReadNanos > idleTimeoutNanos) {
+                close(key, connection, "idle timeout");
+            }
+        }
+    }
+
+    private void close(SelectionKey key, Connection connection, String reason) {
+        key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing connection from {}: {}", connection.source, e.getMessage());
+        }
+        owner.connectionClosed();
+        logger.debug("Device disconnected from {}: {}", connection.source, reason);
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection) {
+                close(key, connection, "listener stopped");
+            }
+        }
+        SocketChannel channel;
+        while ((channel = handedOver.poll()) != null) {
+            owner.connectionClosed();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Never registered
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Error closing selector: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the thread, closing its connections, and waits briefly for it to finish
+     */
+    void close() {
+        running = false;
+        if (!started) {
+            // The listener failed to bind before starting this thread
+            closeAll();
+            return;
+        }
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String hostOf(SocketAddress address) {
+        return address instanceof InetSocketAddress inet ? inet.getAddress().getHostAddress() : String.valueOf(address);
+    }
+}
@@ -0,0 +1,227 @@
+package com.dashtech.smartfactory.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.metrics.PortMetrics;
+import com.dashtech.smartfactory.model.NetworkIngestConfig;
+import com.dashtech.smartfactory.service.PacketHandler;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Receives {@code SerialPacket} frames and sensor text lines over TCP and UDP from serial
+ * device servers and Ethernet sensors, and ingests them exactly like bytes read from a
+ * COM port.
+ * <p>
+ * A few selector threads share every connection. Each thread reads into one direct buffer
+ * and decodes it in place on that thread, so no thread or heap buffer is held per device;
+ * a connection costs a small decoder and its socket. Readings are ingested under the
+ * source name "tcp/&lt;address&gt;" or "udp/&lt;address&gt;" of the sending device.
+ * <p>
+ * A listener can serve thousands of devices, so pipeline metrics are not kept per device:
+ * all TCP devices count into the port metrics "tcp:&lt;port&gt;" and all UDP senders into
+ * "udp:&lt;port&gt;", which are removed again when the listener closes.
+ * <p>
+ * Started from smartfactory.net.* properties by {@link #startIfConfigured()}; see
+ * {@link NetworkIngestConfig}.
+ */
+public class NetworkIngestListener implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(NetworkIngestListener.class);
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    /**
+     * Receive buffer per connection; network decoders are fed in slices, so it never grows
+     */
+    static final int DECODER_BUFFER_BYTES = PacketHandler.MIN_BUFFER_SIZE;
+
+    private final SensorIngestService ingestService;
+    private final NetworkIngestConfig config;
+    private final List<IngestReactor> reactors = new ArrayList<>();
+    private final AtomicInteger nextReactor = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private ServerSocketChannel tcpChannel;
+    private DatagramChannel udpChannel;
+    private String tcpMetricsName;
+    private String udpMetricsName;
+    private PortMetrics tcpMetrics;
+    private PortMetrics udpMetrics;
+
+    public NetworkIngestListener(SensorIngestService ingestService, NetworkIngestConfig config) {
+        this.ingestService = ingestService;
+        this.config = config;
+    }
+
+    /**
+     * Starts a listener on the shared ingest path when smartfactory.net.tcpPort or
+     * smartfactory.net.udpPort is set, otherwise returns null
+     */
+    public static NetworkIngestListener startIfConfigured() {
+        NetworkIngestConfig config = NetworkIngestConfig.fromSystemProperties();
+        if (!config.isEnabled()) {
+            return null;
+        }
+        NetworkIngestListener listener = new NetworkIngestListener(SensorIngestService.getInstance(), config);
+        try {
+            listener.start();
+            return listener;
+        } catch (IOException e) {
+            LoggingUtil.logError(logger, "Network Ingest", "Failed to start network ingest listener", e);
+            listener.close();
+            return null;
+        }
+    }
+
+    /**
+     * Binds the configured ports and starts the selector threads
+     */
+    public synchronized void start() throws IOException {
+        if (!reactors.isEmpty()) {
+            throw new IllegalStateException("Network ingest listener already started");
+        }
+        for (int i = 0; i < config.ioThreads(); i++) {
+            reactors.add(new IngestReactor(this, i + 1, config));
+        }
+        // The first thread accepts and hands connections out round-robin; it also owns UDP
+        IngestReactor first = reactors.get(0);
+        if (config.tcpPort() >= 0) {
+            tcpChannel = ServerSocketChannel.open();
+            tcpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            tcpChannel.bind(new InetSocketAddress(config.bindAddress(), config.tcpPort()), ACCEPT_BACKLOG);
+            tcpChannel.configureBlocking(false);
+            tcpMetricsName = "tcp:" + getTcpPort();
+            tcpMetrics = ingestService.getMetrics().port(tcpMetricsName);
+            first.registerAcceptor(tcpChannel);
+        }
+        if (config.udpPort() >= 0) {
+            udpChannel = DatagramChannel.open();
+            udpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            udpChannel.bind(new InetSocketAddress(config.bindAddress(), config.udpPort()));
+            udpChannel.configureBlocking(false);
+            udpMetricsName = "udp:" + getUdpPort();
+            udpMetrics = ingestService.getMetrics().port(udpMetricsName);
+            first.registerDatagrams(udpChannel);
+        }
+        reactors.forEach(IngestReactor::start);
+
+        LoggingUtil.logStartup(logger, "NetworkIngestListener", Map.of(
+            "bind", config.bindAddress(),
+            "tcpPort", String.valueOf(getTcpPort()),
+            "udpPort", String.valueOf(getUdpPort()),
+            "ioThreads", String.valueOf(config.ioThreads()),
+            "maxConnections", String.valueOf(config.maxConnections())
+        ));
+    }
+
+    PacketHandler createTcpDecoder(String source) {
+        return ingestService.createDecoder(source, tcpMetrics, DECODER_BUFFER_BYTES, null);
+    }
+
+    PacketHandler createUdpDecoder(String source) {
+        return ingestService.createDecoder(source, udpMetrics, DECODER_BUFFER_BYTES, null);
+    }
+
+    IngestReactor nextReactor() {
+        return reactors.get(Math.floorMod(nextReactor.getAndIncrement(), reactors.size()));
+    }
+
+    // Reserves a connection slot, or counts a refusal when the listener is full
+    boolean tryOpen() {
+        int open;
+        do {
+            open = openConnections.get();
+            if (open >= config.maxConnections()) {
+                rejectedConnections.increment();
+                return false;
+            }
+        } while (!openConnections.compareAndSet(open, open + 1));
+        acceptedConnections.increment();
+        return true;
+    }
+
+    void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    void received(int bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Bound TCP port, or {@link NetworkIngestConfig#DISABLED}
+     */
+    public int getTcpPort() {
+        return tcpChannel != null ? tcpChannel.socket().getLocalPort() : NetworkIngestConfig.DISABLED;
+    }
+
+    /**
+     * Bound UDP port, or {@link NetworkIngestConfig#DISABLED}
+     */
+    public int getUdpPort() {
+        return udpChannel != null ? udpChannel.socket().getLocalPort() : NetworkIngestConfig.DISABLED;
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Stops accepting, closes every connection and stops the selector threads
+     */
+    @Override
+    public synchronized void close() {
+        closeQuietly(tcpChannel);
+        closeQuietly(udpChannel);
+        reactors.forEach(IngestReactor::close);
+        reactors.clear();
+        if (tcpMetricsName != null) {
+            ingestService.getMetrics().unregisterPort(tcpMetricsName);
+        }
+        if (udpMetricsName != null) {
+            ingestService.getMetrics().unregisterPort(udpMetricsName);
+        }
+        LoggingUtil.logShutdown(logger, "NetworkIngestListener", Map.of(
+            "accepted", String.valueOf(getAcceptedConnections()),
+            "rejected", String.valueOf(getRejectedConnections()),
+            "bytesReceived", String.valueOf(getBytesReceived())
+        ));
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing {}: {}", channel, e.getMessage());
+        }
+    }
+}
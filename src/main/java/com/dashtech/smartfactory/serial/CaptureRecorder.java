@@ -0,0 +1,108 @@
+package com.dashtech.smartfactory.serial;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Journals raw received bytes with their arrival time so a capture can later be fed back
+ * through the decoder by the CaptureReplayer test harness.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * header: MAGIC(4) VERSION(2) START_EPOCH_MILLIS(8) PORT_NAME(UTF)
+ * record: OFFSET_NANOS(8) LENGTH(4) BYTES(LENGTH)   repeated until end of file
+ * </pre>
+ * Offsets are relative to the moment recording started.
+ * <p>
+ * Recording runs on the port's receive thread ahead of decoding, so a failed write (a full
+ * disk, a closed file) is logged once and ends the recording rather than stopping ingest.
+ */
+public class CaptureRecorder implements SerialPortChannel.Receiver, AutoCloseable {
+    public static final int MAGIC = 0x53464350; // "SFCP"
+    public static final short VERSION = 1;
+    public static final String FILE_EXTENSION = ".sfcap";
+    private static final Logger logger = LogManager.getLogger(CaptureRecorder.class);
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final long startNanos;
+    private long records;
+    private long bytes;
+    private boolean failed;
+
+    public CaptureRecorder(Path file, String portName) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        this.startNanos = System.nanoTime();
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(portName);
+    }
+
+    @Override
+    public synchronized void onBytes(byte[] buffer, int length) {
+        if (failed) {
+            return;
+        }
+        try {
+            out.writeLong(System.nanoTime() - startNanos);
+            out.writeInt(length);
+            out.write(buffer, 0, length);
+            records++;
+            bytes += length;
+        } catch (IOException e) {
+            failed = true;
+            LoggingUtil.logError(logger, "Serial Capture", "Failed to write capture " + file + ", recording stopped", e);
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The capture is already abandoned
+            }
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Whether a write failed and the recording was abandoned
+     */
+    public synchronized boolean isFailed() {
+        return failed;
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (failed) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close capture " + file, e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.dashtech.smartfactory.serial;
+
+import java.util.List;
+
+import com.dashtech.smartfactory.model.SerialConfig;
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+
+/**
+ * {@link SerialPortChannel} backed by a hardware or OS-level port through jSerialComm.
+ */
+public class JSerialCommChannel implements SerialPortChannel {
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final SerialConfig config;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private SerialPort serialPort;
+    private volatile Receiver receiver;
+
+    public JSerialCommChannel(SerialConfig config) {
+        this.config = config;
+    }
+
+    public static List<String> getAvailablePorts() {
+        return List.of(SerialPort.getCommPorts()).stream()
+            .map(SerialPort::getSystemPortName)
+            .toList();
+    }
+
+    @Override
+    public String getName() {
+        return serialPort != null ? serialPort.getSystemPortName() : config.portName();
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public boolean open() {
+        serialPort = SerialPort.getCommPort(config.portName());
+        serialPort.setBaudRate(config.baudRate());
+        serialPort.setNumDataBits(config.dataBits());
+        serialPort.setNumStopBits(config.stopBits());
+        serialPort.setParity(config.parity());
+
+        if (!serialPort.openPort()) {
+            return false;
+        }
+
+        serialPort.addDataListener(new SerialPortDataListener() {
+            @Override
+            public int getListeningEvents() {
+                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+            }
+
+            @Override
+            public void serialEvent(SerialPortEvent event) {
+                if (event.getEventType() != SerialPort.LISTENING_EVENT_DATA_AVAILABLE) {
+                    return;
+                }
+                int available;
+                while ((available = serialPort.bytesAvailable()) > 0) {
+                    int numRead = serialPort.readBytes(readBuffer, Math.min(available, readBuffer.length));
+                    if (numRead <= 0) {
+                        break;
+                    }
+                    Receiver target = receiver;
+                    if (target != null) {
+                        target.onBytes(readBuffer, numRead);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort != null && serialPort.isOpen();
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length) {
+        if (!isOpen()) {
+            return 0;
+        }
+        return serialPort.writeBytes(data, length, offset);
+    }
+
+    @Override
+    public void close() {
+        if (serialPort != null && serialPort.isOpen()) {
+            serialPort.removeDataListener();
+            serialPort.closePort();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.dashtech.smartfactory.serial;
+
+/**
+ * Byte-level view of a serial link. Implementations deliver received bytes to a
+ * {@link Receiver} on their own read thread and accept writes from any thread.
+ */
+public interface SerialPortChannel extends AutoCloseable {
+
+    /**
+     * Callback for received bytes. The buffer is only valid for the duration of the call.
+     */
+    @FunctionalInterface
+    interface Receiver {
+        void onBytes(byte[] buffer, int length);
+    }
+
+    String getName();
+
+    void setReceiver(Receiver receiver);
+
+    boolean open();
+
+    boolean isOpen();
+
+    /**
+     * Writes bytes to the link
+     * @return Number of bytes actually written
+     */
+    int write(byte[] data, int offset, int length);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,116 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Bounded queue of journal entries persisted in batches on a dedicated thread, so a burst of
+ * entries never stalls the stream that produced them. Entries offered while the queue is full,
+ * and the entries of a batch that fails to store, are counted as dropped.
+ * @param <T> Entry type
+ */
+public abstract class BatchingJournal<T> implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(BatchingJournal.class);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("smartfactory.journal.queueCapacity", 16_384);
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final String name;
+    private final String entries;
+    private final BlockingQueue<T> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param name Writer thread name and log context
+     * @param entries What an entry is, in plural, for log messages
+     */
+    protected BatchingJournal(String name, String entries) {
+        this.name = name;
+        this.entries = entries;
+        this.writerThread = new Thread(this::writeLoop, name);
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * Persists one batch of entries, oldest first
+     */
+    protected abstract void store(List<T> batch);
+
+    public void start() {
+        writerThread.start();
+        LoggingUtil.logStartup(logger, name, Map.of(
+            "queueCapacity", String.valueOf(QUEUE_CAPACITY)
+        ));
+    }
+
+    /**
+     * Queues an entry without blocking
+     */
+    protected void append(T entry) {
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void writeLoop() {
+        List<T> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                store(batch);
+                written.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                dropped.addAndGet(batch.size());
+                LoggingUtil.logError(logger, name, "Failed to persist batch of " + batch.size() + " " + entries, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LoggingUtil.logShutdown(logger, name, Map.of(
+            "written", String.valueOf(written.get()),
+            "dropped", String.valueOf(dropped.get())
+        ));
+    }
+}
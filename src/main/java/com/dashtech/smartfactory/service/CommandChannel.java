@@ -0,0 +1,661 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.ActuatorCommand;
+import com.dashtech.smartfactory.model.CommandChannelConfig;
+import com.dashtech.smartfactory.model.CommandGroup;
+import com.dashtech.smartfactory.model.CommandLatency;
+import com.dashtech.smartfactory.model.CommandResult;
+import com.dashtech.smartfactory.serial.SerialPortChannel;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Sends actuator commands over one port without waiting for each acknowledgement before
+ * the next. Up to a window of commands are in flight at once; further commands queue up
+ * to a bounded capacity and go out as acks free the window. A command that is not
+ * acknowledged within the ack timeout is retransmitted, and fails with a
+ * {@link TimeoutException} once its attempts are used up.
+ * <p>
+ * Every command is tagged with a local sequence number, but the command frame has no
+ * field to carry it and the device echoes only the actuator id and command type. Acks are
+ * therefore matched to the oldest in-flight command with the same actuator and command,
+ * which is exact as long as the device acknowledges commands in the order it received them.
+ * A retransmitted command can be acknowledged once per copy, so after it completes or
+ * expires the extra acks for its actuator and command are expected for one more ack
+ * timeout and discarded rather than credited to a newer identical command. If the copies
+ * were in fact lost, the newer command is retransmitted, which is harmless for ON/OFF.
+ * <p>
+ * A {@link CommandGroup} goes out in a single write, either as one multi-command frame or
+ * as its individual packets back to back, so no other command can interleave with it. It
+ * is sent as soon as the window has room and may take the window over its limit until the
+ * group's acks arrive; each command is then acknowledged and retransmitted on its own.
+ * <p>
+ * Only the newest state of an actuator matters, so a command that has not been sent yet is
+ * superseded by a newer single command to the same actuator: the newer one takes its place
+ * in the queue and the older future fails with a {@link CancellationException}. A command
+ * arriving within the minimum interval of the last one sent to its actuator is held until
+ * the interval has passed, collapsing a burst of toggles into at most one write per interval.
+ * <p>
+ * What to send is decided under the channel lock, but the bytes are written by a writer
+ * thread of the port in the order they were decided, so neither the ack timer shared by
+ * all ports nor the receive thread ever waits on the port. A command is in flight, and its
+ * ack timeout runs, from the moment it is handed to the writer. A failed write fails the
+ * commands it carried and frees their room in the window.
+ */
+public class CommandChannel implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(CommandChannel.class);
+
+    // Weight of a new sample in the smoothed round trip, as in TCP's SRTT
+    private static final double RTT_ALPHA = 0.125;
+    private static final int COMMAND_BYTE = 3;
+
+    // Ack and hold timers of all ports; a timer only takes the channel lock, writes go to the port's writer
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+
+    private final String portName;
+    private final SerialPortChannel channel;
+    private final int window;
+    private final int queueCapacity;
+    private final long ackTimeoutNanos;
+    private final int maxAttempts;
+    private final boolean groupFrames;
+    private final long minIntervalNanos;
+    // Single thread, so frames reach the port in the order they were handed over under the lock
+    private final ExecutorService writer;
+
+    private final Object lock = new Object();
+    private final List<Pending> inFlight = new ArrayList<>();
+    private final ArrayDeque<Pending> queued = new ArrayDeque<>();
+    private final Map<Integer, DuplicateAcks> duplicates = new HashMap<>();
+    // Unsent single commands by actuator, waiting in the queue or for the minimum interval
+    private final Map<Integer, Pending> queuedByActuator = new HashMap<>();
+    private final Map<Integer, Pending> held = new HashMap<>();
+    private final Map<Integer, Long> lastSentNanos = new HashMap<>();
+    private boolean closed;
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Map<Integer, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder retransmits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder unmatchedAcks = new LongAdder();
+    private final LongAdder duplicateAcks = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+
+    private static final class Pending {
+        // Replaced when a newer command to the same actuator supersedes this one before it is sent
+        long sequence;
+        ActuatorCommand command;
+        byte[] packet;
+        CompletableFuture<CommandResult> result = new CompletableFuture<>();
+        int attempts;
+        long sentNanos;
+        ScheduledFuture<?> timeout;
+        // Set for commands of a group, which are queued next to each other and sent together
+        Batch batch;
+
+        Pending(long sequence, ActuatorCommand command, byte[] packet) {
+            this.sequence = sequence;
+            this.command = command;
+            this.packet = packet;
+        }
+
+        int key() {
+            return CommandChannel.key(packet[2], packet[COMMAND_BYTE]);
+        }
+
+        int actuatorId() {
+            return command.actuatorId();
+        }
+
+        /**
+         * Takes over the newer command's identity and future, returning the future it replaced
+         */
+        CompletableFuture<CommandResult> supersedeWith(Pending newer) {
+            CompletableFuture<CommandResult> replaced = result;
+            sequence = newer.sequence;
+            command = newer.command;
+            packet = newer.packet;
+            result = newer.result;
+            return replaced;
+        }
+    }
+
+    private record Batch(byte[] bytes, List<Pending> members) {
+    }
+
+    // Acks still expected from earlier copies of a retransmitted command, guarded by the channel lock
+    private static final class DuplicateAcks {
+        int remaining;
+        long expiresNanos;
+    }
+
+    private static final class LatencyTracker {
+        long samples;
+        long lastNanos;
+        double smoothedNanos;
+        long minNanos = Long.MAX_VALUE;
+        long maxNanos;
+
+        synchronized void add(long nanos) {
+            smoothedNanos = samples == 0 ? nanos : smoothedNanos + RTT_ALPHA * (nanos - smoothedNanos);
+            samples++;
+            lastNanos = nanos;
+            minNanos = Math.min(minNanos, nanos);
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized CommandLatency snapshot(int actuatorId) {
+            return new CommandLatency(actuatorId, samples, millis(lastNanos), smoothedNanos / 1_000_000.0,
+                millis(minNanos), millis(maxNanos));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Creates a channel configured from the smartfactory.command.* system properties
+     */
+    public CommandChannel(SerialPortChannel channel) {
+        this(channel, CommandChannelConfig.fromSystemProperties());
+    }
+
+    public CommandChannel(SerialPortChannel channel, CommandChannelConfig config) {
+        this.portName = channel.getName();
+        this.channel = channel;
+        this.window = config.window();
+        this.queueCapacity = config.queueCapacity();
+        this.ackTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.ackTimeoutMillis());
+        this.maxAttempts = config.maxAttempts();
+        this.groupFrames = config.groupFrames();
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.minIntervalMillis());
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "CommandWriter-" + portName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static int key(byte actuatorId, byte commandType) {
+        return (actuatorId & 0xFF) << 8 | (commandType & 0xFF);
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "CommandAckTimer");
+            t.setDaemon(true);
+            return t;
+        });
+        // Nearly every timer is cancelled by its ack; don't keep them in the queue until they expire
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Sends the command, or queues it while the window is full. The returned future completes
+     * when the device acknowledges the command, or exceptionally with a {@link TimeoutException}
+     * when it never does, a {@link CancellationException} when a newer command to the same
+     * actuator replaces it before it is sent, a {@link RejectedExecutionException} when the
+     * queue is full, and an {@link IllegalStateException} when the write fails or the channel
+     * closes first.
+     */
+    public CompletableFuture<CommandResult> submit(ActuatorCommand command) {
+        byte[] packet;
+        try {
+            packet = command.toBinary();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Pending pending = new Pending(nextSequence.incrementAndGet(), command, packet);
+        CompletableFuture<CommandResult> replaced = null;
+        synchronized (lock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Command channel for " + portName + " is closed"));
+            }
+            int actuatorId = command.actuatorId();
+            Pending waiting = held.containsKey(actuatorId) ? held.get(actuatorId) : queuedByActuator.get(actuatorId);
+            long holdNanos = holdNanos(actuatorId, System.nanoTime());
+            if (waiting != null) {
+                replaced = waiting.supersedeWith(pending);
+            } else if (holdNanos > 0) {
+                held.put(actuatorId, pending);
+                timer.schedule(() -> release(actuatorId), holdNanos, TimeUnit.NANOSECONDS);
+            } else if (!dispatch(pending)) {
+                return CompletableFuture.failedFuture(queueFull());
+            }
+        }
+        if (replaced != null) {
+            supersede(replaced, pending);
+        }
+        return pending.result;
+    }
+
+    /**
+     * Sends all commands of the group in one write, or queues them together while the window
+     * is full. Each future completes like one returned by {@link #submit(ActuatorCommand)};
+     * a group that does not fit in the queue is rejected as a whole. Groups are neither held
+     * for the minimum interval nor superseded, but they do supersede unsent single commands
+     * to their actuators.
+     */
+    public List<CompletableFuture<CommandResult>> submitGroup(CommandGroup group) {
+        List<Pending> members = new ArrayList<>(group.size());
+        for (ActuatorCommand command : group.commands()) {
+            members.add(new Pending(nextSequence.incrementAndGet(), command, command.toBinary()));
+        }
+        Batch batch = new Batch(groupFrames ? group.toFrame() : group.toCoalescedPackets(), members);
+        List<CompletableFuture<CommandResult>> results = new ArrayList<>(members.size());
+        for (Pending pending : members) {
+            pending.batch = batch;
+            results.add(pending.result);
+        }
+
+        List<Pending> replaced = new ArrayList<>(0);
+        RuntimeException refused = null;
+        synchronized (lock) {
+            if (closed) {
+                refused = new IllegalStateException("Command channel for " + portName + " is closed");
+            } else if (inFlight.size() < window && queued.isEmpty()) {
+                withdrawSingles(members, replaced);
+                transmit(batch);
+            } else if (queued.size() + members.size() <= queueCapacity) {
+                withdrawSingles(members, replaced);
+                queued.addAll(members);
+            } else {
+                rejected.add(members.size());
+                refused = new RejectedExecutionException(String.format(
+                    "Command queue for %s cannot take group %s of %d commands (%d waiting)",
+                    portName, group.name(), members.size(), queued.size()));
+            }
+        }
+        if (refused != null) {
+            for (Pending pending : members) {
+                pending.result.completeExceptionally(refused);
+            }
+            return results;
+        }
+        for (Pending older : replaced) {
+            supersede(older.result, members.stream()
+                .filter(member -> member.actuatorId() == older.actuatorId()).findFirst().orElseThrow());
+        }
+        return results;
+    }
+
+    // Caller holds the lock; removes unsent single commands to the group's actuators
+    private void withdrawSingles(List<Pending> members, List<Pending> replaced) {
+        for (Pending member : members) {
+            Pending older = held.remove(member.actuatorId());
+            if (older == null) {
+                older = queuedByActuator.remove(member.actuatorId());
+                if (older != null) {
+                    queued.remove(older);
+                }
+            }
+            if (older != null) {
+                replaced.add(older);
+            }
+        }
+    }
+
+    private void supersede(CompletableFuture<CommandResult> replaced, Pending newer) {
+        superseded.increment();
+        CommandGate.getInstance().recordSuperseded();
+        replaced.completeExceptionally(new CancellationException(String.format(
+            "Superseded by command %d (%s to actuator %d) before it was sent",
+            newer.sequence, newer.command.command(), newer.actuatorId())));
+    }
+
+    // Caller holds the lock; time until the actuator may receive its next command
+    private long holdNanos(int actuatorId, long now) {
+        if (minIntervalNanos == 0) {
+            return 0;
+        }
+        Long last = lastSentNanos.get(actuatorId);
+        return last == null ? 0 : last + minIntervalNanos - now;
+    }
+
+    // Sends the newest command held back by the minimum interval
+    private void release(int actuatorId) {
+        Pending pending;
+        synchronized (lock) {
+            pending = held.remove(actuatorId);
+            if (pending == null || closed) {
+                return; // Taken over by a group, or failed on close
+            }
+            if (dispatch(pending)) {
+                pending = null;
+            }
+        }
+        if (pending != null) {
+            pending.result.completeExceptionally(queueFull());
+        }
+    }
+
+    // Caller holds the lock; false when the queue is full
+    private boolean dispatch(Pending pending) {
+        if (inFlight.size() < window && queued.isEmpty()) {
+            transmit(pending);
+        } else if (queued.size() < queueCapacity) {
+            queued.add(pending);
+            queuedByActuator.put(pending.actuatorId(), pending);
+        } else {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private RejectedExecutionException queueFull() {
+        return new RejectedExecutionException(String.format("Command queue for %s is full", portName));
+    }
+
+    /**
+     * Completes the oldest in-flight command the acknowledgement matches. Called on the
+     * port's receive thread.
+     */
+    public void onAck(byte actuatorId, byte commandType) {
+        long now = System.nanoTime();
+        int key = key(actuatorId, commandType);
+        Pending match = null;
+        synchronized (lock) {
+            if (isExpectedDuplicate(key, now)) {
+                duplicateAcks.increment();
+                return;
+            }
+            for (Iterator<Pending> it = inFlight.iterator(); it.hasNext();) {
+                Pending pending = it.next();
+                if (pending.key() == key) {
+                    it.remove();
+                    match = pending;
+                    break;
+                }
+            }
+            if (match != null) {
+                match.timeout.cancel(false);
+                expectDuplicates(match, match.attempts - 1, now);
+                fillWindow();
+            }
+        }
+        if (match == null) {
+            // Ack of a command that expired long ago, or one this channel never sent
+            unmatchedAcks.increment();
+            logger.debug("Unmatched ack from actuator {} on {}: command {}", actuatorId & 0xFF, portName, commandType);
+            return;
+        }
+
+        long roundTrip = now - match.sentNanos;
+        if (match.attempts == 1) {
+            latencies.computeIfAbsent(match.command.actuatorId(), id -> new LatencyTracker()).add(roundTrip);
+        }
+        acknowledged.increment();
+        match.result.complete(CommandResult.acknowledged(match.sequence, match.command, match.attempts, roundTrip));
+    }
+
+    private void onTimeout(Pending pending) {
+        boolean expired = false;
+        synchronized (lock) {
+            if (closed || !inFlight.remove(pending)) {
+                return; // Acknowledged while the timer fired
+            }
+            if (pending.attempts < maxAttempts) {
+                retransmits.increment();
+                LoggingUtil.logSerialEvent(logger, "RETRANSMIT", portName, String.format(
+                    "No ack for command %d (%s to actuator %d), attempt %d",
+                    pending.sequence, pending.command.command(), pending.command.actuatorId(), pending.attempts + 1));
+                transmit(pending);
+            } else {
+                timeouts.increment();
+                expired = true;
+                expectDuplicates(pending, pending.attempts, System.nanoTime());
+                fillWindow();
+            }
+        }
+        if (expired) {
+            pending.result.completeExceptionally(new TimeoutException(String.format(
+                "No acknowledgement from actuator %d after %d attempts",
+                pending.command.actuatorId(), pending.attempts)));
+        }
+    }
+
+    // Caller holds the lock
+    private void transmit(Pending pending) {
+        track(pending, System.nanoTime());
+        byte[] packet = pending.packet;
+        writer.execute(() -> send(packet, List.of(pending)));
+    }
+
+    // Caller holds the lock
+    private void transmit(Batch batch) {
+        long now = System.nanoTime();
+        for (Pending pending : batch.members()) {
+            track(pending, now);
+        }
+        writer.execute(() -> send(batch.bytes(), batch.members()));
+    }
+
+    // Runs on the writer thread; a failed write takes its commands out of the window and fails them
+    private void send(byte[] bytes, List<Pending> members) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+        }
+        if (write(bytes)) {
+            return;
+        }
+        List<Pending> failed = new ArrayList<>(members.size());
+        synchronized (lock) {
+            for (Pending pending : members) {
+                if (inFlight.remove(pending)) {
+                    pending.timeout.cancel(false);
+                    failed.add(pending);
+                }
+            }
+            if (!closed) {
+                fillWindow();
+            }
+        }
+        failAll(failed);
+    }
+
+    private boolean write(byte[] bytes) {
+        int written;
+        try {
+            written = channel.write(bytes, 0, bytes.length);
+        } catch (RuntimeException e) {
+            LoggingUtil.logError(logger, "Command Send", "Error sending command to " + portName, e);
+            written = -1;
+        }
+        if (written != bytes.length) {
+            LoggingUtil.logSerialEvent(logger, "SEND_ERROR", portName,
+                String.format("Failed to write all bytes: %d/%d", written, bytes.length));
+            return false;
+        }
+        return true;
+    }
+
+    // Caller holds the lock
+    private void track(Pending pending, long sentNanos) {
+        pending.attempts++;
+        pending.sentNanos = sentNanos;
+        if (pending.attempts == 1) {
+            lastSentNanos.put(pending.actuatorId(), sentNanos);
+        }
+        inFlight.add(pending);
+        pending.timeout = timer.schedule(() -> onTimeout(pending), ackTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Caller holds the lock
+    private void expectDuplicates(Pending pending, int count, long now) {
+        if (count < 1) {
+            return;
+        }
+        DuplicateAcks expected = duplicates.computeIfAbsent(pending.key(), k -> new DuplicateAcks());
+        if (expected.expiresNanos - now < 0) {
+            expected.remaining = 0;
+        }
+        expected.remaining += count;
+        expected.expiresNanos = now + ackTimeoutNanos;
+    }
+
+    // Caller holds the lock
+    private boolean isExpectedDuplicate(int key, long now) {
+        DuplicateAcks expected = duplicates.get(key);
+        if (expected == null) {
+            return false;
+        }
+        if (expected.expiresNanos - now < 0) {
+            duplicates.remove(key);
+            return false;
+        }
+        if (--expected.remaining == 0) {
+            duplicates.remove(key);
+        }
+        return true;
+    }
+
+    // Caller holds the lock
+    private void fillWindow() {
+        while (inFlight.size() < window && !queued.isEmpty()) {
+            Pending next = queued.poll();
+            if (next.batch == null) {
+                queuedByActuator.remove(next.actuatorId(), next);
+                transmit(next);
+            } else {
+                // The rest of the group was queued right behind its first command
+                for (int i = 1; i < next.batch.members().size(); i++) {
+                    queued.poll();
+                }
+                transmit(next.batch);
+            }
+        }
+    }
+
+    private void failAll(List<Pending> failed) {
+        for (Pending pending : failed) {
+            pending.result.completeExceptionally(new IllegalStateException(
+                "Failed to write command " + pending.command.command() + " to " + portName));
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight.size();
+        }
+    }
+
+    /**
+     * Commands waiting to be sent, in the queue or for their actuator's minimum interval
+     */
+    public int getQueued() {
+        synchronized (lock) {
+            return queued.size() + held.size();
+        }
+    }
+
+    public long getAcknowledged() {
+        return acknowledged.sum();
+    }
+
+    public long getRetransmits() {
+        return retransmits.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getUnmatchedAcks() {
+        return unmatchedAcks.sum();
+    }
+
+    /**
+     * Commands replaced by a newer command to the same actuator before they were sent
+     */
+    public long getSuperseded() {
+        return superseded.sum();
+    }
+
+    /**
+     * Acks discarded as the extra answers to a retransmitted command
+     */
+    public long getDuplicateAcks() {
+        return duplicateAcks.sum();
+    }
+
+    /**
+     * Round-trip latency per actuator, or null when no command to it has been acknowledged
+     * on its first transmission yet
+     */
+    public CommandLatency getLatency(int actuatorId) {
+        LatencyTracker tracker = latencies.get(actuatorId);
+        return tracker != null ? tracker.snapshot(actuatorId) : null;
+    }
+
+    public List<CommandLatency> getLatencies() {
+        List<CommandLatency> result = new ArrayList<>(latencies.size());
+        latencies.forEach((id, tracker) -> result.add(tracker.snapshot(id)));
+        return result;
+    }
+
+    /**
+     * Fails every queued and in-flight command; acks arriving afterwards are ignored
+     */
+    @Override
+    public void close() {
+        List<Pending> abandoned = new ArrayList<>();
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Pending pending : inFlight) {
+                pending.timeout.cancel(false);
+            }
+            abandoned.addAll(inFlight);
+            abandoned.addAll(queued);
+            abandoned.addAll(held.values());
+            inFlight.clear();
+            queued.clear();
+            held.clear();
+            queuedByActuator.clear();
+        }
+        // Frames still waiting for the writer see the channel closed and are dropped
+        writer.shutdown();
+        for (Pending pending : abandoned) {
+            pending.result.completeExceptionally(new IllegalStateException(
+                "Command channel for " + portName + " closed before command " + pending.command.command() + " was acknowledged"));
+        }
+        if (!abandoned.isEmpty()) {
+            LoggingUtil.logSerialEvent(logger, "COMMANDS_ABANDONED", portName,
+                String.format("%d unacknowledged commands failed on close", abandoned.size()));
+        }
+    }
+}
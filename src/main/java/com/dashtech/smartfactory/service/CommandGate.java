@@ -0,0 +1,130 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Admission control for operator commands. Every operator session draws from its own token
+ * bucket, so a flooding script or a stuck toggle is cut off before it reaches a field bus
+ * or {@code COMMAND_LOG}, while other sessions keep their full rate. Also counts what the
+ * command path suppresses: commands refused here and commands superseded in a port's queue.
+ */
+public class CommandGate {
+    private static final Logger logger = LogManager.getLogger(CommandGate.class);
+
+    public static final double DEFAULT_RATE_PER_SECOND = 5.0;
+    public static final int DEFAULT_BURST = 10;
+
+    private static final CommandGate instance = new CommandGate(
+        Double.parseDouble(System.getProperty("smartfactory.command.ratePerSecond", String.valueOf(DEFAULT_RATE_PER_SECOND))),
+        Integer.getInteger("smartfactory.command.burst", DEFAULT_BURST));
+
+    private final double ratePerNano;
+    private final int burst;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder superseded = new LongAdder();
+
+    private static final class TokenBucket {
+        double tokens;
+        long refilledNanos;
+        long rateLimited;
+        boolean limiting;
+
+        TokenBucket(int burst, long now) {
+            tokens = burst;
+            refilledNanos = now;
+        }
+    }
+
+    /**
+     * @param ratePerSecond Sustained commands per second per session; 0 or less disables the limit
+     * @param burst Commands a session may send at once after being idle
+     */
+    public CommandGate(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+    }
+
+    public static CommandGate getInstance() {
+        return instance;
+    }
+
+    /**
+     * Takes one token from the operator's bucket. A group command is one operator action
+     * and costs one token however many actuators it sets.
+     * @return false when the operator has exhausted the rate and the command must be dropped
+     */
+    public boolean tryAcquire(String operatorId) {
+        if (ratePerNano <= 0) {
+            admitted.increment();
+            return true;
+        }
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.computeIfAbsent(operatorId, id -> new TokenBucket(burst, now));
+        synchronized (bucket) {
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.refilledNanos) * ratePerNano);
+            bucket.refilledNanos = now;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                bucket.limiting = false;
+                admitted.increment();
+                return true;
+            }
+            bucket.rateLimited++;
+            // Log the start of a flood, not every command in it
+            if (!bucket.limiting) {
+                bucket.limiting = true;
+                logger.warn("Operator {} exceeded {} commands/s, dropping commands", operatorId,
+                    ratePerNano * TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+        rateLimited.increment();
+        return false;
+    }
+
+    /**
+     * Drops the operator's bucket when its session ends
+     */
+    public void forget(String operatorId) {
+        buckets.remove(operatorId);
+    }
+
+    void recordSuperseded() {
+        superseded.increment();
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * Commands replaced by a newer command to the same actuator before they reached the port
+     */
+    public long getSuperseded() {
+        return superseded.sum();
+    }
+
+    /**
+     * Commands this session has had dropped by the rate limit
+     */
+    public long getRateLimited(String operatorId) {
+        TokenBucket bucket = buckets.get(operatorId);
+        if (bucket == null) {
+            return 0;
+        }
+        synchronized (bucket) {
+            return bucket.rateLimited;
+        }
+    }
+}
@@ -1,43 +1,63 @@
 package com.dashtech.smartfactory.service;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-import javax.servlet.ServletContextEvent;
-import javax.servlet.ServletContextListener;
-import javax.servlet.annotation.WebListener;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.h2.jdbcx.JdbcConnectionPool;
 
+import com.dashtech.smartfactory.jfr.DatabaseCommitEvent;
+import com.dashtech.smartfactory.metrics.PipelineMetrics;
 import com.dashtech.smartfactory.model.ActuatorCommand;
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.AlarmSeverity;
+import com.dashtech.smartfactory.model.Anomaly;
+import com.dashtech.smartfactory.model.AnomalyKind;
 import com.dashtech.smartfactory.model.CommandLog;
 import com.dashtech.smartfactory.model.DatabaseConfig;
+import com.dashtech.smartfactory.model.SensorBatch;
 import com.dashtech.smartfactory.model.SensorData;
 import com.dashtech.smartfactory.util.LoggingUtil;
 
-@WebListener
-public class DatabaseService implements AutoCloseable, ServletContextListener {
+public class DatabaseService implements AutoCloseable {
     private static final Logger logger = LogManager.getLogger(DatabaseService.class);
     private static final AtomicReference<DatabaseService> instance = new AtomicReference<>();
     
+    // Columns every table must have before the service writes to it
+    private static final Map<String, List<String>> REQUIRED_COLUMNS = new LinkedHashMap<>();
+    static {
+        REQUIRED_COLUMNS.put("SENSOR_DATA", List.of("ID", "SENSOR_ID", "DATA_TYPE", "VALUE", "TIMESTAMP"));
+        REQUIRED_COLUMNS.put("COMMAND_LOG", List.of("ID", "ACTUATOR_ID", "COMMAND_LOG", "SUCCESS", "ERROR_MESSAGE",
+            "TIMESTAMP", "OPERATOR_ID"));
+        REQUIRED_COLUMNS.put("ALARM_JOURNAL", List.of("ID", "RULE_ID", "SENSOR_ID", "SENSOR_TYPE", "STATE", "SEVERITY",
+            "VALUE", "LIMIT_VALUE", "MESSAGE", "TIMESTAMP"));
+        REQUIRED_COLUMNS.put("ANOMALY", List.of("ID", "SENSOR_ID", "SENSOR_TYPE", "KINDS", "VALUE", "EXPECTED",
+            "STD_DEV", "Z_SCORE", "CUSUM", "RATE_SCORE", "TIMESTAMP"));
+    }
+    
     private JdbcConnectionPool dataSource;
     private DatabaseConfig config;
+    // Committed batch sizes and times are exported only for the shared instance
+    private PipelineMetrics metrics = PipelineMetrics.getInstance();
     
-    // Required no-argument constructor for servlet container
-    public DatabaseService() {
-        // Default configuration will be set in contextInitialized
-    }
+    // The H2 pool keeps every connection it opens, so the pooled total is the peak active count
+    private final AtomicInteger pooledConnections = new AtomicInteger();
     
     private DatabaseService(DatabaseConfig config) {
         initialize(config);
@@ -54,34 +74,16 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
         startupDetails.put("minPoolSize", String.valueOf(config.minPoolSize()));
         LoggingUtil.logStartup(logger, "DatabaseService", startupDetails);
         
-        initializeDatabase();
-    }
-    
-    @Override
-    public void contextInitialized(ServletContextEvent sce) {
-        try {
-            // Configure H2 to properly handle JVM shutdown
-            System.setProperty("h2.exitOnShutdown", "true");
-            
-            String dbPath = System.getProperty("catalina.base") + "/data/smartfactory";
-            Path path = Paths.get(dbPath);
-            DatabaseConfig config = DatabaseConfig.createDefault(path);
-            initialize(config);
-            instance.set(this);
-            logger.info("DatabaseService initialized via servlet context");
-        } catch (Exception e) {
-            LoggingUtil.logError(logger, "Context Initialization", "Failed to initialize DatabaseService", e);
-            throw new RuntimeException("Failed to initialize DatabaseService", e);
-        }
+        ensureSchema();
     }
     
     @Override
-    public void contextDestroyed(ServletContextEvent sce) {
+    public void close() {
         try {
             logger.info("Starting database shutdown sequence");
             
-            // First set the instance to null to prevent new connections
-            instance.set(null);
+            // First clear the shared instance, if this is it, to prevent new connections
+            instance.compareAndSet(this, null);
             
             // Close connection pool first
             if (dataSource != null) {
@@ -92,6 +94,7 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
                     
                     // Dispose the pool - this will close all active connections
                     ((JdbcConnectionPool) dataSource).dispose();
+                    pooledConnections.set(0);
                     logger.info("Connection pool disposed successfully");
                 } catch (Exception e) {
                     logger.error("Error disposing connection pool", e);
@@ -134,10 +137,54 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
         });
     }
     
-    private void initializeDatabase() {
-        String dropCommandLogTable = "DROP TABLE IF EXISTS COMMAND_LOG";
-        String dropSensorDataTable = "DROP TABLE IF EXISTS SENSOR_DATA";
-
+    /**
+     * Creates a database service that is not shared through {@link #getInstance}, e.g. for load tests
+     */
+    public static DatabaseService createIsolated(DatabaseConfig config) {
+        DatabaseService service = new DatabaseService(config);
+        service.metrics = PipelineMetrics.createIsolated();
+        return service;
+    }
+    
+    private Connection borrowConnection() throws SQLException {
+        Connection conn = dataSource.getConnection();
+        pooledConnections.accumulateAndGet(dataSource.getActiveConnections(), Math::max);
+        return conn;
+    }
+    
+    private static void recordCommit(DatabaseCommitEvent event, String table, int rows, boolean committed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = table;
+            event.rows = rows;
+            event.committed = committed;
+            event.commit();
+        }
+    }
+    
+    public int getActiveConnections() {
+        JdbcConnectionPool pool = dataSource;
+        return pool != null ? pool.getActiveConnections() : 0;
+    }
+    
+    /**
+     * Connections held open by the pool but not currently borrowed
+     */
+    public int getIdleConnections() {
+        JdbcConnectionPool pool = dataSource;
+        return pool != null ? Math.max(0, pooledConnections.get() - pool.getActiveConnections()) : 0;
+    }
+    
+    public int getMaxConnections() {
+        JdbcConnectionPool pool = dataSource;
+        return pool != null ? pool.getMaxConnections() : 0;
+    }
+    
+    /**
+     * Creates missing tables and indexes and verifies that existing ones have the columns
+     * this version writes. Existing data is never dropped, so history survives restarts.
+     */
+    private void ensureSchema() {
         String createSensorDataTable = """
             CREATE TABLE IF NOT EXISTS SENSOR_DATA (
                 ID BIGINT AUTO_INCREMENT PRIMARY KEY,
@@ -160,65 +207,90 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
                  )
         """;
 
-        String verifyTablesQuery = """
-            SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE 
-            FROM INFORMATION_SCHEMA.COLUMNS 
-            WHERE TABLE_NAME IN ('COMMAND_LOG', 'SENSOR_DATA')
-            ORDER BY TABLE_NAME, ORDINAL_POSITION
+        String createAlarmJournalTable = """
+            CREATE TABLE IF NOT EXISTS ALARM_JOURNAL (
+                ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+                RULE_ID VARCHAR(100) NOT NULL,
+                SENSOR_ID INT NOT NULL,
+                SENSOR_TYPE VARCHAR(50),
+                STATE VARCHAR(10) NOT NULL,
+                SEVERITY VARCHAR(10) NOT NULL,
+                "VALUE" DOUBLE NOT NULL,
+                LIMIT_VALUE DOUBLE NOT NULL,
+                MESSAGE VARCHAR(255),
+                "TIMESTAMP" TIMESTAMP NOT NULL
+            )
+        """;
+
+        String createAnomalyTable = """
+            CREATE TABLE IF NOT EXISTS ANOMALY (
+                ID BIGINT AUTO_INCREMENT PRIMARY KEY,
+                SENSOR_ID INT NOT NULL,
+                SENSOR_TYPE VARCHAR(50),
+                KINDS VARCHAR(64) NOT NULL,
+                "VALUE" DOUBLE NOT NULL,
+                EXPECTED DOUBLE NOT NULL,
+                STD_DEV DOUBLE NOT NULL,
+                Z_SCORE DOUBLE NOT NULL,
+                CUSUM DOUBLE NOT NULL,
+                RATE_SCORE DOUBLE NOT NULL,
+                "TIMESTAMP" TIMESTAMP NOT NULL
+            )
+        """;
+
+        String createSensorTimeIndex = """
+            CREATE INDEX IF NOT EXISTS IDX_SENSOR_DATA_SENSOR_TIME ON SENSOR_DATA (SENSOR_ID, TIMESTAMP)
+        """;
+
+        String verifyColumnsQuery = """
+            SELECT TABLE_NAME, COLUMN_NAME
+            FROM INFORMATION_SCHEMA.COLUMNS
+            WHERE TABLE_SCHEMA = CURRENT_SCHEMA
+              AND TABLE_NAME IN ('COMMAND_LOG', 'SENSOR_DATA', 'ALARM_JOURNAL', 'ANOMALY')
         """;
         
-        String transactionId = UUID.randomUUID().toString();
-        LoggingUtil.logTransaction(logger, transactionId, "START", "Initializing database tables");
+        long started = System.nanoTime();
+        long transactionId = LoggingUtil.newTransactionId();
+        LoggingUtil.logTransaction(logger, transactionId, "START", "Ensuring database schema");
         
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = borrowConnection()) {
             conn.setAutoCommit(false);
             try {
-                //Drop Table if Exists
-                try (PreparedStatement stmt = conn.prepareStatement(dropCommandLogTable)) {
-                    stmt.execute();
-                    LoggingUtil.logDatabaseOperation(logger, "DROP_TABLE", "DROPPED command_log table");
-                }
-                try (PreparedStatement stmt = conn.prepareStatement(dropSensorDataTable)) {
-                    stmt.execute();
-                    LoggingUtil.logDatabaseOperation(logger, "DROP_TABLE", "DROPPED sensor_data table");
-                }
-
-                // Create tables
-                try (PreparedStatement stmt = conn.prepareStatement(createSensorDataTable)) {
-                    stmt.execute();
-                    LoggingUtil.logDatabaseOperation(logger, "CREATE_TABLE", "Created sensor_data table");
-                }
-                try (PreparedStatement stmt = conn.prepareStatement(createCommandLogTable)) {
-                    stmt.execute();
-                    LoggingUtil.logDatabaseOperation(logger, "CREATE_TABLE", "Created command_log table");
+                for (String ddl : new String[] {
+                        createSensorDataTable, createCommandLogTable, createAlarmJournalTable,
+                        createAnomalyTable, createSensorTimeIndex}) {
+                    try (PreparedStatement stmt = conn.prepareStatement(ddl)) {
+                        stmt.execute();
+                    }
                 }
-
-                // Verify table structure
-                try (PreparedStatement stmt = conn.prepareStatement(verifyTablesQuery)) {
-                    var rs = stmt.executeQuery();
-                    StringBuilder schema = new StringBuilder("Database Schema:\n");
-                    String currentTable = null;
+                
+                Map<String, Set<String>> actual = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(verifyColumnsQuery);
+                     ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
-                        String tableName = rs.getString("table_name");
-                        if (!tableName.equals(currentTable)) {
-                            schema.append("\nTable: ").append(tableName).append("\n");
-                            currentTable = tableName;
+                        actual.computeIfAbsent(rs.getString(1), t -> new TreeSet<>()).add(rs.getString(2));
+                    }
+                }
+                List<String> missing = new ArrayList<>();
+                REQUIRED_COLUMNS.forEach((table, columns) -> {
+                    for (String column : columns) {
+                        if (!actual.getOrDefault(table, Set.of()).contains(column)) {
+                            missing.add(table + "." + column);
                         }
-                        schema.append("  - ")
-                              .append(rs.getString("column_name"))
-                              .append(" (")
-                              .append(rs.getString("data_type"))
-                              .append(")\n");
                     }
-                    logger.info(schema.toString());
+                });
+                if (!missing.isEmpty()) {
+                    throw new SQLException("Existing tables are missing columns " + missing);
                 }
-
+                
                 conn.commit();
-                LoggingUtil.logTransaction(logger, transactionId, "COMMIT", "Database tables initialized successfully");
+                LoggingUtil.logTransaction(logger, transactionId, "COMMIT", "Database schema verified");
+                logger.info("Database schema ready: {} tables verified in {} ms", REQUIRED_COLUMNS.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
             } catch (SQLException e) {
                 conn.rollback();
-                LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to initialize database tables");
-                LoggingUtil.logError(logger, "Database Initialization", "Failed to create tables", e);
+                LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to ensure database schema");
+                LoggingUtil.logError(logger, "Database Initialization", "Failed to create or verify tables", e);
                 throw e;
             }
         } catch (SQLException e) {
@@ -233,11 +305,11 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
             ) VALUES (?, ?, ?, ?)
         """;
         
-        String transactionId = UUID.randomUUID().toString();
+        long transactionId = LoggingUtil.newSampledTransactionId(logger);
         LoggingUtil.logTransaction(logger, transactionId, "START", "Storing sensor data");
         LoggingUtil.logSensorData(logger, data.sensorId(), data.type(), data.value());
         
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = borrowConnection()) {
             conn.setAutoCommit(false);
             try {
                 try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -248,8 +320,8 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
                     stmt.executeUpdate();
                 }
                 conn.commit();
-                LoggingUtil.logTransaction(logger, transactionId, "COMMIT", 
-                    String.format("Stored sensor data: ID=%d, Type=%s", data.sensorId(), data.type()));
+                LoggingUtil.logTransaction(logger, transactionId, "COMMIT",
+                    "Stored sensor data for sensor {}", data.sensorId());
             } catch (SQLException e) {
                 conn.rollback();
                 LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to store sensor data");
@@ -261,6 +333,327 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
         }
     }
     
+    /**
+     * Stores a batch of sensor readings in a single JDBC batch and transaction
+     */
+    public void storeSensorDataBatch(List<SensorData> batch) {
+        SensorBatch rows = new SensorBatch(batch.size());
+        for (SensorData data : batch) {
+            rows.add(data);
+        }
+        storeSensorBatch(rows, 0, rows.size());
+    }
+    
+    /**
+     * Stores rows [from, to) of a batch in a single JDBC batch and transaction. Values are bound
+     * straight from the batch's columns; one Timestamp is reused for every row, since the
+     * driver converts the value as it is set.
+     */
+    public void storeSensorBatch(SensorBatch batch, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        String sql = """
+            INSERT INTO SENSOR_DATA (
+                SENSOR_ID, DATA_TYPE, "VALUE", TIMESTAMP
+            ) VALUES (?, ?, ?, ?)
+        """;
+        int count = to - from;
+        
+        long transactionId = LoggingUtil.newSampledTransactionId(logger);
+        LoggingUtil.logTransaction(logger, transactionId, "START", "Storing sensor data batch");
+        
+        try (Connection conn = borrowConnection()) {
+            conn.setAutoCommit(false);
+            DatabaseCommitEvent commitEvent = new DatabaseCommitEvent();
+            commitEvent.begin();
+            try {
+                long started = System.nanoTime();
+                Timestamp timestamp = new Timestamp(0);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = from; i < to; i++) {
+                        long epochNanos = batch.epochNanos(i);
+                        timestamp.setTime(Math.floorDiv(epochNanos, 1_000_000L));
+                        timestamp.setNanos((int) Math.floorMod(epochNanos, 1_000_000_000L));
+                        stmt.setInt(1, batch.sensorId(i));
+                        stmt.setString(2, batch.type(i));
+                        stmt.setDouble(3, batch.value(i));
+                        stmt.setTimestamp(4, timestamp);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                recordCommit(commitEvent, "SENSOR_DATA", count, true);
+                metrics.recordBatch(count, System.nanoTime() - started);
+                LoggingUtil.logTransaction(logger, transactionId, "COMMIT",
+                    "Stored {} sensor readings", count);
+            } catch (SQLException e) {
+                conn.rollback();
+                recordCommit(commitEvent, "SENSOR_DATA", count, false);
+                LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to store sensor data batch");
+                LoggingUtil.logError(logger, "Store Sensor Data Batch", "Database operation failed", e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
+    /**
+     * Streams the stored readings of one sensor in [from, to], oldest first
+     * @return Number of readings delivered
+     */
+    public int forEachSensorReading(int sensorId, Instant from, Instant to, PointConsumer consumer) {
+        String sql = """
+            SELECT TIMESTAMP, "VALUE" FROM SENSOR_DATA
+            WHERE SENSOR_ID = ? AND TIMESTAMP BETWEEN ? AND ?
+            ORDER BY TIMESTAMP
+        """;
+        
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, sensorId);
+            stmt.setTimestamp(2, Timestamp.from(from));
+            stmt.setTimestamp(3, Timestamp.from(to));
+            stmt.setFetchSize(1000);
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getTimestamp(1).getTime(), rs.getDouble(2));
+                    count++;
+                }
+            }
+            LoggingUtil.logDatabaseOperation(logger, "RANGE_QUERY",
+                "Read {} readings for sensor {}", count, sensorId);
+            return count;
+        } catch (SQLException e) {
+            LoggingUtil.logError(logger, "Sensor Range Query", "Database operation failed", e);
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
+    /**
+     * Copies the newest readings of a sensor older than beforeMillis into the arrays, newest first
+     * @return Number of readings copied, at most the length of the arrays
+     */
+    public int readRecentReadings(int sensorId, long beforeMillis, long[] timestampsOut, double[] valuesOut) {
+        String sql = """
+            SELECT TIMESTAMP, "VALUE" FROM SENSOR_DATA
+            WHERE SENSOR_ID = ? AND TIMESTAMP < ?
+            ORDER BY TIMESTAMP DESC
+            LIMIT ?
+        """;
+        
+        int limit = Math.min(timestampsOut.length, valuesOut.length);
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, sensorId);
+            stmt.setTimestamp(2, new Timestamp(beforeMillis));
+            stmt.setInt(3, limit);
+            stmt.setFetchSize(1000);
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next() && count < limit) {
+                    timestampsOut[count] = rs.getTimestamp(1).getTime();
+                    valuesOut[count] = rs.getDouble(2);
+                    count++;
+                }
+            }
+            LoggingUtil.logDatabaseOperation(logger, "RECENT_QUERY",
+                "Read {} recent readings for sensor {}", count, sensorId);
+            return count;
+        } catch (SQLException e) {
+            LoggingUtil.logError(logger, "Recent Readings Query", "Database operation failed", e);
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
+    /**
+     * Appends raised and cleared alarms to the alarm journal in one transaction
+     */
+    public void storeAlarmEvents(List<AlarmEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        String sql = """
+            INSERT INTO ALARM_JOURNAL (
+                RULE_ID, SENSOR_ID, SENSOR_TYPE, STATE, SEVERITY, "VALUE", LIMIT_VALUE, MESSAGE, "TIMESTAMP"
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+        
+        long transactionId = LoggingUtil.newSampledTransactionId(logger);
+        LoggingUtil.logTransaction(logger, transactionId, "START", "Storing alarm events");
+        
+        try (Connection conn = borrowConnection()) {
+            conn.setAutoCommit(false);
+            DatabaseCommitEvent commitEvent = new DatabaseCommitEvent();
+            commitEvent.begin();
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (AlarmEvent event : events) {
+                        stmt.setString(1, event.ruleId());
+                        stmt.setInt(2, event.sensorId());
+                        stmt.setString(3, event.sensorType());
+                        stmt.setString(4, event.state().name());
+                        stmt.setString(5, event.severity().name());
+                        stmt.setDouble(6, event.value());
+                        stmt.setDouble(7, event.limit());
+                        stmt.setString(8, event.message());
+                        stmt.setTimestamp(9, Timestamp.from(event.timestamp()));
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                recordCommit(commitEvent, "ALARM_JOURNAL", events.size(), true);
+                LoggingUtil.logTransaction(logger, transactionId, "COMMIT",
+                    "Stored {} alarm events", events.size());
+            } catch (SQLException e) {
+                conn.rollback();
+                recordCommit(commitEvent, "ALARM_JOURNAL", events.size(), false);
+                LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to store alarm events");
+                LoggingUtil.logError(logger, "Store Alarm Events", "Database operation failed", e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
+    /**
+     * Returns the most recent alarm journal entries, newest first
+     */
+    public List<AlarmEvent> recentAlarmEvents(int limit) {
+        String sql = """
+            SELECT RULE_ID, SENSOR_ID, SENSOR_TYPE, STATE, SEVERITY, "VALUE", LIMIT_VALUE, MESSAGE, "TIMESTAMP"
+            FROM ALARM_JOURNAL ORDER BY ID DESC LIMIT ?
+        """;
+        
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+            List<AlarmEvent> events = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    events.add(new AlarmEvent(
+                        rs.getString(1),
+                        rs.getInt(2),
+                        rs.getString(3),
+                        AlarmEvent.State.valueOf(rs.getString(4)),
+                        AlarmSeverity.valueOf(rs.getString(5)),
+                        rs.getDouble(6),
+                        rs.getDouble(7),
+                        rs.getString(8),
+                        rs.getTimestamp(9).toInstant()
+                    ));
+                }
+            }
+            return events;
+        } catch (SQLException e) {
+            LoggingUtil.logError(logger, "Alarm Journal Query", "Database operation failed", e);
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
+    /**
+     * Stores flagged readings in the anomaly table in one transaction
+     */
+    public void storeAnomalies(List<Anomaly> anomalies) {
+        if (anomalies.isEmpty()) {
+            return;
+        }
+        String sql = """
+            INSERT INTO ANOMALY (
+                SENSOR_ID, SENSOR_TYPE, KINDS, "VALUE", EXPECTED, STD_DEV, Z_SCORE, CUSUM, RATE_SCORE, "TIMESTAMP"
+            ) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+        
+        long transactionId = LoggingUtil.newSampledTransactionId(logger);
+        LoggingUtil.logTransaction(logger, transactionId, "START", "Storing anomalies");
+        
+        try (Connection conn = borrowConnection()) {
+            conn.setAutoCommit(false);
+            DatabaseCommitEvent commitEvent = new DatabaseCommitEvent();
+            commitEvent.begin();
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (Anomaly anomaly : anomalies) {
+                        stmt.setInt(1, anomaly.sensorId());
+                        stmt.setString(2, anomaly.type());
+                        stmt.setString(3, anomaly.describeKinds());
+                        stmt.setDouble(4, anomaly.value());
+                        stmt.setDouble(5, anomaly.expected());
+                        stmt.setDouble(6, anomaly.stdDev());
+                        stmt.setDouble(7, anomaly.zScore());
+                        stmt.setDouble(8, anomaly.cusum());
+                        stmt.setDouble(9, anomaly.rateScore());
+                        stmt.setTimestamp(10, Timestamp.from(anomaly.timestamp()));
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                recordCommit(commitEvent, "ANOMALY", anomalies.size(), true);
+                LoggingUtil.logTransaction(logger, transactionId, "COMMIT",
+                    "Stored {} anomalies", anomalies.size());
+            } catch (SQLException e) {
+                conn.rollback();
+                recordCommit(commitEvent, "ANOMALY", anomalies.size(), false);
+                LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to store anomalies");
+                LoggingUtil.logError(logger, "Store Anomalies", "Database operation failed", e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
+    /**
+     * Returns the most recent anomalies, newest first, for one sensor or for all when sensorId is null
+     */
+    public List<Anomaly> recentAnomalies(Integer sensorId, int limit) {
+        String sql = sensorId == null
+            ? """
+                SELECT SENSOR_ID, SENSOR_TYPE, KINDS, "VALUE", EXPECTED, STD_DEV, Z_SCORE, CUSUM, RATE_SCORE, "TIMESTAMP"
+                FROM ANOMALY ORDER BY ID DESC LIMIT ?
+            """
+            : """
+                SELECT SENSOR_ID, SENSOR_TYPE, KINDS, "VALUE", EXPECTED, STD_DEV, Z_SCORE, CUSUM, RATE_SCORE, "TIMESTAMP"
+                FROM ANOMALY WHERE SENSOR_ID = ? ORDER BY ID DESC LIMIT ?
+            """;
+        
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (sensorId != null) {
+                stmt.setInt(index++, sensorId);
+            }
+            stmt.setInt(index, limit);
+            List<Anomaly> anomalies = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    anomalies.add(new Anomaly(
+                        rs.getInt(1),
+                        rs.getString(2),
+                        AnomalyKind.parse(rs.getString(3)),
+                        rs.getDouble(4),
+                        rs.getDouble(5),
+                        rs.getDouble(6),
+                        rs.getDouble(7),
+                        rs.getDouble(8),
+                        rs.getDouble(9),
+                        rs.getTimestamp(10).toInstant()
+                    ));
+                }
+            }
+            return anomalies;
+        } catch (SQLException e) {
+            LoggingUtil.logError(logger, "Anomaly Query", "Database operation failed", e);
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
     public void logCommand(CommandLog log) {
         String sql = """
             INSERT INTO COMMAND_LOG (
@@ -268,12 +661,12 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
             ) VALUES (?, ?, ?, ?, ?, ?)
         """;
         
-        String transactionId = UUID.randomUUID().toString();
+        long transactionId = LoggingUtil.newTransactionId();
         LoggingUtil.logTransaction(logger, transactionId, "START", "Logging command execution");
         LoggingUtil.logCommand(logger, log.command(), log.success(), 
             String.format("Actuator=%d, Operator=%s", log.actuatorId(), log.operatorId()));
         
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = borrowConnection()) {
             conn.setAutoCommit(false);
             try {
                 try (PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -298,6 +691,55 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
         }
     }
     
+    /**
+     * Stores the outcomes of a command group in one batched transaction
+     */
+    public void logCommands(List<CommandLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        String sql = """
+            INSERT INTO COMMAND_LOG (
+                ACTUATOR_ID, COMMAND_LOG, SUCCESS, ERROR_MESSAGE, TIMESTAMP, OPERATOR_ID
+            ) VALUES (?, ?, ?, ?, ?, ?)
+        """;
+        
+        long transactionId = LoggingUtil.newTransactionId();
+        LoggingUtil.logTransaction(logger, transactionId, "START", "Logging command group");
+        
+        try (Connection conn = borrowConnection()) {
+            conn.setAutoCommit(false);
+            DatabaseCommitEvent commitEvent = new DatabaseCommitEvent();
+            commitEvent.begin();
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (CommandLog log : logs) {
+                        stmt.setInt(1, log.actuatorId());
+                        stmt.setString(2, log.command());
+                        stmt.setBoolean(3, log.success());
+                        stmt.setString(4, log.errorMessage());
+                        stmt.setTimestamp(5, Timestamp.from(log.timestamp()));
+                        stmt.setString(6, log.operatorId());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                conn.commit();
+                recordCommit(commitEvent, "COMMAND_LOG", logs.size(), true);
+                LoggingUtil.logTransaction(logger, transactionId, "COMMIT",
+                    "Stored {} command logs", logs.size());
+            } catch (SQLException e) {
+                conn.rollback();
+                recordCommit(commitEvent, "COMMAND_LOG", logs.size(), false);
+                LoggingUtil.logTransaction(logger, transactionId, "ROLLBACK", "Failed to store command logs");
+                LoggingUtil.logError(logger, "Log Commands", "Database operation failed", e);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Database operation failed", e);
+        }
+    }
+    
     public void logCommand(ActuatorCommand cmd, boolean success, String error, String operatorId) {
         CommandLog log = success ? 
             CommandLog.success(cmd, operatorId) : 
@@ -305,8 +747,4 @@ public class DatabaseService implements AutoCloseable, ServletContextListener {
         logCommand(log);
     }
     
-    @Override
-    public void close() {
-        contextDestroyed(null);
-    }
 }
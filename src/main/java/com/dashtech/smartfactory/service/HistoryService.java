@@ -0,0 +1,100 @@
+package com.dashtech.smartfactory.service;
+
+import java.time.Instant;
+
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Answers recent-window history queries from the in-memory ring buffers and falls back
+ * to the H2 range query only when the requested window reaches further back than what
+ * is retained for the sensor. The first such fallback for a sensor also backfills its
+ * ring from the database, so later queries over the same window stay in memory.
+ * <p>
+ * Long ranges can be downsampled to a chart's pixel width while they stream from either source.
+ * Configuration: smartfactory.history.maxWidth (default 4096).
+ */
+public class HistoryService {
+    private static final HistoryService instance = new HistoryService(SensorHistoryBuffer.getInstance());
+    // Caps the points a downsampled query returns, whatever width is asked for
+    private static final int MAX_WIDTH = Integer.getInteger("smartfactory.history.maxWidth", 4096);
+
+    public enum Source {
+        MEMORY,
+        DATABASE
+    }
+
+    private final SensorHistoryBuffer buffer;
+    private volatile DatabaseService databaseService;
+
+    public HistoryService(SensorHistoryBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public static HistoryService getInstance() {
+        return instance;
+    }
+
+    public void setDatabaseService(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
+
+    /**
+     * Streams the points of a sensor in [fromMillis, toMillis], oldest first
+     * @return Where the points came from
+     */
+    public Source query(int sensorId, long fromMillis, long toMillis, PointConsumer consumer) {
+        DatabaseService db = databaseService;
+        if (db == null || buffer.covers(sensorId, fromMillis)
+                || (buffer.claimBackfill(sensorId) && backfill(db, sensorId) && buffer.covers(sensorId, fromMillis))) {
+            buffer.forEach(sensorId, fromMillis, toMillis, consumer);
+            return Source.MEMORY;
+        }
+        db.forEachSensorReading(sensorId, Instant.ofEpochMilli(fromMillis), Instant.ofEpochMilli(toMillis), consumer);
+        return Source.DATABASE;
+    }
+
+    private boolean backfill(DatabaseService db, int sensorId) {
+        long oldest = buffer.oldestTimestamp(sensorId);
+        long before = oldest == Long.MIN_VALUE ? System.currentTimeMillis() + 1 : oldest;
+        long[] timestamps = new long[buffer.getPointsPerSensor()];
+        double[] values = new double[timestamps.length];
+        int count = db.readRecentReadings(sensorId, before, timestamps, values);
+        return buffer.backfill(sensorId, timestamps, values, count) > 0;
+    }
+
+    /**
+     * Runs a query and renders it as {"sensorId", "from", "to", "source", "points": [[t, v], ...]}
+     */
+    public ObjectNode queryAsJson(int sensorId, long fromMillis, long toMillis) {
+        return queryAsJson(sensorId, fromMillis, toMillis, 0);
+    }
+
+    /**
+     * Runs a query downsampled with {@link LttbDownsampler} to at most width points, adding
+     * "width" and "sampled" (the points read) to the rendering; a width of 0 returns every point
+     * @throws IllegalArgumentException if width is positive but below {@link LttbDownsampler#MIN_THRESHOLD}
+     */
+    public ObjectNode queryAsJson(int sensorId, long fromMillis, long toMillis, int width) {
+        ObjectNode node = JsonUtil.mapper().createObjectNode();
+        node.put("sensorId", sensorId);
+        node.put("from", fromMillis);
+        node.put("to", toMillis);
+        ArrayNode points = JsonUtil.mapper().createArrayNode();
+        PointConsumer render = (t, v) -> points.addArray().add(t).add(v);
+        Source source;
+        if (width > 0) {
+            LttbDownsampler downsampler = new LttbDownsampler(fromMillis, toMillis, Math.min(width, MAX_WIDTH));
+            source = query(sensorId, fromMillis, toMillis, downsampler);
+            downsampler.finish(render);
+            node.put("width", Math.min(width, MAX_WIDTH));
+            node.put("sampled", downsampler.getReceived());
+        } else {
+            source = query(sensorId, fromMillis, toMillis, render);
+        }
+        node.put("source", source.name().toLowerCase());
+        node.set("points", points);
+        return node;
+    }
+}
@@ -0,0 +1,190 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dashtech.smartfactory.alarm.AlarmEngine;
+import com.dashtech.smartfactory.alarm.AlarmJournal;
+import com.dashtech.smartfactory.anomaly.AnomalyDetector;
+import com.dashtech.smartfactory.anomaly.AnomalyJournal;
+import com.dashtech.smartfactory.model.DeadbandConfig;
+import com.dashtech.smartfactory.stats.StatisticsEngine;
+import com.dashtech.smartfactory.virtual.VirtualSensorEngine;
+
+/**
+ * The stages behind one {@link SensorIngestService} hub and the order they are wired in.
+ * {@link SmartFactoryService} wires the plant's singletons and {@link LoadTestRunner} a private
+ * set over an isolated hub, so a load test runs exactly the plant's pipeline.
+ * <p>
+ * Wiring follows plant startup in two steps: {@link #wire()} adds the in-memory stages, which
+ * need no storage, and {@link #attachStorage} adds the journals and the storage and broadcast
+ * tail once a database is open.
+ */
+final class IngestPipeline {
+    final SensorIngestService ingest;
+    final LatestValueStore latestValues;
+    final SensorHistoryBuffer history;
+    final StatisticsEngine statistics;
+    final VirtualSensorEngine virtualSensors;
+    final AlarmEngine alarms;
+    final StaleSensorWatchdog watchdog;
+    final AnomalyDetector anomalies;
+    // Null when report-by-exception is disabled
+    final ReportByExceptionFilter filter;
+
+    private final List<SensorIngestService.BatchListener> sinks = new ArrayList<>();
+    private AlarmJournal alarmJournal;
+    private AnomalyJournal anomalyJournal;
+    private SensorDataWriter writer;
+
+    private IngestPipeline(SensorIngestService ingest, LatestValueStore latestValues, SensorHistoryBuffer history,
+            StatisticsEngine statistics, VirtualSensorEngine virtualSensors, AlarmEngine alarms,
+            StaleSensorWatchdog watchdog, AnomalyDetector anomalies, ReportByExceptionFilter filter) {
+        this.ingest = ingest;
+        this.latestValues = latestValues;
+        this.history = history;
+        this.statistics = statistics;
+        this.virtualSensors = virtualSensors;
+        this.alarms = alarms;
+        this.watchdog = watchdog;
+        this.anomalies = anomalies;
+        this.filter = filter;
+    }
+
+    /**
+     * The plant's stages; their configuration files are loaded separately during startup
+     */
+    static IngestPipeline plant() {
+        return new IngestPipeline(SensorIngestService.getInstance(), LatestValueStore.getInstance(),
+            SensorHistoryBuffer.getInstance(), StatisticsEngine.getInstance(), VirtualSensorEngine.getInstance(),
+            AlarmEngine.getInstance(), StaleSensorWatchdog.getInstance(), AnomalyDetector.getInstance(),
+            SmartFactoryService.isReportByExceptionEnabled() ? ReportByExceptionFilter.getInstance() : null);
+    }
+
+    /**
+     * A private instance of every stage over the hub's own registry, configured from the same files as the plant
+     */
+    static IngestPipeline isolated(SensorIngestService ingest) {
+        SensorRegistry registry = ingest.getRegistry();
+        LatestValueStore latestValues = new LatestValueStore(registry);
+        StatisticsEngine statistics = StatisticsEngine.create(registry);
+        VirtualSensorEngine virtualSensors = VirtualSensorEngine.create(registry, latestValues, statistics, ingest);
+        virtualSensors.loadConfiguredDefinitions();
+        AlarmEngine alarms = new AlarmEngine(registry);
+        alarms.loadConfiguredRules();
+        StaleSensorWatchdog watchdog = StaleSensorWatchdog.create(registry, latestValues);
+        watchdog.loadConfiguredIntervals();
+        ReportByExceptionFilter filter = null;
+        if (SmartFactoryService.isReportByExceptionEnabled()) {
+            filter = new ReportByExceptionFilter(registry, DeadbandConfig.defaultsFromSystemProperties());
+            filter.loadConfiguredOverrides();
+        }
+        return new IngestPipeline(ingest, latestValues, SensorHistoryBuffer.create(registry), statistics,
+            virtualSensors, alarms, watchdog, AnomalyDetector.create(registry, latestValues), filter);
+    }
+
+    /**
+     * Adds the in-memory stages to the hub
+     */
+    void wire() {
+        ingest.addBatchListener(latestValues);
+        ingest.addBatchListener(history);
+        ingest.addBatchListener(statistics);
+
+        // Virtual sensors read the latest-value store and statistics, so they follow them
+        ingest.addBatchListener(virtualSensors);
+
+        // Alarms are evaluated inline; raised and cleared events are journaled once storage is attached
+        ingest.addBatchListener(alarms);
+
+        // Watch for sensors that stop reporting
+        watchdog.start();
+        ingest.addBatchListener(watchdog);
+
+        // Anomaly detection runs before report-by-exception so flagged readings are always stored and annotated
+        ingest.addBatchListener(anomalies);
+    }
+
+    /**
+     * Starts the alarm and anomaly journals and the writer on an opened database, then adds
+     * the writer and the other sinks as the tail of the hub
+     * @param writer Writer to start; configure its commit listener first
+     * @param broadcasters Further sinks, such as the dashboard broadcast
+     */
+    void attachStorage(DatabaseService database, SensorDataWriter writer,
+            SensorIngestService.BatchListener... broadcasters) {
+        alarmJournal = new AlarmJournal(database);
+        alarmJournal.start();
+        alarms.setJournal(alarmJournal);
+
+        anomalyJournal = new AnomalyJournal(database);
+        anomalyJournal.start();
+        anomalies.setJournal(anomalyJournal);
+
+        this.writer = writer;
+        writer.start();
+        sinks.add(writer);
+        sinks.addAll(List.of(broadcasters));
+
+        // Storage and broadcast only see meaningful changes unless report-by-exception is disabled
+        if (filter != null) {
+            sinks.forEach(filter::addDownstream);
+            filter.start();
+            ingest.addBatchListener(filter);
+        } else {
+            sinks.forEach(ingest::addBatchListener);
+        }
+    }
+
+    /**
+     * Readings handed to storage and broadcast so far
+     */
+    long getReported() {
+        return filter != null ? filter.getTotals().reported() : ingest.getReadingsIngested();
+    }
+
+    AlarmJournal getAlarmJournal() {
+        return alarmJournal;
+    }
+
+    AnomalyJournal getAnomalyJournal() {
+        return anomalyJournal;
+    }
+
+    /**
+     * Detaches every stage and closes the journals and the writer; the database stays open
+     */
+    void close() {
+        if (filter != null) {
+            ingest.removeBatchListener(filter);
+            // Held end points still reach the writer before it closes
+            filter.stop();
+        }
+        for (SensorIngestService.BatchListener sink : sinks) {
+            if (filter != null) {
+                filter.removeDownstream(sink);
+            }
+            ingest.removeBatchListener(sink);
+        }
+        ingest.removeBatchListener(latestValues);
+        ingest.removeBatchListener(history);
+        ingest.removeBatchListener(statistics);
+        ingest.removeBatchListener(virtualSensors);
+        ingest.removeBatchListener(watchdog);
+        watchdog.close();
+        ingest.removeBatchListener(anomalies);
+        if (anomalyJournal != null) {
+            anomalies.setJournal(null);
+            anomalyJournal.close();
+        }
+        ingest.removeBatchListener(alarms);
+        if (alarmJournal != null) {
+            alarms.setJournal(null);
+            alarmJournal.close();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        sinks.clear();
+    }
+}
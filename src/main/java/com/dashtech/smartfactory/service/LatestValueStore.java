@@ -0,0 +1,163 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dashtech.smartfactory.model.LatestValue;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+
+/**
+ * Latest value, timestamp and quality of every sensor, held in primitive arrays indexed by
+ * the {@link SensorRegistry} code. Each slot is guarded by a sequence counter: readers never
+ * block and retry only if they raced a write to the same sensor, so a full plant snapshot
+ * costs one pass over the arrays instead of a database query.
+ * <p>
+ * A reading older than the value already held, such as a late retransmission or a device
+ * whose buffered readings arrive after live ones, does not replace it and is counted instead.
+ */
+public class LatestValueStore implements SensorIngestService.BatchListener {
+    private static final LatestValueStore instance = new LatestValueStore(SensorRegistry.getInstance());
+
+    private final SensorRegistry registry;
+    // Even while stable, odd while a write is in progress
+    private final AtomicLongArray versions;
+    private final AtomicLongArray valueBits;
+    private final AtomicLongArray epochNanos;
+    private final AtomicIntegerArray qualities;
+    private final LongAdder outOfOrder = new LongAdder();
+
+    public LatestValueStore(SensorRegistry registry) {
+        this.registry = registry;
+        int capacity = registry.capacity();
+        this.versions = new AtomicLongArray(capacity);
+        this.valueBits = new AtomicLongArray(capacity);
+        this.epochNanos = new AtomicLongArray(capacity);
+        this.qualities = new AtomicIntegerArray(capacity);
+    }
+
+    public static LatestValueStore getInstance() {
+        return instance;
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code != SensorRegistry.NO_CODE) {
+                update(code, batch.value(i), batch.epochNanos(i), batch.quality(i));
+            }
+        }
+    }
+
+    /**
+     * Replaces a sensor's value unless the one held is newer; a reading with the same timestamp replaces it
+     * @return false if the reading was older than the value held and was dropped
+     */
+    public boolean update(int code, double value, long epochNanos, int quality) {
+        long version = beginWrite(code);
+        if (version != 0 && epochNanos < this.epochNanos.get(code)) {
+            // Nothing was written, so restoring the version leaves concurrent readers consistent
+            versions.set(code, version);
+            outOfOrder.increment();
+            return false;
+        }
+        valueBits.set(code, Double.doubleToRawLongBits(value));
+        this.epochNanos.set(code, epochNanos);
+        qualities.set(code, quality);
+        versions.set(code, version + 2);
+        return true;
+    }
+
+    /**
+     * Sets quality flags on a sensor's current value without changing the value
+     */
+    public void markQuality(int code, int flags, boolean set) {
+        long version = beginWrite(code);
+        int quality = qualities.get(code);
+        qualities.set(code, set ? quality | flags : quality & ~flags);
+        versions.set(code, version + 2);
+    }
+
+    private long beginWrite(int code) {
+        while (true) {
+            long version = versions.get(code);
+            if ((version & 1) == 0 && versions.compareAndSet(code, version, version + 1)) {
+                return version;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Returns the latest value of a sensor, or null if it has never reported
+     */
+    public LatestValue get(int sensorId) {
+        int code = registry.lookup(sensorId);
+        return code == SensorRegistry.NO_CODE ? null : read(code);
+    }
+
+    public double getValue(int code) {
+        while (true) {
+            long version = versions.get(code);
+            double value = Double.longBitsToDouble(valueBits.get(code));
+            if ((version & 1) == 0 && versions.get(code) == version) {
+                return value;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Time of a sensor's latest value in nanoseconds since the epoch, 0 if it has never reported
+     */
+    public long getEpochNanos(int code) {
+        return epochNanos.get(code);
+    }
+
+    /**
+     * Readings dropped because they were older than the sensor's latest value
+     */
+    public long getOutOfOrderCount() {
+        return outOfOrder.sum();
+    }
+
+    /**
+     * Consistent copy of every sensor that has reported at least once
+     */
+    public List<LatestValue> snapshot() {
+        int size = registry.size();
+        List<LatestValue> values = new ArrayList<>(size);
+        for (int code = 0; code < size; code++) {
+            LatestValue value = read(code);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private LatestValue read(int code) {
+        while (true) {
+            long version = versions.get(code);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            double value = Double.longBitsToDouble(valueBits.get(code));
+            long timestamp = epochNanos.get(code);
+            int quality = qualities.get(code);
+            if (versions.get(code) != version) {
+                continue;
+            }
+            if (version == 0) {
+                return null; // registered but never written
+            }
+            return new LatestValue(registry.sensorIdOf(code), registry.typeOf(code), value,
+                SensorBatch.toInstant(timestamp), quality);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.dashtech.smartfactory.service;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.DatabaseConfig;
+import com.dashtech.smartfactory.model.LoadProfile;
+import com.dashtech.smartfactory.model.LoadTestResult;
+import com.dashtech.smartfactory.stats.QuantileSketch;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.dashtech.smartfactory.websocket.SmartFactoryWebSocket;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Runs a capacity test through the real pipeline in isolation from the plant.
+ * <p>
+ * A {@link VirtualThreadSerialService} injects synthetic frames and text lines into a
+ * loopback port whose decoder feeds a private {@link SensorIngestService}. An
+ * {@link IngestPipeline} gives the hub its own instance of every stage {@link SmartFactoryService}
+ * wires, in the same order and loaded from the same configuration files, and the hub keeps its
+ * port metrics out of the exported ones. Readings that pass are
+ * persisted by a {@link SensorDataWriter} into a private in-memory H2 database, with the alarm
+ * and anomaly journals, and encoded as dashboard frames into a bounded drop-oldest outbox, so
+ * the test exercises the same code as production without touching the plant database, its
+ * sensor state or open dashboards.
+ */
+public class LoadTestRunner {
+    private static final Logger logger = LogManager.getLogger(LoadTestRunner.class);
+    private static final String PORT_NAME = "PERFTEST";
+    private static final int OUTBOX_CAPACITY = 1024;
+    private static final long DRAIN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final AtomicBoolean active = new AtomicBoolean(false);
+
+    private record Frame(String text, long arrivalNanos) {
+    }
+
+    /**
+     * Runs one test; only one test may run at a time
+     * @throws IllegalStateException if another test is running
+     */
+    public LoadTestResult run(int sensorCount, double targetRate, double binaryRatio, Duration duration) {
+        if (!active.compareAndSet(false, true)) {
+            throw new IllegalStateException("A load test is already running");
+        }
+        try {
+            return execute(new LoadProfile(PORT_NAME, sensorCount, targetRate, binaryRatio,
+                LoadProfile.Waveform.MIXED, 0.05, 0.1, 0.0, 1.0, 0, 42L), duration);
+        } finally {
+            active.set(false);
+        }
+    }
+
+    public static boolean isRunning() {
+        return active.get();
+    }
+
+    private LoadTestResult execute(LoadProfile profile, Duration duration) {
+        LoggingUtil.logStartup(logger, "LoadTest", Map.of(
+            "sensors", String.valueOf(profile.sensorCount()),
+            "rate", String.valueOf(profile.targetRate()),
+            "durationSeconds", String.valueOf(duration.toSeconds())
+        ));
+
+        DatabaseService database = DatabaseService.createIsolated(
+            DatabaseConfig.createInMemory("perftest-" + UUID.randomUUID()));
+        SensorIngestService ingest = SensorIngestService.createIsolated();
+        IngestPipeline pipeline = IngestPipeline.isolated(ingest);
+        pipeline.wire();
+
+        // Persist path: latency from byte arrival until the batch holding the reading has committed
+        QuantileSketch persistLatency = new QuantileSketch();
+        SensorDataWriter writer = new SensorDataWriter(database);
+        writer.setCommitListener((batch, from, to, startNanos, endNanos) -> {
+            for (int i = from; i < to; i++) {
+                persistLatency.add((endNanos - batch.arrivalNanos(i)) / 1e6);
+            }
+        });
+
+        // Broadcast path: frames are encoded exactly as for dashboards and queued like a session outbox
+        QuantileSketch broadcastLatency = new QuantileSketch();
+        BlockingQueue<Frame> outbox = new ArrayBlockingQueue<>(OUTBOX_CAPACITY);
+        AtomicLong broadcastDropped = new AtomicLong();
+        AtomicLong broadcast = new AtomicLong();
+        AtomicBoolean sinkRunning = new AtomicBoolean(true);
+        SensorIngestService.BatchListener outboxWriter = (source, batch) -> {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                Frame frame = new Frame(SmartFactoryWebSocket.readingMessage(source, batch, i), batch.arrivalNanos(i));
+                while (!outbox.offer(frame)) {
+                    if (outbox.poll() != null) {
+                        broadcastDropped.incrementAndGet();
+                    }
+                }
+            }
+        };
+
+        // Storage and broadcast see what report-by-exception passes on, as on the plant
+        pipeline.attachStorage(database, writer, outboxWriter);
+
+        Thread sink = new Thread(() -> {
+            while (sinkRunning.get() || !outbox.isEmpty()) {
+                try {
+                    Frame frame = outbox.poll(100, TimeUnit.MILLISECONDS);
+                    if (frame != null) {
+                        broadcastLatency.add((System.nanoTime() - frame.arrivalNanos()) / 1e6);
+                        broadcast.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, "LoadTestBroadcast");
+        sink.setDaemon(true);
+        sink.start();
+
+        GcPauseRecorder gc = new GcPauseRecorder();
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        VirtualThreadSerialService generator = new VirtualThreadSerialService(
+            profile, new SerialCommunicationService(ingest));
+        try {
+            long allocatedBefore = allocatedBytes(threads);
+            long start = System.nanoTime();
+            gc.start();
+            generator.startSerialListener();
+            Thread.sleep(duration.toMillis());
+            generator.shutdown();
+            gc.stop();
+            if (pipeline.filter != null) {
+                pipeline.filter.stop(); // Held end points are reported, so they are drained too
+            }
+            long injected = System.nanoTime();
+            long allocated = allocatedBytes(threads) - allocatedBefore;
+
+            // Let the writer and broadcast sink catch up with everything that was passed on. Waiting on
+            // receipt rather than on written rows keeps a failed batch from holding the drain to its deadline
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+            while ((writer.getReceivedCount() < pipeline.getReported() || !writer.isIdle())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            sinkRunning.set(false);
+            sink.join(TimeUnit.SECONDS.toMillis(5));
+            long finished = System.nanoTime();
+
+            double injectSeconds = (injected - start) / 1e9;
+            double elapsedSeconds = (finished - start) / 1e9;
+            LoadTestResult result = new LoadTestResult(
+                profile.sensorCount(),
+                profile.targetRate(),
+                injectSeconds,
+                elapsedSeconds,
+                generator.getStats().readingsEmitted(),
+                ingest.getReadingsIngested(),
+                pipeline.getReported(),
+                ingest.getParseFailures(),
+                writer.getWrittenCount(),
+                writer.getDroppedCount(),
+                broadcast.get(),
+                broadcastDropped.get(),
+                ingest.getReadingsIngested() / injectSeconds,
+                writer.getWrittenCount() / elapsedSeconds,
+                latency(persistLatency),
+                latency(broadcastLatency),
+                gc.getPauses(),
+                gc.getPauseMillis(),
+                gc.getMaxPauseMillis(),
+                allocated,
+                allocated / injectSeconds,
+                Instant.now()
+            );
+            logger.info("Load test finished: {} readings persisted at {}/s, p99 persist latency {} ms",
+                result.readingsPersisted(), Math.round(result.sustainedThroughput()), result.persistLatency().p99());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Load test interrupted", e);
+        } finally {
+            gc.stop();
+            if (generator.isRunning()) {
+                generator.shutdown();
+            }
+            sinkRunning.set(false);
+            pipeline.close();
+            database.close();
+        }
+    }
+
+    private static LoadTestResult.Latency latency(QuantileSketch sketch) {
+        if (sketch.getCount() == 0) {
+            return new LoadTestResult.Latency(0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        return new LoadTestResult.Latency(sketch.getCount(), sketch.quantile(0.50), sketch.quantile(0.95),
+            sketch.quantile(0.99), sketch.quantile(0.999), sketch.quantile(1.0));
+    }
+
+    // Allocation of every live thread; threads that exit during the test take their share with them
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Collects stop-the-world pause durations from GC notifications. Collectors that run
+     * concurrently with the application (ZGC and Shenandoah cycles) are not counted.
+     */
+    private static class GcPauseRecorder implements NotificationListener {
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private final AtomicLong pauses = new AtomicLong();
+        private final DoubleAdder pauseMillis = new DoubleAdder();
+        private volatile double maxPauseMillis;
+
+        void start() {
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (bean instanceof NotificationEmitter emitter && !isConcurrent(bean.getName())) {
+                    emitter.addNotificationListener(this, null, null);
+                    emitters.add(emitter);
+                }
+            }
+        }
+
+        void stop() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // Already removed
+                }
+            }
+            emitters.clear();
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            long duration = info.getGcInfo().getDuration();
+            pauses.incrementAndGet();
+            pauseMillis.add(duration);
+            synchronized (this) {
+                maxPauseMillis = Math.max(maxPauseMillis, duration);
+            }
+        }
+
+        private static boolean isConcurrent(String collector) {
+            return collector.contains("Cycles") || collector.contains("Concurrent");
+        }
+
+        long getPauses() {
+            return pauses.get();
+        }
+
+        double getPauseMillis() {
+            return pauseMillis.sum();
+        }
+
+        double getMaxPauseMillis() {
+            return maxPauseMillis;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.Arrays;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a point stream to at most {@code threshold}
+ * points, so a chart can draw any range at a fixed number of points per pixel. The range is cut
+ * into {@code threshold - 2} equal time buckets, and each bucket keeps the point forming the
+ * largest triangle with the point kept before it and the mean of the following bucket; peaks
+ * and dips survive while flat stretches collapse. The first and last points are always kept.
+ * <p>
+ * Points are consumed in one pass, oldest first. A bucket's point can only be chosen once the
+ * mean of the bucket after it is known, so every point of the bucket being decided and of the
+ * bucket after it is held. Output is bounded by the threshold, but memory grows with the points
+ * per bucket: a range of n points holds about {@code 2 * n / (threshold - 2)} of them at once,
+ * and the two bucket buffers keep the size of the densest bucket seen. A stream of no more than
+ * {@code threshold} points is passed through unchanged.
+ */
+public class LttbDownsampler implements PointConsumer {
+    public static final int MIN_THRESHOLD = 3;
+
+    private final long fromMillis;
+    private final long spanMillis;
+    private final int threshold;
+    private final int buckets;
+
+    // Points are held here until there are more than the threshold
+    private final long[] rawTimestamps;
+    private final double[] rawValues;
+    private int rawCount;
+    private boolean sampling;
+
+    private final long[] keptTimestamps;
+    private final double[] keptValues;
+    private int keptCount;
+    private Bucket current = new Bucket();
+    private Bucket next = new Bucket();
+    private int lastBucket;
+    private long received;
+
+    /**
+     * Points of one time bucket, with running sums for its mean
+     */
+    private static final class Bucket {
+        int index = -1;
+        int count;
+        long[] timestamps = new long[16];
+        double[] values = new double[16];
+        double sumX;
+        double sumValue;
+
+        void add(long timestamp, double value, double x) {
+            if (count == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            timestamps[count] = timestamp;
+            values[count] = value;
+            count++;
+            sumX += x;
+            sumValue += value;
+        }
+
+        void removeLast(double x) {
+            count--;
+            sumX -= x;
+            sumValue -= values[count];
+        }
+
+        void clear() {
+            index = -1;
+            count = 0;
+            sumX = 0;
+            sumValue = 0;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+    /**
+     * @param threshold Most points to keep, typically the chart width in pixels
+     * @throws IllegalArgumentException if threshold is below {@link #MIN_THRESHOLD}
+     */
+    public LttbDownsampler(long fromMillis, long toMillis, int threshold) {
+        if (threshold < MIN_THRESHOLD) {
+            throw new IllegalArgumentException("width must be at least " + MIN_THRESHOLD);
+        }
+        this.fromMillis = fromMillis;
+        this.spanMillis = Math.max(1, toMillis - fromMillis + 1);
+        this.threshold = threshold;
+        this.buckets = threshold - 2;
+        this.rawTimestamps = new long[threshold];
+        this.rawValues = new double[threshold];
+        this.keptTimestamps = new long[threshold];
+        this.keptValues = new double[threshold];
+    }
+
+    @Override
+    public void accept(long epochMillis, double value) {
+        received++;
+        if (sampling) {
+            sample(epochMillis, value);
+        } else if (rawCount < threshold) {
+            rawTimestamps[rawCount] = epochMillis;
+            rawValues[rawCount] = value;
+            rawCount++;
+        } else {
+            sampling = true;
+            keep(rawTimestamps[0], rawValues[0]);
+            for (int i = 1; i < rawCount; i++) {
+                sample(rawTimestamps[i], rawValues[i]);
+            }
+            sample(epochMillis, value);
+        }
+    }
+
+    private void sample(long epochMillis, double value) {
+        // Bucket indexes never go backwards, so a late point joins the bucket in play
+        long offset = epochMillis - fromMillis;
+        int index = (int) Math.min(buckets - 1, Math.max(lastBucket, offset < 0 ? 0 : offset * buckets / spanMillis));
+        lastBucket = index;
+        double x = offset;
+        if (current.isEmpty() || index == current.index) {
+            current.index = index;
+            current.add(epochMillis, value, x);
+            return;
+        }
+        if (!next.isEmpty() && index != next.index) {
+            select(current, next.sumX / next.count, next.sumValue / next.count);
+            Bucket decided = current;
+            current = next;
+            next = decided;
+            next.clear();
+        }
+        next.index = index;
+        next.add(epochMillis, value, x);
+    }
+
+    /**
+     * Keeps the point of the bucket forming the largest triangle with the last kept point and (x, value)
+     */
+    private void select(Bucket bucket, double x, double value) {
+        double keptX = keptTimestamps[keptCount - 1] - fromMillis;
+        double keptValue = keptValues[keptCount - 1];
+        int best = 0;
+        double bestArea = -1;
+        for (int i = 0; i < bucket.count; i++) {
+            double area = Math.abs((keptX - x) * (bucket.values[i] - keptValue)
+                - (keptX - (bucket.timestamps[i] - fromMillis)) * (value - keptValue));
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        keep(bucket.timestamps[best], bucket.values[best]);
+    }
+
+    private void keep(long epochMillis, double value) {
+        keptTimestamps[keptCount] = epochMillis;
+        keptValues[keptCount] = value;
+        keptCount++;
+    }
+
+    /**
+     * Decides the remaining buckets and hands the kept points to the consumer, oldest first.
+     * Call once, after the last point.
+     * @return Number of points delivered
+     */
+    public int finish(PointConsumer consumer) {
+        if (!sampling) {
+            for (int i = 0; i < rawCount; i++) {
+                consumer.accept(rawTimestamps[i], rawValues[i]);
+            }
+            return rawCount;
+        }
+        // The last point is kept as is and closes the final triangle
+        Bucket holdingLast = next.isEmpty() ? current : next;
+        long lastTimestamp = holdingLast.timestamps[holdingLast.count - 1];
+        double lastValue = holdingLast.values[holdingLast.count - 1];
+        double lastX = lastTimestamp - fromMillis;
+        holdingLast.removeLast(lastX);
+        if (!current.isEmpty()) {
+            if (next.isEmpty()) {
+                select(current, lastX, lastValue);
+            } else {
+                select(current, next.sumX / next.count, next.sumValue / next.count);
+            }
+        }
+        if (!next.isEmpty()) {
+            select(next, lastX, lastValue);
+        }
+        keep(lastTimestamp, lastValue);
+        for (int i = 0; i < keptCount; i++) {
+            consumer.accept(keptTimestamps[i], keptValues[i]);
+        }
+        return keptCount;
+    }
+
+    /**
+     * Points consumed so far
+     */
+    public long getReceived() {
+        return received;
+    }
+}
@@ -1,39 +1,152 @@
 package com.dashtech.smartfactory.service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.dashtech.smartfactory.jfr.ChecksumFailureEvent;
+import com.dashtech.smartfactory.jfr.FrameDecodeEvent;
 import com.dashtech.smartfactory.model.SerialPacket;
 
 public class PacketHandler {
     private static final Logger logger = LoggerFactory.getLogger(PacketHandler.class);
-    private final List<Byte> buffer = new ArrayList<>();
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final int MAX_LINE_LENGTH = 256;
+    /**
+     * Smallest receive buffer; holds the longest partial line plus room for new bytes
+     */
+    public static final int MIN_BUFFER_SIZE = 2 * MAX_LINE_LENGTH;
+    // A lone 'S' is common in noise and inside frames, so line mode needs the whole prefix
+    private static final byte[] LINE_PREFIX = "Sensor[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte LINE_END = '\n';
+
+    // Receive buffer; unread bytes live in [start, end)
+    private byte[] buffer;
+    private int start;
+    private int end;
+    private final byte[] frame = new byte[SerialPacket.SENSOR_PACKET_SIZE];
     private PacketCallback callback;
+    private final String source;
+    private long arrivalNanos;
 
     public interface PacketCallback {
         void onSensorData(byte sensorId, byte dataType, float value);
         void onCommandResponse(byte actuatorId, byte commandType);
         void onError(String error);
+
+        /**
+         * Called for each newline-terminated text line, e.g. "Sensor[01] Type[01] Value[23.50]"
+         */
+        default void onTextLine(String line) {
+        }
+
+        /**
+         * Called for each sensor frame with the {@link System#nanoTime()} at which the bytes
+         * completing it arrived
+         */
+        default void onSensorData(byte sensorId, byte dataType, float value, long arrivalNanos) {
+            onSensorData(sensorId, dataType, value);
+        }
+
+        /**
+         * Called for each text line with the {@link System#nanoTime()} at which the bytes
+         * completing it arrived
+         */
+        default void onTextLine(String line, long arrivalNanos) {
+            onTextLine(line);
+        }
+
+        /**
+         * Called once all complete packets and lines in the received bytes have been reported,
+         * so readings collected from one read can be passed on together
+         */
+        default void onDecodeComplete() {
+        }
+
+        /**
+         * Called instead of {@link #onError(String)} when a binary frame is rejected by its
+         * checksum or framing, so callers can count corrupt frames apart from other failures
+         */
+        default void onChecksumFailure(String error) {
+            onError(error);
+        }
     }
 
     public PacketHandler(PacketCallback callback) {
+        this("unknown", callback);
+    }
+
+    /**
+     * @param source Port name reported in flight recorder events
+     */
+    public PacketHandler(String source, PacketCallback callback) {
+        this(source, DEFAULT_BUFFER_SIZE, callback);
+    }
+
+    /**
+     * @param source Port name reported in flight recorder events
+     * @param bufferSize Initial receive buffer size, at least {@link #MIN_BUFFER_SIZE}; decoders
+     *        for many small connections keep this small and are fed through
+     *        {@link #processIncomingData(ByteBuffer, long)}, which never grows it
+     */
+    public PacketHandler(String source, int bufferSize, PacketCallback callback) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize must be at least " + MIN_BUFFER_SIZE + ": " + bufferSize);
+        }
+        this.source = source;
+        this.buffer = new byte[bufferSize];
         this.callback = callback;
     }
 
     public void processIncomingData(byte[] data) {
+        processIncomingData(data, 0, data.length);
+    }
+
+    public void processIncomingData(byte[] data, int offset, int length) {
+        processIncomingData(data, offset, length, System.nanoTime());
+    }
+
+    /**
+     * Decodes received bytes; readings completed by them are stamped with the given arrival time
+     */
+    public void processIncomingData(byte[] data, int offset, int length, long arrivalNanos) {
+        this.arrivalNanos = arrivalNanos;
+
         // Add new data to buffer
-        for (byte b : data) {
-            buffer.add(b);
+        reserve(length);
+        System.arraycopy(data, offset, buffer, end, length);
+        end += length;
+        decodeBuffered();
+        callback.onDecodeComplete();
+    }
+
+    /**
+     * Decodes the bytes between the buffer's position and limit, typically a direct buffer
+     * just filled by a socket read, and advances its position to the limit. Bytes are copied
+     * in slices that fit the receive buffer, so it keeps its initial size however much
+     * data one call delivers.
+     */
+    public void processIncomingData(ByteBuffer data, long arrivalNanos) {
+        this.arrivalNanos = arrivalNanos;
+        while (data.hasRemaining()) {
+            // Decoding leaves less than a line pending, so this is never zero and never grows the buffer
+            int length = Math.min(data.remaining(), buffer.length - (end - start));
+            reserve(length);
+            data.get(buffer, end, length);
+            end += length;
+            decodeBuffered();
         }
+        callback.onDecodeComplete();
+    }
 
-        // Process complete packets
-        while (buffer.size() >= 2) {  // At least header size
+    private void decodeBuffered() {
+        // Process complete packets and lines
+        while (end - start >= 2) {  // At least header size
             // Check for sensor packet header
             if (checkHeader(SerialPacket.SENSOR_HEADER)) {
-                if (buffer.size() >= SerialPacket.SENSOR_PACKET_SIZE) {
+                if (end - start >= SerialPacket.SENSOR_PACKET_SIZE) {
                     processSensorPacket();
                 } else {
                     break; // Wait for more data
@@ -41,76 +154,167 @@ public class PacketHandler {
             }
             // Check for command packet header
             else if (checkHeader(SerialPacket.COMMAND_HEADER)) {
-                if (buffer.size() >= SerialPacket.COMMAND_PACKET_SIZE) {
+                if (end - start >= SerialPacket.COMMAND_PACKET_SIZE) {
                     processCommandPacket();
                 } else {
                     break; // Wait for more data
                 }
             }
+            // Check for a text line
+            else if (buffer[start] == LINE_PREFIX[0] && matchesLinePrefix()) {
+                if (end - start < LINE_PREFIX.length || !processTextLine()) {
+                    break; // Wait for the rest of the prefix or line
+                }
+            }
             // No valid header found, remove first byte
             else {
-                buffer.remove(0);
+                start++;
+            }
+        }
+
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+    }
+
+    /**
+     * Number of received bytes not yet consumed by a complete packet or line
+     */
+    public int getPendingBytes() {
+        return end - start;
+    }
+
+    // Compacts, or grows if compacting is not enough, so that length more bytes fit after end
+    private void reserve(int length) {
+        if (end + length > buffer.length) {
+            int pending = end - start;
+            if (pending + length > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, pending + length)];
+                System.arraycopy(buffer, start, grown, 0, pending);
+                buffer = grown;
+            } else {
+                System.arraycopy(buffer, start, buffer, 0, pending);
             }
+            start = 0;
+            end = pending;
         }
     }
 
     private boolean checkHeader(short header) {
-        if (buffer.size() < 2) return false;
-        short packetHeader = (short) ((buffer.get(0) << 8) | (buffer.get(1) & 0xFF));
+        if (end - start < 2) return false;
+        short packetHeader = (short) ((buffer[start] << 8) | (buffer[start + 1] & 0xFF));
         return packetHeader == header;
     }
 
-    private void processSensorPacket() {
-        try {
-            // Convert buffer to byte array
-            byte[] packetData = new byte[SerialPacket.SENSOR_PACKET_SIZE];
-            for (int i = 0; i < SerialPacket.SENSOR_PACKET_SIZE; i++) {
-                packetData[i] = buffer.get(i);
+    // True if the buffered bytes at start are the line prefix, or as much of it as has arrived
+    private boolean matchesLinePrefix() {
+        int available = Math.min(end - start, LINE_PREFIX.length);
+        for (int i = 1; i < available; i++) {
+            if (buffer[start + i] != LINE_PREFIX[i]) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // Parse packet
-            SerialPacket packet = SerialPacket.fromBytes(packetData);
-            
-            // Notify callback
-            callback.onSensorData(packet.getId(), packet.getType(), packet.getPayload());
-
-            // Remove processed bytes
-            for (int i = 0; i < SerialPacket.SENSOR_PACKET_SIZE; i++) {
-                buffer.remove(0);
+    private boolean processTextLine() {
+        int limit = Math.min(end, start + MAX_LINE_LENGTH);
+        for (int i = start; i < limit; i++) {
+            if (buffer[i] == LINE_END) {
+                FrameDecodeEvent event = new FrameDecodeEvent();
+                event.begin();
+                String line = new String(buffer, start, i - start, StandardCharsets.US_ASCII).trim();
+                start = i + 1;
+                try {
+                    callback.onTextLine(line, arrivalNanos);
+                } catch (Exception e) {
+                    logger.error("Error processing text line: {}", e.getMessage());
+                    callback.onError("Failed to process text line: " + e.getMessage());
+                }
+                recordDecode(event, -1, "text");
+                return true;
             }
+        }
+        if (limit - start == MAX_LINE_LENGTH) {
+            // Not a line after all; resynchronise on the next byte
+            start++;
+            return true;
+        }
+        return false;
+    }
 
-        } catch (Exception e) {
-            logger.error("Error processing sensor packet: {}", e.getMessage());
-            callback.onError("Failed to process sensor packet: " + e.getMessage());
+    // Decoded in place from the receive buffer, so a frame costs no packet object
+    private void processSensorPacket() {
+        FrameDecodeEvent event = new FrameDecodeEvent();
+        event.begin();
+        int checksumAt = start + SerialPacket.SENSOR_PACKET_SIZE - 1;
+        byte calculated = 0;
+        for (int i = start; i < checksumAt; i++) {
+            calculated ^= buffer[i];
+        }
+        if (calculated != buffer[checksumAt]) {
+            String reason = String.format("Checksum mismatch: expected %02X, got %02X", calculated, buffer[checksumAt]);
+            logger.error("Error processing sensor packet: {}", reason);
+            recordChecksumFailure(reason);
+            callback.onChecksumFailure("Failed to process sensor packet: " + reason);
             // Remove invalid packet
-            buffer.remove(0);
+            start++;
+            return;
         }
+        byte sensorId = buffer[start + 2];
+        byte dataType = buffer[start + 3];
+        float value = Float.intBitsToFloat((buffer[start + 4] & 0xFF) << 24 | (buffer[start + 5] & 0xFF) << 16
+            | (buffer[start + 6] & 0xFF) << 8 | (buffer[start + 7] & 0xFF));
+
+        // Remove processed bytes
+        start += SerialPacket.SENSOR_PACKET_SIZE;
+
+        // Notify callback
+        callback.onSensorData(sensorId, dataType, value, arrivalNanos);
+        recordDecode(event, sensorId & 0xFF, "binary");
     }
 
     private void processCommandPacket() {
+        SerialPacket packet;
         try {
-            // Convert buffer to byte array
-            byte[] packetData = new byte[SerialPacket.COMMAND_PACKET_SIZE];
-            for (int i = 0; i < SerialPacket.COMMAND_PACKET_SIZE; i++) {
-                packetData[i] = buffer.get(i);
-            }
+            // Copy the frame out of the receive buffer and parse it
+            System.arraycopy(buffer, start, frame, 0, SerialPacket.COMMAND_PACKET_SIZE);
+            packet = SerialPacket.fromBytes(frame);
+        } catch (IllegalArgumentException e) {
+            logger.error("Error processing command packet: {}", e.getMessage());
+            recordChecksumFailure(e.getMessage());
+            callback.onChecksumFailure("Failed to process command packet: " + e.getMessage());
+            // Remove invalid packet
+            start++;
+            return;
+        }
 
-            // Parse packet
-            SerialPacket packet = SerialPacket.fromBytes(packetData);
-            
-            // Notify callback
-            callback.onCommandResponse(packet.getId(), packet.getType());
+        // Remove processed bytes
+        start += SerialPacket.COMMAND_PACKET_SIZE;
 
-            // Remove processed bytes
-            for (int i = 0; i < SerialPacket.COMMAND_PACKET_SIZE; i++) {
-                buffer.remove(0);
-            }
+        // Notify callback
+        callback.onCommandResponse(packet.getId(), packet.getType());
+    }
 
-        } catch (Exception e) {
-            logger.error("Error processing command packet: {}", e.getMessage());
-            callback.onError("Failed to process command packet: " + e.getMessage());
-            // Remove invalid packet
-            buffer.remove(0);
+    private void recordDecode(FrameDecodeEvent event, int sensorId, String format) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.port = source;
+            event.sensorId = sensorId;
+            event.format = format;
+            event.commit();
+        }
+    }
+
+    // Called before the frame is skipped, so the id byte still sits at start + 2
+    private void recordChecksumFailure(String reason) {
+        ChecksumFailureEvent event = new ChecksumFailureEvent();
+        if (event.isEnabled()) {
+            event.port = source;
+            event.sensorId = buffer[start + 2] & 0xFF;
+            event.reason = reason;
+            event.commit();
         }
     }
 
@@ -121,4 +325,4 @@ public class PacketHandler {
     public byte[] createCommandPacket(byte actuatorId, byte commandType) {
         return SerialPacket.createCommandPacket(actuatorId, commandType).toBytes();
     }
-} 
\ No newline at end of file
+}
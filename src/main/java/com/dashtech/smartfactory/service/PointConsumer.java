@@ -0,0 +1,9 @@
+package com.dashtech.smartfactory.service;
+
+/**
+ * Receives (timestamp, value) points from a range read without boxing.
+ */
+@FunctionalInterface
+public interface PointConsumer {
+    void accept(long epochMillis, double value);
+}
@@ -0,0 +1,430 @@
+package com.dashtech.smartfactory.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.DeadbandConfig;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SuppressionStats;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Report-by-exception gate in front of storage and broadcast. Each reading is compared with
+ * the last one reported for its sensor and passed on to the downstream listeners only when it
+ * is a meaningful change: outside an absolute or percent deadband, outside the swinging door
+ * of a compressed trend, or after the heartbeat interval. Readings carrying any quality flag,
+ * such as those the anomaly detector marked, are always passed on, preceded by the end point
+ * of the open corridor. NaN and infinite values are never passed on. In-memory consumers
+ * (latest values, history rings, statistics, alarms) still see every reading.
+ * <p>
+ * Settings come from smartfactory.rbe.* defaults, overridden per sensor or sensor type by the
+ * JSON file named by smartfactory.rbe.config, an array of
+ * {"sensorId" | "sensorType", "mode", "absolute", "percent", "maxIntervalMillis"}.
+ * State is kept per sensor in arrays indexed by the {@link SensorRegistry} code. A sensor may
+ * be fed by several threads (ports, network devices, the Modbus master), and a swinging door
+ * spans readings, so each sensor's state is read and updated under one of a fixed set of
+ * striped locks chosen by its code.
+ * <p>
+ * The end point held by an open swinging door is normally reported by the sensor's next
+ * reading. So that it is not lost when the sensor goes silent, a sweep started by
+ * {@link #start()} reports end points held longer than smartfactory.rbe.maxHoldMillis
+ * (default 10000), and {@link #stop()} reports whatever is still held.
+ */
+public class ReportByExceptionFilter implements SensorIngestService.BatchListener {
+    private static final Logger logger = LogManager.getLogger(ReportByExceptionFilter.class);
+    private static final ReportByExceptionFilter instance = new ReportByExceptionFilter(
+        SensorRegistry.getInstance(), DeadbandConfig.defaultsFromSystemProperties());
+
+    private static final int LOCK_STRIPES = 64;
+    private static final long DEFAULT_MAX_HOLD_MILLIS = 10_000;
+    private static final long MIN_SWEEP_MILLIS = 100;
+
+    private final SensorRegistry registry;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final List<SensorIngestService.BatchListener> downstream = new CopyOnWriteArrayList<>();
+    private volatile DeadbandConfig defaults;
+    private volatile Map<Integer, DeadbandConfig> bySensor = Map.of();
+    private volatile Map<String, DeadbandConfig> byType = Map.of();
+    private final AtomicReferenceArray<DeadbandConfig> resolved;
+    private final long maxHoldMillis;
+    private ScheduledExecutorService sweeper;
+
+    // Last reported point per sensor, its time in epoch nanos
+    private final boolean[] initialized;
+    private final long[] reportTime;
+    private final double[] reportValue;
+    // Swinging door: slopes of the door opened at the last reported point, and the last suppressed reading
+    private final double[] upperSlope;
+    private final double[] lowerSlope;
+    private final long[] heldNanos;
+    private final double[] heldValue;
+    private final long[] heldArrival;
+    private final String[] heldSource;
+    // Reported rows of the batch being filtered, per port thread
+    private final ThreadLocal<SensorBatch> reportedRows = ThreadLocal.withInitial(SensorBatch::new);
+
+    private final AtomicLongArray received;
+    private final AtomicLongArray reported;
+    private final AtomicLong totalReceived = new AtomicLong();
+    private final AtomicLong totalReported = new AtomicLong();
+
+    public ReportByExceptionFilter(SensorRegistry registry, DeadbandConfig defaults) {
+        this(registry, defaults, Long.getLong("smartfactory.rbe.maxHoldMillis", DEFAULT_MAX_HOLD_MILLIS));
+    }
+
+    /**
+     * @param maxHoldMillis Longest a swinging-door end point waits for the next reading before the sweep reports it
+     */
+    public ReportByExceptionFilter(SensorRegistry registry, DeadbandConfig defaults, long maxHoldMillis) {
+        this.registry = registry;
+        this.defaults = defaults;
+        this.maxHoldMillis = maxHoldMillis;
+        int capacity = registry.capacity();
+        this.resolved = new AtomicReferenceArray<>(capacity);
+        this.initialized = new boolean[capacity];
+        this.reportTime = new long[capacity];
+        this.reportValue = new double[capacity];
+        this.upperSlope = new double[capacity];
+        this.lowerSlope = new double[capacity];
+        this.heldNanos = new long[capacity];
+        this.heldValue = new double[capacity];
+        this.heldArrival = new long[capacity];
+        this.heldSource = new String[capacity];
+        this.received = new AtomicLongArray(capacity);
+        this.reported = new AtomicLongArray(capacity);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static ReportByExceptionFilter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts the sweep that reports end points held longer than the max hold
+     */
+    public synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ReportByExceptionSweep");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(MIN_SWEEP_MILLIS, maxHoldMillis / 2);
+        sweeper.scheduleAtFixedRate(() -> {
+            try {
+                sweep(SensorBatch.toEpochNanos(Instant.now()));
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Report By Exception", "Sweep of held end points failed", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sweep and reports every end point still held, so none is lost on shutdown
+     */
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        flushHeld(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reports end points held since before nowEpochNanos minus the max hold
+     */
+    void sweep(long nowEpochNanos) {
+        flushHeld(nowEpochNanos - TimeUnit.MILLISECONDS.toNanos(maxHoldMillis));
+    }
+
+    private void flushHeld(long heldUpToNanos) {
+        for (int code = 0, size = registry.size(); code < size; code++) {
+            synchronized (locks[code & (LOCK_STRIPES - 1)]) {
+                if (heldSource[code] != null && heldNanos[code] <= heldUpToNanos) {
+                    reportHeld(code, null, null);
+                }
+            }
+        }
+    }
+
+    public void addDownstream(SensorIngestService.BatchListener listener) {
+        downstream.add(listener);
+    }
+
+    public void removeDownstream(SensorIngestService.BatchListener listener) {
+        downstream.remove(listener);
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        SensorBatch out = reportedRows.get();
+        if (!out.isEmpty()) {
+            out = new SensorBatch(); // Only if a downstream listener fed readings back into the pipeline
+        }
+        try {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                filter(source, batch, i, out);
+            }
+            if (!out.isEmpty()) {
+                forward(source, out);
+            }
+        } finally {
+            out.clear();
+        }
+    }
+
+    private void filter(String source, SensorBatch batch, int row, SensorBatch out) {
+        totalReceived.incrementAndGet();
+        int code = batch.code(row);
+        if (code == SensorRegistry.NO_CODE) {
+            totalReported.incrementAndGet();
+            out.add(batch, row);
+            return;
+        }
+        received.incrementAndGet(code);
+        DeadbandConfig config = configFor(code);
+        // A held reading from another source is forwarded under the lock too; downstream
+        // listeners (writer, broadcast) never call back into the filter
+        synchronized (locks[code & (LOCK_STRIPES - 1)]) {
+            filterSensor(code, config, source, batch, row, out);
+        }
+    }
+
+    private void filterSensor(int code, DeadbandConfig config, String source, SensorBatch batch, int row, SensorBatch out) {
+        long t = batch.epochNanos(row);
+        double v = batch.value(row);
+        if (!Double.isFinite(v)) {
+            // Would close every corridor and poison the reported value; dropped, not reported
+            return;
+        }
+
+        if (!initialized[code] || !QualityFlags.isGood(batch.quality(row))) {
+            initialized[code] = true;
+            report(code, source, batch, row, out);
+            return;
+        }
+
+        boolean heartbeat = config.maxIntervalMillis() > 0
+            && t - reportTime[code] >= TimeUnit.MILLISECONDS.toNanos(config.maxIntervalMillis());
+        if (config.mode() == DeadbandConfig.Mode.DEADBAND) {
+            if (heartbeat || Math.abs(v - reportValue[code]) > config.bandFor(reportValue[code])) {
+                report(code, source, batch, row, out);
+            }
+            return;
+        }
+
+        if (heartbeat) {
+            report(code, source, batch, row, out);
+            return;
+        }
+        long dt = t - reportTime[code];
+        if (dt <= 0) {
+            // Stamped no later than the last report, so no slope to fit; a step still goes out
+            if (Math.abs(v - reportValue[code]) > config.bandFor(reportValue[code])) {
+                report(code, source, batch, row, out);
+            }
+            return;
+        }
+        double deviation = config.bandFor(reportValue[code]);
+        double upper = Math.min(upperSlope[code], (v + deviation - reportValue[code]) / dt);
+        double lower = Math.max(lowerSlope[code], (v - deviation - reportValue[code]) / dt);
+        if (lower <= upper) {
+            // Still representable by a straight line from the last reported point
+            upperSlope[code] = upper;
+            lowerSlope[code] = lower;
+            hold(code, source, batch, row);
+            return;
+        }
+
+        // Door closed: report the last point that fitted and reopen the door from it
+        reportHeld(code, source, out);
+        long dtPivot = t - reportTime[code];
+        if (dtPivot > 0) {
+            double pivotDeviation = config.bandFor(reportValue[code]);
+            upperSlope[code] = (v + pivotDeviation - reportValue[code]) / dtPivot;
+            lowerSlope[code] = (v - pivotDeviation - reportValue[code]) / dtPivot;
+            hold(code, source, batch, row);
+        } else {
+            report(code, source, batch, row, out);
+        }
+    }
+
+    private void hold(int code, String source, SensorBatch batch, int row) {
+        heldNanos[code] = batch.epochNanos(row);
+        heldValue[code] = batch.value(row);
+        heldArrival[code] = batch.arrivalNanos(row);
+        heldSource[code] = source;
+    }
+
+    private void report(int code, String source, SensorBatch batch, int row, SensorBatch out) {
+        // A reading reported for quality or heartbeat ends the corridor; its end point goes first
+        if (heldSource[code] != null) {
+            reportHeld(code, source, out);
+        }
+        reported(code, batch.epochNanos(row), batch.value(row));
+        out.add(batch, row);
+    }
+
+    // The held reading may have come from an earlier batch, so it is rebuilt from the sensor's code;
+    // outside a batch (source and out null) it is forwarded on its own
+    private void reportHeld(int code, String source, SensorBatch out) {
+        String heldFrom = heldSource[code];
+        SensorBatch target = heldFrom.equals(source) ? out : new SensorBatch(1);
+        int row = target.add(registry.sensorIdOf(code), registry.typeOf(code), heldNanos[code], heldValue[code],
+            heldArrival[code]);
+        target.setCode(row, code);
+        reported(code, heldNanos[code], heldValue[code]);
+        if (target != out) {
+            forward(heldFrom, target);
+        }
+    }
+
+    private void reported(int code, long epochNanos, double value) {
+        reportTime[code] = epochNanos;
+        reportValue[code] = value;
+        upperSlope[code] = Double.POSITIVE_INFINITY;
+        lowerSlope[code] = Double.NEGATIVE_INFINITY;
+        heldSource[code] = null;
+        reported.incrementAndGet(code);
+        totalReported.incrementAndGet();
+    }
+
+    private void forward(String source, SensorBatch batch) {
+        for (SensorIngestService.BatchListener listener : downstream) {
+            try {
+                listener.onBatch(source, batch);
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Report By Exception",
+                    "Downstream listener failed for " + batch.size() + " readings from " + source, e);
+            }
+        }
+    }
+
+    private DeadbandConfig configFor(int code) {
+        DeadbandConfig config = resolved.get(code);
+        if (config == null) {
+            config = bySensor.get(registry.sensorIdOf(code));
+            if (config == null) {
+                String type = registry.typeOf(code);
+                config = type != null ? byType.get(type) : null;
+            }
+            if (config == null) {
+                config = defaults;
+            }
+            resolved.set(code, config);
+        }
+        return config;
+    }
+
+    /**
+     * Replaces the default and per-sensor/per-type settings
+     */
+    public synchronized void setConfigs(DeadbandConfig newDefaults, List<DeadbandConfig> overrides) {
+        Map<Integer, DeadbandConfig> sensors = new HashMap<>();
+        Map<String, DeadbandConfig> types = new HashMap<>();
+        for (DeadbandConfig config : overrides) {
+            if (config.sensorId() != null) {
+                sensors.put(config.sensorId(), config);
+            } else if (config.sensorType() != null) {
+                types.put(config.sensorType(), config);
+            } else {
+                newDefaults = config;
+            }
+        }
+        defaults = newDefaults;
+        bySensor = sensors;
+        byType = types;
+        for (int i = 0; i < resolved.length(); i++) {
+            resolved.set(i, null);
+        }
+        LoggingUtil.logStartup(logger, "ReportByExceptionFilter", Map.of(
+            "mode", newDefaults.mode().name(),
+            "absolute", String.valueOf(newDefaults.absolute()),
+            "percent", String.valueOf(newDefaults.percent()),
+            "maxIntervalMillis", String.valueOf(newDefaults.maxIntervalMillis()),
+            "sensorOverrides", String.valueOf(sensors.size()),
+            "typeOverrides", String.valueOf(types.size())
+        ));
+    }
+
+    /**
+     * Loads per-sensor and per-type settings from the file named by smartfactory.rbe.config, if set
+     */
+    public void loadConfiguredOverrides() {
+        String file = System.getProperty("smartfactory.rbe.config");
+        if (file == null || file.isBlank()) {
+            setConfigs(defaults, List.of());
+            return;
+        }
+        try {
+            JsonNode array = JsonUtil.mapper().readTree(Files.readString(Paths.get(file)));
+            List<DeadbandConfig> overrides = new ArrayList<>();
+            for (JsonNode node : array) {
+                overrides.add(new DeadbandConfig(
+                    node.hasNonNull("sensorId") ? node.get("sensorId").asInt() : null,
+                    node.hasNonNull("sensorType") ? node.get("sensorType").asText() : null,
+                    DeadbandConfig.Mode.valueOf(node.path("mode").asText(defaults.mode().name()).toUpperCase()),
+                    node.path("absolute").asDouble(defaults.absolute()),
+                    node.path("percent").asDouble(defaults.percent()),
+                    node.path("maxIntervalMillis").asLong(defaults.maxIntervalMillis())
+                ));
+            }
+            setConfigs(defaults, overrides);
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Report By Exception", "Failed to load deadband settings from " + file, e);
+        }
+    }
+
+    /**
+     * Returns the suppression counters of one sensor, or null if it has never reported
+     */
+    public SuppressionStats getStats(int sensorId) {
+        int code = registry.lookup(sensorId);
+        if (code == SensorRegistry.NO_CODE) {
+            return null;
+        }
+        return SuppressionStats.of(sensorId, received.get(code), reported.get(code));
+    }
+
+    /**
+     * Returns the suppression counters of every sensor that has received readings
+     */
+    public List<SuppressionStats> getAllStats() {
+        int size = registry.size();
+        List<SuppressionStats> stats = new ArrayList<>(size);
+        for (int code = 0; code < size; code++) {
+            long count = received.get(code);
+            if (count > 0) {
+                stats.add(SuppressionStats.of(registry.sensorIdOf(code), count, reported.get(code)));
+            }
+        }
+        return stats;
+    }
+
+    public SuppressionStats getTotals() {
+        return SuppressionStats.of(-1, totalReceived.get(), totalReported.get());
+    }
+}
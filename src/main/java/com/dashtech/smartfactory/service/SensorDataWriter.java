@@ -0,0 +1,189 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Persists ingested readings off the port threads. Readings are queued and written
+ * by a single writer thread in JDBC batches, so a burst of readings costs one commit
+ * instead of one per reading. When the queue is full new readings are dropped and
+ * counted rather than blocking ingest; the readings of a batch that fails to store are
+ * counted as dropped too, so every reading received ends up either written or dropped.
+ * <p>
+ * The queue is a pair of {@link SensorBatch}es: port threads copy rows into one while the
+ * writer stores the other, and the writer swaps them when it has finished. Queued readings
+ * therefore live in primitive arrays that are reused for the life of the writer.
+ */
+public class SensorDataWriter implements SensorIngestService.BatchListener, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(SensorDataWriter.class);
+    private static final int DEFAULT_QUEUE_CAPACITY = Integer.getInteger("smartfactory.writer.queueCapacity", 65_536);
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1_000;
+
+    private final DatabaseService databaseService;
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final Thread writerThread;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Filled by port threads under the lock; the writer owns the other batch
+    private SensorBatch filling = new SensorBatch();
+    private SensorBatch draining = new SensorBatch();
+    // Set under the lock while the writer stores the draining batch
+    private boolean storing;
+    private volatile CommitListener commitListener;
+    private volatile boolean running = true;
+
+    public interface CommitListener {
+        /**
+         * Called on the writer thread after rows [from, to) of a batch have been committed;
+         * the batch is reused afterwards
+         * @param startNanos {@link System#nanoTime()} when the writer began storing the rows
+         * @param endNanos {@link System#nanoTime()} when the commit completed
+         */
+        void onCommitted(SensorBatch batch, int from, int to, long startNanos, long endNanos);
+    }
+
+    public SensorDataWriter(DatabaseService databaseService) {
+        this(databaseService, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public SensorDataWriter(DatabaseService databaseService, int queueCapacity, int maxBatchSize) {
+        this.databaseService = databaseService;
+        this.queueCapacity = queueCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.writerThread = new Thread(this::writeLoop, "SensorDataWriter");
+        this.writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        writerThread.start();
+        LoggingUtil.logStartup(logger, "SensorDataWriter", Map.of(
+            "queueCapacity", String.valueOf(queueCapacity),
+            "maxBatchSize", String.valueOf(maxBatchSize)
+        ));
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        int n = batch.size();
+        received.addAndGet(n);
+        int accepted;
+        synchronized (this) {
+            accepted = Math.min(n, queueCapacity - filling.size());
+            for (int i = 0; i < accepted; i++) {
+                filling.add(batch, i);
+            }
+            if (accepted > 0) {
+                notifyAll();
+            }
+        }
+        if (accepted < n) {
+            dropped.addAndGet(n - accepted);
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    if (filling.isEmpty()) {
+                        if (!running) {
+                            break;
+                        }
+                        wait(100);
+                        continue;
+                    }
+                    SensorBatch full = filling;
+                    filling = draining;
+                    draining = full;
+                    storing = true;
+                }
+                long started = System.nanoTime();
+                for (int from = 0, size = draining.size(); from < size; from += maxBatchSize) {
+                    store(from, Math.min(from + maxBatchSize, size), started);
+                    started = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                synchronized (this) {
+                    draining.clear();
+                    storing = false;
+                }
+            }
+        }
+    }
+
+    private void store(int from, int to, long started) {
+        try {
+            databaseService.storeSensorBatch(draining, from, to);
+        } catch (RuntimeException e) {
+            dropped.addAndGet(to - from);
+            LoggingUtil.logError(logger, "Sensor Data Writer",
+                "Failed to persist batch of " + (to - from) + " readings", e);
+            return;
+        }
+        written.addAndGet(to - from);
+        CommitListener listener = commitListener;
+        if (listener != null) {
+            try {
+                listener.onCommitted(draining, from, to, started, System.nanoTime());
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Sensor Data Writer", "Commit listener failed", e);
+            }
+        }
+    }
+
+    public void setCommitListener(CommitListener commitListener) {
+        this.commitListener = commitListener;
+    }
+
+    public synchronized int getQueueDepth() {
+        return filling.size();
+    }
+
+    /**
+     * Readings offered to the writer so far, whether queued or dropped
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * Whether every reading received so far has been stored or given up on
+     */
+    public synchronized boolean isIdle() {
+        return filling.isEmpty() && !storing;
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LoggingUtil.logShutdown(logger, "SensorDataWriter", Map.of(
+            "written", String.valueOf(written.get()),
+            "dropped", String.valueOf(dropped.get())
+        ));
+    }
+}
@@ -0,0 +1,291 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Rolling in-memory history of recent readings. Each sensor gets a fixed-capacity ring of
+ * (timestamp, value) pairs in two primitive arrays, allocated on its first reading. Rings are
+ * only allocated while the configured memory budget allows; sensors beyond the budget are
+ * simply not retained and their history comes from the database.
+ * <p>
+ * Rings start empty after a restart. The first history query that reaches past a ring's
+ * oldest point backfills it once from the database (see {@link HistoryService}), so
+ * warming costs nothing at startup and only for sensors someone looks at.
+ * <p>
+ * Configuration: smartfactory.history.pointsPerSensor (default 3600) and
+ * smartfactory.history.budgetMb (default 128).
+ */
+public class SensorHistoryBuffer implements SensorIngestService.BatchListener {
+    private static final Logger logger = LogManager.getLogger(SensorHistoryBuffer.class);
+    private static final int BYTES_PER_POINT = Long.BYTES + Double.BYTES;
+    private static final int DEFAULT_POINTS_PER_SENSOR = 3600;
+    private static final long DEFAULT_BUDGET_MB = 128;
+    private static final SensorHistoryBuffer instance = create(SensorRegistry.getInstance());
+
+    private final SensorRegistry registry;
+    private final int pointsPerSensor;
+    private final long budgetBytes;
+    private final AtomicReferenceArray<Ring> rings;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private volatile boolean budgetExhaustedLogged;
+
+    // Oldest point lives at (count - size) % capacity; writes and reads lock the ring
+    private static final class Ring {
+        final long[] timestamps;
+        final double[] values;
+        long count;
+        boolean warmed;
+
+        Ring(int capacity) {
+            timestamps = new long[capacity];
+            values = new double[capacity];
+        }
+
+        int size() {
+            return (int) Math.min(count, timestamps.length);
+        }
+
+        int physical(long logical) {
+            return (int) (logical % timestamps.length);
+        }
+
+        // First logical index whose timestamp is >= epochMillis
+        long lowerBound(long epochMillis) {
+            long lo = count - size();
+            long hi = count;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (timestamps[physical(mid)] < epochMillis) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    public SensorHistoryBuffer(SensorRegistry registry, int pointsPerSensor, long budgetBytes) {
+        this.registry = registry;
+        this.pointsPerSensor = pointsPerSensor;
+        this.budgetBytes = budgetBytes;
+        this.rings = new AtomicReferenceArray<>(registry.capacity());
+        LoggingUtil.logStartup(logger, "SensorHistoryBuffer", Map.of(
+            "pointsPerSensor", String.valueOf(pointsPerSensor),
+            "budgetBytes", String.valueOf(budgetBytes),
+            "maxSensors", String.valueOf(budgetBytes / ((long) pointsPerSensor * BYTES_PER_POINT))
+        ));
+    }
+
+    public static SensorHistoryBuffer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a buffer over the given registry, sized by the smartfactory.history.* properties
+     */
+    public static SensorHistoryBuffer create(SensorRegistry registry) {
+        return new SensorHistoryBuffer(
+            registry,
+            Integer.getInteger("smartfactory.history.pointsPerSensor", DEFAULT_POINTS_PER_SENSOR),
+            Long.getLong("smartfactory.history.budgetMb", DEFAULT_BUDGET_MB) * 1024 * 1024
+        );
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code != SensorRegistry.NO_CODE) {
+                append(code, batch.epochMillis(i), batch.value(i));
+            }
+        }
+    }
+
+    public void append(int code, long epochMillis, double value) {
+        Ring ring = rings.get(code);
+        if (ring == null) {
+            ring = allocate(code);
+            if (ring == null) {
+                return;
+            }
+        }
+        synchronized (ring) {
+            int slot = ring.physical(ring.count);
+            ring.timestamps[slot] = epochMillis;
+            ring.values[slot] = value;
+            ring.count++;
+        }
+    }
+
+    private Ring allocate(int code) {
+        long ringBytes = (long) pointsPerSensor * BYTES_PER_POINT;
+        if (allocatedBytes.addAndGet(ringBytes) > budgetBytes) {
+            allocatedBytes.addAndGet(-ringBytes);
+            if (!budgetExhaustedLogged) {
+                budgetExhaustedLogged = true;
+                logger.warn("History budget of {} bytes exhausted; further sensors are served from the database",
+                    budgetBytes);
+            }
+            return null;
+        }
+        Ring ring = new Ring(pointsPerSensor);
+        if (!rings.compareAndSet(code, null, ring)) {
+            allocatedBytes.addAndGet(-ringBytes);
+            return rings.get(code);
+        }
+        return ring;
+    }
+
+    /**
+     * Returns true if [fromMillis, now] is fully covered by retained points for the sensor
+     */
+    public boolean covers(int sensorId, long fromMillis) {
+        long oldest = oldestTimestamp(sensorId);
+        return oldest != Long.MIN_VALUE && oldest <= fromMillis;
+    }
+
+    /**
+     * Timestamp of the oldest retained point, or Long.MIN_VALUE if nothing is retained
+     */
+    public long oldestTimestamp(int sensorId) {
+        Ring ring = ring(sensorId);
+        if (ring == null) {
+            return Long.MIN_VALUE;
+        }
+        synchronized (ring) {
+            if (ring.count == 0) {
+                return Long.MIN_VALUE;
+            }
+            return ring.timestamps[ring.physical(ring.count - ring.size())];
+        }
+    }
+
+    /**
+     * Streams retained points with fromMillis &lt;= timestamp &lt;= toMillis, oldest first
+     * @return Number of points delivered
+     */
+    public int forEach(int sensorId, long fromMillis, long toMillis, PointConsumer consumer) {
+        Ring ring = ring(sensorId);
+        if (ring == null) {
+            return 0;
+        }
+        int delivered = 0;
+        synchronized (ring) {
+            for (long i = ring.lowerBound(fromMillis); i < ring.count; i++) {
+                int slot = ring.physical(i);
+                long timestamp = ring.timestamps[slot];
+                if (timestamp > toMillis) {
+                    break;
+                }
+                consumer.accept(timestamp, ring.values[slot]);
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Copies retained points in range into caller-supplied arrays, oldest first
+     * @return Number of points copied, at most the length of the arrays
+     */
+    public int read(int sensorId, long fromMillis, long toMillis, long[] timestampsOut, double[] valuesOut) {
+        Ring ring = ring(sensorId);
+        if (ring == null) {
+            return 0;
+        }
+        int limit = Math.min(timestampsOut.length, valuesOut.length);
+        int copied = 0;
+        synchronized (ring) {
+            for (long i = ring.lowerBound(fromMillis); i < ring.count && copied < limit; i++) {
+                int slot = ring.physical(i);
+                if (ring.timestamps[slot] > toMillis) {
+                    break;
+                }
+                timestampsOut[copied] = ring.timestamps[slot];
+                valuesOut[copied] = ring.values[slot];
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Claims the one-time backfill of a sensor's ring. Returns false if the sensor has no
+     * ring or it was already claimed.
+     */
+    public boolean claimBackfill(int sensorId) {
+        Ring ring = ring(sensorId);
+        if (ring == null) {
+            return false;
+        }
+        synchronized (ring) {
+            if (ring.warmed) {
+                return false;
+            }
+            ring.warmed = true;
+            return true;
+        }
+    }
+
+    /**
+     * Inserts older points ahead of the retained ones. Points must be newest first and
+     * older than anything retained; only as many as fit in the free capacity are kept.
+     * @return Number of points inserted
+     */
+    public int backfill(int sensorId, long[] timestampsNewestFirst, double[] valuesNewestFirst, int count) {
+        Ring ring = ring(sensorId);
+        if (ring == null) {
+            return 0;
+        }
+        synchronized (ring) {
+            int size = ring.size();
+            long oldest = size == 0 ? Long.MAX_VALUE : ring.timestamps[ring.physical(ring.count - size)];
+            int skip = 0;
+            while (skip < count && timestampsNewestFirst[skip] >= oldest) {
+                skip++;
+            }
+            int inserted = Math.min(count - skip, ring.timestamps.length - size);
+            if (inserted <= 0) {
+                return 0;
+            }
+            // Lay the ring out again from slot 0: backfilled points oldest first, then the retained ones
+            long[] retainedTimes = new long[size];
+            double[] retainedValues = new double[size];
+            for (int i = 0; i < size; i++) {
+                int slot = ring.physical(ring.count - size + i);
+                retainedTimes[i] = ring.timestamps[slot];
+                retainedValues[i] = ring.values[slot];
+            }
+            for (int i = 0; i < inserted; i++) {
+                ring.timestamps[i] = timestampsNewestFirst[skip + inserted - 1 - i];
+                ring.values[i] = valuesNewestFirst[skip + inserted - 1 - i];
+            }
+            System.arraycopy(retainedTimes, 0, ring.timestamps, inserted, size);
+            System.arraycopy(retainedValues, 0, ring.values, inserted, size);
+            ring.count = inserted + size;
+            return inserted;
+        }
+    }
+
+    private Ring ring(int sensorId) {
+        int code = registry.lookup(sensorId);
+        return code == SensorRegistry.NO_CODE ? null : rings.get(code);
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public int getPointsPerSensor() {
+        return pointsPerSensor;
+    }
+}
@@ -0,0 +1,335 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.metrics.LatencyStage;
+import com.dashtech.smartfactory.metrics.LatencyTracer;
+import com.dashtech.smartfactory.metrics.PipelineMetrics;
+import com.dashtech.smartfactory.metrics.PortMetrics;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.util.EpochClock;
+import com.dashtech.smartfactory.util.LoggingUtil;
+
+/**
+ * Single entry point for sensor readings arriving from any port.
+ * Raw bytes are decoded per port by a {@link PacketHandler}; both binary
+ * {@code SerialPacket} frames and "Sensor[XX] Type[XX] Value[XX.XX]" text lines
+ * are collected into a {@link SensorBatch}, one per decoder, and the readings of each
+ * read are handed to every registered listener together on the caller's thread.
+ * Each reading's {@link SensorRegistry} code is resolved here once, so stages index
+ * their state by {@link SensorBatch#code(int)} without a lookup of their own.
+ * {@link ReadingListener}s receive the same readings as {@link SensorData} records.
+ * Readings with a NaN or infinite value are counted as parse failures and never dispatched.
+ */
+public class SensorIngestService {
+    private static final Logger logger = LogManager.getLogger(SensorIngestService.class);
+    // Readings held back by one decoder before they are dispatched mid-read
+    private static final int MAX_DECODER_BATCH = 1_024;
+    private static final SensorIngestService instance =
+        new SensorIngestService(SensorRegistry.getInstance(), LatencyTracer.getInstance(), PipelineMetrics.getInstance());
+
+    private final List<BatchListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder readingsIngested = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final SensorRegistry registry;
+    private final LatencyTracer tracer;
+    private final PipelineMetrics metrics;
+
+    public interface ReadingListener {
+        void onReading(String source, SensorData data);
+    }
+
+    /**
+     * Receives readings column by column. The batch is reused once the call returns;
+     * rows that must outlive it are copied with {@link SensorBatch#add(SensorBatch, int)}.
+     */
+    public interface BatchListener {
+        void onBatch(String source, SensorBatch batch);
+    }
+
+    // Equal for the same listener, so removeListener finds the adapter addListener created
+    private record ReadingAdapter(ReadingListener listener) implements BatchListener {
+        @Override
+        public void onBatch(String source, SensorBatch batch) {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                try {
+                    listener.onReading(source, batch.toSensorData(i));
+                } catch (RuntimeException e) {
+                    LoggingUtil.logError(logger, "Reading Dispatch",
+                        "Listener failed for sensor " + batch.sensorId(i) + " from " + source, e);
+                }
+            }
+        }
+    }
+
+    private SensorIngestService(SensorRegistry registry, LatencyTracer tracer, PipelineMetrics metrics) {
+        this.registry = registry;
+        this.tracer = tracer;
+        this.metrics = metrics;
+    }
+
+    public static SensorIngestService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a hub with its own listeners, sensor codes and port metrics, so a load test can drive
+     * the decode path without its readings reaching the plant's listeners, registry, latency traces
+     * or exported metrics
+     */
+    public static SensorIngestService createIsolated() {
+        return new SensorIngestService(new SensorRegistry(SensorRegistry.getInstance().capacity()), null,
+            PipelineMetrics.createIsolated());
+    }
+
+    /**
+     * Registry this hub resolves sensor codes in; stages fed by it must index the same one
+     */
+    public SensorRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Metrics the port counters of this hub's sources are kept in
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void addListener(ReadingListener listener) {
+        listeners.add(new ReadingAdapter(listener));
+    }
+
+    public void removeListener(ReadingListener listener) {
+        listeners.remove(new ReadingAdapter(listener));
+    }
+
+    public void addBatchListener(BatchListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeBatchListener(BatchListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Creates a decoder for one port. Decoded readings are ingested under the given source name;
+     * command responses and decode errors are reported to the optional callback.
+     */
+    public PacketHandler createDecoder(String source, PacketHandler.PacketCallback callback) {
+        return createDecoder(source, PacketHandler.DEFAULT_BUFFER_SIZE, callback);
+    }
+
+    /**
+     * Creates a decoder with the given receive buffer size, for sources with many connections
+     */
+    public PacketHandler createDecoder(String source, int bufferSize, PacketHandler.PacketCallback callback) {
+        PortMetrics portMetrics = metrics.port(source);
+        PacketHandler decoder = createDecoder(source, portMetrics, bufferSize, callback);
+        portMetrics.setBacklog(decoder::getPendingBytes);
+        return decoder;
+    }
+
+    /**
+     * Creates a decoder that counts into the given metrics instead of metrics of its own, for
+     * sources that share one set of counters, such as the devices of a network listener.
+     * The caller decides what the metrics report as backlog.
+     */
+    public PacketHandler createDecoder(String source, PortMetrics metrics, int bufferSize,
+            PacketHandler.PacketCallback callback) {
+        SensorBatch batch = new SensorBatch();
+        PacketHandler decoder = new PacketHandler(source, bufferSize, new PacketHandler.PacketCallback() {
+            @Override
+            public void onSensorData(byte sensorId, byte dataType, float value) {
+                onSensorData(sensorId, dataType, value, System.nanoTime());
+            }
+
+            @Override
+            public void onSensorData(byte sensorId, byte dataType, float value, long arrivalNanos) {
+                if (!Float.isFinite(value)) {
+                    // A NaN or infinite payload is a sensor fault, not a reading any stage can use
+                    parseFailures.increment();
+                    metrics.parseFailure();
+                    return;
+                }
+                batch.add(sensorId & 0xFF, dataType, EpochClock.nowNanos(), value, arrivalNanos);
+                if (batch.size() == MAX_DECODER_BATCH) {
+                    flush(metrics, source, batch);
+                }
+                if (callback != null) {
+                    callback.onSensorData(sensorId, dataType, value);
+                }
+            }
+
+            @Override
+            public void onCommandResponse(byte actuatorId, byte commandType) {
+                if (callback != null) {
+                    callback.onCommandResponse(actuatorId, commandType);
+                }
+            }
+
+            @Override
+            public void onChecksumFailure(String error) {
+                parseFailures.increment();
+                metrics.checksumFailure();
+                if (callback != null) {
+                    callback.onChecksumFailure(error);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                // A text line whose processing failed after it was framed
+                parseFailures.increment();
+                metrics.parseFailure();
+                if (callback != null) {
+                    callback.onError(error);
+                }
+            }
+
+            @Override
+            public void onTextLine(String line) {
+                onTextLine(line, System.nanoTime());
+            }
+
+            @Override
+            public void onTextLine(String line, long arrivalNanos) {
+                parseInto(metrics, line, arrivalNanos, batch);
+                if (batch.size() == MAX_DECODER_BATCH) {
+                    flush(metrics, source, batch);
+                }
+                if (callback != null) {
+                    callback.onTextLine(line);
+                }
+            }
+
+            @Override
+            public void onDecodeComplete() {
+                flush(metrics, source, batch);
+                if (callback != null) {
+                    callback.onDecodeComplete();
+                }
+            }
+        });
+        return decoder;
+    }
+
+    /**
+     * Parses and ingests a single text line. Lines that are not sensor readings are ignored.
+     */
+    public void ingestLine(String source, String line) {
+        PortMetrics portMetrics = metrics.port(source);
+        SensorBatch batch = new SensorBatch(1);
+        parseInto(portMetrics, line, SensorData.NOT_STAMPED, batch);
+        dispatch(portMetrics, source, batch);
+    }
+
+    private void parseInto(PortMetrics metrics, String line, long arrivalNanos, SensorBatch batch) {
+        if (!line.startsWith("Sensor[")) {
+            return;
+        }
+        try {
+            parseLine(line, arrivalNanos, batch);
+        } catch (RuntimeException e) {
+            parseFailures.increment();
+            metrics.parseFailure();
+            LoggingUtil.logError(logger, "Serial Data Processing", "Error processing serial data: " + line, e);
+        }
+    }
+
+    public void ingest(String source, SensorData data) {
+        SensorBatch batch = new SensorBatch(1);
+        batch.add(data);
+        dispatch(metrics.port(source), source, batch);
+    }
+
+    /**
+     * Ingests readings collected by the caller, e.g. one Modbus poll. Row codes are assigned
+     * here; the caller may clear and reuse the batch once this returns.
+     */
+    public void ingest(String source, SensorBatch batch) {
+        dispatch(metrics.port(source), source, batch);
+    }
+
+    private void flush(PortMetrics metrics, String source, SensorBatch batch) {
+        if (!batch.isEmpty()) {
+            dispatch(metrics, source, batch);
+            batch.clear();
+        }
+    }
+
+    private void dispatch(PortMetrics metrics, String source, SensorBatch batch) {
+        int size = batch.size();
+        if (size == 0) {
+            return;
+        }
+        readingsIngested.add(size);
+        metrics.readings(size);
+        for (int i = 0; i < size; i++) {
+            batch.setCode(i, registry.codeOf(batch.sensorId(i), batch.type(i)));
+        }
+        if (tracer != null) {
+            tracer.reached(LatencyStage.DECODE, source, batch, System.nanoTime());
+        }
+        for (BatchListener listener : listeners) {
+            try {
+                listener.onBatch(source, batch);
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Reading Dispatch",
+                    "Listener failed for " + size + " readings from " + source, e);
+            }
+        }
+        if (tracer != null) {
+            tracer.reached(LatencyStage.DISPATCH, source, batch, System.nanoTime());
+        }
+    }
+
+    /**
+     * Parses the sensor data format: Sensor[XX] Type[XX] Value[XX.XX]
+     */
+    public static SensorData parseLine(String line) {
+        return parseLine(line, SensorData.NOT_STAMPED);
+    }
+
+    /**
+     * Parses a text line read from a port at the given {@link System#nanoTime()}
+     */
+    public static SensorData parseLine(String line, long arrivalNanos) {
+        SensorBatch batch = new SensorBatch(1);
+        parseLine(line, arrivalNanos, batch);
+        return batch.toSensorData(0);
+    }
+
+    // Parses by position rather than splitting, so a line costs only the value's substring
+    private static void parseLine(String line, long arrivalNanos, SensorBatch batch) {
+        int idEnd = line.indexOf(']', 7);
+        int typeStart = line.indexOf("Type[", idEnd) + 5;
+        int typeEnd = line.indexOf(']', typeStart);
+        int valueStart = line.indexOf("Value[", typeEnd) + 6;
+        int valueEnd = line.lastIndexOf(']');
+        if (idEnd < 0 || typeStart < 5 || typeEnd < 0 || valueStart < 6 || valueEnd < valueStart) {
+            throw new IllegalArgumentException("Malformed sensor line: " + line);
+        }
+        int sensorId = Integer.parseInt(line, 7, idEnd, 16);
+        byte type = (byte) Integer.parseInt(line, typeStart, typeEnd, 16);
+        double value = Double.parseDouble(line.substring(valueStart, valueEnd));
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Non-finite sensor value: " + line);
+        }
+        batch.add(sensorId, type, EpochClock.nowNanos(), value, arrivalNanos);
+    }
+
+    public long getReadingsIngested() {
+        return readingsIngested.sum();
+    }
+
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+}
@@ -0,0 +1,141 @@
+package com.dashtech.smartfactory.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Assigns every sensor a dense code in [0, capacity) on first sight. Per-sensor state
+ * elsewhere in the pipeline lives in primitive arrays indexed by that code, so the hot
+ * path never touches a map. Lookups are lock-free; registration of a new sensor is
+ * synchronized and happens once per sensor.
+ */
+public class SensorRegistry {
+    private static final Logger logger = LogManager.getLogger(SensorRegistry.class);
+    public static final int NO_CODE = -1;
+    private static final int DEFAULT_CAPACITY = 65_536;
+    private static final int DIRECT_LOOKUP_LIMIT = 65_536;
+    private static final SensorRegistry instance =
+        new SensorRegistry(Integer.getInteger("smartfactory.sensors.capacity", DEFAULT_CAPACITY));
+
+    private final int capacity;
+    // Sensor ids below DIRECT_LOOKUP_LIMIT resolve through this table, larger ids through the map
+    private final AtomicIntegerArray directCodes = new AtomicIntegerArray(DIRECT_LOOKUP_LIMIT);
+    private final ConcurrentHashMap<Integer, Integer> overflowCodes = new ConcurrentHashMap<>();
+    private final int[] sensorIds;
+    private final String[] types;
+    // Expected reporting interval per code in millis, 0 when not configured
+    private final AtomicIntegerArray expectedIntervals;
+    private final ConcurrentHashMap<String, Integer> typeIntervals = new ConcurrentHashMap<>();
+    private volatile int size;
+    private boolean fullLogged;
+
+    public SensorRegistry(int capacity) {
+        this.capacity = capacity;
+        this.sensorIds = new int[capacity];
+        this.types = new String[capacity];
+        this.expectedIntervals = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < DIRECT_LOOKUP_LIMIT; i++) {
+            directCodes.set(i, NO_CODE);
+        }
+    }
+
+    public static SensorRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the code for a sensor, registering it if it has not been seen before
+     * @return The dense code, or {@link #NO_CODE} if the registry is full
+     */
+    public int codeOf(int sensorId, String type) {
+        int code = lookup(sensorId);
+        return code != NO_CODE ? code : register(sensorId, type);
+    }
+
+    /**
+     * Returns the code for a known sensor without registering it
+     */
+    public int lookup(int sensorId) {
+        if (sensorId >= 0 && sensorId < DIRECT_LOOKUP_LIMIT) {
+            return directCodes.get(sensorId);
+        }
+        Integer code = overflowCodes.get(sensorId);
+        return code != null ? code : NO_CODE;
+    }
+
+    private synchronized int register(int sensorId, String type) {
+        int code = lookup(sensorId);
+        if (code != NO_CODE) {
+            return code;
+        }
+        if (size == capacity) {
+            if (!fullLogged) {
+                logger.warn("Sensor registry full at {} sensors; sensor {} and later new sensors are not tracked",
+                    capacity, sensorId);
+                fullLogged = true;
+            }
+            return NO_CODE;
+        }
+        code = size;
+        sensorIds[code] = sensorId;
+        types[code] = type;
+        size = code + 1;
+        if (sensorId >= 0 && sensorId < DIRECT_LOOKUP_LIMIT) {
+            directCodes.set(sensorId, code);
+        } else {
+            overflowCodes.put(sensorId, code);
+        }
+        return code;
+    }
+
+    /**
+     * Sets how often a sensor is expected to report, registering it if needed
+     */
+    public void setExpectedInterval(int sensorId, String type, int intervalMillis) {
+        int code = codeOf(sensorId, type);
+        if (code != NO_CODE) {
+            expectedIntervals.set(code, intervalMillis);
+        }
+    }
+
+    /**
+     * Sets how often sensors of a type are expected to report, unless set per sensor
+     */
+    public void setExpectedInterval(String type, int intervalMillis) {
+        typeIntervals.put(type, intervalMillis);
+    }
+
+    /**
+     * Returns the expected reporting interval of a sensor in millis, or 0 if none is configured
+     */
+    public int getExpectedInterval(int code) {
+        int interval = expectedIntervals.get(code);
+        if (interval > 0) {
+            return interval;
+        }
+        String type = types[code];
+        return type != null ? typeIntervals.getOrDefault(type, 0) : 0;
+    }
+
+    public int sensorIdOf(int code) {
+        return sensorIds[code];
+    }
+
+    public String typeOf(int code) {
+        return types[code];
+    }
+
+    /**
+     * Number of registered sensors; codes [0, size) are valid
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
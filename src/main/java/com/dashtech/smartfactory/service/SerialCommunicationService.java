@@ -1,19 +1,37 @@
 package com.dashtech.smartfactory.service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.dashtech.smartfactory.jfr.SerialReadEvent;
 import com.dashtech.smartfactory.model.ActuatorCommand;
+import com.dashtech.smartfactory.model.CommandGroup;
+import com.dashtech.smartfactory.model.CommandResult;
+import com.dashtech.smartfactory.model.SerialConfig;
+import com.dashtech.smartfactory.serial.CaptureRecorder;
+import com.dashtech.smartfactory.serial.JSerialCommChannel;
+import com.dashtech.smartfactory.serial.LoopbackChannel;
+import com.dashtech.smartfactory.serial.SerialPortChannel;
 import com.dashtech.smartfactory.util.LoggingUtil;
-import com.fazecast.jSerialComm.SerialPort;
 
 public class SerialCommunicationService implements AutoCloseable {
     private static final Logger logger = LogManager.getLogger(SerialCommunicationService.class);
-    private SerialPort serialPort;
+    private static final DateTimeFormatter CAPTURE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private volatile SerialPortChannel channel;
+    private volatile PacketHandler decoder;
+    private volatile CaptureRecorder recorder;
+    private volatile CommandChannel commands;
     private final AtomicBoolean connected = new AtomicBoolean(false);
+    private final SensorIngestService ingestService;
     private SerialDataCallback callback;
     
     public interface SerialDataCallback {
@@ -21,71 +39,207 @@ public class SerialCommunicationService implements AutoCloseable {
         void onError(String error);
     }
     
+    public SerialCommunicationService() {
+        this(SensorIngestService.getInstance());
+    }
+    
+    /**
+     * Creates a port whose readings are ingested into the given hub instead of the shared one
+     */
+    public SerialCommunicationService(SensorIngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+    
     public void setCallback(SerialDataCallback callback) {
         this.callback = callback;
     }
     
     public List<String> getAvailablePorts() {
-        return List.of(SerialPort.getCommPorts()).stream()
-            .map(SerialPort::getSystemPortName)
-            .toList();
+        return JSerialCommChannel.getAvailablePorts();
     }
     
     public boolean connect(String portName, int baudRate) {
+        return connect(new JSerialCommChannel(SerialConfig.withBaudRate(portName, baudRate)));
+    }
+    
+    /**
+     * Connects to an in-process loopback instead of a hardware port. Bytes injected into
+     * the returned channel take exactly the same decode path as bytes read from a real port.
+     */
+    public LoopbackChannel connectInProcess(String portName) {
+        LoopbackChannel loopback = new LoopbackChannel(portName);
+        connect(loopback);
+        return loopback;
+    }
+    
+    public boolean connect(SerialPortChannel newChannel) {
         if (connected.get()) {
             disconnect();
         }
         
+        String portName = newChannel.getName();
         try {
-            serialPort = SerialPort.getCommPort(portName);
-            serialPort.setBaudRate(baudRate);
-            serialPort.setNumDataBits(8);
-            serialPort.setNumStopBits(1);
-            serialPort.setParity(SerialPort.NO_PARITY);
+            decoder = createDecoder(portName);
+            newChannel.setReceiver(this::receive);
             
-            if (!serialPort.openPort()) {
+            if (!newChannel.open()) {
                 LoggingUtil.logError(logger, "Serial Connect", 
                     "Failed to open port " + portName, new Exception("Port open failed"));
+                decoder = null;
                 return false;
             }
             
-            // Set up the data listener
-            serialPort.addDataListener(new com.fazecast.jSerialComm.SerialPortDataListener() {
-                @Override
-                public int getListeningEvents() {
-                    return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
-                }
-                
-                @Override
-                public void serialEvent(com.fazecast.jSerialComm.SerialPortEvent event) {
-                    if (event.getEventType() != SerialPort.LISTENING_EVENT_DATA_AVAILABLE) {
-                        return;
-                    }
-                    
-                    byte[] buffer = new byte[serialPort.bytesAvailable()];
-                    int numRead = serialPort.readBytes(buffer, buffer.length);
-                    
-                    if (numRead > 0 && callback != null) {
-                        String data = new String(buffer, 0, numRead).trim();
-                        LoggingUtil.logSerialEvent(logger, "DATA_RECEIVED", portName, data);
-                        callback.onDataReceived(data);
-                    }
-                }
-            });
-            
+            channel = newChannel;
+            CommandChannel newCommands = new CommandChannel(newChannel);
+            commands = newCommands;
+            ingestService.getMetrics().port(portName).setCommands(newCommands::getQueued, newCommands::getInFlight);
             connected.set(true);
+            startCaptureIfConfigured(portName);
             LoggingUtil.logSerialEvent(logger, "CONNECT", portName, 
-                String.format("Connected at %d baud", baudRate));
+                String.format("Connected via %s", newChannel.getClass().getSimpleName()));
             return true;
         } catch (Exception e) {
             LoggingUtil.logError(logger, "Serial Connect", 
                 "Error connecting to port " + portName, e);
+            decoder = null;
             return false;
         }
     }
     
+    private void receive(byte[] buffer, int length) {
+        // Monotonic arrival stamp carried by every reading decoded from these bytes
+        long arrivalNanos = System.nanoTime();
+        SerialReadEvent event = new SerialReadEvent();
+        event.begin();
+        CaptureRecorder capture = recorder;
+        if (capture != null) {
+            capture.onBytes(buffer, length);
+        }
+        PacketHandler handler = decoder;
+        if (handler == null) {
+            return;
+        }
+        LoggingUtil.logSerialData(logger, getCurrentPortName(), length);
+        handler.processIncomingData(buffer, 0, length, arrivalNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.port = getCurrentPortName();
+            event.bytes = length;
+            event.backlog = handler.getPendingBytes();
+            event.commit();
+        }
+    }
+
+    private PacketHandler createDecoder(String portName) {
+        return ingestService.createDecoder(portName, new PacketHandler.PacketCallback() {
+            @Override
+            public void onSensorData(byte sensorId, byte dataType, float value) {
+            }
+
+            @Override
+            public void onCommandResponse(byte actuatorId, byte commandType) {
+                CommandChannel current = commands;
+                if (current != null) {
+                    current.onAck(actuatorId, commandType);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                if (callback != null) {
+                    callback.onError(error);
+                }
+            }
+
+            @Override
+            public void onTextLine(String line) {
+                if (callback != null) {
+                    callback.onDataReceived(line);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Starts journaling every received byte to a capture file, replacing any running capture
+     */
+    public CaptureRecorder startRecording(Path file) throws IOException {
+        stopRecording();
+        CaptureRecorder capture = new CaptureRecorder(file, getCurrentPortName());
+        recorder = capture;
+        LoggingUtil.logSerialEvent(logger, "CAPTURE_START", getCurrentPortName(), "Recording to " + file);
+        return capture;
+    }
+    
+    public void stopRecording() {
+        CaptureRecorder capture = recorder;
+        recorder = null;
+        if (capture != null) {
+            capture.close();
+            LoggingUtil.logSerialEvent(logger, "CAPTURE_STOP", getCurrentPortName(), 
+                String.format("Recorded %d reads, %d bytes to %s", 
+                    capture.getRecordCount(), capture.getByteCount(), capture.getFile()));
+        }
+    }
+    
+    // Records every connection when smartfactory.serial.capture.dir is set
+    private void startCaptureIfConfigured(String portName) {
+        String captureDir = System.getProperty("smartfactory.serial.capture.dir");
+        if (captureDir == null || captureDir.isBlank()) {
+            return;
+        }
+        String fileName = portName.replaceAll("[^A-Za-z0-9_-]", "_") + "-"
+            + LocalDateTime.now().format(CAPTURE_TIMESTAMP) + CaptureRecorder.FILE_EXTENSION;
+        try {
+            startRecording(Paths.get(captureDir, fileName));
+        } catch (IOException e) {
+            LoggingUtil.logError(logger, "Serial Capture", "Failed to start capture for " + portName, e);
+        }
+    }
+    
+    /**
+     * Sends the command through the port's command channel. The future completes once the
+     * actuator acknowledges it, so many commands can be outstanding on the link at once.
+     */
+    public CompletableFuture<CommandResult> submitCommand(ActuatorCommand command) {
+        CommandChannel current = commands;
+        if (!connected.get() || current == null) {
+            LoggingUtil.logSerialEvent(logger, "SEND_ERROR", getCurrentPortName(), 
+                "Not connected to serial port");
+            return CompletableFuture.failedFuture(new IllegalStateException("Not connected to serial port"));
+        }
+        return current.submit(command);
+    }
+    
+    /**
+     * Sends all commands of the group in a single write; one future per command, in group order
+     */
+    public List<CompletableFuture<CommandResult>> submitGroup(CommandGroup group) {
+        CommandChannel current = commands;
+        if (!connected.get() || current == null) {
+            LoggingUtil.logSerialEvent(logger, "SEND_ERROR", getCurrentPortName(), 
+                "Not connected to serial port");
+            IllegalStateException error = new IllegalStateException("Not connected to serial port");
+            return group.commands().stream()
+                .map(command -> CompletableFuture.<CommandResult>failedFuture(error))
+                .toList();
+        }
+        return current.submitGroup(group);
+    }
+    
+    /**
+     * Command channel of the open port, or null when not connected
+     */
+    public CommandChannel getCommandChannel() {
+        return commands;
+    }
+    
+    /**
+     * Writes the command without waiting for an acknowledgement; true only means the bytes were written
+     */
     public boolean sendCommand(ActuatorCommand command) {
-        if (!connected.get() || serialPort == null) {
+        SerialPortChannel current = channel;
+        if (!connected.get() || current == null) {
             LoggingUtil.logSerialEvent(logger, "SEND_ERROR", getCurrentPortName(), 
                 "Not connected to serial port");
             return false;
@@ -93,11 +247,11 @@ public class SerialCommunicationService implements AutoCloseable {
         
         try {
             byte[] data = command.toBinary();
-            int written = serialPort.writeBytes(data, data.length);
+            int written = current.write(data, 0, data.length);
             
             if (written == data.length) {
-                LoggingUtil.logSerialEvent(logger, "SEND_SUCCESS", getCurrentPortName(), 
-                    String.format("Command sent: %s", command.command()));
+                LoggingUtil.logSerialEvent(logger, "SEND_SUCCESS", getCurrentPortName(),
+                    "Command sent: {}", command.command());
                 return true;
             } else {
                 LoggingUtil.logSerialEvent(logger, "SEND_ERROR", getCurrentPortName(), 
@@ -112,26 +266,35 @@ public class SerialCommunicationService implements AutoCloseable {
     }
     
     public void disconnect() {
-        if (serialPort != null && serialPort.isOpen()) {
-            serialPort.removeDataListener();
-            serialPort.closePort();
+        stopRecording();
+        CommandChannel current = commands;
+        commands = null;
+        if (current != null) {
+            current.close();
+        }
+        if (channel != null) {
+            ingestService.getMetrics().port(channel.getName()).setCommands(null, null);
+        }
+        if (channel != null && channel.isOpen()) {
+            channel.close();
             LoggingUtil.logSerialEvent(logger, "DISCONNECT", getCurrentPortName(), 
                 "Port closed");
         }
         connected.set(false);
-        serialPort = null;
+        channel = null;
+        decoder = null;
     }
     
     public boolean isConnected() {
-        return connected.get() && serialPort != null && serialPort.isOpen();
+        return connected.get() && channel != null && channel.isOpen();
     }
     
     public String getCurrentPortName() {
-        return serialPort != null ? serialPort.getSystemPortName() : "Not Connected";
+        return channel != null ? channel.getName() : "Not Connected";
     }
     
     @Override
     public void close() {
         disconnect();
     }
-} 
\ No newline at end of file
+}
@@ -1,50 +1,167 @@
 package com.dashtech.smartfactory.service;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.sql.Timestamp;
 import java.util.Map;
 
-import javax.servlet.ServletContextEvent;
-import javax.servlet.ServletContextListener;
-import javax.servlet.annotation.WebListener;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.dashtech.smartfactory.model.DatabaseConfig;
-import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.alarm.AlarmEngine;
+import com.dashtech.smartfactory.jfr.PipelineRecording;
+import com.dashtech.smartfactory.metrics.LatencyTracer;
+import com.dashtech.smartfactory.metrics.PipelineMetrics;
+import com.dashtech.smartfactory.model.LoadProfile;
+import com.dashtech.smartfactory.modbus.ModbusRtuMaster;
+import com.dashtech.smartfactory.net.NetworkIngestListener;
 import com.dashtech.smartfactory.util.LoggingUtil;
 import com.dashtech.smartfactory.websocket.SmartFactoryWebSocket;
 
-@WebListener
-public class SmartFactoryService implements ServletContextListener {
+/**
+ * Owns the plant's ingest pipeline. Started in phases by
+ * {@link com.dashtech.smartfactory.config.SmartFactoryContextListener} so that the
+ * in-memory stages can be wired while storage is still opening. The stage order itself
+ * lives in {@link IngestPipeline}, shared with the load test.
+ */
+public class SmartFactoryService {
     private static final Logger logger = LogManager.getLogger(SmartFactoryService.class);
     private static DatabaseService databaseService;
+    private static IngestPipeline pipeline;
+    private static SensorDataWriter sensorDataWriter;
+    private static final SensorIngestService.BatchListener broadcaster = SmartFactoryWebSocket::broadcastBatch;
+    private static final AlarmEngine.AlarmListener alarmBroadcaster = SmartFactoryWebSocket::broadcastAlarm;
+    private static final StaleSensorWatchdog.HealthListener healthBroadcaster = SmartFactoryWebSocket::broadcastSensorHealth;
+    private static VirtualThreadSerialService loadGenerator;
+    private static PipelineRecording flightRecording;
+    private static NetworkIngestListener networkListener;
+    private static ModbusRtuMaster modbusMaster;
     
-    @Override
-    public void contextInitialized(ServletContextEvent sce) {
-        try {
-            String dbPath = System.getProperty("catalina.base") + "/data/smartfactory";
-            Path path = Paths.get(dbPath);
-            databaseService = DatabaseService.getInstance(DatabaseConfig.createDefault(path));
-            SmartFactoryWebSocket.setDatabaseService(dbPath);
-            
-            LoggingUtil.logStartup(logger, "SmartFactoryService", Map.of(
-                "dbPath", dbPath,
-                "status", "initialized"
-            ));
-        } catch (Exception e) {
-            LoggingUtil.logError(logger, "Context Initialization", "Failed to initialize SmartFactoryService", e);
-            throw new RuntimeException("Failed to initialize SmartFactoryService", e);
+    /**
+     * Whether storage and broadcast only see readings that passed the deadband filter
+     */
+    public static boolean isReportByExceptionEnabled() {
+        return Boolean.parseBoolean(System.getProperty("smartfactory.rbe.enabled", "true"));
+    }
+    
+    /**
+     * Registers the in-memory stages of the ingest path. Needs no storage, so it runs while
+     * the database is still opening; configuration files are loaded separately.
+     */
+    public void wirePipeline() {
+        pipeline = IngestPipeline.plant();
+        // Dashboards hear about alarms and stale sensors as they happen
+        pipeline.alarms.addListener(alarmBroadcaster);
+        pipeline.watchdog.addListener(healthBroadcaster);
+        pipeline.wire();
+    }
+    
+    /**
+     * Attaches the journals, the batched writer and history fallback to an opened database,
+     * then adds the storage and broadcast tail of the ingest path
+     */
+    public void attachStorage(DatabaseService database) {
+        databaseService = database;
+        HistoryService.getInstance().setDatabaseService(databaseService);
+        
+        // Persist in batches and broadcast to dashboards
+        sensorDataWriter = new SensorDataWriter(databaseService);
+        sensorDataWriter.setCommitListener(LatencyTracer.getInstance()::committed);
+        pipeline.attachStorage(databaseService, sensorDataWriter, broadcaster);
+    }
+    
+    /**
+     * Starts what produces or observes traffic: metrics registration, the flight recording,
+     * the optional TCP/UDP listener, the optional Modbus master and the optional load generator
+     */
+    public void startSources() {
+        registerMetrics();
+        flightRecording = PipelineRecording.startIfConfigured();
+        
+        // Serial device servers and Ethernet sensors, when smartfactory.net.tcpPort or udpPort is set
+        networkListener = NetworkIngestListener.startIfConfigured();
+        if (networkListener != null) {
+            PipelineMetrics.getInstance().registerGauge("smartfactory_net_connections",
+                "Open TCP connections from networked devices", networkListener::getOpenConnections);
+        }
+        
+        // Modbus RTU instruments, when smartfactory.modbus.port is set
+        modbusMaster = ModbusRtuMaster.startIfConfigured();
+        if (modbusMaster != null) {
+            PipelineMetrics.getInstance().registerGauge("smartfactory_modbus_bus_utilization",
+                "Fraction of time the Modbus bus spends in transactions", modbusMaster::getBusUtilization);
+        }
+        
+        // Optional synthetic load for capacity testing without hardware
+        if (Boolean.getBoolean("smartfactory.loadgen.enabled")) {
+            loadGenerator = new VirtualThreadSerialService(LoadProfile.fromSystemProperties());
+            loadGenerator.startSerialListener();
+        }
+    }
+    
+    // Queue depths and pool usage are sampled when /metrics is scraped
+    private static void registerMetrics() {
+        PipelineMetrics metrics = PipelineMetrics.getInstance();
+        metrics.registerQueue("sensorData", sensorDataWriter::getQueueDepth, sensorDataWriter::getDroppedCount);
+        metrics.registerQueue("alarmJournal", pipeline.getAlarmJournal()::getQueueDepth,
+            pipeline.getAlarmJournal()::getDroppedCount);
+        metrics.registerQueue("anomalyJournal", pipeline.getAnomalyJournal()::getQueueDepth,
+            pipeline.getAnomalyJournal()::getDroppedCount);
+        metrics.registerQueue("websocket", SmartFactoryWebSocket::getOutboxDepth, SmartFactoryWebSocket::getOutboxDropped);
+        metrics.registerGauge("smartfactory_db_pool_active_connections", "Pooled database connections in use",
+            databaseService::getActiveConnections);
+        metrics.registerGauge("smartfactory_db_pool_idle_connections", "Pooled database connections open but idle",
+            databaseService::getIdleConnections);
+        metrics.registerGauge("smartfactory_db_pool_max_connections", "Maximum pooled database connections",
+            databaseService::getMaxConnections);
+        metrics.registerGauge("smartfactory_latest_out_of_order_readings",
+            "Readings older than their sensor's latest value, which they did not replace",
+            pipeline.latestValues::getOutOfOrderCount);
+    }
+    
+    private static void unregisterMetrics() {
+        PipelineMetrics metrics = PipelineMetrics.getInstance();
+        for (String queue : new String[] {"sensorData", "alarmJournal", "anomalyJournal", "websocket"}) {
+            metrics.unregisterQueue(queue);
         }
+        metrics.unregisterGauge("smartfactory_db_pool_active_connections");
+        metrics.unregisterGauge("smartfactory_db_pool_idle_connections");
+        metrics.unregisterGauge("smartfactory_db_pool_max_connections");
+        metrics.unregisterGauge("smartfactory_latest_out_of_order_readings");
     }
     
-    @Override
-    public void contextDestroyed(ServletContextEvent sce) {
+    /**
+     * Detaches every stage and closes the journals, writer and database
+     */
+    public void stop() {
         try {
+            unregisterMetrics();
+            if (networkListener != null) {
+                PipelineMetrics.getInstance().unregisterGauge("smartfactory_net_connections");
+                networkListener.close();
+                networkListener = null;
+            }
+            if (modbusMaster != null) {
+                PipelineMetrics.getInstance().unregisterGauge("smartfactory_modbus_bus_utilization");
+                modbusMaster.close();
+                modbusMaster = null;
+            }
+            if (flightRecording != null) {
+                flightRecording.close();
+                flightRecording = null;
+            }
+            if (loadGenerator != null) {
+                loadGenerator.shutdown();
+                loadGenerator = null;
+            }
+            if (pipeline != null) {
+                pipeline.watchdog.removeListener(healthBroadcaster);
+                pipeline.alarms.removeListener(alarmBroadcaster);
+                pipeline.close();
+                pipeline = null;
+                sensorDataWriter = null;
+            }
             if (databaseService != null) {
+                HistoryService.getInstance().setDatabaseService(null);
                 databaseService.close();
+                databaseService = null;
             }
             LoggingUtil.logShutdown(logger, "SmartFactoryService", Map.of("status", "shutdown_complete"));
         } catch (Exception e) {
@@ -53,24 +170,6 @@ public class SmartFactoryService implements ServletContextListener {
     }
     
     public void processSerialData(String data) {
-        try {
-            // Parse the sensor data format: Sensor[XX] Type[XX] Value[XX.XX]
-            String[] parts = data.split("\\] ");
-            int sensorId = Integer.parseInt(parts[0].substring(7), 16);
-            String type = parts[1].substring(5);
-            double value = Double.parseDouble(parts[2].substring(6, parts[2].length() - 1));
-            
-            SensorData sensorData = new SensorData(
-                sensorId,
-                Integer.parseInt(type, 16) == 1 ? "Temperature" : "Pressure",
-                value,
-                new Timestamp(System.currentTimeMillis()).toInstant()
-            );
-            
-            databaseService.storeSensorData(sensorData);
-            LoggingUtil.logSensorData(logger, sensorId, sensorData.type(), value);
-        } catch (Exception e) {
-            LoggingUtil.logError(logger, "Serial Data Processing", "Error processing serial data: " + data, e);
-        }
+        SensorIngestService.getInstance().ingestLine("serial", data);
     }
 }
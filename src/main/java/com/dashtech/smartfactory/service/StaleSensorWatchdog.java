@@ -0,0 +1,367 @@
+package com.dashtech.smartfactory.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorHealthEvent;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Detects sensors that stop reporting. Every known sensor sits in one slot of a hashed timing
+ * wheel, keyed by the tick at which it would become stale. A reading only stores its arrival
+ * time, which moves the sensor's deadline in O(1) without touching the wheel; when the slot
+ * comes round, the watchdog thread either finds the deadline has moved and re-files the sensor,
+ * or marks it stale. A sensor is therefore handled about once per stale threshold rather than
+ * once per reading, and 100k sensors cost a few thousand slot visits per second.
+ * <p>
+ * Arrival times and deadlines are {@link System#nanoTime()} values, so a wall clock step does
+ * not mark every sensor stale or hide a silent one. Only the watchdog thread links a sensor into
+ * the wheel: a reading for a stale sensor queues it, and a reading that lands while the watchdog
+ * is marking that sensor stale leaves the recovery to the watchdog, so a sensor is never filed
+ * twice.
+ * <p>
+ * A sensor is stale after staleFactor times its expected interval without a reading. Expected
+ * intervals come from the {@link SensorRegistry}, loaded from the JSON file named by
+ * smartfactory.watchdog.intervals ({"sensorId" | "sensorType", "expectedIntervalMillis"}),
+ * falling back to smartfactory.watchdog.defaultIntervalMillis.
+ */
+public class StaleSensorWatchdog implements SensorIngestService.BatchListener, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(StaleSensorWatchdog.class);
+    private static final StaleSensorWatchdog instance = create(SensorRegistry.getInstance(), LatestValueStore.getInstance());
+
+    private static final int UNSCHEDULED = 0;
+    private static final int SCHEDULED = 1;
+    private static final int STALE = 2;
+    // Being marked stale by the watchdog thread; readings in this state leave the recovery to it
+    private static final int EXPIRING = 3;
+    private static final int NIL = -1;
+
+    @FunctionalInterface
+    public interface HealthListener {
+        void onHealthEvent(SensorHealthEvent event);
+    }
+
+    private final SensorRegistry registry;
+    private final LatestValueStore latestValues;
+    private final long tickMillis;
+    private final long tickNanos;
+    private final int mask;
+    private final int defaultIntervalMillis;
+    private final double staleFactor;
+    private final List<HealthListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Written by reading threads; lastSeen holds System.nanoTime() values
+    private final AtomicLongArray lastSeen;
+    private final AtomicIntegerArray states;
+    private final Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+
+    // Owned by the watchdog thread: per-slot singly linked lists threaded through next[]
+    private final int[] slots;
+    private final int[] next;
+    private long currentTick;
+
+    private final AtomicLong staleEvents = new AtomicLong();
+    private final AtomicLong recoveredEvents = new AtomicLong();
+    private volatile Thread wheelThread;
+    private volatile boolean running;
+
+    public StaleSensorWatchdog(SensorRegistry registry, LatestValueStore latestValues, long tickMillis,
+            int wheelSize, int defaultIntervalMillis, double staleFactor) {
+        if (tickMillis <= 0 || defaultIntervalMillis <= 0 || staleFactor < 1) {
+            throw new IllegalArgumentException("Invalid watchdog settings");
+        }
+        this.registry = registry;
+        this.latestValues = latestValues;
+        this.tickMillis = tickMillis;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(16, wheelSize - 1) << 1);
+        this.mask = size - 1;
+        this.defaultIntervalMillis = defaultIntervalMillis;
+        this.staleFactor = staleFactor;
+        int capacity = registry.capacity();
+        this.lastSeen = new AtomicLongArray(capacity);
+        this.states = new AtomicIntegerArray(capacity);
+        this.slots = new int[size];
+        this.next = new int[capacity];
+        Arrays.fill(slots, NIL);
+    }
+
+    public static StaleSensorWatchdog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a watchdog with the smartfactory.watchdog.* wheel and thresholds; call
+     * {@link #start()} before feeding it
+     */
+    public static StaleSensorWatchdog create(SensorRegistry registry, LatestValueStore latestValues) {
+        return new StaleSensorWatchdog(
+            registry,
+            latestValues,
+            Long.getLong("smartfactory.watchdog.tickMillis", 250),
+            Integer.getInteger("smartfactory.watchdog.wheelSize", 512),
+            Integer.getInteger("smartfactory.watchdog.defaultIntervalMillis", 10_000),
+            Double.parseDouble(System.getProperty("smartfactory.watchdog.staleFactor", "3")));
+    }
+
+    public void addListener(HealthListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(HealthListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts the watchdog thread; a closed watchdog can be started again and keeps its wheel
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        currentTick = Math.floorDiv(System.nanoTime(), tickNanos);
+        Thread thread = new Thread(this::run, "StaleSensorWatchdog");
+        thread.setDaemon(true);
+        wheelThread = thread;
+        thread.start();
+        LoggingUtil.logStartup(logger, "StaleSensorWatchdog", Map.of(
+            "tickMillis", String.valueOf(tickMillis),
+            "wheelSize", String.valueOf(slots.length),
+            "defaultIntervalMillis", String.valueOf(defaultIntervalMillis),
+            "staleFactor", String.valueOf(staleFactor)
+        ));
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        long now = System.nanoTime();
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code != SensorRegistry.NO_CODE) {
+                touch(code, now);
+            }
+        }
+    }
+
+    /**
+     * Records a reading; this is the whole per-reading cost once a sensor is scheduled
+     * @param nanoTime Arrival time as a {@link System#nanoTime()} value
+     */
+    public void touch(int code, long nanoTime) {
+        lastSeen.set(code, nanoTime);
+        int state = states.get(code);
+        if (state == UNSCHEDULED) {
+            if (states.compareAndSet(code, UNSCHEDULED, SCHEDULED)) {
+                pending.add(code);
+            }
+        } else if (state == STALE && states.compareAndSet(code, STALE, SCHEDULED)) {
+            // Queued only after the event, so the watchdog cannot report it stale again first
+            recover(code);
+            pending.add(code);
+        }
+    }
+
+    private void run() {
+        while (running && Thread.currentThread() == wheelThread) {
+            try {
+                long now = System.nanoTime();
+                tick(now);
+                TimeUnit.NANOSECONDS.sleep(tickNanos - Math.floorMod(now, tickNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Stale Sensor Watchdog", "Wheel tick failed", e);
+            }
+        }
+    }
+
+    /**
+     * Files queued sensors and expires every slot up to now. Called only from the watchdog thread.
+     */
+    void tick(long now) {
+        Integer code;
+        while ((code = pending.poll()) != null) {
+            schedule(code, deadlineOf(code));
+        }
+        long targetTick = Math.floorDiv(now, tickNanos);
+        while (currentTick <= targetTick) {
+            expire((int) (currentTick & mask), now);
+            currentTick++;
+        }
+    }
+
+    private void expire(int slot, long now) {
+        int code = slots[slot];
+        slots[slot] = NIL;
+        while (code != NIL) {
+            int following = next[code];
+            long seen = lastSeen.get(code);
+            long deadline = seen + staleNanosOf(code);
+            if (now - deadline < 0) {
+                schedule(code, deadline);
+            } else {
+                // Readings never move a sensor out of SCHEDULED, so this thread can take it unconditionally
+                states.set(code, EXPIRING);
+                if (lastSeen.get(code) != seen) {
+                    // A reading arrived while we were deciding; it left the sensor to us
+                    states.set(code, SCHEDULED);
+                    schedule(code, deadlineOf(code));
+                    code = following;
+                    continue;
+                }
+                latestValues.markQuality(code, QualityFlags.STALE, true);
+                staleEvents.incrementAndGet();
+                fire(code, SensorHealthEvent.State.STALE, now - seen);
+                states.set(code, STALE);
+                // A reading that saw EXPIRING left the recovery here; one that saw STALE recovered itself
+                if (lastSeen.get(code) != seen && states.compareAndSet(code, STALE, SCHEDULED)) {
+                    recover(code);
+                    schedule(code, deadlineOf(code));
+                }
+            }
+            code = following;
+        }
+    }
+
+    private void recover(int code) {
+        latestValues.markQuality(code, QualityFlags.STALE, false);
+        recoveredEvents.incrementAndGet();
+        fire(code, SensorHealthEvent.State.RECOVERED, 0);
+    }
+
+    private void schedule(int code, long deadline) {
+        long tick = Math.max(Math.floorDiv(deadline + tickNanos - 1, tickNanos), currentTick + 1);
+        // Deadlines beyond one revolution are parked in the furthest slot and re-filed when it comes round
+        tick = Math.min(tick, currentTick + mask);
+        int slot = (int) (tick & mask);
+        next[code] = slots[slot];
+        slots[slot] = code;
+    }
+
+    private long deadlineOf(int code) {
+        return lastSeen.get(code) + staleNanosOf(code);
+    }
+
+    private long staleNanosOf(int code) {
+        return (long) (TimeUnit.MILLISECONDS.toNanos(intervalOf(code)) * staleFactor);
+    }
+
+    private int intervalOf(int code) {
+        int interval = registry.getExpectedInterval(code);
+        return interval > 0 ? interval : defaultIntervalMillis;
+    }
+
+    private void fire(int code, SensorHealthEvent.State state, long silentNanos) {
+        long silentMillis = TimeUnit.NANOSECONDS.toMillis(silentNanos);
+        Instant now = Instant.now();
+        SensorHealthEvent event = new SensorHealthEvent(
+            registry.sensorIdOf(code),
+            registry.typeOf(code),
+            state,
+            now.minusMillis(silentMillis),
+            silentMillis,
+            intervalOf(code),
+            now
+        );
+        LoggingUtil.logSerialEvent(logger, "SENSOR_" + state.name(), "sensor " + event.sensorId(),
+            String.format("Last seen %s, expected every %d ms", event.lastSeen(), event.expectedIntervalMillis()));
+        for (HealthListener listener : listeners) {
+            try {
+                listener.onHealthEvent(event);
+            } catch (RuntimeException e) {
+                LoggingUtil.logError(logger, "Stale Sensor Watchdog", "Health listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Loads expected intervals into the registry from the file named by smartfactory.watchdog.intervals, if set
+     */
+    public void loadConfiguredIntervals() {
+        String file = System.getProperty("smartfactory.watchdog.intervals");
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        try {
+            JsonNode array = JsonUtil.mapper().readTree(Files.readString(Paths.get(file)));
+            for (JsonNode node : array) {
+                int interval = node.path("expectedIntervalMillis").asInt();
+                if (node.hasNonNull("sensorId")) {
+                    registry.setExpectedInterval(node.get("sensorId").asInt(), node.path("type").asText(null), interval);
+                } else if (node.hasNonNull("sensorType")) {
+                    registry.setExpectedInterval(node.get("sensorType").asText(), interval);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Stale Sensor Watchdog", "Failed to load expected intervals from " + file, e);
+        }
+    }
+
+    public boolean isStale(int code) {
+        int state = states.get(code);
+        return state == STALE || state == EXPIRING;
+    }
+
+    /**
+     * Returns the ids of all sensors currently considered stale
+     */
+    public List<Integer> getStaleSensorIds() {
+        List<Integer> stale = new ArrayList<>();
+        int size = registry.size();
+        for (int code = 0; code < size; code++) {
+            if (isStale(code)) {
+                stale.add(registry.sensorIdOf(code));
+            }
+        }
+        return stale;
+    }
+
+    public long getStaleEvents() {
+        return staleEvents.get();
+    }
+
+    public long getRecoveredEvents() {
+        return recoveredEvents.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        Thread thread = wheelThread;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            wheelThread = null;
+        }
+        LoggingUtil.logShutdown(logger, "StaleSensorWatchdog", Map.of(
+            "staleEvents", String.valueOf(staleEvents.get()),
+            "recoveredEvents", String.valueOf(recoveredEvents.get())
+        ));
+    }
+}
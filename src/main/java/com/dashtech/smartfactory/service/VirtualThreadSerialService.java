@@ -1,69 +1,311 @@
 package com.dashtech.smartfactory.service;
 
-import java.util.Random;
+import java.time.Instant;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.logging.log4j.Logger;
 
 import com.dashtech.smartfactory.logging.LoggerFactory;
-import com.dashtech.smartfactory.model.SensorReading;
+import com.dashtech.smartfactory.model.LoadProfile;
+import com.dashtech.smartfactory.model.LoadStats;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.model.SerialPacket;
+import com.dashtech.smartfactory.serial.LoopbackChannel;
 
+/**
+ * Synthetic load generator. Simulates {@link LoadProfile#sensorCount()} sensors with
+ * sine, ramp, step or random-walk signals plus noise, and writes their readings as
+ * binary {@link SerialPacket} frames and "Sensor[XX] Type[XX] Value[XX.XX]" text lines
+ * into a {@link LoopbackChannel}, so they travel the same decode, persist and broadcast path
+ * as data from real hardware.
+ * <p>
+ * Readings are paced against the target rate with optional jitter and random bursts.
+ * Binary frames carry a one-byte sensor id, so sensors above 255 are always sent as text.
+ */
 public class VirtualThreadSerialService {
 
     private static final Logger logger = LoggerFactory.getLogger(VirtualThreadSerialService.class);
-    private final ExecutorService executor = Executors.newFixedThreadPool(2); // One for listener, one for processing
-    private final Random random = new Random();
+    private static final int MAX_READINGS_PER_WRITE = 4096;
+    private static final int MAX_BACKLOG = MAX_READINGS_PER_WRITE * 4;
+    private static final int MAX_TEXT_LINE_LENGTH = 48;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final SensorType[] SIMULATED_TYPES = {
+        SensorType.TEMPERATURE, SensorType.PRESSURE, SensorType.HUMIDITY
+    };
+
+    private final LoadProfile profile;
+    private final SerialCommunicationService port;
+    private final LoopbackChannel channel;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "LoadGenerator");
+        t.setDaemon(true);
+        return t;
+    });
+    private final SplittableRandom random;
+    private final byte[] output = new byte[MAX_READINGS_PER_WRITE * MAX_TEXT_LINE_LENGTH];
+
+    // Per-sensor signal parameters, indexed by sensor - 1
+    private final byte[] typeCodes;
+    private final LoadProfile.Waveform[] shapes;
+    private final double[] base;
+    private final double[] amplitude;
+    private final double[] period;
+    private final double[] phase;
+    private final double[] walk;
+
+    private final AtomicLong readingsEmitted = new AtomicLong();
+    private final AtomicLong binaryFrames = new AtomicLong();
+    private final AtomicLong textLines = new AtomicLong();
+    private final AtomicLong bytesEmitted = new AtomicLong();
+    private final AtomicLong bursts = new AtomicLong();
+    private volatile boolean running;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+    private int cursor;
+
+    public VirtualThreadSerialService() {
+        this(LoadProfile.defaultProfile());
+    }
+
+    public VirtualThreadSerialService(LoadProfile profile) {
+        this(profile, new SerialCommunicationService());
+    }
+
+    /**
+     * Creates a generator that connects the given service to a loopback port named after the profile
+     */
+    public VirtualThreadSerialService(LoadProfile profile, SerialCommunicationService port) {
+        this.profile = profile;
+        this.port = port;
+        this.channel = port.connectInProcess(profile.portName());
+        this.random = new SplittableRandom(profile.seed());
+
+        int n = profile.sensorCount();
+        typeCodes = new byte[n];
+        shapes = new LoadProfile.Waveform[n];
+        base = new double[n];
+        amplitude = new double[n];
+        period = new double[n];
+        phase = new double[n];
+        walk = new double[n];
+        LoadProfile.Waveform[] concrete = {
+            LoadProfile.Waveform.SINE, LoadProfile.Waveform.RAMP,
+            LoadProfile.Waveform.STEP, LoadProfile.Waveform.RANDOM_WALK
+        };
+        for (int i = 0; i < n; i++) {
+            SensorType type = SIMULATED_TYPES[i % SIMULATED_TYPES.length];
+            typeCodes[i] = type.getCode();
+            shapes[i] = profile.waveform() == LoadProfile.Waveform.MIXED ? concrete[i % concrete.length] : profile.waveform();
+            switch (type) {
+                case TEMPERATURE -> { base[i] = 20.0 + random.nextDouble() * 10; amplitude[i] = 5.0; }
+                case PRESSURE -> { base[i] = 100.0 + random.nextDouble() * 50; amplitude[i] = 20.0; }
+                default -> { base[i] = 40.0 + random.nextDouble() * 20; amplitude[i] = 10.0; }
+            }
+            period[i] = 10.0 + random.nextDouble() * 590.0;
+            phase[i] = random.nextDouble() * 2 * Math.PI;
+        }
+    }
 
     public void startSerialListener() {
-        // Start serial data listener
+        if (running) {
+            return;
+        }
+        running = true;
+        startNanos = System.nanoTime();
+        stopNanos = 0;
         executor.submit(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    // Mock serial data generation
-                    generateMockSensorData();
-                    Thread.sleep(2000); // Sleep for 2 seconds
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+            try {
+                generate();
+            } catch (RuntimeException e) {
+                logger.error("Load generator stopped unexpectedly", e);
+            } finally {
+                stopNanos = System.nanoTime();
             }
         });
-        logger.info("Serial listener started");
+        logger.info("Load generator started on {}: {} sensors at {}/s",
+            profile.portName(), profile.sensorCount(), profile.targetRate());
+    }
+
+    private void generate() {
+        long last = startNanos;
+        long burstUntil = 0;
+        double due = 1.0; // emit the first reading immediately
+
+        while (running && !Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            double rate = profile.targetRate();
+            if (now < burstUntil) {
+                rate *= profile.burstMultiplier();
+            } else if (profile.burstProbability() > 0
+                    && random.nextDouble() < profile.burstProbability() * (now - last) / 1e9) {
+                burstUntil = now + TimeUnit.MILLISECONDS.toNanos(profile.burstMillis());
+                bursts.incrementAndGet();
+            }
+
+            due = Math.min(due + rate * (now - last) / 1e9, MAX_BACKLOG);
+            last = now;
+
+            int count = (int) Math.min(due, MAX_READINGS_PER_WRITE);
+            if (count > 0) {
+                due -= count;
+                emit(count, (now - startNanos) / 1e9);
+                continue;
+            }
+
+            // Sleep until the next reading is due, perturbed by the configured jitter
+            double waitNanos = (1.0 - due) / rate * 1e9;
+            waitNanos *= 1.0 + profile.jitter() * (2 * random.nextDouble() - 1);
+            LockSupport.parkNanos(Math.max(MIN_PARK_NANOS, Math.min(MAX_PARK_NANOS, (long) waitNanos)));
+        }
+    }
+
+    private void emit(int count, double seconds) {
+        int length = 0;
+        int binary = 0;
+        int sensorCount = profile.sensorCount();
+        for (int r = 0; r < count; r++) {
+            int i = cursor;
+            cursor = cursor + 1 == sensorCount ? 0 : cursor + 1;
+            int sensorId = i + 1;
+            double value = nextValue(i, seconds);
+            if (sensorId <= 0xFF && random.nextDouble() < profile.binaryRatio()) {
+                length = writeFrame(length, sensorId, typeCodes[i], (float) value);
+                binary++;
+            } else {
+                length = writeLine(length, sensorId, typeCodes[i], value);
+            }
+        }
+
+        channel.inject(output, 0, length);
+
+        readingsEmitted.addAndGet(count);
+        binaryFrames.addAndGet(binary);
+        textLines.addAndGet(count - binary);
+        bytesEmitted.addAndGet(length);
     }
 
-    private void generateMockSensorData() {
-        // Generate random sensor data
-        var sensorData = switch (random.nextInt(3)) {
-            case 0 -> new SensorReading(1, "Temperature", 20.0 + random.nextDouble() * 10);
-            case 1 -> new SensorReading(2, "Pressure", 100.0 + random.nextDouble() * 50);
-            case 2 -> new SensorReading(3, "Humidity", 40.0 + random.nextDouble() * 20);
-            default -> throw new IllegalStateException("Unexpected value");
+    private double nextValue(int i, double seconds) {
+        double a = amplitude[i];
+        double cycle = seconds / period[i] + phase[i] / (2 * Math.PI);
+        double signal = switch (shapes[i]) {
+            case SINE -> a * Math.sin(2 * Math.PI * cycle);
+            case RAMP -> a * (2 * (cycle - Math.floor(cycle)) - 1);
+            case STEP -> cycle - Math.floor(cycle) < 0.5 ? a : -a;
+            case RANDOM_WALK -> walk[i] = walk[i] * 0.995 + random.nextGaussian() * a * 0.1;
+            case MIXED -> 0.0;
         };
+        return base[i] + signal + random.nextGaussian() * a * profile.noise();
+    }
 
-        // Process with thread pool
-        executor.submit(() -> processSensorData(sensorData));
+    private int writeFrame(int pos, int sensorId, byte type, float value) {
+        int bits = Float.floatToIntBits(value);
+        int start = pos;
+        output[pos++] = (byte) (SerialPacket.SENSOR_HEADER >> 8);
+        output[pos++] = (byte) SerialPacket.SENSOR_HEADER;
+        output[pos++] = (byte) sensorId;
+        output[pos++] = type;
+        output[pos++] = (byte) (bits >> 24);
+        output[pos++] = (byte) (bits >> 16);
+        output[pos++] = (byte) (bits >> 8);
+        output[pos++] = (byte) bits;
+        byte checksum = 0;
+        for (int k = start; k < pos; k++) {
+            checksum ^= output[k];
+        }
+        output[pos++] = checksum;
+        return pos;
     }
 
-    private void processSensorData(SensorReading sensorData) {
-        try {
-            // Simulate some processing time
-            Thread.sleep(100);
-            
-            // Log the processed sensor data
-            logger.info("Processed sensor reading - ID: {}, Type: {}, Value: {}", 
-                sensorData.sensorId(), 
-                sensorData.dataType(), 
-                sensorData.value());
-                
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            logger.error("Sensor data processing interrupted", e);
+    // Writes "Sensor[XX] Type[XX] Value[XX.XX]\n" without going through String.format
+    private int writeLine(int pos, int sensorId, byte type, double value) {
+        pos = writeAscii(pos, "Sensor[");
+        int digits = Math.max(2, (32 - Integer.numberOfLeadingZeros(sensorId) + 3) / 4);
+        for (int d = digits - 1; d >= 0; d--) {
+            output[pos++] = HEX[(sensorId >>> (d * 4)) & 0xF];
         }
+        pos = writeAscii(pos, "] Type[");
+        output[pos++] = HEX[(type >> 4) & 0xF];
+        output[pos++] = HEX[type & 0xF];
+        pos = writeAscii(pos, "] Value[");
+
+        long hundredths = Math.round(value * 100);
+        if (hundredths < 0) {
+            output[pos++] = '-';
+            hundredths = -hundredths;
+        }
+        pos = writeDecimal(pos, hundredths / 100);
+        output[pos++] = '.';
+        output[pos++] = (byte) ('0' + (hundredths / 10) % 10);
+        output[pos++] = (byte) ('0' + hundredths % 10);
+        output[pos++] = ']';
+        output[pos++] = '\n';
+        return pos;
+    }
+
+    private int writeAscii(int pos, String text) {
+        for (int k = 0; k < text.length(); k++) {
+            output[pos++] = (byte) text.charAt(k);
+        }
+        return pos;
+    }
+
+    private int writeDecimal(int pos, long number) {
+        if (number == 0) {
+            output[pos++] = '0';
+            return pos;
+        }
+        int digits = 0;
+        for (long n = number; n > 0; n /= 10) {
+            digits++;
+        }
+        for (int d = digits - 1; d >= 0; d--) {
+            output[pos + d] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        return pos + digits;
+    }
+
+    public LoadProfile getProfile() {
+        return profile;
+    }
+
+    public SerialCommunicationService getPort() {
+        return port;
+    }
+
+    public LoopbackChannel getChannel() {
+        return channel;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public LoadStats getStats() {
+        long end = stopNanos != 0 ? stopNanos : System.nanoTime();
+        double elapsed = startNanos == 0 ? 0 : (end - startNanos) / 1e9;
+        long emitted = readingsEmitted.get();
+        return new LoadStats(
+            emitted,
+            binaryFrames.get(),
+            textLines.get(),
+            bytesEmitted.get(),
+            bursts.get(),
+            elapsed,
+            elapsed > 0 ? emitted / elapsed : 0,
+            Instant.now()
+        );
     }
 
     public void shutdown() {
+        running = false;
         executor.shutdown();
         try {
             if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -73,5 +315,7 @@ public class VirtualThreadSerialService {
             executor.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        port.disconnect();
+        logger.info("Load generator stopped. {}", getStats());
     }
 }
@@ -0,0 +1,49 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.alarm.AlarmEngine;
+import com.dashtech.smartfactory.alarm.AlarmJournal;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serves the currently raised alarms and, on request, the most recent journal entries.
+ * GET /api/alarms[?journal=N]
+ */
+@WebServlet(urlPatterns = "/api/alarms")
+public class AlarmServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_JOURNAL_ENTRIES = 1000;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            AlarmEngine engine = AlarmEngine.getInstance();
+            ObjectNode body = JsonUtil.mapper().createObjectNode();
+            body.put("rules", engine.getRules().size());
+            body.put("raised", engine.getEventsRaised());
+            body.put("cleared", engine.getEventsCleared());
+            body.set("active", JsonUtil.alarmEvents(engine.getActiveAlarms()));
+
+            String journal = request.getParameter("journal");
+            if (journal != null) {
+                int limit = Math.min(Integer.parseInt(journal), MAX_JOURNAL_ENTRIES);
+                AlarmJournal alarmJournal = engine.getJournal();
+                if (alarmJournal == null) {
+                    JsonUtil.writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Alarm journal not available");
+                    return;
+                }
+                body.set("journal", JsonUtil.alarmEvents(alarmJournal.recent(limit)));
+            }
+            JsonUtil.write(response, HttpServletResponse.SC_OK, body);
+        } catch (IllegalArgumentException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.anomaly.AnomalyDetector;
+import com.dashtech.smartfactory.anomaly.AnomalyJournal;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serves recently flagged readings from the anomaly table.
+ * GET /api/anomalies[?sensorId=N][&amp;limit=100]
+ */
+@WebServlet(urlPatterns = "/api/anomalies")
+public class AnomalyServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            AnomalyDetector detector = AnomalyDetector.getInstance();
+            AnomalyJournal journal = detector.getJournal();
+            if (journal == null) {
+                JsonUtil.writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Anomaly journal not available");
+                return;
+            }
+            String sensorId = request.getParameter("sensorId");
+            String limit = request.getParameter("limit");
+            int rows = Math.min(limit != null ? Integer.parseInt(limit) : DEFAULT_LIMIT, MAX_LIMIT);
+
+            ObjectNode body = JsonUtil.mapper().createObjectNode();
+            body.put("checked", detector.getReadingsChecked());
+            body.put("flagged", detector.getAnomaliesFlagged());
+            body.set("anomalies", JsonUtil.anomalies(
+                journal.recent(sensorId != null ? Integer.valueOf(sensorId) : null, rows)));
+            JsonUtil.write(response, HttpServletResponse.SC_OK, body);
+        } catch (IllegalArgumentException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -1,4 +1,70 @@
 package com.dashtech.smartfactory.servlet;
 
-public class HealthCheckServlet {
+import java.io.IOException;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.alarm.AlarmEngine;
+import com.dashtech.smartfactory.anomaly.AnomalyDetector;
+import com.dashtech.smartfactory.logging.LogSampler;
+import com.dashtech.smartfactory.metrics.LatencyTracer;
+import com.dashtech.smartfactory.metrics.PipelineMetrics;
+import com.dashtech.smartfactory.model.ThreadStats;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.service.StaleSensorWatchdog;
+import com.dashtech.smartfactory.util.ThreadPoolManager;
+import com.dashtech.smartfactory.websocket.SmartFactoryWebSocket;
+
+/**
+ * Serves live pipeline metrics in the Prometheus text exposition format.
+ * GET /metrics covers per-port throughput and decode failures, decoder backlog,
+ * database batch and commit latency histograms, pool usage, queue depths and drops,
+ * WebSocket sessions and the analytics engines' counters.
+ */
+@WebServlet(urlPatterns = "/metrics")
+public class HealthCheckServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StringBuilder out = new StringBuilder(8192);
+        PipelineMetrics.getInstance().writeTo(out);
+        LatencyTracer.getInstance().writeTo(out);
+
+        SensorIngestService ingest = SensorIngestService.getInstance();
+        PipelineMetrics.counter(out, "smartfactory_ingest_readings_total", "Readings ingested from all sources",
+            ingest.getReadingsIngested());
+        PipelineMetrics.counter(out, "smartfactory_ingest_failures_total", "Frames and lines rejected by all decoders",
+            ingest.getParseFailures());
+
+        PipelineMetrics.gauge(out, "smartfactory_websocket_sessions", "Open WebSocket sessions",
+            SmartFactoryWebSocket.getSessionCount());
+
+        ThreadStats threads = ThreadPoolManager.getInstance().getCurrentStats();
+        PipelineMetrics.gauge(out, "smartfactory_tasks_active", "Tasks running on the shared pool", threads.activeTasks());
+        PipelineMetrics.counter(out, "smartfactory_tasks_submitted_total", "Tasks submitted to the shared pool", threads.totalTasksSubmitted());
+        PipelineMetrics.gauge(out, "smartfactory_tasks_queued", "Tasks waiting for a thread of the shared pool", threads.queueSize());
+
+        AlarmEngine alarms = AlarmEngine.getInstance();
+        PipelineMetrics.gauge(out, "smartfactory_alarms_active", "Alarms currently raised", alarms.getActiveAlarms().size());
+        PipelineMetrics.counter(out, "smartfactory_alarms_raised_total", "Alarms raised since startup", alarms.getEventsRaised());
+        PipelineMetrics.counter(out, "smartfactory_anomalies_flagged_total", "Readings flagged as anomalous since startup",
+            AnomalyDetector.getInstance().getAnomaliesFlagged());
+        PipelineMetrics.gauge(out, "smartfactory_sensors_stale", "Sensors that have stopped reporting",
+            StaleSensorWatchdog.getInstance().getStaleSensorIds().size());
+
+        PipelineMetrics.counter(out, "smartfactory_log_sampled_out_total", "Hot-path log events skipped by sampling",
+            LogSampler.getSampledOut());
+        PipelineMetrics.counter(out, "smartfactory_log_budget_suppressed_total", "Hot-path log events over the per-second budget",
+            LogSampler.getSuppressed());
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(out.toString());
+    }
 }
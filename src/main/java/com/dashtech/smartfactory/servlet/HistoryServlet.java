@@ -0,0 +1,54 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.service.HistoryService;
+import com.dashtech.smartfactory.util.JsonUtil;
+
+/**
+ * Serves recent sensor history, from memory when the window is retained.
+ * GET /api/history?sensorId=N[&amp;from=epochMillis][&amp;to=epochMillis][&amp;minutes=10][&amp;width=pixels]
+ */
+@WebServlet(urlPatterns = "/api/history")
+public class HistoryServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final long DEFAULT_MINUTES = 10;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            int sensorId = Integer.parseInt(require(request, "sensorId"));
+            long to = longParameter(request, "to", System.currentTimeMillis());
+            long from = longParameter(request, "from",
+                to - TimeUnit.MINUTES.toMillis(longParameter(request, "minutes", DEFAULT_MINUTES)));
+            if (from > to) {
+                JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "from must not be after to");
+                return;
+            }
+            int width = (int) longParameter(request, "width", 0);
+            JsonUtil.write(response, HttpServletResponse.SC_OK,
+                HistoryService.getInstance().queryAsJson(sensorId, from, to, width));
+        } catch (IllegalArgumentException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private static String require(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static long longParameter(HttpServletRequest request, String name, long defaultValue) {
+        String value = request.getParameter(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
@@ -0,0 +1,75 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.metrics.LatencyHistogram;
+import com.dashtech.smartfactory.metrics.LatencyStage;
+import com.dashtech.smartfactory.metrics.LatencyTracer;
+import com.dashtech.smartfactory.model.SlowTrace;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serves end-to-end reading latency from byte arrival to decode, dispatch, database commit
+ * and WebSocket send, with recent slow-path traces.
+ * GET /api/latency returns the distributions since startup or the last reset;
+ * GET /api/latency?reset=true returns them and starts a new interval.
+ */
+@WebServlet(urlPatterns = "/api/latency")
+public class LatencyServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LatencyTracer tracer = LatencyTracer.getInstance();
+        ObjectNode body = JsonUtil.mapper().createObjectNode();
+        body.put("enabled", tracer.isEnabled());
+        body.put("slowThresholdMillis", tracer.getSlowThresholdMillis());
+
+        ObjectNode stages = body.putObject("stagesMicros");
+        for (LatencyStage stage : LatencyStage.values()) {
+            stages.set(stage.getLabel(), toJson(tracer.getHistogram(stage)));
+        }
+
+        ArrayNode slow = body.putArray("slowTraces");
+        for (SlowTrace trace : tracer.getSlowTraces()) {
+            ObjectNode node = slow.addObject();
+            node.put("stage", trace.stage());
+            if (trace.source() != null) {
+                node.put("source", trace.source());
+            }
+            node.put("sensorId", trace.sensorId());
+            node.put("totalMillis", trace.totalMillis());
+            node.put("waitMillis", trace.waitMillis());
+            node.put("workMillis", trace.workMillis());
+            if (trace.detail() != null) {
+                node.put("detail", trace.detail());
+            }
+            node.put("timestamp", trace.timestamp().toEpochMilli());
+        }
+        body.put("slowTracesSkipped", tracer.getSlowTracesSkipped());
+
+        if (Boolean.parseBoolean(request.getParameter("reset"))) {
+            tracer.reset();
+        }
+        JsonUtil.write(response, HttpServletResponse.SC_OK, body);
+    }
+
+    private static ObjectNode toJson(LatencyHistogram histogram) {
+        ObjectNode node = JsonUtil.mapper().createObjectNode();
+        node.put("count", histogram.getCount());
+        node.put("mean", histogram.getMean() / 1e3);
+        node.put("p50", histogram.getValueAtQuantile(0.50) / 1e3);
+        node.put("p90", histogram.getValueAtQuantile(0.90) / 1e3);
+        node.put("p99", histogram.getValueAtQuantile(0.99) / 1e3);
+        node.put("p999", histogram.getValueAtQuantile(0.999) / 1e3);
+        node.put("max", histogram.getMax() / 1e3);
+        return node;
+    }
+}
@@ -1,4 +1,129 @@
 package com.dashtech.smartfactory.servlet;
 
-public class PerformanceTestServlet {
+import java.io.IOException;
+import java.time.Duration;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.model.LoadProfile;
+import com.dashtech.smartfactory.model.LoadTestResult;
+import com.dashtech.smartfactory.service.LoadTestRunner;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Runs an on-demand capacity test through the decode, persist and broadcast path against
+ * a private in-memory database.
+ * POST /api/perftest?rate=1000&sensors=100&duration=10&binaryRatio=0.5 runs a test and returns its result;
+ * GET /api/perftest returns the result of the last test.
+ */
+@WebServlet(urlPatterns = "/api/perftest")
+public class PerformanceTestServlet extends HttpServlet {
+    private static final int MAX_DURATION_SECONDS = 600;
+
+    private static volatile LoadTestResult lastResult;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LoadTestResult result = lastResult;
+        if (result == null) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "No load test has run yet");
+            return;
+        }
+        JsonUtil.write(response, HttpServletResponse.SC_OK, toJson(result));
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        double rate;
+        int sensors;
+        int duration;
+        double binaryRatio;
+        try {
+            rate = Double.parseDouble(parameter(request, "rate", "1000"));
+            sensors = Integer.parseInt(parameter(request, "sensors", "100"));
+            duration = Integer.parseInt(parameter(request, "duration", "10"));
+            binaryRatio = Double.parseDouble(parameter(request, "binaryRatio", "0.5"));
+        } catch (NumberFormatException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid parameter: " + e.getMessage());
+            return;
+        }
+        if (duration <= 0 || duration > MAX_DURATION_SECONDS) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST,
+                "duration must be between 1 and " + MAX_DURATION_SECONDS + " seconds");
+            return;
+        }
+        if (rate <= 0 || rate > LoadProfile.MAX_RATE) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "rate must be in (0, 1000000]");
+            return;
+        }
+
+        LoadTestResult result;
+        try {
+            result = new LoadTestRunner().run(sensors, rate, binaryRatio, Duration.ofSeconds(duration));
+        } catch (IllegalStateException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_CONFLICT, e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        lastResult = result;
+        JsonUtil.write(response, HttpServletResponse.SC_OK, toJson(result));
+    }
+
+    private static String parameter(HttpServletRequest request, String name, String defaultValue) {
+        String value = request.getParameter(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static ObjectNode toJson(LoadTestResult result) {
+        ObjectNode node = JsonUtil.mapper().createObjectNode();
+        node.put("sensors", result.sensorCount());
+        node.put("targetRate", result.targetRate());
+        node.put("injectSeconds", result.injectSeconds());
+        node.put("elapsedSeconds", result.elapsedSeconds());
+
+        ObjectNode readings = node.putObject("readings");
+        readings.put("emitted", result.readingsEmitted());
+        readings.put("ingested", result.readingsIngested());
+        readings.put("reported", result.readingsReported());
+        readings.put("decodeFailures", result.decodeFailures());
+        readings.put("persisted", result.readingsPersisted());
+        readings.put("persistDropped", result.persistDropped());
+        readings.put("broadcast", result.readingsBroadcast());
+        readings.put("broadcastDropped", result.broadcastDropped());
+
+        ObjectNode throughput = node.putObject("throughput");
+        throughput.put("ingestPerSecond", result.ingestRate());
+        throughput.put("sustainedPerSecond", result.sustainedThroughput());
+
+        ObjectNode latency = node.putObject("latencyMillis");
+        latency.set("persist", toJson(result.persistLatency()));
+        latency.set("broadcast", toJson(result.broadcastLatency()));
+
+        ObjectNode gc = node.putObject("gc");
+        gc.put("pauses", result.gcPauses());
+        gc.put("pauseMillis", result.gcPauseMillis());
+        gc.put("maxPauseMillis", result.gcMaxPauseMillis());
+        gc.put("allocatedBytes", result.allocatedBytes());
+        gc.put("allocationBytesPerSecond", result.allocationRate());
+
+        node.put("completedAt", result.completedAt().toEpochMilli());
+        return node;
+    }
+
+    private static ObjectNode toJson(LoadTestResult.Latency latency) {
+        ObjectNode node = JsonUtil.mapper().createObjectNode();
+        node.put("count", latency.count());
+        JsonUtil.putNumber(node, "p50", latency.p50());
+        JsonUtil.putNumber(node, "p95", latency.p95());
+        JsonUtil.putNumber(node, "p99", latency.p99());
+        JsonUtil.putNumber(node, "p999", latency.p999());
+        JsonUtil.putNumber(node, "max", latency.max());
+        return node;
+    }
 }
@@ -0,0 +1,51 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.model.LatestValue;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.service.LatestValueStore;
+import com.dashtech.smartfactory.util.JsonUtil;
+
+/**
+ * Serves current plant state from the in-memory latest-value store.
+ * GET /api/state returns every sensor; GET /api/state?sensorId=N returns one;
+ * GET /api/state?stale=true returns only sensors that have stopped reporting.
+ */
+@WebServlet(urlPatterns = "/api/state")
+public class PlantStateServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LatestValueStore store = LatestValueStore.getInstance();
+        String sensorId = request.getParameter("sensorId");
+        if (sensorId == null) {
+            List<LatestValue> values = store.snapshot();
+            if (Boolean.parseBoolean(request.getParameter("stale"))) {
+                values = values.stream().filter(v -> (v.quality() & QualityFlags.STALE) != 0).toList();
+            }
+            JsonUtil.write(response, HttpServletResponse.SC_OK, JsonUtil.latestValues(values));
+            return;
+        }
+
+        LatestValue value;
+        try {
+            value = store.get(Integer.parseInt(sensorId));
+        } catch (NumberFormatException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid sensorId: " + sensorId);
+            return;
+        }
+        if (value == null) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "No reading for sensor " + sensorId);
+            return;
+        }
+        JsonUtil.write(response, HttpServletResponse.SC_OK, JsonUtil.latestValues(List.of(value)).get(0));
+    }
+}
@@ -0,0 +1,57 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.model.StatsSummary;
+import com.dashtech.smartfactory.stats.StatisticsEngine;
+import com.dashtech.smartfactory.stats.StatsWindow;
+import com.dashtech.smartfactory.stats.WindowStats;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serves streaming statistics of one sensor without touching the database.
+ * GET /api/stats?sensorId=N[&amp;window=lifetime|tumbling|tumbling_previous|sliding][&amp;sketch=true]
+ * <p>
+ * With sketch=true the response also carries the raw mergeable state, so summaries from
+ * several instances can be combined exactly with {@link WindowStats#fromJson} and merge.
+ */
+@WebServlet(urlPatterns = "/api/stats")
+public class StatisticsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            String sensorParameter = request.getParameter("sensorId");
+            if (sensorParameter == null) {
+                throw new IllegalArgumentException("Missing parameter: sensorId");
+            }
+            int sensorId = Integer.parseInt(sensorParameter);
+            String windowParameter = request.getParameter("window");
+            StatsWindow window = windowParameter != null ? StatsWindow.fromString(windowParameter) : StatsWindow.SLIDING;
+
+            StatisticsEngine engine = StatisticsEngine.getInstance();
+            StatsSummary summary = engine.summary(sensorId, window);
+            if (summary == null) {
+                JsonUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "No readings for sensor " + sensorId);
+                return;
+            }
+            ObjectNode body = JsonUtil.statsSummary(summary);
+            if (Boolean.parseBoolean(request.getParameter("sketch"))) {
+                WindowStats state = engine.window(sensorId, window);
+                if (state != null) {
+                    body.set("state", state.toJson());
+                }
+            }
+            JsonUtil.write(response, HttpServletResponse.SC_OK, body);
+        } catch (IllegalArgumentException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.model.SuppressionStats;
+import com.dashtech.smartfactory.service.CommandGate;
+import com.dashtech.smartfactory.service.ReportByExceptionFilter;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Serves report-by-exception suppression ratios.
+ * GET /api/suppression returns the plant total, every sensor and the suppressed actuator commands;
+ * GET /api/suppression?sensorId=N returns one sensor.
+ */
+@WebServlet(urlPatterns = "/api/suppression")
+public class SuppressionServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ReportByExceptionFilter filter = ReportByExceptionFilter.getInstance();
+        String sensorId = request.getParameter("sensorId");
+        if (sensorId != null) {
+            SuppressionStats stats;
+            try {
+                stats = filter.getStats(Integer.parseInt(sensorId));
+            } catch (NumberFormatException e) {
+                JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Invalid sensorId: " + sensorId);
+                return;
+            }
+            if (stats == null) {
+                JsonUtil.writeError(response, HttpServletResponse.SC_NOT_FOUND, "No readings for sensor " + sensorId);
+                return;
+            }
+            JsonUtil.write(response, HttpServletResponse.SC_OK, toJson(stats));
+            return;
+        }
+
+        ObjectNode body = JsonUtil.mapper().createObjectNode();
+        body.set("total", toJson(filter.getTotals()));
+        ArrayNode sensors = body.putArray("sensors");
+        for (SuppressionStats stats : filter.getAllStats()) {
+            sensors.add(toJson(stats));
+        }
+        CommandGate gate = CommandGate.getInstance();
+        ObjectNode commands = body.putObject("commands");
+        commands.put("admitted", gate.getAdmitted());
+        commands.put("rateLimited", gate.getRateLimited());
+        commands.put("superseded", gate.getSuperseded());
+        JsonUtil.write(response, HttpServletResponse.SC_OK, body);
+    }
+
+    private static ObjectNode toJson(SuppressionStats stats) {
+        ObjectNode node = JsonUtil.mapper().createObjectNode();
+        if (stats.sensorId() >= 0) {
+            node.put("sensorId", stats.sensorId());
+        }
+        node.put("received", stats.received());
+        node.put("reported", stats.reported());
+        node.put("suppressedRatio", stats.suppressedRatio());
+        node.put("reductionFactor", stats.reductionFactor());
+        return node;
+    }
+}
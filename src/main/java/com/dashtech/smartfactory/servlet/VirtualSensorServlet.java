@@ -0,0 +1,74 @@
+package com.dashtech.smartfactory.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.model.VirtualSensorDefinition;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.virtual.VirtualSensorEngine;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Lists and defines virtual sensors.
+ * GET /api/virtual lists definitions with evaluation counts; POST /api/virtual with a body of
+ * {"sensorId", "type", "expression"} adds or replaces one definition.
+ */
+@WebServlet(urlPatterns = "/api/virtual")
+public class VirtualSensorServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        VirtualSensorEngine engine = VirtualSensorEngine.getInstance();
+        ObjectNode body = JsonUtil.mapper().createObjectNode();
+        body.put("evaluations", engine.getEvaluations());
+        body.put("skippedOverBudget", engine.getSkippedOverBudget());
+        body.put("collisions", engine.getCollisions());
+        body.put("budgetPerSecond", engine.getBudgetPerSecond());
+        ArrayNode sensors = body.putArray("sensors");
+        for (VirtualSensorDefinition definition : engine.getDefinitions()) {
+            ObjectNode node = sensors.addObject();
+            node.put("sensorId", definition.sensorId());
+            node.put("type", definition.type());
+            node.put("expression", definition.expression());
+            node.put("cost", engine.getCost(definition.sensorId()));
+            node.put("evaluations", engine.getEvaluations(definition.sensorId()));
+            node.put("skipped", engine.getSkipped(definition.sensorId()));
+            double value = engine.evaluateNow(definition.sensorId());
+            if (Double.isFinite(value)) {
+                node.put("value", value);
+            } else {
+                node.putNull("value");
+            }
+        }
+        JsonUtil.write(response, HttpServletResponse.SC_OK, body);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            JsonNode json = JsonUtil.mapper().readTree(request.getReader());
+            VirtualSensorDefinition definition = new VirtualSensorDefinition(
+                json.path("sensorId").asInt(),
+                json.path("type").asText(null),
+                json.path("expression").asText(null)
+            );
+            VirtualSensorEngine engine = VirtualSensorEngine.getInstance();
+            List<VirtualSensorDefinition> definitions = new ArrayList<>(engine.getDefinitions());
+            definitions.removeIf(d -> d.sensorId() == definition.sensorId());
+            definitions.add(definition);
+            engine.setDefinitions(definitions);
+            doGet(request, response);
+        } catch (IllegalArgumentException e) {
+            JsonUtil.writeError(response, HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.dashtech.smartfactory.stats;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with a relative-error guarantee (DDSketch style). Values are
+ * counted in logarithmically sized buckets, so every quantile estimate is within the
+ * configured relative accuracy of the true value. Insertion is O(1); buckets are held in
+ * dense arrays that only span the range of values actually seen and are reused on
+ * {@link #reset()}. Sketches with the same accuracy merge exactly. Not thread-safe.
+ * <p>
+ * Each sign keeps at most {@code maxBuckets} buckets. When the values seen span more, the
+ * buckets of the smallest magnitudes are collapsed into one, as DDSketch's collapsing-lowest
+ * store does: memory stays bounded and only quantiles among those smallest values lose their
+ * accuracy guarantee. NaN and infinite values are ignored.
+ */
+public final class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    // At 1% accuracy 2048 buckets cover a range of 10^17 per sign
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Store positive;
+    private final Store negative;
+    private long zeroCount;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        this(relativeAccuracy, DEFAULT_MAX_BUCKETS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relativeAccuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("maxBuckets must be at least 2: " + maxBuckets);
+        }
+        this.positive = new Store(maxBuckets);
+        this.negative = new Store(maxBuckets);
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public void add(double value) {
+        if (!Double.isFinite(value)) {
+            return;
+        }
+        if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    public long getCount() {
+        return positive.total + negative.total + zeroCount;
+    }
+
+    /**
+     * Estimates the q-quantile, q in [0, 1]; NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        long count = getCount();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        // Ascending value order: most negative first, then zero, then positive
+        long seen = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if (seen > rank) {
+                return -value(negative.offset + i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0.0;
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy: "
+                + relativeAccuracy + " vs " + other.relativeAccuracy);
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+    }
+
+    public void copyFrom(QuantileSketch other) {
+        reset();
+        merge(other);
+    }
+
+    public void reset() {
+        positive.reset();
+        negative.reset();
+        zeroCount = 0;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long getZeroCount() {
+        return zeroCount;
+    }
+
+    public int getPositiveOffset() {
+        return positive.offset;
+    }
+
+    public long[] getPositiveCounts() {
+        return positive.counts.clone();
+    }
+
+    public int getNegativeOffset() {
+        return negative.offset;
+    }
+
+    public long[] getNegativeCounts() {
+        return negative.counts.clone();
+    }
+
+    /**
+     * Adds bucket counts exported by another sketch's getters, e.g. from another shard
+     */
+    public void addBuckets(int positiveOffset, long[] positiveCounts, int negativeOffset, long[] negativeCounts,
+                           long zeros) {
+        for (int i = 0; i < positiveCounts.length; i++) {
+            if (positiveCounts[i] != 0) {
+                positive.add(positiveOffset + i, positiveCounts[i]);
+            }
+        }
+        for (int i = 0; i < negativeCounts.length; i++) {
+            if (negativeCounts[i] != 0) {
+                negative.add(negativeOffset + i, negativeCounts[i]);
+            }
+        }
+        zeroCount += zeros;
+    }
+
+    // Dense bucket counts; counts[i] holds bucket (offset + i). Once the span of buckets seen
+    // exceeds maxBuckets, counts[0] also holds every bucket below offset.
+    private static final class Store {
+        private static final long[] EMPTY = new long[0];
+        private static final int INITIAL_SIZE = 32;
+
+        final int maxBuckets;
+        long[] counts = EMPTY;
+        int offset;
+        long total;
+        boolean collapsed;
+
+        Store(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+
+        void add(int index, long n) {
+            if (counts.length == 0) {
+                counts = new long[Math.min(INITIAL_SIZE, maxBuckets)];
+                offset = index - counts.length / 2;
+            } else if (index >= offset + counts.length || (index < offset && !collapsed)) {
+                grow(index);
+            }
+            counts[Math.max(index, offset) - offset] += n;
+            total += n;
+        }
+
+        private void grow(int index) {
+            int low = index;
+            int high = index;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    low = Math.min(low, offset + i);
+                    high = Math.max(high, offset + i);
+                }
+            }
+            int span = high - low + 1;
+            int size = (int) Math.min(maxBuckets, Math.max(counts.length * 2L, span + (long) INITIAL_SIZE));
+            int newOffset;
+            if (span > size) {
+                // Keep the highest buckets and fold the lowest into the first one
+                newOffset = high - size + 1;
+                collapsed = true;
+            } else {
+                // Keep slack on the side that grew
+                newOffset = index < offset ? high - size + 1 : low;
+            }
+            long[] grown = new long[size];
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    grown[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+                }
+            }
+            counts = grown;
+            offset = newOffset;
+        }
+
+        void merge(Store other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        void reset() {
+            if (total != 0) {
+                Arrays.fill(counts, 0);
+            }
+            total = 0;
+            collapsed = false;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.dashtech.smartfactory.stats;
+
+/**
+ * All windows for one sensor. Updates are O(1): lifetime moments, EWMA, the current
+ * tumbling window and one slice of the sliding window. The sliding window is a ring of
+ * slices that are merged on query. Methods are synchronized per sensor.
+ */
+final class SensorStatistics {
+    private final long tumblingMillis;
+    private final long sliceMillis;
+    private final double ewmaAlpha;
+
+    private final WindowStats lifetime;
+    private double ewma = Double.NaN;
+
+    private final WindowStats tumbling;
+    private final WindowStats tumblingPrevious;
+    private long tumblingStart = Long.MIN_VALUE;
+    private long tumblingPreviousStart = Long.MIN_VALUE;
+
+    private final WindowStats[] slices;
+    private final long[] sliceStarts;
+
+    SensorStatistics(long tumblingMillis, long slidingMillis, int sliceCount, double ewmaAlpha, double accuracy) {
+        this.tumblingMillis = tumblingMillis;
+        this.sliceMillis = Math.max(1, slidingMillis / sliceCount);
+        this.ewmaAlpha = ewmaAlpha;
+        this.lifetime = new WindowStats(accuracy);
+        this.tumbling = new WindowStats(accuracy);
+        this.tumblingPrevious = new WindowStats(accuracy);
+        this.slices = new WindowStats[sliceCount];
+        this.sliceStarts = new long[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new WindowStats(accuracy);
+            sliceStarts[i] = Long.MIN_VALUE;
+        }
+    }
+
+    synchronized void add(long epochMillis, double value) {
+        lifetime.add(value);
+        ewma = Double.isNaN(ewma) ? value : ewma + ewmaAlpha * (value - ewma);
+
+        long windowStart = epochMillis - Math.floorMod(epochMillis, tumblingMillis);
+        if (windowStart > tumblingStart) {
+            if (tumblingStart != Long.MIN_VALUE) {
+                tumblingPrevious.copyFrom(tumbling);
+                tumblingPreviousStart = tumblingStart;
+            }
+            tumbling.reset();
+            tumblingStart = windowStart;
+        }
+        if (windowStart == tumblingStart) {
+            tumbling.add(value);
+        }
+
+        long sliceStart = epochMillis - Math.floorMod(epochMillis, sliceMillis);
+        int slot = (int) Math.floorMod(sliceStart / sliceMillis, (long) slices.length);
+        if (sliceStarts[slot] != sliceStart) {
+            if (sliceStarts[slot] > sliceStart) {
+                return; // late reading for a slice that has already been recycled
+            }
+            slices[slot].reset();
+            sliceStarts[slot] = sliceStart;
+        }
+        slices[slot].add(value);
+    }
+
+    /**
+     * Copies the requested window into target and returns its [start, end) in epoch millis
+     */
+    synchronized long[] copyWindow(StatsWindow window, long nowMillis, WindowStats target) {
+        target.reset();
+        switch (window) {
+            case LIFETIME -> {
+                target.copyFrom(lifetime);
+                return new long[] {Long.MIN_VALUE, nowMillis};
+            }
+            case TUMBLING -> {
+                target.copyFrom(tumbling);
+                return new long[] {tumblingStart, tumblingStart + tumblingMillis};
+            }
+            case TUMBLING_PREVIOUS -> {
+                target.copyFrom(tumblingPrevious);
+                return new long[] {tumblingPreviousStart, tumblingPreviousStart + tumblingMillis};
+            }
+            default -> {
+                long earliest = nowMillis - sliceMillis * slices.length;
+                for (int i = 0; i < slices.length; i++) {
+                    if (sliceStarts[i] != Long.MIN_VALUE && sliceStarts[i] + sliceMillis > earliest) {
+                        target.merge(slices[i]);
+                    }
+                }
+                return new long[] {earliest, nowMillis};
+            }
+        }
+    }
+
+    synchronized double getEwma() {
+        return ewma;
+    }
+}
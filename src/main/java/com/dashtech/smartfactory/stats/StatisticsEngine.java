@@ -0,0 +1,158 @@
+package com.dashtech.smartfactory.stats;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.StatsSummary;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.service.SensorRegistry;
+
+/**
+ * Streaming statistics for every sensor, updated in O(1) per reading: count, min, max,
+ * mean and variance (Welford), an EWMA, and quantiles from a mergeable sketch, over the
+ * lifetime, an aligned tumbling window and a trailing sliding window. Dashboards and
+ * the /api/stats endpoint read summaries from here instead of scanning SENSOR_DATA.
+ * <p>
+ * Configuration (system properties):
+ * smartfactory.stats.tumblingSeconds (default 60), smartfactory.stats.slidingSeconds (default 300),
+ * smartfactory.stats.slices (default 10), smartfactory.stats.ewmaAlpha (default 0.1),
+ * smartfactory.stats.accuracy (relative quantile error, default 0.01).
+ */
+public class StatisticsEngine implements SensorIngestService.BatchListener {
+    private static final Logger logger = LogManager.getLogger(StatisticsEngine.class);
+    private static final StatisticsEngine instance = create(SensorRegistry.getInstance());
+
+    private final SensorRegistry registry;
+    private final AtomicReferenceArray<SensorStatistics> sensors;
+    private final long tumblingMillis;
+    private final long slidingMillis;
+    private final int slices;
+    private final double ewmaAlpha;
+    private final double accuracy;
+
+    public StatisticsEngine(SensorRegistry registry, long tumblingMillis, long slidingMillis, int slices,
+            double ewmaAlpha, double accuracy) {
+        if (tumblingMillis <= 0 || slidingMillis <= 0 || slices <= 0) {
+            throw new IllegalArgumentException("Window lengths and slice count must be positive");
+        }
+        if (ewmaAlpha <= 0 || ewmaAlpha > 1) {
+            throw new IllegalArgumentException("ewmaAlpha must be in (0, 1]: " + ewmaAlpha);
+        }
+        this.registry = registry;
+        this.sensors = new AtomicReferenceArray<>(registry.capacity());
+        this.tumblingMillis = tumblingMillis;
+        this.slidingMillis = slidingMillis;
+        this.slices = slices;
+        this.ewmaAlpha = ewmaAlpha;
+        this.accuracy = accuracy;
+        logger.info("Statistics engine: tumbling {} ms, sliding {} ms in {} slices, EWMA alpha {}, accuracy {}",
+            tumblingMillis, slidingMillis, slices, ewmaAlpha, accuracy);
+    }
+
+    public static StatisticsEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates an engine over the given registry with windows from the smartfactory.stats.* properties
+     */
+    public static StatisticsEngine create(SensorRegistry registry) {
+        return new StatisticsEngine(registry,
+            TimeUnit.SECONDS.toMillis(Long.getLong("smartfactory.stats.tumblingSeconds", 60)),
+            TimeUnit.SECONDS.toMillis(Long.getLong("smartfactory.stats.slidingSeconds", 300)),
+            Integer.getInteger("smartfactory.stats.slices", 10),
+            Double.parseDouble(System.getProperty("smartfactory.stats.ewmaAlpha", "0.1")),
+            Double.parseDouble(System.getProperty("smartfactory.stats.accuracy",
+                String.valueOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY))));
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code != SensorRegistry.NO_CODE) {
+                add(code, batch.epochMillis(i), batch.value(i));
+            }
+        }
+    }
+
+    public void add(int code, long epochMillis, double value) {
+        // A NaN would poison the running moments for the life of the window
+        if (!Double.isFinite(value)) {
+            return;
+        }
+        SensorStatistics stats = sensors.get(code);
+        if (stats == null) {
+            stats = new SensorStatistics(tumblingMillis, slidingMillis, slices, ewmaAlpha, accuracy);
+            if (!sensors.compareAndSet(code, null, stats)) {
+                stats = sensors.get(code);
+            }
+        }
+        stats.add(epochMillis, value);
+    }
+
+    /**
+     * Returns a summary of one window of a sensor, or null if the sensor has never reported
+     */
+    public StatsSummary summary(int sensorId, StatsWindow window) {
+        int code = registry.lookup(sensorId);
+        SensorStatistics stats = code == SensorRegistry.NO_CODE ? null : sensors.get(code);
+        if (stats == null) {
+            return null;
+        }
+        WindowStats copy = new WindowStats(accuracy);
+        long[] bounds = stats.copyWindow(window, System.currentTimeMillis(), copy);
+        return summarize(sensorId, window, bounds, copy, stats.getEwma());
+    }
+
+    /**
+     * Returns a mergeable copy of one window of a sensor, or null if the sensor has never reported.
+     * Copies from several sensors or several instances combine exactly with {@link WindowStats#merge}.
+     */
+    public WindowStats window(int sensorId, StatsWindow window) {
+        int code = registry.lookup(sensorId);
+        SensorStatistics stats = code == SensorRegistry.NO_CODE ? null : sensors.get(code);
+        if (stats == null) {
+            return null;
+        }
+        WindowStats copy = new WindowStats(accuracy);
+        stats.copyWindow(window, System.currentTimeMillis(), copy);
+        return copy;
+    }
+
+    public static StatsSummary summarize(int sensorId, StatsWindow window, long[] bounds, WindowStats stats,
+            double ewma) {
+        RunningStats moments = stats.getMoments();
+        QuantileSketch sketch = stats.getSketch();
+        boolean empty = moments.getCount() == 0;
+        return new StatsSummary(
+            sensorId,
+            window.name().toLowerCase(),
+            bounds[0] == Long.MIN_VALUE ? null : Instant.ofEpochMilli(bounds[0]),
+            Instant.ofEpochMilli(bounds[1]),
+            moments.getCount(),
+            empty ? Double.NaN : moments.getMin(),
+            empty ? Double.NaN : moments.getMax(),
+            empty ? Double.NaN : moments.getMean(),
+            moments.getVariance(),
+            moments.getStdDev(),
+            ewma,
+            sketch.quantile(0.50),
+            sketch.quantile(0.95),
+            sketch.quantile(0.99)
+        );
+    }
+
+    public long getTumblingMillis() {
+        return tumblingMillis;
+    }
+
+    public long getSlidingMillis() {
+        return slidingMillis;
+    }
+}
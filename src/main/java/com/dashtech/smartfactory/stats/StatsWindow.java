@@ -0,0 +1,19 @@
+package com.dashtech.smartfactory.stats;
+
+/**
+ * Windows maintained per sensor by the {@link StatisticsEngine}.
+ */
+public enum StatsWindow {
+    /** Everything since startup, plus the EWMA */
+    LIFETIME,
+    /** The current, still filling, aligned tumbling window */
+    TUMBLING,
+    /** The last completed tumbling window */
+    TUMBLING_PREVIOUS,
+    /** The trailing sliding window ending now */
+    SLIDING;
+
+    public static StatsWindow fromString(String name) {
+        return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+}
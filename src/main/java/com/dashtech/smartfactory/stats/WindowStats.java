@@ -0,0 +1,96 @@
+package com.dashtech.smartfactory.stats;
+
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Moments plus a quantile sketch for one window of readings. Windows merge exactly,
+ * whether they come from adjacent time slices, several sensors or several shards;
+ * {@link #toJson()} and {@link #fromJson(JsonNode)} carry the full mergeable state.
+ * Not thread-safe.
+ */
+public final class WindowStats {
+    private final RunningStats moments = new RunningStats();
+    private final QuantileSketch sketch;
+
+    public WindowStats(double relativeAccuracy) {
+        this.sketch = new QuantileSketch(relativeAccuracy);
+    }
+
+    public void add(double value) {
+        moments.add(value);
+        sketch.add(value);
+    }
+
+    public void merge(WindowStats other) {
+        moments.merge(other.moments);
+        sketch.merge(other.sketch);
+    }
+
+    public void copyFrom(WindowStats other) {
+        moments.copyFrom(other.moments);
+        sketch.copyFrom(other.sketch);
+    }
+
+    public void reset() {
+        moments.reset();
+        sketch.reset();
+    }
+
+    public RunningStats getMoments() {
+        return moments;
+    }
+
+    public QuantileSketch getSketch() {
+        return sketch;
+    }
+
+    public long getCount() {
+        return moments.getCount();
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode node = JsonUtil.mapper().createObjectNode();
+        node.put("count", moments.getCount());
+        node.put("mean", moments.getCount() > 0 ? moments.getMean() : 0.0);
+        node.put("m2", moments.getM2());
+        node.put("min", moments.getCount() > 0 ? moments.getMin() : 0.0);
+        node.put("max", moments.getCount() > 0 ? moments.getMax() : 0.0);
+        ObjectNode sketchNode = node.putObject("sketch");
+        sketchNode.put("relativeAccuracy", sketch.getRelativeAccuracy());
+        sketchNode.put("zeroCount", sketch.getZeroCount());
+        sketchNode.put("positiveOffset", sketch.getPositiveOffset());
+        writeCounts(sketchNode.putArray("positive"), sketch.getPositiveCounts());
+        sketchNode.put("negativeOffset", sketch.getNegativeOffset());
+        writeCounts(sketchNode.putArray("negative"), sketch.getNegativeCounts());
+        return node;
+    }
+
+    public static WindowStats fromJson(JsonNode node) {
+        JsonNode sketchNode = node.get("sketch");
+        WindowStats stats = new WindowStats(sketchNode.get("relativeAccuracy").asDouble());
+        stats.moments.restore(node.get("count").asLong(), node.get("mean").asDouble(), node.get("m2").asDouble(),
+            node.get("min").asDouble(), node.get("max").asDouble());
+        stats.sketch.addBuckets(
+            sketchNode.get("positiveOffset").asInt(), readCounts(sketchNode.get("positive")),
+            sketchNode.get("negativeOffset").asInt(), readCounts(sketchNode.get("negative")),
+            sketchNode.get("zeroCount").asLong());
+        return stats;
+    }
+
+    private static void writeCounts(ArrayNode array, long[] counts) {
+        for (long count : counts) {
+            array.add(count);
+        }
+    }
+
+    private static long[] readCounts(JsonNode array) {
+        long[] counts = new long[array.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = array.get(i).asLong();
+        }
+        return counts;
+    }
+}
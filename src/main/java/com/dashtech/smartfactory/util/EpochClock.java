@@ -0,0 +1,36 @@
+package com.dashtech.smartfactory.util;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock time in epoch nanoseconds for timestamping readings without allocating an
+ * {@link Instant} per reading. Time advances with {@link System#nanoTime()} from an anchor
+ * taken from the wall clock, and the anchor is re-taken every second, so a clock step is
+ * picked up within a second.
+ */
+public final class EpochClock {
+    private static final long RECALIBRATE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private record Anchor(long epochNanos, long monotonicNanos) {
+    }
+
+    private static volatile Anchor anchor = calibrate();
+
+    private EpochClock() {} // Prevent instantiation
+
+    public static long nowNanos() {
+        long monotonic = System.nanoTime();
+        Anchor current = anchor;
+        if (monotonic - current.monotonicNanos() >= RECALIBRATE_NANOS) {
+            current = calibrate();
+            anchor = current;
+        }
+        return current.epochNanos() + (monotonic - current.monotonicNanos());
+    }
+
+    private static Anchor calibrate() {
+        Instant now = Instant.now();
+        return new Anchor(now.getEpochSecond() * 1_000_000_000L + now.getNano(), System.nanoTime());
+    }
+}
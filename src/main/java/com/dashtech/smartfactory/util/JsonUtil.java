@@ -1,4 +1,152 @@
 package com.dashtech.smartfactory.util;
 
-public class JsonUtil {
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.Anomaly;
+import com.dashtech.smartfactory.model.CommandResult;
+import com.dashtech.smartfactory.model.LatestValue;
+import com.dashtech.smartfactory.model.StatsSummary;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Shared JSON helpers for the WebSocket endpoint and the REST servlets.
+ */
+public final class JsonUtil {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonUtil() {} // Prevent instantiation
+
+    public static ObjectMapper mapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Builds the JSON array used by dashboard snapshots and the plant state endpoint
+     */
+    public static ArrayNode latestValues(List<LatestValue> values) {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (LatestValue value : values) {
+            ObjectNode node = array.addObject();
+            node.put("sensorId", value.sensorId());
+            node.put("type", value.type());
+            node.put("value", value.value());
+            node.put("timestamp", value.timestamp().toEpochMilli());
+            node.put("quality", value.quality());
+        }
+        return array;
+    }
+
+    /**
+     * Builds the JSON object for a raised or cleared alarm
+     */
+    public static ObjectNode alarmEvent(AlarmEvent event) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("ruleId", event.ruleId());
+        node.put("sensorId", event.sensorId());
+        node.put("sensorType", event.sensorType());
+        node.put("state", event.state().name());
+        node.put("severity", event.severity().name());
+        putNumber(node, "value", event.value());
+        node.put("limit", event.limit());
+        node.put("message", event.message());
+        node.put("timestamp", event.timestamp().toEpochMilli());
+        return node;
+    }
+
+    public static ArrayNode alarmEvents(List<AlarmEvent> events) {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (AlarmEvent event : events) {
+            array.add(alarmEvent(event));
+        }
+        return array;
+    }
+
+    public static ArrayNode anomalies(List<Anomaly> anomalies) {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (Anomaly anomaly : anomalies) {
+            ObjectNode node = array.addObject();
+            node.put("sensorId", anomaly.sensorId());
+            node.put("type", anomaly.type());
+            node.put("kinds", anomaly.describeKinds());
+            node.put("value", anomaly.value());
+            node.put("expected", anomaly.expected());
+            node.put("stdDev", anomaly.stdDev());
+            node.put("zScore", anomaly.zScore());
+            node.put("cusum", anomaly.cusum());
+            node.put("rateScore", anomaly.rateScore());
+            node.put("timestamp", anomaly.timestamp().toEpochMilli());
+        }
+        return array;
+    }
+
+    public static ObjectNode commandResult(CommandResult result) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("sequence", result.sequence());
+        node.put("actuatorId", result.command().actuatorId());
+        node.put("command", result.command().command());
+        node.put("attempts", result.attempts());
+        putNumber(node, "roundTripMillis", result.roundTripMillis());
+        return node;
+    }
+
+    /**
+     * Builds the JSON object for a statistics summary; undefined values are written as null
+     */
+    public static ObjectNode statsSummary(StatsSummary summary) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("sensorId", summary.sensorId());
+        node.put("window", summary.window());
+        if (summary.windowStart() != null) {
+            node.put("windowStart", summary.windowStart().toEpochMilli());
+        }
+        node.put("windowEnd", summary.windowEnd().toEpochMilli());
+        node.put("count", summary.count());
+        putNumber(node, "min", summary.min());
+        putNumber(node, "max", summary.max());
+        putNumber(node, "mean", summary.mean());
+        putNumber(node, "variance", summary.variance());
+        putNumber(node, "stdDev", summary.stdDev());
+        putNumber(node, "ewma", summary.ewma());
+        putNumber(node, "p50", summary.p50());
+        putNumber(node, "p95", summary.p95());
+        putNumber(node, "p99", summary.p99());
+        return node;
+    }
+
+    /**
+     * Puts a number, or null when it is NaN or infinite, which JSON cannot represent
+     */
+    public static void putNumber(ObjectNode node, String name, double value) {
+        if (Double.isFinite(value)) {
+            node.put(name, value);
+        } else {
+            node.putNull(name);
+        }
+    }
+
+    /**
+     * Writes a JSON response body with the given status
+     */
+    public static void write(HttpServletResponse response, int status, JsonNode body) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        objectMapper.writeValue(response.getWriter(), body);
+    }
+
+    /**
+     * Writes a JSON error body of the form {"error": message}
+     */
+    public static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("error", message);
+        write(response, status, body);
+    }
 }
@@ -1,100 +1,252 @@
 package com.dashtech.smartfactory.util;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 
+import com.dashtech.smartfactory.logging.LogSampler;
+
 /**
  * Utility class for standardized logging across the application.
+ * <p>
+ * Every method checks the level before touching the thread context or building a
+ * message, so disabled events cost one level check. Details are passed as message
+ * parameters rather than pre-formatted strings. Per-reading events (sensor data,
+ * serial reads, WebSocket traffic and store transactions) are additionally sampled
+ * and capped by {@link LogSampler}.
  */
 public final class LoggingUtil {
+    /**
+     * Transaction id handed out when a transaction's debug lines are not sampled
+     */
+    public static final long UNSAMPLED_TRANSACTION = 0;
+
+    private static final AtomicLong transactionIds = new AtomicLong();
+
     private LoggingUtil() {} // Prevent instantiation
-    
+
     /**
      * Log application startup with component details
      */
     public static void logStartup(Logger logger, String componentName, Map<String, String> details) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
         ThreadContext.put("component", componentName);
-        logger.info("Starting {} with configuration: {}", componentName, details);
-        ThreadContext.remove("component");
+        try {
+            logger.info("Starting {} with configuration: {}", componentName, details);
+        } finally {
+            ThreadContext.remove("component");
+        }
     }
-    
+
     /**
      * Log application shutdown with component details
      */
     public static void logShutdown(Logger logger, String componentName, Map<String, String> details) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
         ThreadContext.put("component", componentName);
-        logger.info("Shutting down {} - Status: {}", componentName, details);
-        ThreadContext.remove("component");
+        try {
+            logger.info("Shutting down {} - Status: {}", componentName, details);
+        } finally {
+            ThreadContext.remove("component");
+        }
     }
-    
+
     /**
      * Log serial communication events
      */
     public static void logSerialEvent(Logger logger, String event, String portName, String details) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
         ThreadContext.put("port", portName);
-        logger.debug("Serial Event [{}] on port {}: {}", event, portName, details);
-        ThreadContext.remove("port");
+        try {
+            logger.debug("Serial Event [{}] on port {}: {}", event, portName, details);
+        } finally {
+            ThreadContext.remove("port");
+        }
     }
-    
+
+    /**
+     * Log serial communication events, formatting the details only if the event is written
+     */
+    public static void logSerialEvent(Logger logger, String event, String portName, String detailsPattern, Object arg) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        ThreadContext.put("port", portName);
+        try {
+            logger.debug("Serial Event [{}] on port {}: " + detailsPattern, event, portName, arg);
+        } finally {
+            ThreadContext.remove("port");
+        }
+    }
+
+    /**
+     * Log a read from a serial port; sampled as a hot-path event
+     */
+    public static void logSerialData(Logger logger, String portName, int bytes) {
+        if (!logger.isDebugEnabled() || !LogSampler.shouldLog(LogSampler.Category.SERIAL)) {
+            return;
+        }
+        ThreadContext.put("port", portName);
+        try {
+            logger.debug("Serial Event [DATA_RECEIVED] on port {}: {} bytes", portName, bytes);
+        } finally {
+            ThreadContext.remove("port");
+        }
+    }
+
     /**
      * Log WebSocket events with session details
      */
     public static void logWebSocketEvent(Logger logger, String event, String sessionId, String details) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
         ThreadContext.put("session", sessionId);
-        logger.debug("WebSocket Event [{}] for session {}: {}", event, sessionId, details);
-        ThreadContext.remove("session");
+        try {
+            logger.debug("WebSocket Event [{}] for session {}: {}", event, sessionId, details);
+        } finally {
+            ThreadContext.remove("session");
+        }
     }
-    
+
+    /**
+     * Log a message sent to or received from a WebSocket session; sampled as a hot-path event
+     */
+    public static void logWebSocketMessage(Logger logger, String event, String sessionId, String message) {
+        if (!logger.isDebugEnabled() || !LogSampler.shouldLog(LogSampler.Category.WEBSOCKET)) {
+            return;
+        }
+        ThreadContext.put("session", sessionId);
+        try {
+            logger.debug("WebSocket Event [{}] for session {}: {}", event, sessionId, message);
+        } finally {
+            ThreadContext.remove("session");
+        }
+    }
+
     /**
      * Log database operations with transaction context
      */
     public static void logDatabaseOperation(Logger logger, String operation, String details) {
         logger.debug("Database Operation [{}]: {}", operation, details);
     }
-    
+
+    /**
+     * Log database operations, formatting the details only if the event is written
+     */
+    public static void logDatabaseOperation(Logger logger, String operation, String detailsPattern, Object arg1, Object arg2) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Database Operation [{}]: " + detailsPattern, operation, arg1, arg2);
+        }
+    }
+
+    /**
+     * Returns a new id for a transaction whose debug lines are always written
+     */
+    public static long newTransactionId() {
+        return transactionIds.incrementAndGet();
+    }
+
+    /**
+     * Returns a new id for a hot-path transaction, or {@link #UNSAMPLED_TRANSACTION} when
+     * debug logging is off or the transaction falls between samples
+     */
+    public static long newSampledTransactionId(Logger logger) {
+        if (!logger.isDebugEnabled() || !LogSampler.shouldLog(LogSampler.Category.TRANSACTION)) {
+            return UNSAMPLED_TRANSACTION;
+        }
+        return transactionIds.incrementAndGet();
+    }
+
     /**
      * Log transaction events
      */
-    public static void logTransaction(Logger logger, String transactionId, String event, String details) {
-        ThreadContext.put("transaction", transactionId);
-        logger.debug("Transaction [{}] {}: {}", transactionId, event, details);
-        ThreadContext.remove("transaction");
+    public static void logTransaction(Logger logger, long transactionId, String event, String details) {
+        if (transactionId == UNSAMPLED_TRANSACTION || !logger.isDebugEnabled()) {
+            return;
+        }
+        ThreadContext.put("transaction", Long.toString(transactionId));
+        try {
+            logger.debug("Transaction [{}] {}: {}", transactionId, event, details);
+        } finally {
+            ThreadContext.remove("transaction");
+        }
+    }
+
+    /**
+     * Log transaction events, formatting the details only if the event is written
+     */
+    public static void logTransaction(Logger logger, long transactionId, String event, String detailsPattern, Object arg) {
+        if (transactionId == UNSAMPLED_TRANSACTION || !logger.isDebugEnabled()) {
+            return;
+        }
+        ThreadContext.put("transaction", Long.toString(transactionId));
+        try {
+            logger.debug("Transaction [{}] {}: " + detailsPattern, transactionId, event, arg);
+        } finally {
+            ThreadContext.remove("transaction");
+        }
     }
-    
+
     /**
      * Log errors with full context and optional stack trace
      */
     public static void logError(Logger logger, String context, String message, Throwable error) {
+        if (!logger.isErrorEnabled()) {
+            return;
+        }
         ThreadContext.put("errorContext", context);
-        logger.error("Error in {}: {} - {}", context, message, error.getMessage(), error);
-        ThreadContext.remove("errorContext");
+        try {
+            logger.error("Error in {}: {} - {}", context, message, error.getMessage(), error);
+        } finally {
+            ThreadContext.remove("errorContext");
+        }
     }
-    
+
     /**
-     * Log sensor data events
+     * Log sensor data events; sampled as a hot-path event
      */
     public static void logSensorData(Logger logger, int sensorId, String type, double value) {
-        ThreadContext.put("sensor", String.valueOf(sensorId));
-        logger.debug("Sensor Data: ID={}, Type={}, Value={}", sensorId, type, value);
-        ThreadContext.remove("sensor");
+        if (!logger.isDebugEnabled() || !LogSampler.shouldLog(LogSampler.Category.SENSOR)) {
+            return;
+        }
+        ThreadContext.put("sensor", Integer.toString(sensorId));
+        try {
+            logger.debug("Sensor Data: ID={}, Type={}, Value={}", sensorId, type, value);
+        } finally {
+            ThreadContext.remove("sensor");
+        }
     }
-    
+
     /**
      * Log command execution events
      */
     public static void logCommand(Logger logger, String command, boolean success, String details) {
+        if (!logger.isEnabled(success ? Level.INFO : Level.WARN)) {
+            return;
+        }
         ThreadContext.put("command", command);
-        if (success) {
-            logger.info("Command executed successfully: {}", details);
-        } else {
-            logger.warn("Command execution failed: {}", details);
+        try {
+            if (success) {
+                logger.info("Command executed successfully: {}", details);
+            } else {
+                logger.warn("Command execution failed: {}", details);
+            }
+        } finally {
+            ThreadContext.remove("command");
         }
-        ThreadContext.remove("command");
     }
-    
+
     /**
      * Log checksum validation results
      */
@@ -105,7 +257,7 @@ public final class LoggingUtil {
             logger.warn("Checksum validation failed: {}", details);
         }
     }
-    
+
     /**
      * Execute an operation with logging
      */
@@ -125,4 +277,4 @@ public final class LoggingUtil {
             throw e;
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package com.dashtech.smartfactory.virtual;
+
+import java.util.Arrays;
+
+/**
+ * An arithmetic expression compiled to a flat stack-machine program. Each instruction is one
+ * int: the opcode in the low byte and its operand above it. Evaluation is a single loop over
+ * the program with a caller-supplied stack, so it does not allocate.
+ */
+public final class CompiledExpression {
+    static final int CONST = 0;
+    static final int INPUT = 1;
+    static final int WINDOW = 2;
+    static final int ADD = 3;
+    static final int SUB = 4;
+    static final int MUL = 5;
+    static final int DIV = 6;
+    static final int POW = 7;
+    static final int NEG = 8;
+    static final int ABS = 9;
+    static final int SQRT = 10;
+    static final int EXP = 11;
+    static final int LOG = 12;
+    static final int MIN = 13;
+    static final int MAX = 14;
+
+    /**
+     * Values of the expression's input sensors, addressed by their index in {@link #getInputSensorIds()}
+     */
+    public interface Inputs {
+        double value(int input);
+
+        double window(int input, WindowFunction function);
+    }
+
+    private final String source;
+    private final int[] program;
+    private final double[] constants;
+    private final int[] inputSensorIds;
+    private final int maxStack;
+    private final int cost;
+
+    CompiledExpression(String source, int[] program, double[] constants, int[] inputSensorIds, int maxStack, int cost) {
+        this.source = source;
+        this.program = program;
+        this.constants = constants;
+        this.inputSensorIds = inputSensorIds;
+        this.maxStack = maxStack;
+        this.cost = cost;
+    }
+
+    public double evaluate(Inputs inputs, double[] stack) {
+        int sp = 0;
+        for (int instruction : program) {
+            int operand = instruction >>> 8;
+            switch (instruction & 0xFF) {
+                case CONST -> stack[sp++] = constants[operand];
+                case INPUT -> stack[sp++] = inputs.value(operand);
+                case WINDOW -> stack[sp++] = inputs.window(operand >>> 4, WindowFunction.values()[operand & 0xF]);
+                case ADD -> { sp--; stack[sp - 1] += stack[sp]; }
+                case SUB -> { sp--; stack[sp - 1] -= stack[sp]; }
+                case MUL -> { sp--; stack[sp - 1] *= stack[sp]; }
+                case DIV -> { sp--; stack[sp - 1] /= stack[sp]; }
+                case POW -> { sp--; stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]); }
+                case MIN -> { sp--; stack[sp - 1] = Math.min(stack[sp - 1], stack[sp]); }
+                case MAX -> { sp--; stack[sp - 1] = Math.max(stack[sp - 1], stack[sp]); }
+                case NEG -> stack[sp - 1] = -stack[sp - 1];
+                case ABS -> stack[sp - 1] = Math.abs(stack[sp - 1]);
+                case SQRT -> stack[sp - 1] = Math.sqrt(stack[sp - 1]);
+                case EXP -> stack[sp - 1] = Math.exp(stack[sp - 1]);
+                case LOG -> stack[sp - 1] = Math.log(stack[sp - 1]);
+                default -> throw new IllegalStateException("Bad opcode in " + source);
+            }
+        }
+        return stack[0];
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Distinct sensors the expression reads, in input index order
+     */
+    public int[] getInputSensorIds() {
+        return inputSensorIds.clone();
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Cost units charged per evaluation: one per instruction, more for window functions
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    public int getInstructionCount() {
+        return program.length;
+    }
+
+    @Override
+    public String toString() {
+        return source + " " + Arrays.toString(inputSensorIds);
+    }
+}
@@ -0,0 +1,319 @@
+package com.dashtech.smartfactory.virtual;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses virtual sensor expressions and compiles them to a {@link CompiledExpression}.
+ * <pre>
+ * expression := term (('+' | '-') term)*
+ * term       := unary (('*' | '/') unary)*
+ * unary      := '-' unary | power
+ * power      := primary ('^' unary)?
+ * primary    := number | sN | function '(' arguments ')' | '(' expression ')'
+ * </pre>
+ * {@code sN} is the latest value of sensor N. Functions are abs, sqrt, exp, log, min, max, pow
+ * and the window functions mean, stddev, wmin, wmax, p50, p95, p99 over one sensor's sliding
+ * window. Constant sub-expressions are folded at compile time.
+ */
+public final class ExpressionCompiler {
+    private static final int WINDOW_COST = 25;
+
+    private final String source;
+    private int pos;
+    private final List<Integer> program = new ArrayList<>();
+    private final List<Double> constants = new ArrayList<>();
+    private final List<Integer> inputs = new ArrayList<>();
+    private int depth;
+    private int maxDepth;
+    private int cost;
+
+    private ExpressionCompiler(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Compiles an expression
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public static CompiledExpression compile(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new IllegalArgumentException("Expression is empty");
+        }
+        ExpressionCompiler compiler = new ExpressionCompiler(expression);
+        compiler.parseExpression();
+        compiler.skipSpaces();
+        if (compiler.pos != expression.length()) {
+            throw compiler.error("Unexpected '" + expression.charAt(compiler.pos) + "'");
+        }
+        return compiler.build();
+    }
+
+    private CompiledExpression build() {
+        int[] code = program.stream().mapToInt(Integer::intValue).toArray();
+        double[] values = constants.stream().mapToDouble(Double::doubleValue).toArray();
+        int[] sensorIds = inputs.stream().mapToInt(Integer::intValue).toArray();
+        return new CompiledExpression(source, code, values, sensorIds, Math.max(1, maxDepth), cost + code.length);
+    }
+
+    private void parseExpression() {
+        parseTerm();
+        while (true) {
+            skipSpaces();
+            if (accept('+')) {
+                parseTerm();
+                emitBinary(CompiledExpression.ADD);
+            } else if (accept('-')) {
+                parseTerm();
+                emitBinary(CompiledExpression.SUB);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void parseTerm() {
+        parseUnary();
+        while (true) {
+            skipSpaces();
+            if (accept('*')) {
+                parseUnary();
+                emitBinary(CompiledExpression.MUL);
+            } else if (accept('/')) {
+                parseUnary();
+                emitBinary(CompiledExpression.DIV);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void parseUnary() {
+        skipSpaces();
+        if (accept('-')) {
+            parseUnary();
+            emitUnary(CompiledExpression.NEG);
+            return;
+        }
+        if (accept('+')) {
+            parseUnary();
+            return;
+        }
+        parsePower();
+    }
+
+    private void parsePower() {
+        parsePrimary();
+        skipSpaces();
+        if (accept('^')) {
+            parseUnary();
+            emitBinary(CompiledExpression.POW);
+        }
+    }
+
+    private void parsePrimary() {
+        skipSpaces();
+        if (pos >= source.length()) {
+            throw error("Unexpected end of expression");
+        }
+        char c = source.charAt(pos);
+        if (accept('(')) {
+            parseExpression();
+            expect(')');
+        } else if (Character.isDigit(c) || c == '.') {
+            emitConstant(parseNumber());
+        } else if (Character.isLetter(c)) {
+            String name = parseIdentifier();
+            skipSpaces();
+            if (peek('(')) {
+                parseFunction(name);
+            } else if (isSensorReference(name)) {
+                emitPush(CompiledExpression.INPUT, inputIndex(name));
+            } else {
+                throw error("Unknown name '" + name + "'");
+            }
+        } else {
+            throw error("Unexpected '" + c + "'");
+        }
+    }
+
+    private void parseFunction(String name) {
+        expect('(');
+        WindowFunction window = WindowFunction.fromName(name);
+        if (window != null) {
+            skipSpaces();
+            String reference = parseIdentifier();
+            if (!isSensorReference(reference)) {
+                throw error(name + "() takes a sensor reference such as s2");
+            }
+            expect(')');
+            emitPush(CompiledExpression.WINDOW, (inputIndex(reference) << 4) | window.ordinal());
+            cost += WINDOW_COST;
+            return;
+        }
+        switch (name) {
+            case "abs" -> unaryFunction(CompiledExpression.ABS);
+            case "sqrt" -> unaryFunction(CompiledExpression.SQRT);
+            case "exp" -> unaryFunction(CompiledExpression.EXP);
+            case "log" -> unaryFunction(CompiledExpression.LOG);
+            case "min" -> binaryFunction(CompiledExpression.MIN);
+            case "max" -> binaryFunction(CompiledExpression.MAX);
+            case "pow" -> binaryFunction(CompiledExpression.POW);
+            default -> throw error("Unknown function '" + name + "'");
+        }
+    }
+
+    private void unaryFunction(int op) {
+        parseExpression();
+        expect(')');
+        emitUnary(op);
+    }
+
+    private void binaryFunction(int op) {
+        parseExpression();
+        expect(',');
+        parseExpression();
+        expect(')');
+        emitBinary(op);
+    }
+
+    private static boolean isSensorReference(String name) {
+        if (name.length() < 2 || name.charAt(0) != 's') {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int inputIndex(String reference) {
+        int sensorId;
+        try {
+            sensorId = Integer.parseInt(reference.substring(1));
+        } catch (NumberFormatException e) {
+            throw error("Sensor id out of range in '" + reference + "'");
+        }
+        int index = inputs.indexOf(sensorId);
+        if (index < 0) {
+            index = inputs.size();
+            inputs.add(sensorId);
+        }
+        return index;
+    }
+
+    // Emission with constant folding: an operator applied to constants becomes a constant
+
+    private void emitConstant(double value) {
+        constants.add(value);
+        emitPush(CompiledExpression.CONST, constants.size() - 1);
+    }
+
+    private void emitPush(int op, int operand) {
+        program.add(op | (operand << 8));
+        depth++;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void emitUnary(int op) {
+        int last = program.size() - 1;
+        if ((program.get(last) & 0xFF) == CompiledExpression.CONST) {
+            double value = constants.get(program.get(last) >>> 8);
+            constants.set(program.get(last) >>> 8, apply(op, value, 0.0));
+            return;
+        }
+        program.add(op);
+    }
+
+    private void emitBinary(int op) {
+        int last = program.size() - 1;
+        if (last >= 1 && (program.get(last) & 0xFF) == CompiledExpression.CONST
+                && (program.get(last - 1) & 0xFF) == CompiledExpression.CONST) {
+            double left = constants.get(program.get(last - 1) >>> 8);
+            double right = constants.get(program.get(last) >>> 8);
+            program.remove(last);
+            constants.set(program.get(last - 1) >>> 8, apply(op, left, right));
+        } else {
+            program.add(op);
+        }
+        depth--;
+    }
+
+    private static double apply(int op, double a, double b) {
+        return switch (op) {
+            case CompiledExpression.ADD -> a + b;
+            case CompiledExpression.SUB -> a - b;
+            case CompiledExpression.MUL -> a * b;
+            case CompiledExpression.DIV -> a / b;
+            case CompiledExpression.POW -> Math.pow(a, b);
+            case CompiledExpression.MIN -> Math.min(a, b);
+            case CompiledExpression.MAX -> Math.max(a, b);
+            case CompiledExpression.NEG -> -a;
+            case CompiledExpression.ABS -> Math.abs(a);
+            case CompiledExpression.SQRT -> Math.sqrt(a);
+            case CompiledExpression.EXP -> Math.exp(a);
+            case CompiledExpression.LOG -> Math.log(a);
+            default -> throw new IllegalStateException("Cannot fold opcode " + op);
+        };
+    }
+
+    // Lexing
+
+    private double parseNumber() {
+        int start = pos;
+        while (pos < source.length()
+                && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.'
+                    || ((source.charAt(pos) == 'e' || source.charAt(pos) == 'E') && pos + 1 < source.length())
+                    || ((source.charAt(pos) == '-' || source.charAt(pos) == '+')
+                        && (source.charAt(pos - 1) == 'e' || source.charAt(pos - 1) == 'E')))) {
+            pos++;
+        }
+        try {
+            return Double.parseDouble(source.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("Bad number '" + source.substring(start, pos) + "'");
+        }
+    }
+
+    private String parseIdentifier() {
+        int start = pos;
+        while (pos < source.length() && Character.isLetterOrDigit(source.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Expected a name");
+        }
+        return source.substring(start, pos);
+    }
+
+    private void skipSpaces() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean peek(char c) {
+        return pos < source.length() && source.charAt(pos) == c;
+    }
+
+    private boolean accept(char c) {
+        if (peek(c)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        skipSpaces();
+        if (!accept(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " in \"" + source + "\"");
+    }
+}
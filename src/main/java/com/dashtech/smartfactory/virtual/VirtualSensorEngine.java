@@ -0,0 +1,421 @@
+package com.dashtech.smartfactory.virtual;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.StatsSummary;
+import com.dashtech.smartfactory.model.VirtualSensorDefinition;
+import com.dashtech.smartfactory.service.LatestValueStore;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.service.SensorRegistry;
+import com.dashtech.smartfactory.stats.StatisticsEngine;
+import com.dashtech.smartfactory.stats.StatsWindow;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Computes virtual sensors from expressions over other sensors. Each definition is compiled
+ * once; an index from input sensor code to dependent virtual sensors means a reading only
+ * recomputes the virtual sensors that read it, and only when its value changed. Results are
+ * ingested under source "virtual" and so are stored, broadcast, alarmed and analysed exactly
+ * like physical readings; chained virtual sensors recompute in turn, and cycles are rejected.
+ * A virtual sensor may not take the id of a physical sensor: definitions for an id that has
+ * already reported are rejected, and physical readings that later arrive under a virtual id are
+ * counted and logged rather than fed to the virtual sensors that read it.
+ * <p>
+ * Evaluation is charged in cost units (instructions, window functions weigh more) against a
+ * per-second budget, smartfactory.virtual.budgetPerSecond. Once it is spent, recomputes are
+ * skipped and counted until the next second. Definitions are loaded from the JSON file named by
+ * smartfactory.virtual.sensors, an array of {"sensorId", "type", "expression"}.
+ */
+public class VirtualSensorEngine implements SensorIngestService.BatchListener {
+    private static final Logger logger = LogManager.getLogger(VirtualSensorEngine.class);
+    public static final String SOURCE = "virtual";
+    private static final int MAX_COST = 1_000;
+    private static final int LOCK_STRIPES = 64;
+    // Whether a code belongs to a virtual sensor, resolved lazily from the graph
+    private static final int UNRESOLVED = 0;
+    private static final int PHYSICAL = 1;
+    private static final int VIRTUAL = 2;
+    private static final VirtualSensorEngine instance = create(
+        SensorRegistry.getInstance(),
+        LatestValueStore.getInstance(),
+        StatisticsEngine.getInstance(),
+        SensorIngestService.getInstance());
+
+    /**
+     * One compiled virtual sensor; evaluation is synchronized on it
+     */
+    private final class VirtualSensor implements CompiledExpression.Inputs {
+        final VirtualSensorDefinition definition;
+        final CompiledExpression expression;
+        final int[] inputIds;
+        final int[] inputCodes;
+        final double[] stack;
+        // Carries each result into the pipeline; used under the lock
+        final SensorBatch output = new SensorBatch(1);
+        final AtomicLong evaluations = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        final AtomicBoolean collisionLogged = new AtomicBoolean();
+
+        VirtualSensor(VirtualSensorDefinition definition, CompiledExpression expression) {
+            this.definition = definition;
+            this.expression = expression;
+            this.inputIds = expression.getInputSensorIds();
+            this.inputCodes = new int[inputIds.length];
+            Arrays.fill(inputCodes, SensorRegistry.NO_CODE);
+            this.stack = new double[expression.getMaxStack()];
+        }
+
+        @Override
+        public double value(int input) {
+            int code = inputCodes[input];
+            return code == SensorRegistry.NO_CODE || latestValues.getEpochNanos(code) == 0
+                ? Double.NaN : latestValues.getValue(code);
+        }
+
+        @Override
+        public double window(int input, WindowFunction function) {
+            StatsSummary summary = statistics.summary(inputIds[input], StatsWindow.SLIDING);
+            if (summary == null) {
+                return Double.NaN;
+            }
+            return switch (function) {
+                case MEAN -> summary.mean();
+                case STDDEV -> summary.stdDev();
+                case WMIN -> summary.min();
+                case WMAX -> summary.max();
+                case P50 -> summary.p50();
+                case P95 -> summary.p95();
+                case P99 -> summary.p99();
+            };
+        }
+
+        /**
+         * Evaluates and publishes under the lock, so one virtual sensor's readings are ingested in order.
+         * Locks are only ever taken from an input towards its dependents, and cycles are rejected,
+         * so chained virtual sensors cannot deadlock.
+         */
+        synchronized void recompute(long epochNanos) {
+            double result = evaluate();
+            evaluations.incrementAndGet();
+            if (Double.isFinite(result)) {
+                output.add(definition.sensorId(), definition.type(), epochNanos, result, SensorData.NOT_STAMPED);
+                try {
+                    ingest.ingest(SOURCE, output);
+                } finally {
+                    output.clear();
+                }
+            }
+        }
+
+        synchronized double evaluate() {
+            for (int i = 0; i < inputIds.length; i++) {
+                if (inputCodes[i] == SensorRegistry.NO_CODE) {
+                    inputCodes[i] = registry.lookup(inputIds[i]);
+                }
+            }
+            return expression.evaluate(this, stack);
+        }
+    }
+
+    private record Graph(Map<Integer, VirtualSensor> bySensorId, Map<Integer, VirtualSensor[]> byInput) {
+    }
+
+    private final SensorRegistry registry;
+    private final LatestValueStore latestValues;
+    private final StatisticsEngine statistics;
+    private final SensorIngestService ingest;
+    private final long budgetPerSecond;
+    private volatile Graph graph = new Graph(Map.of(), Map.of());
+    // Every id ever defined as virtual, so redefining one is not mistaken for a collision; guarded by this
+    private final Set<Integer> definedIds = new HashSet<>();
+    // Dependents per input code, resolved lazily from the graph; an empty array means none
+    private final AtomicReferenceArray<VirtualSensor[]> dependents;
+    private final AtomicIntegerArray kinds;
+    // Last input value per code, guarded by the lock striped by code
+    private final double[] lastInputValues;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final AtomicLong budgetSecond = new AtomicLong();
+    private final AtomicLong budgetSpent = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong skippedOverBudget = new AtomicLong();
+    private final AtomicLong collisions = new AtomicLong();
+
+    public VirtualSensorEngine(SensorRegistry registry, LatestValueStore latestValues, StatisticsEngine statistics,
+            SensorIngestService ingest, long budgetPerSecond) {
+        this.registry = registry;
+        this.latestValues = latestValues;
+        this.statistics = statistics;
+        this.ingest = ingest;
+        this.budgetPerSecond = budgetPerSecond;
+        this.dependents = new AtomicReferenceArray<>(registry.capacity());
+        this.kinds = new AtomicIntegerArray(registry.capacity());
+        this.lastInputValues = new double[registry.capacity()];
+        Arrays.fill(lastInputValues, Double.NaN);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public static VirtualSensorEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates an engine over the given stages with the configured evaluation budget; definitions
+     * still have to be loaded
+     */
+    public static VirtualSensorEngine create(SensorRegistry registry, LatestValueStore latestValues,
+            StatisticsEngine statistics, SensorIngestService ingest) {
+        return new VirtualSensorEngine(registry, latestValues, statistics, ingest,
+            Long.getLong("smartfactory.virtual.budgetPerSecond", 5_000_000L));
+    }
+
+    @Override
+    public void onBatch(String source, SensorBatch batch) {
+        if (graph.byInput().isEmpty()) {
+            return;
+        }
+        boolean physical = !SOURCE.equals(source);
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            int code = batch.code(i);
+            if (code == SensorRegistry.NO_CODE) {
+                continue;
+            }
+            if (physical && isVirtual(code, batch.sensorId(i))) {
+                onCollision(source, batch.sensorId(i));
+                continue;
+            }
+            onReading(code, batch.sensorId(i), batch.value(i), batch.epochNanos(i));
+        }
+    }
+
+    private boolean isVirtual(int code, int sensorId) {
+        int kind = kinds.get(code);
+        if (kind == UNRESOLVED) {
+            kind = graph.bySensorId().containsKey(sensorId) ? VIRTUAL : PHYSICAL;
+            kinds.set(code, kind);
+        }
+        return kind == VIRTUAL;
+    }
+
+    private void onCollision(String source, int sensorId) {
+        collisions.incrementAndGet();
+        VirtualSensor sensor = graph.bySensorId().get(sensorId);
+        if (sensor != null && sensor.collisionLogged.compareAndSet(false, true)) {
+            logger.warn("Readings for sensor {} from {} collide with virtual sensor {} and are not fed to its dependents",
+                sensorId, source, sensorId);
+        }
+    }
+
+    private void onReading(int code, int sensorId, double value, long epochNanos) {
+        VirtualSensor[] affected = dependents.get(code);
+        if (affected == null) {
+            affected = graph.byInput().getOrDefault(sensorId, new VirtualSensor[0]);
+            dependents.set(code, affected);
+        }
+        if (affected.length == 0) {
+            return;
+        }
+        // Released before recomputing, which ingests and may re-enter for a chained sensor
+        synchronized (locks[code & (LOCK_STRIPES - 1)]) {
+            if (value == lastInputValues[code]) {
+                return;
+            }
+            lastInputValues[code] = value;
+        }
+
+        long epochMillis = Math.floorDiv(epochNanos, 1_000_000L);
+        for (VirtualSensor sensor : affected) {
+            if (!charge(sensor.expression.getCost(), epochMillis)) {
+                sensor.skipped.incrementAndGet();
+                skippedOverBudget.incrementAndGet();
+                continue;
+            }
+            sensor.recompute(epochNanos);
+            evaluations.incrementAndGet();
+        }
+    }
+
+    // Per-second cost budget shared by all virtual sensors
+    private boolean charge(int cost, long epochMillis) {
+        long second = epochMillis / 1000;
+        long current = budgetSecond.get();
+        if (second > current && budgetSecond.compareAndSet(current, second)) {
+            budgetSpent.set(0);
+        }
+        return budgetSpent.addAndGet(cost) <= budgetPerSecond;
+    }
+
+    /**
+     * Replaces all virtual sensor definitions
+     * @throws IllegalArgumentException If an expression is malformed, too costly, takes the id of a
+     *         physical sensor, or the definitions form a cycle
+     */
+    public synchronized void setDefinitions(List<VirtualSensorDefinition> definitions) {
+        Map<Integer, VirtualSensor> bySensorId = new HashMap<>();
+        for (VirtualSensorDefinition definition : definitions) {
+            if (isPhysical(definition.sensorId())) {
+                throw new IllegalArgumentException("Virtual sensor " + definition.sensorId()
+                    + " collides with a physical sensor that has already reported");
+            }
+            CompiledExpression expression = ExpressionCompiler.compile(definition.expression());
+            if (expression.getCost() > MAX_COST) {
+                throw new IllegalArgumentException("Virtual sensor " + definition.sensorId()
+                    + " costs " + expression.getCost() + " units per evaluation, limit is " + MAX_COST);
+            }
+            if (bySensorId.put(definition.sensorId(), new VirtualSensor(definition, expression)) != null) {
+                throw new IllegalArgumentException("Duplicate virtual sensor " + definition.sensorId());
+            }
+        }
+        checkAcyclic(bySensorId);
+        definedIds.addAll(bySensorId.keySet());
+
+        Map<Integer, List<VirtualSensor>> byInput = new HashMap<>();
+        for (VirtualSensor sensor : bySensorId.values()) {
+            for (int input : sensor.inputIds) {
+                byInput.computeIfAbsent(input, k -> new ArrayList<>()).add(sensor);
+            }
+        }
+        Map<Integer, VirtualSensor[]> index = new HashMap<>();
+        byInput.forEach((input, sensors) -> index.put(input, sensors.toArray(new VirtualSensor[0])));
+
+        graph = new Graph(bySensorId, index);
+        for (int i = 0; i < dependents.length(); i++) {
+            dependents.set(i, null);
+            kinds.set(i, UNRESOLVED);
+        }
+        LoggingUtil.logStartup(logger, "VirtualSensorEngine", Map.of(
+            "virtualSensors", String.valueOf(bySensorId.size()),
+            "inputs", String.valueOf(index.size()),
+            "budgetPerSecond", String.valueOf(budgetPerSecond)
+        ));
+    }
+
+    // A sensor that has reported without ever having been defined as virtual
+    private boolean isPhysical(int sensorId) {
+        int code = registry.lookup(sensorId);
+        return code != SensorRegistry.NO_CODE && latestValues.getEpochNanos(code) != 0
+            && !definedIds.contains(sensorId);
+    }
+
+    private static void checkAcyclic(Map<Integer, VirtualSensor> bySensorId) {
+        Set<Integer> done = new HashSet<>();
+        for (Integer start : bySensorId.keySet()) {
+            visit(start, bySensorId, new HashSet<>(), done);
+        }
+    }
+
+    private static void visit(int sensorId, Map<Integer, VirtualSensor> bySensorId, Set<Integer> onPath,
+            Set<Integer> done) {
+        VirtualSensor sensor = bySensorId.get(sensorId);
+        if (sensor == null || done.contains(sensorId)) {
+            return;
+        }
+        if (!onPath.add(sensorId)) {
+            throw new IllegalArgumentException("Virtual sensors form a cycle through sensor " + sensorId);
+        }
+        for (int input : sensor.inputIds) {
+            visit(input, bySensorId, onPath, done);
+        }
+        onPath.remove(sensorId);
+        done.add(sensorId);
+    }
+
+    /**
+     * Loads definitions from the file named by smartfactory.virtual.sensors, if set
+     */
+    public void loadConfiguredDefinitions() {
+        String file = System.getProperty("smartfactory.virtual.sensors");
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        try {
+            JsonNode array = JsonUtil.mapper().readTree(Files.readString(Paths.get(file)));
+            List<VirtualSensorDefinition> definitions = new ArrayList<>();
+            for (JsonNode node : array) {
+                definitions.add(new VirtualSensorDefinition(
+                    node.path("sensorId").asInt(),
+                    node.path("type").asText(null),
+                    node.path("expression").asText(null)
+                ));
+            }
+            setDefinitions(definitions);
+        } catch (IOException | RuntimeException e) {
+            LoggingUtil.logError(logger, "Virtual Sensors", "Failed to load virtual sensors from " + file, e);
+        }
+    }
+
+    public List<VirtualSensorDefinition> getDefinitions() {
+        List<VirtualSensorDefinition> definitions = new ArrayList<>();
+        for (VirtualSensor sensor : graph.bySensorId().values()) {
+            definitions.add(sensor.definition);
+        }
+        return definitions;
+    }
+
+    /**
+     * Evaluates a virtual sensor against current values without publishing the result
+     */
+    public double evaluateNow(int sensorId) {
+        VirtualSensor sensor = graph.bySensorId().get(sensorId);
+        if (sensor == null) {
+            throw new IllegalArgumentException("No virtual sensor " + sensorId);
+        }
+        return sensor.evaluate();
+    }
+
+    public long getEvaluations(int sensorId) {
+        VirtualSensor sensor = graph.bySensorId().get(sensorId);
+        return sensor != null ? sensor.evaluations.get() : 0;
+    }
+
+    public long getSkipped(int sensorId) {
+        VirtualSensor sensor = graph.bySensorId().get(sensorId);
+        return sensor != null ? sensor.skipped.get() : 0;
+    }
+
+    public int getCost(int sensorId) {
+        VirtualSensor sensor = graph.bySensorId().get(sensorId);
+        return sensor != null ? sensor.expression.getCost() : 0;
+    }
+
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    public long getSkippedOverBudget() {
+        return skippedOverBudget.get();
+    }
+
+    /**
+     * Physical readings ignored because they arrived under a virtual sensor's id
+     */
+    public long getCollisions() {
+        return collisions.get();
+    }
+
+    public long getBudgetPerSecond() {
+        return budgetPerSecond;
+    }
+}
@@ -0,0 +1,34 @@
+package com.dashtech.smartfactory.virtual;
+
+/**
+ * Functions over a sensor's sliding statistics window usable in virtual sensor expressions,
+ * e.g. {@code mean(s2)}.
+ */
+public enum WindowFunction {
+    MEAN("mean"),
+    STDDEV("stddev"),
+    WMIN("wmin"),
+    WMAX("wmax"),
+    P50("p50"),
+    P95("p95"),
+    P99("p99");
+
+    private final String functionName;
+
+    WindowFunction(String functionName) {
+        this.functionName = functionName;
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    public static WindowFunction fromName(String name) {
+        for (WindowFunction function : values()) {
+            if (function.functionName.equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.dashtech.smartfactory.websocket;
+
+import com.dashtech.smartfactory.model.SensorData;
+
+/**
+ * A text frame queued for a session. Frames carrying a reading keep its sensor, arrival time
+ * and the port it arrived on, so the send can be traced back to the reading's arrival.
+ * Only reading frames may be dropped by a full outbox; every other frame is a reply,
+ * acknowledgement or alarm the dashboard must receive.
+ */
+record OutboundMessage(String text, String source, int sensorId, long arrivalNanos, boolean reading) {
+
+    /**
+     * A frame that is always delivered
+     */
+    static OutboundMessage of(String text) {
+        return new OutboundMessage(text, null, -1, SensorData.NOT_STAMPED, false);
+    }
+
+    /**
+     * A reading frame, which a full outbox may drop for a newer one
+     */
+    static OutboundMessage reading(String text, String source, int sensorId, long arrivalNanos) {
+        return new OutboundMessage(text, source, sensorId, arrivalNanos, true);
+    }
+
+    boolean isTraced() {
+        return arrivalNanos != SensorData.NOT_STAMPED;
+    }
+}
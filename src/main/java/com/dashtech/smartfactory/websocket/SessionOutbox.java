@@ -0,0 +1,148 @@
+package com.dashtech.smartfactory.websocket;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.Session;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dashtech.smartfactory.jfr.WebSocketDropEvent;
+import com.dashtech.smartfactory.jfr.WebSocketSendEvent;
+import com.dashtech.smartfactory.metrics.LatencyTracer;
+import com.dashtech.smartfactory.util.LoggingUtil;
+import com.dashtech.smartfactory.util.ThreadPoolManager;
+
+/**
+ * Outbound queues for one WebSocket session. Producers never block on a slow browser:
+ * reading frames go to a bounded queue, and when it is full the oldest pending reading is
+ * dropped, since a newer one supersedes it. Replies, acknowledgements and alarms go to a
+ * separate queue that is never dropped from and is sent ahead of pending readings; these
+ * arrive at operator and alarm rates rather than reading rates, so the queue stays short.
+ * A single drain task per session writes the frames, so the session's basic remote is
+ * never used concurrently.
+ */
+class SessionOutbox {
+    private static final Logger logger = LogManager.getLogger(SessionOutbox.class);
+    static final int DEFAULT_CAPACITY = Integer.getInteger("smartfactory.websocket.outboxCapacity", 1024);
+
+    private final Session session;
+    private final BlockingQueue<OutboundMessage> readings;
+    private final Queue<OutboundMessage> control = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicLong dropped = new AtomicLong();
+
+    SessionOutbox(Session session) {
+        this(session, DEFAULT_CAPACITY);
+    }
+
+    SessionOutbox(Session session, int capacity) {
+        this.session = session;
+        this.readings = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void offer(String message) {
+        offer(OutboundMessage.of(message));
+    }
+
+    void offer(OutboundMessage message) {
+        if (!message.reading()) {
+            control.add(message);
+            scheduleDrain();
+            return;
+        }
+        while (!readings.offer(message)) {
+            OutboundMessage discarded = readings.poll();
+            if (discarded != null) {
+                long total = dropped.incrementAndGet();
+                WebSocketDropEvent event = new WebSocketDropEvent();
+                if (event.isEnabled()) {
+                    event.session = session.getId();
+                    event.sensorId = discarded.sensorId();
+                    event.dropped = total;
+                    event.commit();
+                }
+            }
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            ThreadPoolManager.getInstance().submitWebSocketTask(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            OutboundMessage message;
+            while ((message = next()) != null) {
+                if (!session.isOpen()) {
+                    control.clear();
+                    readings.clear();
+                    return;
+                }
+                WebSocketSendEvent event = new WebSocketSendEvent();
+                event.begin();
+                long started = System.nanoTime();
+                session.getBasicRemote().sendText(message.text());
+                event.end();
+                if (event.shouldCommit()) {
+                    event.session = session.getId();
+                    event.port = message.source();
+                    event.sensorId = message.sensorId();
+                    event.bytes = utf8Length(message.text());
+                    event.commit();
+                }
+                if (message.isTraced()) {
+                    LatencyTracer.getInstance().sent(message.source(), message.sensorId(), message.arrivalNanos(),
+                        session.getId(), started, System.nanoTime());
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            LoggingUtil.logError(logger, "Message Send", "Failed to send message to session " + session.getId(), e);
+        } finally {
+            draining.set(false);
+            if ((!control.isEmpty() || !readings.isEmpty()) && session.isOpen()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private OutboundMessage next() {
+        OutboundMessage message = control.poll();
+        return message != null ? message : readings.poll();
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    int getQueueDepth() {
+        return control.size() + readings.size();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
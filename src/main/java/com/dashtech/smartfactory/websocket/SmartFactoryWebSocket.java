@@ -1,10 +1,15 @@
 package com.dashtech.smartfactory.websocket;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.websocket.OnClose;
 import javax.websocket.OnError;
@@ -16,35 +21,59 @@ import javax.websocket.server.ServerEndpoint;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.dashtech.smartfactory.alarm.AlarmEngine;
 import com.dashtech.smartfactory.model.ActuatorCommand;
-import com.dashtech.smartfactory.model.DatabaseConfig;
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.AnomalyKind;
+import com.dashtech.smartfactory.model.CommandGroup;
+import com.dashtech.smartfactory.model.CommandLog;
+import com.dashtech.smartfactory.model.CommandResult;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorHealthEvent;
+import com.dashtech.smartfactory.model.StatsSummary;
+import com.dashtech.smartfactory.service.CommandGate;
 import com.dashtech.smartfactory.service.DatabaseService;
+import com.dashtech.smartfactory.service.HistoryService;
+import com.dashtech.smartfactory.service.LatestValueStore;
 import com.dashtech.smartfactory.service.SerialCommunicationService;
+import com.dashtech.smartfactory.stats.StatisticsEngine;
+import com.dashtech.smartfactory.stats.StatsWindow;
+import com.dashtech.smartfactory.util.JsonUtil;
 import com.dashtech.smartfactory.util.LoggingUtil;
+import com.dashtech.smartfactory.util.ThreadPoolManager;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 @ServerEndpoint("/ws/smartfactory")
 public class SmartFactoryWebSocket {
     private static final Logger logger = LogManager.getLogger(SmartFactoryWebSocket.class);
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final long DEFAULT_HISTORY_MINUTES = 10;
     
     // Map to store WebSocket sessions
     private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
     
+    // Map to store the outbound queue for each session
+    private static final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    
     // Map to store serial connections for each session
     private static final Map<String, SerialCommunicationService> serialConnections = new ConcurrentHashMap<>();
     
-    private static DatabaseService databaseService;
+    private static volatile DatabaseService databaseService;
+    
+    // Messages dropped by outboxes of sessions that have since closed
+    private static final LongAdder closedSessionDrops = new LongAdder();
 
-    public static void setDatabaseService(String dbPath) {
-        Path path = Paths.get(dbPath);
-        databaseService = DatabaseService.getInstance(DatabaseConfig.createDefault(path));
+    public static void setDatabaseService(DatabaseService database) {
+        databaseService = database;
     }
 
     @OnOpen
     public void onOpen(Session session) {
+        outboxes.put(session.getId(), new SessionOutbox(session));
         sessions.put(session.getId(), session);
         LoggingUtil.logWebSocketEvent(logger, "OPEN", session.getId(), "New WebSocket connection established");
         
@@ -57,7 +86,7 @@ public class SmartFactoryWebSocket {
             serialService.setCallback(new SerialCommunicationService.SerialDataCallback() {
                 @Override
                 public void onDataReceived(String data) {
-                    sendSerialData(session, data);
+                    // Parsed readings reach every session through broadcastBatch, the ingest batch listener
                 }
                 
                 @Override
@@ -67,6 +96,10 @@ public class SmartFactoryWebSocket {
             });
             
             sendConnectionStatus(session);
+            sendSnapshot(session);
+            if (!AlarmEngine.getInstance().getActiveAlarms().isEmpty()) {
+                sendActiveAlarms(session);
+            }
         } catch (Exception e) {
             LoggingUtil.logError(logger, "WebSocket Open", "Failed to initialize session", e);
             sendError(session, "Failed to initialize session: " + e.getMessage());
@@ -81,6 +114,8 @@ public class SmartFactoryWebSocket {
             serialService.disconnect();
         }
         sessions.remove(session.getId());
+        removeOutbox(session.getId());
+        CommandGate.getInstance().forget(session.getId());
         LoggingUtil.logWebSocketEvent(logger, "CLOSE", session.getId(), "WebSocket connection closed");
     }
 
@@ -93,11 +128,13 @@ public class SmartFactoryWebSocket {
             serialService.disconnect();
         }
         sessions.remove(session.getId());
+        removeOutbox(session.getId());
+        CommandGate.getInstance().forget(session.getId());
     }
 
     @OnMessage
     public void onMessage(String message, Session session) {
-        LoggingUtil.logWebSocketEvent(logger, "MESSAGE", session.getId(), "Received: " + message);
+        LoggingUtil.logWebSocketMessage(logger, "RECEIVED", session.getId(), message);
         
         try {
             JsonNode json = objectMapper.readTree(message);
@@ -111,9 +148,14 @@ public class SmartFactoryWebSocket {
 
             switch (type) {
                 case "command" -> handleCommand(json, session, serialService);
+                case "group" -> handleGroup(json, session, serialService);
                 case "getports" -> handleGetPorts(session, serialService);
                 case "connect" -> handleConnect(json, session, serialService);
                 case "disconnect" -> handleDisconnect(session, serialService);
+                case "snapshot" -> sendSnapshot(session);
+                case "history" -> handleHistory(json, session);
+                case "stats" -> handleStats(json, session);
+                case "alarms" -> sendActiveAlarms(session);
                 default -> logger.warn("Unknown message type: {}", type);
             }
         } catch (Exception e) {
@@ -141,22 +183,160 @@ public class SmartFactoryWebSocket {
                 command = ActuatorCommand.create(actuatorId, cmd);
             }
 
-            if (serialService.sendCommand(command)) {
-                databaseService.logCommand(command, true, null, session.getId());
-                LoggingUtil.logCommand(logger, command.command(), true, 
-                    String.format("Actuator: %d, Session: %s", command.actuatorId(), session.getId()));
-            } else {
-                String error = "Failed to send command: " + command.command();
-                databaseService.logCommand(command, false, error, session.getId());
-                LoggingUtil.logCommand(logger, command.command(), false, error);
-                sendError(session, error);
+            if (!admit(session)) {
+                return;
             }
+            // Completion runs off the port's receive thread, which must not wait on the database
+            serialService.submitCommand(command).whenCompleteAsync(
+                (result, error) -> completeCommand(session, command, result, error),
+                ThreadPoolManager.getInstance()::submitWebSocketTask);
         } catch (Exception e) {
             LoggingUtil.logError(logger, "Command Handling", "Error executing command", e);
             sendError(session, "Error executing command: " + e.getMessage());
         }
     }
 
+    /**
+     * Sends a scene such as a line changeover: all commands leave in one write and their
+     * outcomes are logged together once every command is confirmed or has failed
+     */
+    private void handleGroup(JsonNode json, Session session, SerialCommunicationService serialService) {
+        try {
+            if (!serialService.isConnected()) {
+                sendError(session, "Serial port not connected");
+                return;
+            }
+
+            List<ActuatorCommand> commands = new ArrayList<>();
+            for (JsonNode node : json.path("commands")) {
+                commands.add(ActuatorCommand.create(node.get("actuatorId").asInt(), node.get("command").asText()));
+            }
+            CommandGroup group = CommandGroup.create(json.path("name").asText("group"), commands);
+            if (!admit(session)) {
+                return;
+            }
+
+            List<CompletableFuture<CommandResult>> results = serialService.submitGroup(group);
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenCompleteAsync(
+                (ignored, error) -> completeGroup(session, group, results),
+                ThreadPoolManager.getInstance()::submitWebSocketTask);
+        } catch (IllegalArgumentException e) {
+            sendError(session, "Invalid command group: " + e.getMessage());
+        } catch (Exception e) {
+            LoggingUtil.logError(logger, "Group Handling", "Error executing command group", e);
+            sendError(session, "Error executing command group: " + e.getMessage());
+        }
+    }
+
+    // Package-private for tests
+    void completeGroup(Session session, CommandGroup group, List<CompletableFuture<CommandResult>> results) {
+        List<CommandLog> logs = new ArrayList<>(results.size());
+        ArrayNode outcomes = objectMapper.createArrayNode();
+        int confirmed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            ActuatorCommand command = group.commands().get(i);
+            CompletableFuture<CommandResult> result = results.get(i);
+            if (!result.isCompletedExceptionally()) {
+                CommandResult ack = result.join();
+                logs.add(CommandLog.success(command, session.getId()));
+                outcomes.add(JsonUtil.commandResult(ack));
+                confirmed++;
+            } else {
+                String message = "Command " + command.command() + " not confirmed: " + failureMessage(result);
+                logs.add(CommandLog.failure(command, message, session.getId()));
+                ObjectNode outcome = outcomes.addObject();
+                outcome.put("actuatorId", command.actuatorId());
+                outcome.put("command", command.command());
+                outcome.put("error", message);
+            }
+        }
+        storeCommandLogs(group.name(), logs);
+        LoggingUtil.logCommand(logger, group.name(), confirmed == results.size(),
+            String.format("Group of %d, %d confirmed, Session: %s", results.size(), confirmed, session.getId()));
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("type", "groupAck");
+        response.put("name", group.name());
+        response.put("confirmed", confirmed);
+        response.put("failed", results.size() - confirmed);
+        response.set("results", outcomes);
+        sendMessage(session, response.toString());
+    }
+
+    private static String failureMessage(CompletableFuture<?> failed) {
+        try {
+            failed.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+        }
+    }
+
+    /**
+     * Applies the session's command rate limit; dropped commands are not logged to COMMAND_LOG
+     */
+    private static boolean admit(Session session) {
+        CommandGate gate = CommandGate.getInstance();
+        if (gate.tryAcquire(session.getId())) {
+            return true;
+        }
+        sendError(session, String.format("Command rate limit exceeded, %d commands dropped",
+            gate.getRateLimited(session.getId())));
+        return false;
+    }
+
+    // Package-private for tests
+    void completeCommand(Session session, ActuatorCommand command, CommandResult result, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            // A newer command to the same actuator took its place; that one is logged and acknowledged
+            logger.debug("Command {} to actuator {} superseded: {}", command.command(), command.actuatorId(), cause.getMessage());
+            return;
+        }
+        if (error == null) {
+            storeCommandLog(CommandLog.success(command, session.getId()));
+            LoggingUtil.logCommand(logger, command.command(), true, 
+                String.format("Actuator: %d, Session: %s, Attempts: %d, Round trip: %.1f ms",
+                    command.actuatorId(), session.getId(), result.attempts(), result.roundTripMillis()));
+            ObjectNode response = JsonUtil.commandResult(result);
+            response.put("type", "commandAck");
+            sendMessage(session, response.toString());
+        } else {
+            String message = "Command " + command.command() + " not confirmed: " + cause.getMessage();
+            storeCommandLog(CommandLog.failure(command, message, session.getId()));
+            LoggingUtil.logCommand(logger, command.command(), false, message);
+            sendError(session, message);
+        }
+    }
+
+    // The operator is answered whether or not COMMAND_LOG can be written
+    private static void storeCommandLog(CommandLog log) {
+        DatabaseService database = databaseService;
+        if (database == null) {
+            logger.warn("No database, command {} to actuator {} not logged", log.command(), log.actuatorId());
+            return;
+        }
+        try {
+            database.logCommand(log);
+        } catch (RuntimeException e) {
+            LoggingUtil.logError(logger, "Command Log",
+                "Failed to log command " + log.command() + " to actuator " + log.actuatorId(), e);
+        }
+    }
+
+    private static void storeCommandLogs(String groupName, List<CommandLog> logs) {
+        DatabaseService database = databaseService;
+        if (database == null) {
+            logger.warn("No database, outcomes of group {} not logged", groupName);
+            return;
+        }
+        try {
+            database.logCommands(logs);
+        } catch (RuntimeException e) {
+            LoggingUtil.logError(logger, "Command Log", "Failed to log outcomes of group " + groupName, e);
+        }
+    }
+
     private void handleGetPorts(Session session, SerialCommunicationService serialService) {
         try {
             ObjectNode response = objectMapper.createObjectNode();
@@ -198,24 +378,181 @@ public class SmartFactoryWebSocket {
         }
     }
 
-    private void sendSerialData(Session session, String data) {
+    private static void removeOutbox(String sessionId) {
+        SessionOutbox outbox = outboxes.remove(sessionId);
+        if (outbox != null) {
+            closedSessionDrops.add(outbox.getDroppedCount());
+        }
+    }
+
+    public static int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Messages queued for all open sessions
+     */
+    public static int getOutboxDepth() {
+        int depth = 0;
+        for (SessionOutbox outbox : outboxes.values()) {
+            depth += outbox.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Messages dropped because a session's outbox was full, including sessions since closed
+     */
+    public static long getOutboxDropped() {
+        long dropped = closedSessionDrops.sum();
+        for (SessionOutbox outbox : outboxes.values()) {
+            dropped += outbox.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    /**
+     * Ingest listener that pushes every reading to all open sessions
+     */
+    public static void broadcastBatch(String source, SensorBatch batch) {
+        if (outboxes.isEmpty()) {
+            return;
+        }
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            String text = readingMessage(source, batch, i);
+            OutboundMessage message = OutboundMessage.reading(text, source, batch.sensorId(i), batch.arrivalNanos(i));
+            for (SessionOutbox outbox : outboxes.values()) {
+                outbox.offer(message);
+            }
+        }
+    }
+
+    /**
+     * Encodes one row of a batch as the JSON text frame sent to dashboards
+     */
+    public static String readingMessage(String source, SensorBatch batch, int row) {
+        return readingMessage(source, batch.sensorId(row), batch.type(row), batch.value(row), batch.epochMillis(row),
+            QualityFlags.anomalyKinds(batch.quality(row)));
+    }
+
+    private static String readingMessage(String source, int sensorId, String type, double value, long epochMillis,
+            int anomaly) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("sensorId", sensorId);
+        message.put("type", type);
+        message.put("value", value);
+        message.put("timestamp", epochMillis);
+        message.put("source", source);
+        if (anomaly != 0) {
+            message.put("anomaly", AnomalyKind.describe(anomaly));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Alarm listener that pushes raised and cleared alarms to all open sessions
+     */
+    public static void broadcastAlarm(AlarmEvent event) {
+        if (outboxes.isEmpty()) {
+            return;
+        }
+        ObjectNode message = JsonUtil.alarmEvent(event);
+        message.put("type", "alarm");
+        String text = message.toString();
+        for (SessionOutbox outbox : outboxes.values()) {
+            outbox.offer(text);
+        }
+    }
+
+    /**
+     * Watchdog listener that tells all open sessions when a sensor goes stale or recovers
+     */
+    public static void broadcastSensorHealth(SensorHealthEvent event) {
+        if (outboxes.isEmpty()) {
+            return;
+        }
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("type", "sensorHealth");
+        message.put("sensorId", event.sensorId());
+        message.put("sensorType", event.type());
+        message.put("state", event.state().name());
+        message.put("lastSeen", event.lastSeen().toEpochMilli());
+        message.put("silentMillis", event.silentMillis());
+        message.put("expectedIntervalMillis", event.expectedIntervalMillis());
+        message.put("timestamp", event.timestamp().toEpochMilli());
+        String text = message.toString();
+        for (SessionOutbox outbox : outboxes.values()) {
+            outbox.offer(text);
+        }
+    }
+
+    private void sendActiveAlarms(Session session) {
         try {
-            // Parse the sensor data format: Sensor[XX] Type[XX] Value[XX.XX]
-            if (data.startsWith("Sensor[")) {
-                final String[] parts = data.split("\\] ");
-                final int sensorId = Integer.parseInt(parts[0].substring(7), 16);
-                final String type = parts[1].substring(5);
-                final double value = Double.parseDouble(parts[2].substring(6, parts[2].length() - 1));
+            ObjectNode message = objectMapper.createObjectNode();
+            message.put("type", "alarms");
+            message.set("active", JsonUtil.alarmEvents(AlarmEngine.getInstance().getActiveAlarms()));
+            sendMessage(session, message.toString());
+        } catch (Exception e) {
+            LoggingUtil.logError(logger, "Alarms", "Error sending active alarms", e);
+        }
+    }
 
-                ObjectNode message = objectMapper.createObjectNode();
-                message.put("sensorId", sensorId);
-                message.put("type", Integer.parseInt(type, 16) == 1 ? "Temperature" : "Pressure");
-                message.put("value", value);
-                
-                sendMessage(session, message.toString());
+    /**
+     * Answers {"type":"history","sensorId":N} with optional "from"/"to" epoch millis or "minutes" (default 10),
+     * and optional "width" in pixels to downsample the points to at most that many
+     */
+    private void handleHistory(JsonNode json, Session session) {
+        try {
+            int sensorId = json.get("sensorId").asInt();
+            long to = json.has("to") ? json.get("to").asLong() : System.currentTimeMillis();
+            long from = json.has("from") ? json.get("from").asLong()
+                : to - TimeUnit.MINUTES.toMillis(json.path("minutes").asLong(DEFAULT_HISTORY_MINUTES));
+            if (from > to) {
+                sendError(session, "from must not be after to");
+                return;
+            }
+            int width = json.path("width").asInt(0);
+            ObjectNode response = HistoryService.getInstance().queryAsJson(sensorId, from, to, width);
+            response.put("type", "history");
+            sendMessage(session, response.toString());
+        } catch (Exception e) {
+            LoggingUtil.logError(logger, "History", "Error reading sensor history", e);
+            sendError(session, "Error reading sensor history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answers {"type":"stats","sensorId":N} with optional "window" (lifetime, tumbling, tumbling_previous, sliding)
+     */
+    private void handleStats(JsonNode json, Session session) {
+        try {
+            int sensorId = json.get("sensorId").asInt();
+            StatsWindow window = StatsWindow.fromString(json.path("window").asText("sliding"));
+            StatsSummary summary = StatisticsEngine.getInstance().summary(sensorId, window);
+            if (summary == null) {
+                sendError(session, "No readings for sensor " + sensorId);
+                return;
             }
+            ObjectNode response = JsonUtil.statsSummary(summary);
+            response.put("type", "stats");
+            sendMessage(session, response.toString());
         } catch (Exception e) {
-            LoggingUtil.logError(logger, "Serial Data Processing", "Error processing serial data: " + data, e);
+            LoggingUtil.logError(logger, "Stats", "Error reading sensor statistics", e);
+            sendError(session, "Error reading sensor statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the latest value of every sensor in one message so a new dashboard is populated immediately
+     */
+    private void sendSnapshot(Session session) {
+        try {
+            ObjectNode snapshot = objectMapper.createObjectNode();
+            snapshot.put("type", "snapshot");
+            snapshot.set("sensors", JsonUtil.latestValues(LatestValueStore.getInstance().snapshot()));
+            sendMessage(session, snapshot.toString());
+        } catch (Exception e) {
+            LoggingUtil.logError(logger, "Snapshot", "Error sending snapshot", e);
         }
     }
 
@@ -235,9 +572,15 @@ public class SmartFactoryWebSocket {
     }
 
     private static void sendMessage(Session session, String message) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox != null) {
+            outbox.offer(message);
+            LoggingUtil.logWebSocketMessage(logger, "QUEUED", session.getId(), message);
+            return;
+        }
         try {
             session.getBasicRemote().sendText(message);
-            LoggingUtil.logWebSocketEvent(logger, "SEND", session.getId(), "Sent: " + message);
+            LoggingUtil.logWebSocketMessage(logger, "SENT", session.getId(), message);
         } catch (IOException e) {
             LoggingUtil.logError(logger, "Message Send", "Failed to send message to session " + session.getId(), e);
         }
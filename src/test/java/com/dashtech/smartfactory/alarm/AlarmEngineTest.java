@@ -0,0 +1,155 @@
+package com.dashtech.smartfactory.alarm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.AlarmEvent;
+import com.dashtech.smartfactory.model.AlarmRule;
+import com.dashtech.smartfactory.model.AlarmSeverity;
+import com.dashtech.smartfactory.service.SensorRegistry;
+
+class AlarmEngineTest {
+
+    private static final int SENSOR = 7;
+    private static final String TEMPERATURE = "Temperature";
+
+    private record Transition(String ruleId, AlarmEvent.State state, long epochMillis) {
+    }
+
+    private SensorRegistry registry;
+    private AlarmEngine engine;
+    private List<Transition> events;
+    private int code;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SensorRegistry(16);
+        engine = new AlarmEngine(registry);
+        events = new ArrayList<>();
+        engine.addListener(event -> events.add(
+            new Transition(event.ruleId(), event.state(), event.timestamp().toEpochMilli())));
+        code = registry.codeOf(SENSOR, TEMPERATURE);
+    }
+
+    private static AlarmRule rule(String id, AlarmRule.Kind kind, double limit, double hysteresis, double deadband,
+            long durationMillis) {
+        return new AlarmRule(id, SENSOR, null, kind, limit, hysteresis, deadband, durationMillis, AlarmSeverity.WARNING);
+    }
+
+    private static Transition raised(String ruleId, long epochMillis) {
+        return new Transition(ruleId, AlarmEvent.State.RAISED, epochMillis);
+    }
+
+    private static Transition cleared(String ruleId, long epochMillis) {
+        return new Transition(ruleId, AlarmEvent.State.CLEARED, epochMillis);
+    }
+
+    @Test
+    void clearsOnlyOnceBackInsideTheHysteresis() {
+        engine.setRules(List.of(rule("high", AlarmRule.Kind.HIGH, 80, 5, 0, 0),
+            rule("low", AlarmRule.Kind.LOW, 10, 2, 0, 0)));
+
+        engine.evaluate(code, 80, 0);
+        engine.evaluate(code, 81, 1);
+        engine.evaluate(code, 90, 2);
+        engine.evaluate(code, 76, 3);
+        engine.evaluate(code, 75, 4);
+        engine.evaluate(code, 9, 5);
+        engine.evaluate(code, 11.9, 6);
+        engine.evaluate(code, 12, 7);
+
+        assertEquals(List.of(raised("high", 1), cleared("high", 4), raised("low", 5), cleared("low", 7)), events);
+        assertEquals(2, engine.getEventsRaised());
+        assertEquals(2, engine.getEventsCleared());
+        assertTrue(engine.getActiveAlarms().isEmpty());
+    }
+
+    @Test
+    void raisesOnlyAfterTheConditionHeldForTheDuration() {
+        engine.setRules(List.of(rule("high", AlarmRule.Kind.HIGH, 80, 0, 0, 1000)));
+
+        engine.evaluate(code, 81, 0);
+        engine.evaluate(code, 82, 900);
+        // Dropping back restarts the timer
+        engine.evaluate(code, 79, 950);
+        engine.evaluate(code, 81, 1000);
+        engine.evaluate(code, 81, 1999);
+        assertTrue(events.isEmpty());
+
+        engine.evaluate(code, 81, 2000);
+        // Rules have no off delay: the first reading back inside clears
+        engine.evaluate(code, 80, 2001);
+        assertEquals(List.of(raised("high", 2000), cleared("high", 2001)), events);
+    }
+
+    @Test
+    void raisesOnTheRateOfChangePerSecond() {
+        engine.setRules(List.of(rule("rate", AlarmRule.Kind.RATE_OF_CHANGE, 10, 2, 0, 0)));
+
+        engine.evaluate(code, 0, 0);
+        engine.evaluate(code, 5, 1000);
+        // A falling value counts as well, and a repeated timestamp is skipped
+        engine.evaluate(code, -10, 2000);
+        engine.evaluate(code, 100, 2000);
+        engine.evaluate(code, -1, 3000);
+        engine.evaluate(code, 7, 4000);
+
+        assertEquals(List.of(raised("rate", 2000), cleared("rate", 4000)), events);
+    }
+
+    @Test
+    void skipsReadingsInsideTheDeadband() {
+        engine.setRules(List.of(rule("high", AlarmRule.Kind.HIGH, 80, 0, 2, 0)));
+
+        engine.evaluate(code, 79, 0);
+        engine.evaluate(code, 80.5, 1);
+        engine.evaluate(code, 80.9, 2);
+        assertTrue(events.isEmpty());
+
+        engine.evaluate(code, 81, 3);
+        engine.evaluate(code, 79.5, 4);
+        engine.evaluate(code, 79, 5);
+        assertEquals(List.of(raised("high", 3), cleared("high", 5)), events);
+        assertEquals(6, engine.getReadingsEvaluated());
+    }
+
+    @Test
+    void keepsStateOfSurvivingRulesAcrossRecompilation() {
+        AlarmRule high = rule("high", AlarmRule.Kind.HIGH, 80, 0, 0, 0);
+        AlarmRule delayed = rule("delayed", AlarmRule.Kind.HIGH, 50, 0, 0, 1000);
+        engine.setRules(List.of(high, delayed));
+        engine.evaluate(code, 90, 0);
+        assertEquals(List.of(raised("high", 0)), events);
+
+        AlarmRule typeRule = AlarmRule.forType("type", TEMPERATURE, AlarmRule.Kind.HIGH, 85, 0);
+        engine.setRules(List.of(delayed, high, typeRule));
+        engine.evaluate(code, 90, 500);
+        // "high" stays raised, "delayed" keeps its timer from 0, the new type rule raises at once
+        assertEquals(List.of(raised("high", 0), raised("type", 500)), events);
+        engine.evaluate(code, 90, 1000);
+        assertEquals(raised("delayed", 1000), events.get(2));
+
+        events.clear();
+        engine.setRules(List.of(delayed));
+        assertEquals(2, events.size());
+        assertTrue(events.stream().allMatch(event -> event.state() == AlarmEvent.State.CLEARED));
+        assertEquals(List.of("delayed"), engine.getActiveAlarms().stream().map(AlarmEvent::ruleId).toList());
+
+        events.clear();
+        engine.evaluate(code, 40, 1500);
+        assertEquals(List.of(cleared("delayed", 1500)), events);
+    }
+
+    @Test
+    void rejectsDuplicateRuleIds() {
+        AlarmRule high = rule("high", AlarmRule.Kind.HIGH, 80, 0, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> engine.setRules(List.of(high, high)));
+    }
+}
@@ -0,0 +1,174 @@
+package com.dashtech.smartfactory.anomaly;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.Anomaly;
+import com.dashtech.smartfactory.model.AnomalyKind;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.service.LatestValueStore;
+import com.dashtech.smartfactory.service.SensorRegistry;
+
+class AnomalyDetectorTest {
+
+    private static final int SENSOR = 3;
+    private static final int WARMUP = 20;
+    private static final double OFF = 1e9;
+
+    private SensorRegistry registry;
+    private LatestValueStore latestValues;
+    private int code;
+    private long epochMillis;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SensorRegistry(16);
+        latestValues = new LatestValueStore(registry);
+        code = registry.codeOf(SENSOR, SensorType.TEMPERATURE.getName());
+    }
+
+    private AnomalyDetector detector(double zThreshold, double cusumThreshold, double spikeThreshold) {
+        return new AnomalyDetector(registry, latestValues, 0.01, WARMUP, zThreshold, 0.5, cusumThreshold,
+            spikeThreshold, 0.01);
+    }
+
+    private int check(AnomalyDetector detector, double value) {
+        epochMillis += 1000;
+        return detector.check(code, value, epochMillis);
+    }
+
+    // Readings of 9.9 and 10.1 in turn: mean 10, deviation 0.1, rate of change +-0.2 per second
+    private void steady(AnomalyDetector detector, int readings) {
+        for (int i = 0; i < readings; i++) {
+            assertEquals(0, check(detector, i % 2 == 0 ? 9.9 : 10.1), "steady reading " + i);
+        }
+    }
+
+    @Test
+    void flagsNothingDuringWarmup() {
+        AnomalyDetector detector = detector(4, 8, 6);
+        List<Anomaly> anomalies = new ArrayList<>();
+        detector.addListener(anomalies::add);
+
+        steady(detector, 5);
+        assertEquals(0, check(detector, 1000));
+        steady(detector, WARMUP - 6);
+        assertTrue(anomalies.isEmpty());
+
+        // The warm-up outlier is part of the baseline, so only a larger one stands out
+        assertEquals(0, check(detector, 150));
+        assertTrue(check(detector, 10_000) != 0);
+        assertEquals(1, anomalies.size());
+        assertEquals(WARMUP + 2, detector.getReadingsChecked());
+        assertEquals(1, detector.getAnomaliesFlagged());
+    }
+
+    @Test
+    void flagsReadingsBeyondTheZScoreThreshold() {
+        AnomalyDetector detector = detector(4, OFF, OFF);
+        List<Anomaly> anomalies = new ArrayList<>();
+        detector.addListener(anomalies::add);
+        steady(detector, 60);
+
+        assertEquals(0, check(detector, 10.3));
+        assertEquals(0, check(detector, 9.7));
+        assertEquals(AnomalyKind.Z_SCORE.bit(), check(detector, 11));
+        assertEquals(AnomalyKind.Z_SCORE.bit(), check(detector, 9));
+
+        Anomaly high = anomalies.get(0);
+        assertEquals(SENSOR, high.sensorId());
+        assertEquals(11, high.value());
+        assertTrue(high.zScore() > 4, "z " + high.zScore());
+        assertTrue(anomalies.get(1).zScore() < -4, "z " + anomalies.get(1).zScore());
+    }
+
+    @Test
+    void clipsOutliersSoTheBaselineStaysSharp() {
+        AnomalyDetector detector = detector(4, OFF, OFF);
+        steady(detector, 60);
+
+        // Each outlier enters the baseline at four deviations; unclipped, the first would
+        // widen the deviation until a reading 1.5 from the mean passed as normal
+        for (int i = 0; i < 5; i++) {
+            assertEquals(AnomalyKind.Z_SCORE.bit(), check(detector, 1000), "outlier " + i);
+        }
+        assertEquals(0, check(detector, 10.1));
+        assertEquals(AnomalyKind.Z_SCORE.bit(), check(detector, 11.5));
+    }
+
+    @Test
+    void reportsDriftOnceAndStartsAccumulatingAgain() {
+        AnomalyDetector detector = detector(OFF, 8, OFF);
+        steady(detector, 60);
+
+        List<Integer> drifts = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            int flags = check(detector, 10.25);
+            if (flags != 0) {
+                assertEquals(AnomalyKind.DRIFT_UP.bit(), flags);
+                drifts.add(i);
+            }
+        }
+        // z is about 2.5 a reading, so the sum passes 8 after four readings and restarts from 0
+        assertTrue(drifts.size() >= 2, "drifts " + drifts);
+        assertTrue(drifts.get(0) >= 3, "drifts " + drifts);
+        for (int i = 1; i < drifts.size(); i++) {
+            assertTrue(drifts.get(i) - drifts.get(i - 1) >= 3, "drifts " + drifts);
+        }
+
+        steady(detector, 60);
+        boolean down = false;
+        for (int i = 0; i < 30 && !down; i++) {
+            down = check(detector, 9.75) == AnomalyKind.DRIFT_DOWN.bit();
+        }
+        assertTrue(down);
+    }
+
+    @Test
+    void flagsSpikesAndClipsTheirRate() {
+        AnomalyDetector detector = detector(OFF, OFF, 6);
+        steady(detector, 60);
+
+        assertEquals(AnomalyKind.SPIKE.bit(), check(detector, 1000));
+        assertEquals(AnomalyKind.SPIKE.bit(), check(detector, 10.1));
+        steady(detector, 4);
+        // Had the two spikes entered the rate baseline unclipped, a jump of 3 per second would pass
+        assertEquals(AnomalyKind.SPIKE.bit(), check(detector, 13.1));
+    }
+
+    @Test
+    void marksOnlyTheFlaggedRowAndTheLatestValueItProduced() {
+        AnomalyDetector detector = detector(4, OFF, OFF);
+        steady(detector, 60);
+
+        // Two readings within one millisecond: the outlier, then a normal value
+        long epochNanos = (epochMillis + 1000) * 1_000_000L;
+        SensorBatch batch = new SensorBatch(2);
+        batch.add(SENSOR, SensorType.TEMPERATURE.getCode(), epochNanos, 50.0, SensorData.NOT_STAMPED);
+        batch.add(SENSOR, SensorType.TEMPERATURE.getCode(), epochNanos + 400_000L, 10.0, SensorData.NOT_STAMPED);
+        batch.setCode(0, code);
+        batch.setCode(1, code);
+        latestValues.onBatch("TEST", batch);
+        detector.onBatch("TEST", batch);
+
+        assertEquals(AnomalyKind.Z_SCORE.bit(), QualityFlags.anomalyKinds(batch.quality(0)));
+        assertEquals(0, QualityFlags.anomalyKinds(batch.quality(1)));
+        assertEquals(0, latestValues.get(SENSOR).quality() & QualityFlags.ANOMALY);
+
+        SensorBatch single = new SensorBatch(1);
+        single.add(SENSOR, SensorType.TEMPERATURE.getCode(), epochNanos + 1_000_000_000L, 60.0, SensorData.NOT_STAMPED);
+        single.setCode(0, code);
+        latestValues.onBatch("TEST", single);
+        detector.onBatch("TEST", single);
+        assertEquals(QualityFlags.ANOMALY, latestValues.get(SENSOR).quality() & QualityFlags.ANOMALY);
+    }
+}
@@ -0,0 +1,132 @@
+package com.dashtech.smartfactory.modbus;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.ModbusConfig;
+import com.dashtech.smartfactory.model.ModbusPoint;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.serial.LoopbackChannel;
+import com.dashtech.smartfactory.service.SensorIngestService;
+
+class ModbusRtuTest {
+
+    private static byte[] frame(int... bytes) {
+        byte[] frame = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            frame[i] = (byte) bytes[i];
+        }
+        return frame;
+    }
+
+    @Test
+    void computesReferenceCrcs() {
+        assertEquals(0xCDC5, ModbusRtu.crc(frame(0x01, 0x03, 0x00, 0x00, 0x00, 0x0A), 0, 6));
+        assertEquals(0x8776, ModbusRtu.crc(frame(0x11, 0x03, 0x00, 0x6B, 0x00, 0x03), 0, 6));
+    }
+
+    @Test
+    void buildsReadRequestWithCrcLowByteFirst() {
+        assertArrayEquals(frame(0x11, 0x03, 0x00, 0x6B, 0x00, 0x03, 0x76, 0x87),
+            ModbusRtu.readRequest(0x11, 0x03, 0x6B, 3));
+        assertThrows(IllegalArgumentException.class, () -> ModbusRtu.readRequest(1, 0x03, 0, 0));
+        assertThrows(IllegalArgumentException.class,
+            () -> ModbusRtu.readRequest(1, 0x03, 0, ModbusRtu.MAX_READ_REGISTERS + 1));
+    }
+
+    @Test
+    void rejectsCorruptOrShortFrames() {
+        byte[] request = ModbusRtu.readRequest(1, 0x04, 200, 10);
+        assertTrue(ModbusRtu.hasValidCrc(request, request.length));
+
+        request[3] ^= 0x01;
+        assertFalse(ModbusRtu.hasValidCrc(request, request.length));
+        assertFalse(ModbusRtu.hasValidCrc(frame(0x01, 0x83, 0x02), 3));
+    }
+
+    @Test
+    void decodesRegistersFromReadResponse() {
+        byte[] response = new byte[ModbusRtu.readResponseLength(2)];
+        response[0] = 0x01;
+        response[1] = 0x03;
+        response[2] = 4;
+        response[3] = (byte) 0xAB;
+        response[4] = (byte) 0xCD;
+        response[5] = 0x00;
+        response[6] = 0x7F;
+        ModbusRtu.appendCrc(response, response.length);
+
+        assertEquals(9, response.length);
+        assertTrue(ModbusRtu.hasValidCrc(response, response.length));
+        assertEquals(0xABCD, ModbusRtu.register(response, 0));
+        assertEquals(0x007F, ModbusRtu.register(response, 1));
+    }
+
+    @Test
+    void timesFramesOnTheWire() {
+        // 3.5 characters of 11 bits; fixed at 1.75 ms above 19200 baud
+        assertEquals(4_010_416, ModbusRtu.frameGapNanos(9600));
+        assertEquals(1_750_000, ModbusRtu.frameGapNanos(38400));
+        assertEquals(9_166_666, ModbusRtu.transmitNanos(ModbusRtu.REQUEST_LENGTH, 9600));
+    }
+
+    @Test
+    void masterReadsSimulatedSlavesAndSplitsRejectedReads() throws InterruptedException {
+        List<ModbusPoint> points = List.of(
+            ModbusPoint.holding(101, SensorType.TEMPERATURE, 1, 0, ModbusPoint.Format.FLOAT32, 50),
+            ModbusPoint.holding(102, SensorType.TEMPERATURE, 1, 2, ModbusPoint.Format.FLOAT32, 50),
+            ModbusPoint.holding(201, SensorType.PRESSURE, 2, 10, ModbusPoint.Format.UINT16, 50),
+            ModbusPoint.holding(202, SensorType.PRESSURE, 2, 12, ModbusPoint.Format.UINT16, 50));
+        ModbusConfig config = ModbusConfig.defaultConfig("SIM-TEST", 38400);
+        List<PollGroup> plan = PollPlanner.plan(points, config.maxGapRegisters());
+        assertEquals(2, plan.size());
+
+        Map<Integer, Double> latest = new ConcurrentHashMap<>();
+        SensorIngestService ingest = SensorIngestService.createIsolated();
+        ingest.addBatchListener((source, batch) -> {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                latest.put(batch.sensorId(i), batch.value(i));
+            }
+        });
+
+        LoopbackChannel channel = new LoopbackChannel(config.serial().portName());
+        try (ModbusSlaveSimulator simulator = new ModbusSlaveSimulator(channel, config.serial().baudRate(), 1)) {
+            simulator.addSlave(1, 16);
+            simulator.addSlave(2, 16);
+            // Register 11 does not exist, so the merged read of 10..12 must be split
+            simulator.removeRegisters(2, 11, 12);
+            simulator.setFloat(1, ModbusPoint.Table.HOLDING_REGISTERS, 0, 21.5f);
+            simulator.setFloat(1, ModbusPoint.Table.HOLDING_REGISTERS, 2, -3.25f);
+            simulator.setRegister(2, ModbusPoint.Table.HOLDING_REGISTERS, 10, 40000);
+            simulator.setRegister(2, ModbusPoint.Table.HOLDING_REGISTERS, 12, 7);
+
+            ModbusRtuMaster master = ModbusRtuMaster.forPlan(channel, config, plan, ingest);
+            assertTrue(master.start());
+            try {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (latest.size() < points.size() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+            } finally {
+                master.close();
+            }
+
+            assertEquals(21.5, latest.get(101), 1e-6);
+            assertEquals(-3.25, latest.get(102), 1e-6);
+            assertEquals(40000, latest.get(201), 1e-6);
+            assertEquals(7, latest.get(202), 1e-6);
+            assertEquals(3, master.getPlan().size());
+            assertEquals(0, master.getTimeouts());
+        }
+    }
+}
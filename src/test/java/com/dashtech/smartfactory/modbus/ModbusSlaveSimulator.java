@@ -0,0 +1,236 @@
+package com.dashtech.smartfactory.modbus;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dashtech.smartfactory.model.ModbusConfig;
+import com.dashtech.smartfactory.model.ModbusPoint;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.serial.LoopbackChannel;
+import com.dashtech.smartfactory.service.SensorIngestService;
+
+/**
+ * Modbus RTU slaves on the device side of a {@link LoopbackChannel}, for testing the master
+ * without an RS-485 bus. Answers read holding and input register requests after the time
+ * the request and response would take on the wire at the given baud rate plus a processing
+ * delay, so scan rates measured against it are those of a real bus. Registers can be
+ * marked as not implemented to provoke "illegal data address" exceptions.
+ */
+public class ModbusSlaveSimulator implements AutoCloseable {
+    private static final int ILLEGAL_FUNCTION = 0x01;
+
+    private final LoopbackChannel channel;
+    private final int baudRate;
+    private final long processingNanos;
+    private final Map<Integer, Slave> slaves = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService responder;
+    private final AtomicLong busFreeAt = new AtomicLong();
+    private final LongAdder requestsServed = new LongAdder();
+
+    private static final class Slave {
+        final short[] holding;
+        final short[] input;
+        final BitSet unimplemented = new BitSet();
+
+        Slave(int registers) {
+            holding = new short[registers];
+            input = new short[registers];
+        }
+
+        short[] table(int functionCode) {
+            return functionCode == ModbusPoint.Table.INPUT_REGISTERS.functionCode() ? input : holding;
+        }
+    }
+
+    /**
+     * @param processingMillis Time each slave takes between receiving a request and starting its answer
+     */
+    public ModbusSlaveSimulator(LoopbackChannel channel, int baudRate, long processingMillis) {
+        this.channel = channel;
+        this.baudRate = baudRate;
+        this.processingNanos = TimeUnit.MILLISECONDS.toNanos(processingMillis);
+        this.responder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ModbusSlaveSimulator");
+            t.setDaemon(true);
+            return t;
+        });
+        channel.setDeviceReceiver(this::onRequest);
+    }
+
+    /**
+     * Adds a slave implementing registers 0 to registerCount - 1 in both tables, all zero
+     */
+    public void addSlave(int slaveId, int registerCount) {
+        slaves.put(slaveId, new Slave(registerCount));
+    }
+
+    /**
+     * Makes registers [from, to) answer reads with an illegal data address exception
+     */
+    public void removeRegisters(int slaveId, int from, int to) {
+        slaves.get(slaveId).unimplemented.set(from, to);
+    }
+
+    public void setRegister(int slaveId, ModbusPoint.Table table, int address, int value) {
+        slaves.get(slaveId).table(table.functionCode())[address] = (short) value;
+    }
+
+    /**
+     * Stores a float in two registers, high word first
+     */
+    public void setFloat(int slaveId, ModbusPoint.Table table, int address, float value) {
+        int bits = Float.floatToIntBits(value);
+        setRegister(slaveId, table, address, bits >>> 16);
+        setRegister(slaveId, table, address + 1, bits);
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.sum();
+    }
+
+    // Called on the master's thread with a complete request frame
+    private void onRequest(byte[] frame, int length) {
+        if (length != ModbusRtu.REQUEST_LENGTH || !ModbusRtu.hasValidCrc(frame, length)) {
+            return; // A real slave stays silent on a corrupt frame
+        }
+        Slave slave = slaves.get(frame[0] & 0xFF);
+        if (slave == null) {
+            return;
+        }
+        byte[] response = respond(slave, frame);
+        requestsServed.increment();
+
+        // The request occupies the bus first, then the slave thinks, then the response goes out
+        long now = System.nanoTime();
+        long answerAt = Math.max(now, busFreeAt.get()) + ModbusRtu.transmitNanos(length, baudRate)
+            + processingNanos + ModbusRtu.transmitNanos(response.length, baudRate);
+        busFreeAt.set(answerAt);
+        responder.schedule(() -> channel.inject(response, 0, response.length), answerAt - now, TimeUnit.NANOSECONDS);
+    }
+
+    private static byte[] respond(Slave slave, byte[] request) {
+        int function = request[1] & 0xFF;
+        int start = ((request[2] & 0xFF) << 8) | (request[3] & 0xFF);
+        int count = ((request[4] & 0xFF) << 8) | (request[5] & 0xFF);
+        if (function != ModbusPoint.Table.HOLDING_REGISTERS.functionCode()
+                && function != ModbusPoint.Table.INPUT_REGISTERS.functionCode()) {
+            return exception(request[0], function, ILLEGAL_FUNCTION);
+        }
+        short[] registers = slave.table(function);
+        if (count < 1 || count > ModbusRtu.MAX_READ_REGISTERS || start + count > registers.length
+                || slave.unimplemented.get(start, start + count).cardinality() > 0) {
+            return exception(request[0], function, ModbusRtu.ILLEGAL_DATA_ADDRESS);
+        }
+        byte[] response = new byte[ModbusRtu.readResponseLength(count)];
+        response[0] = request[0];
+        response[1] = (byte) function;
+        response[2] = (byte) (2 * count);
+        for (int i = 0; i < count; i++) {
+            short value = registers[start + i];
+            response[3 + 2 * i] = (byte) (value >>> 8);
+            response[4 + 2 * i] = (byte) value;
+        }
+        ModbusRtu.appendCrc(response, response.length);
+        return response;
+    }
+
+    private static byte[] exception(byte slaveId, int function, int code) {
+        byte[] response = new byte[ModbusRtu.EXCEPTION_LENGTH];
+        response[0] = slaveId;
+        response[1] = (byte) (function | ModbusRtu.EXCEPTION_FLAG);
+        response[2] = (byte) code;
+        ModbusRtu.appendCrc(response, response.length);
+        return response;
+    }
+
+    @Override
+    public void close() {
+        responder.shutdownNow();
+    }
+
+    /**
+     * Polls three simulated slaves on a 9600-baud bus, first with a coalesced plan and then
+     * with one request per point, and prints the achieved scan rates.
+     * Usage: ModbusSlaveSimulator [seconds per run]
+     */
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        int baud = 9600;
+        List<ModbusPoint> points = new ArrayList<>();
+        for (int slave = 1; slave <= 3; slave++) {
+            for (int i = 0; i < 20; i++) {
+                // Process values: floats packed every 2 registers, read every second
+                points.add(ModbusPoint.holding(slave * 100 + i, SensorType.TEMPERATURE, slave, 2 * i,
+                    ModbusPoint.Format.FLOAT32, 1000));
+            }
+            for (int i = 0; i < 10; i++) {
+                // Status words spread out with small gaps, read every 5 seconds
+                points.add(new ModbusPoint(slave * 100 + 50 + i, SensorType.PRESSURE, slave,
+                    ModbusPoint.Table.INPUT_REGISTERS, 200 + 3 * i, ModbusPoint.Format.UINT16, 0.1, 0.0, 5000));
+            }
+        }
+        double required = points.stream().mapToDouble(p -> 1000.0 / p.pollMillis()).sum();
+        System.out.printf("%d points on 3 slaves at %d baud need %.1f point reads/s%n", points.size(), baud, required);
+
+        ModbusConfig config = ModbusConfig.defaultConfig("SIM-RS485", baud);
+        run("coalesced", seconds, points, PollPlanner.plan(points, config.maxGapRegisters()), config, required);
+        run("one request per point", seconds, points, PollPlanner.planUncoalesced(points), config, required);
+    }
+
+    private static void run(String label, long seconds, List<ModbusPoint> points, List<PollGroup> plan,
+            ModbusConfig config, double required) throws InterruptedException {
+        LoopbackChannel channel = new LoopbackChannel(config.serial().portName());
+        LongAdder readings = new LongAdder();
+        LongAdder wrong = new LongAdder();
+        SensorIngestService ingest = SensorIngestService.createIsolated();
+        ingest.addBatchListener((source, batch) -> {
+            for (int i = 0, n = batch.size(); i < n; i++) {
+                readings.increment();
+                // Every simulated float holds its sensor id, every status word ten times it
+                if (Math.abs(batch.value(i) - batch.sensorId(i)) > 1e-3) {
+                    wrong.increment();
+                }
+            }
+        });
+
+        try (ModbusSlaveSimulator simulator = new ModbusSlaveSimulator(channel, config.serial().baudRate(), 2)) {
+            for (int slave = 1; slave <= 3; slave++) {
+                simulator.addSlave(slave, 256);
+                // Slave 3 has no registers between the status words, so merged status reads must be split
+                if (slave == 3) {
+                    for (int address = 200; address < 230; address++) {
+                        if ((address - 200) % 3 != 0) {
+                            simulator.removeRegisters(slave, address, address + 1);
+                        }
+                    }
+                }
+            }
+            for (ModbusPoint point : points) {
+                if (point.format() == ModbusPoint.Format.FLOAT32) {
+                    simulator.setFloat(point.slaveId(), point.table(), point.address(), point.sensorId());
+                } else {
+                    simulator.setRegister(point.slaveId(), point.table(), point.address(), point.sensorId() * 10);
+                }
+            }
+
+            ModbusRtuMaster master = ModbusRtuMaster.forPlan(channel, config, plan, ingest);
+            master.start();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            master.close();
+
+            System.out.printf("%-22s %3d requests planned (%d after splits), %.1f requests/s, %.1f of %.1f point reads/s, "
+                    + "bus %.0f%% busy, %d timeouts, %d failures, %d wrong values%n",
+                label, plan.size(), master.getPlan().size(), master.getRequests() / (double) seconds,
+                readings.sum() / (double) seconds, required, 100 * master.getBusUtilization(),
+                master.getTimeouts(), master.getFailures(), wrong.sum());
+        }
+    }
+}
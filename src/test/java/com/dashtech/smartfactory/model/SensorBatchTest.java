@@ -0,0 +1,134 @@
+package com.dashtech.smartfactory.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.service.SensorRegistry;
+
+class SensorBatchTest {
+    private static final long T0 = 1_700_000_000_123_456_789L;
+
+    @Test
+    void appendsRowsColumnByColumn() {
+        SensorBatch batch = new SensorBatch(4);
+        assertTrue(batch.isEmpty());
+        assertEquals(0, batch.add(1, SensorType.TEMPERATURE.getCode(), T0, 21.5, 42L));
+        assertEquals(1, batch.add(2, "Pressure", T0 + 1_000_000L, 101.3, SensorData.NOT_STAMPED));
+        assertEquals(2, batch.add(900, "DifferentialPressure", T0 + 2_000_000L, -0.25, SensorData.NOT_STAMPED));
+
+        assertEquals(3, batch.size());
+        assertEquals(1, batch.sensorId(0));
+        assertEquals(SensorType.TEMPERATURE.getCode(), batch.typeCode(0));
+        assertEquals("Temperature", batch.type(0));
+        assertEquals(T0, batch.epochNanos(0));
+        assertEquals(1_700_000_000_123L, batch.epochMillis(0));
+        assertEquals(21.5, batch.value(0));
+        assertEquals(QualityFlags.GOOD, batch.quality(0));
+        assertEquals(42L, batch.arrivalNanos(0));
+        assertTrue(batch.isStamped(0));
+        assertEquals(SensorBatch.NO_CODE, batch.code(0));
+
+        assertEquals(SensorType.PRESSURE.getCode(), batch.typeCode(1));
+        assertFalse(batch.isStamped(1));
+        // Types without a code keep their name
+        assertEquals(SensorType.UNKNOWN.getCode(), batch.typeCode(2));
+        assertEquals("DifferentialPressure", batch.type(2));
+
+        batch.markQuality(1, QualityFlags.ANOMALY);
+        batch.markQuality(1, QualityFlags.STALE);
+        assertEquals(QualityFlags.ANOMALY | QualityFlags.STALE, batch.quality(1));
+    }
+
+    @Test
+    void growsPastItsCapacityAndKeepsItsArraysWhenCleared() {
+        SensorBatch batch = new SensorBatch(1);
+        for (int i = 0; i < 1_000; i++) {
+            batch.add(i, i % 2 == 0 ? "Temperature" : "Virtual", T0 + i, i * 0.5, i);
+            batch.setCode(i, i);
+        }
+        assertEquals(1_000, batch.size());
+        for (int i = 0; i < 1_000; i += 111) {
+            assertEquals(i, batch.sensorId(i));
+            assertEquals(i, batch.code(i));
+            assertEquals(T0 + i, batch.epochNanos(i));
+            assertEquals(i * 0.5, batch.value(i));
+            assertEquals(i % 2 == 0 ? "Temperature" : "Virtual", batch.type(i));
+        }
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        // A reused row does not inherit the name, code or quality of the row it overwrites
+        batch.add(7, SensorType.HUMIDITY.getCode(), T0, 55.0, SensorData.NOT_STAMPED);
+        batch.add(8, SensorType.HUMIDITY.getCode(), T0, 56.0, SensorData.NOT_STAMPED);
+        assertEquals("Humidity", batch.type(1));
+        assertEquals(SensorBatch.NO_CODE, batch.code(1));
+        assertEquals(QualityFlags.GOOD, batch.quality(1));
+    }
+
+    @Test
+    void mapsRowsToRegistryCodes() {
+        SensorRegistry registry = new SensorRegistry(2);
+        SensorBatch batch = new SensorBatch();
+        batch.add(10, "Temperature", T0, 1, SensorData.NOT_STAMPED);
+        batch.add(70_000, "Pressure", T0, 2, SensorData.NOT_STAMPED);
+        batch.add(10, "Temperature", T0, 3, SensorData.NOT_STAMPED);
+        batch.add(11, "Humidity", T0, 4, SensorData.NOT_STAMPED);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.setCode(i, registry.codeOf(batch.sensorId(i), batch.type(i)));
+        }
+
+        assertEquals(0, batch.code(0));
+        assertEquals(1, batch.code(1));
+        assertEquals(batch.code(0), batch.code(2));
+        // The registry is full, so the last sensor is not tracked
+        assertEquals(SensorBatch.NO_CODE, batch.code(3));
+        assertEquals(SensorRegistry.NO_CODE, SensorBatch.NO_CODE);
+        assertEquals(70_000, registry.sensorIdOf(batch.code(1)));
+        assertEquals("Pressure", registry.typeOf(batch.code(1)));
+    }
+
+    @Test
+    void copiesRowsWithTheirCodeQualityAndRecord() {
+        SensorData data = new SensorData(3, "Temperature", 19.75, Instant.ofEpochSecond(1_700_000_000L, 5), 99L);
+        SensorBatch source = new SensorBatch();
+        source.add(4, "Virtual", T0, 1.0, SensorData.NOT_STAMPED);
+        int row = source.add(data);
+        source.setCode(row, 6);
+        source.markQuality(row, QualityFlags.ANOMALY);
+
+        SensorBatch copy = new SensorBatch();
+        copy.add(source, 0);
+        copy.add(source, row);
+
+        assertEquals("Virtual", copy.type(0));
+        assertEquals(6, copy.code(1));
+        assertEquals(QualityFlags.ANOMALY, copy.quality(1));
+        assertEquals(SensorBatch.toEpochNanos(data.timestamp()), copy.epochNanos(1));
+        assertSame(data, copy.toSensorData(1));
+
+        SensorData built = copy.toSensorData(0);
+        assertEquals(new SensorData(4, "Virtual", 1.0, SensorBatch.toInstant(T0), SensorData.NOT_STAMPED), built);
+        assertSame(built, copy.toSensorData(0));
+        copy.clear();
+        copy.add(5, SensorType.TEMPERATURE.getCode(), T0, 2.0, SensorData.NOT_STAMPED);
+        assertEquals(5, copy.toSensorData(0).sensorId());
+        assertFalse(copy.isEmpty());
+    }
+
+    @Test
+    void convertsEpochNanosToInstantsAndBack() {
+        Instant instant = Instant.ofEpochSecond(1_700_000_000L, 123_456_789);
+        assertEquals(T0, SensorBatch.toEpochNanos(instant));
+        assertEquals(instant, SensorBatch.toInstant(T0));
+
+        Instant beforeEpoch = Instant.ofEpochSecond(-2, 250_000_000);
+        assertEquals(-1_750_000_000L, SensorBatch.toEpochNanos(beforeEpoch));
+        assertEquals(beforeEpoch, SensorBatch.toInstant(-1_750_000_000L));
+    }
+}
@@ -0,0 +1,109 @@
+package com.dashtech.smartfactory.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.NetworkIngestConfig;
+import com.dashtech.smartfactory.model.SerialPacket;
+import com.dashtech.smartfactory.service.SensorIngestService;
+
+class NetworkIngestListenerTest {
+
+    private record Reading(String source, int sensorId, double value) {
+    }
+
+    private static byte[] frame(int sensorId, float value) {
+        return SerialPacket.createSensorPacket((byte) sensorId, SerialPacket.DataType.TEMPERATURE, value).toBytes();
+    }
+
+    private static String metrics(SensorIngestService ingest) {
+        StringBuilder out = new StringBuilder();
+        ingest.getMetrics().writeTo(out);
+        return out.toString();
+    }
+
+    private static void awaitReadings(List<Reading> readings, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            synchronized (readings) {
+                if (readings.size() >= count) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void decodesTcpAndUdpReadingsIntoPerListenerMetrics() throws Exception {
+        SensorIngestService ingest = SensorIngestService.createIsolated();
+        List<Reading> readings = new ArrayList<>();
+        ingest.addBatchListener((source, batch) -> {
+            synchronized (readings) {
+                for (int i = 0, n = batch.size(); i < n; i++) {
+                    readings.add(new Reading(source, batch.sensorId(i), batch.value(i)));
+                }
+            }
+        });
+
+        String tcpMetrics;
+        String udpMetrics;
+        try (NetworkIngestListener listener = new NetworkIngestListener(ingest, NetworkIngestConfig.loopback(0, 0))) {
+            listener.start();
+            tcpMetrics = "tcp:" + listener.getTcpPort();
+            udpMetrics = "udp:" + listener.getUdpPort();
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            stream.writeBytes(frame(1, 21.5f));
+            stream.writeBytes("Sensor[02] Type[01] Value[22.25]\n".getBytes(StandardCharsets.US_ASCII));
+            stream.writeBytes(frame(3, -4.0f));
+            byte[] bytes = stream.toByteArray();
+            try (SocketChannel tcp = SocketChannel.open(new InetSocketAddress("127.0.0.1", listener.getTcpPort()))) {
+                // The first frame arrives split across two reads
+                tcp.write(ByteBuffer.wrap(bytes, 0, 4));
+                Thread.sleep(50);
+                tcp.write(ByteBuffer.wrap(bytes, 4, bytes.length - 4));
+                awaitReadings(readings, 3);
+            }
+
+            try (DatagramChannel udp = DatagramChannel.open()) {
+                ByteBuffer datagram = ByteBuffer.allocate(2 * SerialPacket.SENSOR_PACKET_SIZE);
+                datagram.put(frame(4, 100.0f)).put(frame(5, 0.5f)).flip();
+                udp.send(datagram, new InetSocketAddress("127.0.0.1", listener.getUdpPort()));
+            }
+            awaitReadings(readings, 5);
+
+            String exported = metrics(ingest);
+            assertTrue(exported.contains("smartfactory_readings_total{port=\"" + tcpMetrics + "\"} 3"), exported);
+            assertTrue(exported.contains("smartfactory_readings_total{port=\"" + udpMetrics + "\"} 2"), exported);
+            assertFalse(exported.contains("tcp/127.0.0.1"), exported);
+            assertFalse(exported.contains("udp/127.0.0.1"), exported);
+            assertEquals(1, listener.getAcceptedConnections());
+        }
+
+        synchronized (readings) {
+            assertEquals(List.of(
+                new Reading("tcp/127.0.0.1", 1, 21.5),
+                new Reading("tcp/127.0.0.1", 2, 22.25),
+                new Reading("tcp/127.0.0.1", 3, -4.0),
+                new Reading("udp/127.0.0.1", 4, 100.0),
+                new Reading("udp/127.0.0.1", 5, 0.5)), readings);
+        }
+        String exported = metrics(ingest);
+        assertFalse(exported.contains(tcpMetrics), exported);
+        assertFalse(exported.contains(udpMetrics), exported);
+    }
+}
@@ -0,0 +1,162 @@
+package com.dashtech.smartfactory.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dashtech.smartfactory.model.NetworkIngestConfig;
+import com.dashtech.smartfactory.model.SensorType;
+import com.dashtech.smartfactory.model.SerialPacket;
+import com.dashtech.smartfactory.service.SensorIngestService;
+
+/**
+ * Loopback clients for the {@link NetworkIngestListener}: opens many TCP connections and
+ * optionally a UDP socket, and sends sensor frames over all of them. Writes are cut at
+ * random points, so frames routinely arrive split across reads, the way serial device
+ * servers forward them.
+ */
+public class NetworkLoadClient {
+    private static final int FRAMES_PER_WRITE = 16;
+
+    private final InetSocketAddress tcpTarget;
+    private final InetSocketAddress udpTarget;
+    private final Random random = new Random(42);
+
+    /**
+     * @param tcpTarget Listener's TCP address, or null to send no TCP traffic
+     * @param udpTarget Listener's UDP address, or null to send no datagrams
+     */
+    public NetworkLoadClient(InetSocketAddress tcpTarget, InetSocketAddress udpTarget) {
+        this.tcpTarget = tcpTarget;
+        this.udpTarget = udpTarget;
+    }
+
+    /**
+     * Result of a client run
+     * @param connections TCP connections that were open at the same time
+     * @param framesSent Frames sent over TCP and UDP together
+     * @param elapsedNanos Wall time from the first connect to the last write
+     */
+    public record LoadResult(int connections, long framesSent, long elapsedNanos) {
+        public double framesPerSecond() {
+            return elapsedNanos > 0 ? framesSent * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    /**
+     * Opens all connections, then sends every connection's frames round-robin on the caller's thread
+     * @param connections Concurrent TCP connections
+     * @param framesPerConnection Frames sent on each connection, and in datagrams when UDP is targeted
+     */
+    public LoadResult run(int connections, int framesPerConnection) throws IOException {
+        long started = System.nanoTime();
+        List<SocketChannel> channels = new ArrayList<>(connections);
+        long sent = 0;
+        try {
+            if (tcpTarget != null) {
+                for (int i = 0; i < connections; i++) {
+                    channels.add(SocketChannel.open(tcpTarget));
+                }
+            }
+            ByteBuffer frames = ByteBuffer.allocate(FRAMES_PER_WRITE * SerialPacket.SENSOR_PACKET_SIZE);
+            for (int round = 0; round < framesPerConnection; round += FRAMES_PER_WRITE) {
+                int count = Math.min(FRAMES_PER_WRITE, framesPerConnection - round);
+                for (int c = 0; c < channels.size(); c++) {
+                    fill(frames, c, round, count);
+                    writeSplit(channels.get(c), frames);
+                    sent += count;
+                }
+            }
+            if (udpTarget != null) {
+                sent += sendDatagrams(framesPerConnection);
+            }
+        } finally {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+        }
+        return new LoadResult(channels.size(), sent, System.nanoTime() - started);
+    }
+
+    private long sendDatagrams(int frames) throws IOException {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            ByteBuffer datagram = ByteBuffer.allocate(FRAMES_PER_WRITE * SerialPacket.SENSOR_PACKET_SIZE);
+            long sent = 0;
+            for (int i = 0; i < frames; i += FRAMES_PER_WRITE) {
+                int count = Math.min(FRAMES_PER_WRITE, frames - i);
+                fill(datagram, 0, i, count);
+                channel.send(datagram, udpTarget);
+                sent += count;
+            }
+            return sent;
+        }
+    }
+
+    // Sensor ids cycle through 1..255 per connection, so each connection reports a handful of sensors
+    private static void fill(ByteBuffer buffer, int connection, int firstFrame, int count) {
+        buffer.clear();
+        for (int i = 0; i < count; i++) {
+            int frame = firstFrame + i;
+            byte sensorId = (byte) (1 + (connection + frame) % 255);
+            byte type = SensorType.values()[frame % SensorType.values().length].getCode();
+            buffer.put(SerialPacket.createSensorPacket(sensorId, type, 20f + frame % 100).toBytes());
+        }
+        buffer.flip();
+    }
+
+    private void writeSplit(SocketChannel channel, ByteBuffer frames) throws IOException {
+        int end = frames.limit();
+        while (frames.position() < end) {
+            frames.limit(Math.min(end, frames.position() + 1 + random.nextInt(2 * SerialPacket.SENSOR_PACKET_SIZE)));
+            while (frames.hasRemaining()) {
+                channel.write(frames);
+            }
+        }
+        frames.limit(end);
+    }
+
+    /**
+     * Runs a listener on ephemeral loopback ports with its own ingest hub, drives it with
+     * loopback clients and checks that every frame was decoded.
+     * Usage: NetworkLoadClient [connections [framesPerConnection]]
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int framesPerConnection = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        SensorIngestService ingest = SensorIngestService.createIsolated();
+        LongAdder readings = new LongAdder();
+        ingest.addBatchListener((source, batch) -> readings.add(batch.size()));
+
+        try (NetworkIngestListener listener = new NetworkIngestListener(ingest, NetworkIngestConfig.loopback(0, 0))) {
+            listener.start();
+            NetworkLoadClient client = new NetworkLoadClient(
+                new InetSocketAddress("127.0.0.1", listener.getTcpPort()),
+                new InetSocketAddress("127.0.0.1", listener.getUdpPort()));
+            LoadResult result = client.run(connections, framesPerConnection);
+
+            // Loopback datagrams can be dropped when the receive buffer fills; TCP frames cannot
+            long tcpFrames = (long) connections * framesPerConnection;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (readings.sum() < result.framesSent() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            System.out.printf("%d connections, %d frames sent, %d readings decoded, %d accepted, %d refused, "
+                    + "%d bytes in %.3f s (%.0f frames/s sent)%n",
+                result.connections(), result.framesSent(), readings.sum(), listener.getAcceptedConnections(),
+                listener.getRejectedConnections(), listener.getBytesReceived(), result.elapsedNanos() / 1e9,
+                result.framesPerSecond());
+            if (readings.sum() < tcpFrames) {
+                System.err.println("Missing readings: expected at least " + tcpFrames);
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.dashtech.smartfactory.serial;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.dashtech.smartfactory.service.PacketHandler;
+
+/**
+ * Feeds a capture written by {@link CaptureRecorder} back into a receiver, typically a
+ * {@link LoopbackChannel} connected to the ingest path. Speed 1.0 reproduces the original
+ * timing, N replays N times faster and {@link #MAX_SPEED} ignores timing altogether.
+ */
+public class CaptureReplayer {
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private final Path file;
+    private String portName;
+    private long startEpochMillis;
+
+    public CaptureReplayer(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Result of a replay run
+     * @param records Number of journaled reads replayed
+     * @param bytes Number of bytes replayed
+     * @param elapsedNanos Wall time the replay took
+     */
+    public record ReplayResult(long records, long bytes, long elapsedNanos) {
+        public double bytesPerSecond() {
+            return elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    /**
+     * Replays the capture on the caller's thread
+     * @param target Receiver for the replayed bytes
+     * @param speed 1.0 for real time, N for N times faster, {@link #MAX_SPEED} for no pacing
+     */
+    public ReplayResult replay(SerialPortChannel.Receiver target, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        long records = 0;
+        long bytes = 0;
+        long replayStart = System.nanoTime();
+        byte[] buffer = new byte[4096];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            readHeader(in);
+            while (true) {
+                long offsetNanos;
+                try {
+                    offsetNanos = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                int length = in.readInt();
+                if (length > buffer.length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+
+                if (speed != MAX_SPEED) {
+                    long dueAt = replayStart + (long) (offsetNanos / speed);
+                    long wait;
+                    while ((wait = dueAt - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                        if (Thread.currentThread().isInterrupted()) {
+                            return new ReplayResult(records, bytes, System.nanoTime() - replayStart);
+                        }
+                    }
+                }
+
+                target.onBytes(buffer, length);
+                records++;
+                bytes += length;
+            }
+        }
+        return new ReplayResult(records, bytes, System.nanoTime() - replayStart);
+    }
+
+    /**
+     * Replays the capture into the application side of a loopback channel
+     */
+    public ReplayResult replay(LoopbackChannel channel, double speed) throws IOException {
+        return replay((buffer, length) -> channel.inject(buffer, 0, length), speed);
+    }
+
+    private void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != CaptureRecorder.MAGIC) {
+            throw new IOException("Not a capture file: " + file);
+        }
+        short version = in.readShort();
+        if (version != CaptureRecorder.VERSION) {
+            throw new IOException("Unsupported capture version " + version + " in " + file);
+        }
+        startEpochMillis = in.readLong();
+        portName = in.readUTF();
+    }
+
+    public String getPortName() {
+        return portName;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * Replays a capture through a bare decoder and prints decode throughput.
+     * Usage: CaptureReplayer &lt;capture.sfcap&gt; [speed|max]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CaptureReplayer <capture" + CaptureRecorder.FILE_EXTENSION + "> [speed|max]");
+            System.exit(1);
+        }
+        double speed = args.length > 1 && !"max".equalsIgnoreCase(args[1]) ? Double.parseDouble(args[1]) : MAX_SPEED;
+
+        AtomicLong readings = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        PacketHandler decoder = new PacketHandler(new PacketHandler.PacketCallback() {
+            @Override
+            public void onSensorData(byte sensorId, byte dataType, float value) {
+                readings.incrementAndGet();
+            }
+
+            @Override
+            public void onCommandResponse(byte actuatorId, byte commandType) {
+            }
+
+            @Override
+            public void onError(String error) {
+                errors.incrementAndGet();
+            }
+
+            @Override
+            public void onTextLine(String line) {
+                readings.incrementAndGet();
+            }
+        });
+
+        CaptureReplayer replayer = new CaptureReplayer(Paths.get(args[0]));
+        ReplayResult result = replayer.replay((buffer, length) -> decoder.processIncomingData(buffer, 0, length), speed);
+        double seconds = result.elapsedNanos() / 1e9;
+        System.out.printf("Replayed %s from %s: %d reads, %d bytes, %d readings, %d decode errors in %.3f s "
+                + "(%.0f readings/s, %.1f MB/s)%n",
+            args[0], replayer.getPortName(), result.records(), result.bytes(), readings.get(), errors.get(), seconds,
+            readings.get() / Math.max(seconds, 1e-9), result.bytesPerSecond() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,144 @@
+package com.dashtech.smartfactory.serial;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dashtech.smartfactory.model.SerialPacket;
+import com.dashtech.smartfactory.service.PacketHandler;
+
+class CaptureReplayerTest {
+    private static final int READS = 10;
+    private static final long GAP_MILLIS = 20;
+    // Every offset is at least the gaps before it, so the last read is due no earlier than this
+    private static final long MIN_SPAN_NANOS = TimeUnit.MILLISECONDS.toNanos((READS - 1) * GAP_MILLIS);
+
+    @TempDir
+    Path dir;
+
+    private Path capture;
+    private byte[] stream;
+    private List<String> expected;
+
+    private static PacketHandler decoder(List<String> readings) {
+        return new PacketHandler("replay", new PacketHandler.PacketCallback() {
+            @Override
+            public void onSensorData(byte sensorId, byte dataType, float value) {
+                readings.add(sensorId + "/" + dataType + "=" + value);
+            }
+
+            @Override
+            public void onCommandResponse(byte actuatorId, byte commandType) {
+            }
+
+            @Override
+            public void onError(String error) {
+                readings.add("error " + error);
+            }
+
+            @Override
+            public void onTextLine(String line) {
+                readings.add(line);
+            }
+        });
+    }
+
+    @BeforeEach
+    void record() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < 40; i++) {
+            bytes.writeBytes(SerialPacket.createSensorPacket((byte) (i % 7 + 1), SerialPacket.DataType.TEMPERATURE,
+                20.0f + i / 4.0f).toBytes());
+            if (i % 8 == 0) {
+                bytes.writeBytes(("Sensor[0" + (i % 9 + 1) + "] Type[02] Value[" + i + ".50]\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        stream = bytes.toByteArray();
+        expected = new ArrayList<>();
+        decoder(expected).processIncomingData(stream, 0, stream.length);
+
+        // Reads of uneven size, so frames and lines straddle them as they do on a real port
+        capture = dir.resolve("port" + CaptureRecorder.FILE_EXTENSION);
+        try (CaptureRecorder recorder = new CaptureRecorder(capture, "COM7")) {
+            int chunk = stream.length / READS;
+            int offset = 0;
+            for (int read = 0; read < READS && offset < stream.length; read++) {
+                if (read > 0) {
+                    Thread.sleep(GAP_MILLIS);
+                }
+                int length = read == READS - 1 ? stream.length - offset : Math.min(chunk - read % 3, stream.length - offset);
+                byte[] buffer = new byte[length];
+                System.arraycopy(stream, offset, buffer, 0, length);
+                recorder.onBytes(buffer, length);
+                offset += length;
+            }
+            assertEquals(READS, recorder.getRecordCount());
+            assertEquals(stream.length, recorder.getByteCount());
+        }
+    }
+
+    private CaptureReplayer.ReplayResult replay(double speed, List<String> readings) throws IOException {
+        PacketHandler decoder = decoder(readings);
+        try (LoopbackChannel channel = new LoopbackChannel("REPLAY")) {
+            channel.setReceiver((buffer, length) -> decoder.processIncomingData(buffer, 0, length));
+            channel.open();
+            CaptureReplayer.ReplayResult result = new CaptureReplayer(capture).replay(channel, speed);
+            assertEquals(stream.length, channel.getBytesInjected());
+            return result;
+        }
+    }
+
+    @Test
+    void replaysTheSameReadingsInOrderAtEverySpeed() throws IOException {
+        assertTrue(expected.size() > 40, "readings " + expected.size());
+        assertTrue(expected.stream().noneMatch(reading -> reading.startsWith("error")), expected.toString());
+        for (double speed : new double[] { 1.0, 8.0, CaptureReplayer.MAX_SPEED }) {
+            List<String> readings = new ArrayList<>();
+            CaptureReplayer.ReplayResult result = replay(speed, readings);
+            assertEquals(READS, result.records(), "speed " + speed);
+            assertEquals(stream.length, result.bytes(), "speed " + speed);
+            assertEquals(expected, readings, "speed " + speed);
+        }
+    }
+
+    @Test
+    void pacesReadsByTheRecordedOffsets() throws IOException {
+        CaptureReplayer.ReplayResult realTime = replay(1.0, new ArrayList<>());
+        CaptureReplayer.ReplayResult faster = replay(8.0, new ArrayList<>());
+        CaptureReplayer.ReplayResult unpaced = replay(CaptureReplayer.MAX_SPEED, new ArrayList<>());
+
+        assertTrue(realTime.elapsedNanos() >= MIN_SPAN_NANOS, "1x took " + realTime.elapsedNanos());
+        assertTrue(faster.elapsedNanos() >= MIN_SPAN_NANOS / 8, "8x took " + faster.elapsedNanos());
+        assertTrue(faster.elapsedNanos() < realTime.elapsedNanos(),
+            "8x took " + faster.elapsedNanos() + ", 1x " + realTime.elapsedNanos());
+        assertTrue(unpaced.elapsedNanos() < MIN_SPAN_NANOS, "max took " + unpaced.elapsedNanos());
+    }
+
+    @Test
+    void readsTheHeaderAndRejectsOtherFiles() throws IOException {
+        CaptureReplayer replayer = new CaptureReplayer(capture);
+        replayer.replay((buffer, length) -> { }, CaptureReplayer.MAX_SPEED);
+        assertEquals("COM7", replayer.getPortName());
+        assertTrue(replayer.getStartEpochMillis() > 0);
+
+        Path other = dir.resolve("other.txt");
+        Files.writeString(other, "not a capture");
+        assertThrows(IOException.class,
+            () -> new CaptureReplayer(other).replay((buffer, length) -> { }, CaptureReplayer.MAX_SPEED));
+        assertThrows(IllegalArgumentException.class, () -> replayer.replay((buffer, length) -> { }, 0));
+    }
+}
@@ -0,0 +1,332 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.ActuatorCommand;
+import com.dashtech.smartfactory.model.CommandChannelConfig;
+import com.dashtech.smartfactory.model.CommandGroup;
+import com.dashtech.smartfactory.model.CommandResult;
+import com.dashtech.smartfactory.serial.LoopbackChannel;
+
+class CommandChannelTest {
+
+    private static final byte ON = 0x01;
+
+    // Records every write and the actuator byte of each packet; fails the given write of an actuator's packets
+    private static final class Device extends LoopbackChannel {
+        final BlockingQueue<Integer> written = new LinkedBlockingQueue<>();
+        final BlockingQueue<byte[]> writes = new LinkedBlockingQueue<>();
+        final int failingActuator;
+        final int failingWrite;
+        int actuatorWrites;
+
+        Device(int failingActuator, int failingWrite) {
+            super("TEST");
+            this.failingActuator = failingActuator;
+            this.failingWrite = failingWrite;
+            open();
+        }
+
+        Device() {
+            this(-1, 0);
+        }
+
+        @Override
+        public int write(byte[] data, int offset, int length) {
+            int actuator = data[offset + 2] & 0xFF;
+            if (actuator == failingActuator && ++actuatorWrites == failingWrite) {
+                return 0;
+            }
+            written.add(actuator);
+            writes.add(Arrays.copyOfRange(data, offset, offset + length));
+            return length;
+        }
+
+        int next() throws InterruptedException {
+            Integer actuator = written.poll(5, TimeUnit.SECONDS);
+            assertNotNull(actuator, "expected a write");
+            return actuator;
+        }
+
+        byte[] nextWrite() throws InterruptedException {
+            byte[] bytes = writes.poll(5, TimeUnit.SECONDS);
+            assertNotNull(bytes, "expected a write");
+            return bytes;
+        }
+
+        void assertNothingWritten() throws InterruptedException {
+            assertNull(written.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static CommandChannelConfig config(int window, long ackTimeoutMillis, int maxAttempts) {
+        return config(window, ackTimeoutMillis, maxAttempts, false);
+    }
+
+    private static CommandChannelConfig config(int window, long ackTimeoutMillis, int maxAttempts, boolean groupFrames) {
+        return new CommandChannelConfig(window, 16, ackTimeoutMillis, maxAttempts, groupFrames, 0);
+    }
+
+    private static CommandChannelConfig holding(long minIntervalMillis) {
+        return new CommandChannelConfig(4, 16, 10_000, 1, false, minIntervalMillis);
+    }
+
+    private static CommandGroup group(int... actuatorIds) {
+        return CommandGroup.create("scene", Arrays.stream(actuatorIds)
+            .mapToObj(id -> ActuatorCommand.create(id, "ON")).toList());
+    }
+
+    private static Throwable failure(CompletableFuture<CommandResult> result) {
+        return assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    @Test
+    void queuesBeyondTheWindowAndSendsAsAcksArrive() throws Exception {
+        Device device = new Device();
+        try (CommandChannel channel = new CommandChannel(device, config(2, 10_000, 1))) {
+            CompletableFuture<CommandResult> first = channel.submit(ActuatorCommand.create(1, "ON"));
+            channel.submit(ActuatorCommand.create(2, "ON"));
+            channel.submit(ActuatorCommand.create(3, "ON"));
+            channel.submit(ActuatorCommand.create(4, "ON"));
+
+            assertEquals(1, device.next());
+            assertEquals(2, device.next());
+            device.assertNothingWritten();
+            assertEquals(2, channel.getInFlight());
+            assertEquals(2, channel.getQueued());
+
+            channel.onAck((byte) 1, ON);
+            assertEquals(3, device.next());
+            CommandResult result = first.get(5, TimeUnit.SECONDS);
+            assertEquals(1, result.attempts());
+            assertEquals(2, channel.getInFlight());
+            assertEquals(1, channel.getQueued());
+        }
+    }
+
+    @Test
+    void matchesAcksToTheOldestIdenticalCommand() throws Exception {
+        Device device = new Device();
+        try (CommandChannel channel = new CommandChannel(device, config(4, 10_000, 1))) {
+            CompletableFuture<CommandResult> older = channel.submit(ActuatorCommand.create(1, "ON"));
+            device.next();
+            CompletableFuture<CommandResult> newer = channel.submit(ActuatorCommand.create(1, "ON"));
+            device.next();
+
+            channel.onAck((byte) 1, ON);
+            older.get(5, TimeUnit.SECONDS);
+            assertFalse(newer.isDone());
+            channel.onAck((byte) 1, ON);
+            newer.get(5, TimeUnit.SECONDS);
+            channel.onAck((byte) 1, ON);
+            assertEquals(1, channel.getUnmatchedAcks());
+        }
+    }
+
+    @Test
+    void retransmitsUntilAttemptsAreUsedUp() throws Exception {
+        Device device = new Device();
+        try (CommandChannel channel = new CommandChannel(device, config(1, 50, 3))) {
+            CompletableFuture<CommandResult> result = channel.submit(ActuatorCommand.create(7, "ON"));
+
+            assertInstanceOf(TimeoutException.class, failure(result));
+            assertEquals(7, device.next());
+            assertEquals(7, device.next());
+            assertEquals(7, device.next());
+            device.assertNothingWritten();
+            assertEquals(2, channel.getRetransmits());
+            assertEquals(1, channel.getTimeouts());
+            assertEquals(0, channel.getInFlight());
+        }
+    }
+
+    @Test
+    void discardsTheSecondAckOfARetransmittedCommand() throws Exception {
+        Device device = new Device();
+        try (CommandChannel channel = new CommandChannel(device, config(1, 100, 3))) {
+            CompletableFuture<CommandResult> result = channel.submit(ActuatorCommand.create(5, "ON"));
+            device.next();
+            device.next(); // The retransmission
+
+            channel.onAck((byte) 5, ON);
+            assertEquals(2, result.get(5, TimeUnit.SECONDS).attempts());
+            channel.onAck((byte) 5, ON);
+            assertEquals(1, channel.getDuplicateAcks());
+            assertEquals(0, channel.getUnmatchedAcks());
+            assertNull(channel.getLatency(5));
+        }
+    }
+
+    @Test
+    void failedWriteFreesTheWindow() throws Exception {
+        Device device = new Device(1, 1);
+        try (CommandChannel channel = new CommandChannel(device, config(1, 10_000, 3))) {
+            CompletableFuture<CommandResult> lost = channel.submit(ActuatorCommand.create(1, "ON"));
+            CompletableFuture<CommandResult> next = channel.submit(ActuatorCommand.create(2, "ON"));
+
+            assertInstanceOf(IllegalStateException.class, failure(lost));
+            assertEquals(2, device.next());
+            channel.onAck((byte) 2, ON);
+            next.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void failedRetransmissionFreesTheWindow() throws Exception {
+        Device device = new Device(1, 2);
+        try (CommandChannel channel = new CommandChannel(device, config(1, 50, 3))) {
+            CompletableFuture<CommandResult> lost = channel.submit(ActuatorCommand.create(1, "ON"));
+            CompletableFuture<CommandResult> next = channel.submit(ActuatorCommand.create(2, "ON"));
+            assertEquals(1, device.next());
+
+            assertInstanceOf(IllegalStateException.class, failure(lost));
+            assertEquals(2, device.next());
+            channel.onAck((byte) 2, ON);
+            assertEquals(1, next.get(5, TimeUnit.SECONDS).attempts());
+            assertEquals(0, channel.getQueued());
+        }
+    }
+
+    @Test
+    void sendsGroupAsOneFrameAndMatchesAcksPerMember() throws Exception {
+        Device device = new Device();
+        CommandGroup group = group(1, 2, 3);
+        try (CommandChannel channel = new CommandChannel(device, config(2, 10_000, 1, true))) {
+            List<CompletableFuture<CommandResult>> results = channel.submitGroup(group);
+
+            byte[] frame = device.nextWrite();
+            assertArrayEquals(group.toFrame(), frame);
+            assertEquals(0x03, frame[1]);
+            device.writes.clear();
+            // The group may take the window over its limit
+            assertEquals(3, channel.getInFlight());
+
+            channel.onAck((byte) 3, ON);
+            assertEquals(3, results.get(2).get(5, TimeUnit.SECONDS).command().actuatorId());
+            assertFalse(results.get(0).isDone());
+            channel.onAck((byte) 1, ON);
+            channel.onAck((byte) 2, ON);
+            assertEquals(1, results.get(0).get(5, TimeUnit.SECONDS).command().actuatorId());
+            assertEquals(2, results.get(1).get(5, TimeUnit.SECONDS).command().actuatorId());
+            assertEquals(0, channel.getInFlight());
+        }
+    }
+
+    @Test
+    void sendsGroupAsCoalescedPacketsWithoutGroupFrames() throws Exception {
+        Device device = new Device();
+        CommandGroup group = group(4, 5);
+        try (CommandChannel channel = new CommandChannel(device, config(8, 10_000, 1, false))) {
+            channel.submitGroup(group);
+
+            assertArrayEquals(group.toCoalescedPackets(), device.nextWrite());
+            assertNull(device.writes.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void writesQueuedGroupAsOneUnit() throws Exception {
+        Device device = new Device();
+        CommandGroup group = group(2, 3);
+        try (CommandChannel channel = new CommandChannel(device, config(1, 10_000, 1, true))) {
+            channel.submit(ActuatorCommand.create(1, "ON"));
+            assertArrayEquals(ActuatorCommand.create(1, "ON").toBinary(), device.nextWrite());
+            List<CompletableFuture<CommandResult>> results = channel.submitGroup(group);
+            assertNull(device.writes.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(2, channel.getQueued());
+
+            channel.onAck((byte) 1, ON);
+            assertArrayEquals(group.toFrame(), device.nextWrite());
+            assertNull(device.writes.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(2, channel.getInFlight());
+            assertEquals(0, channel.getQueued());
+
+            channel.onAck((byte) 2, ON);
+            channel.onAck((byte) 3, ON);
+            for (CompletableFuture<CommandResult> result : results) {
+                assertEquals(1, result.get(5, TimeUnit.SECONDS).attempts());
+            }
+        }
+    }
+
+    @Test
+    void retransmitsUnacknowledgedGroupMembersOnTheirOwn() throws Exception {
+        Device device = new Device();
+        CommandGroup group = group(6, 7);
+        try (CommandChannel channel = new CommandChannel(device, config(4, 100, 2, true))) {
+            List<CompletableFuture<CommandResult>> results = channel.submitGroup(group);
+            assertArrayEquals(group.toFrame(), device.nextWrite());
+            channel.onAck((byte) 6, ON);
+
+            assertArrayEquals(group.commands().get(1).toBinary(), device.nextWrite());
+            channel.onAck((byte) 7, ON);
+            assertEquals(1, results.get(0).get(5, TimeUnit.SECONDS).attempts());
+            assertEquals(2, results.get(1).get(5, TimeUnit.SECONDS).attempts());
+            assertEquals(1, channel.getRetransmits());
+        }
+    }
+
+    @Test
+    void newerCommandSupersedesTheQueuedOne() throws Exception {
+        Device device = new Device();
+        try (CommandChannel channel = new CommandChannel(device, config(1, 10_000, 1))) {
+            channel.submit(ActuatorCommand.create(1, "ON"));
+            assertArrayEquals(ActuatorCommand.create(1, "ON").toBinary(), device.nextWrite());
+            CompletableFuture<CommandResult> older = channel.submit(ActuatorCommand.create(2, "ON"));
+            CompletableFuture<CommandResult> newer = channel.submit(ActuatorCommand.create(2, "OFF"));
+
+            assertThrows(CancellationException.class, () -> older.get(5, TimeUnit.SECONDS));
+            assertEquals(1, channel.getSuperseded());
+            assertEquals(1, channel.getQueued());
+
+            channel.onAck((byte) 1, ON);
+            assertArrayEquals(ActuatorCommand.create(2, "OFF").toBinary(), device.nextWrite());
+            assertNull(device.writes.poll(100, TimeUnit.MILLISECONDS));
+            assertFalse(newer.isDone());
+        }
+    }
+
+    @Test
+    void holdsCommandsWithinTheMinimumIntervalAndSendsOnlyTheNewest() throws Exception {
+        Device device = new Device();
+        try (CommandChannel channel = new CommandChannel(device, holding(300))) {
+            channel.submit(ActuatorCommand.create(1, "ON"));
+            device.nextWrite();
+            long firstSent = System.nanoTime();
+
+            CompletableFuture<CommandResult> off = channel.submit(ActuatorCommand.create(1, "OFF"));
+            channel.submit(ActuatorCommand.create(2, "ON"));
+            CompletableFuture<CommandResult> on = channel.submit(ActuatorCommand.create(1, "ON"));
+            // Other actuators are not held
+            assertArrayEquals(ActuatorCommand.create(2, "ON").toBinary(), device.nextWrite());
+            assertThrows(CancellationException.class, () -> off.get(5, TimeUnit.SECONDS));
+            assertNull(device.writes.poll(100, TimeUnit.MILLISECONDS));
+
+            assertArrayEquals(ActuatorCommand.create(1, "ON").toBinary(), device.nextWrite());
+            long heldNanos = System.nanoTime() - firstSent;
+            assertTrue(heldNanos >= TimeUnit.MILLISECONDS.toNanos(300), "held " + heldNanos);
+            assertNull(device.writes.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, channel.getSuperseded());
+            assertFalse(on.isDone());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CommandGateTest {
+
+    @Test
+    void admitsABurstThenDropsAndCountsPerOperator() {
+        CommandGate gate = new CommandGate(1.0, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(gate.tryAcquire("alice"), "command " + i);
+        }
+        assertFalse(gate.tryAcquire("alice"));
+        assertFalse(gate.tryAcquire("alice"));
+        // Another session keeps its full burst
+        assertTrue(gate.tryAcquire("bob"));
+
+        assertEquals(2, gate.getRateLimited("alice"));
+        assertEquals(0, gate.getRateLimited("bob"));
+        assertEquals(2, gate.getRateLimited());
+        assertEquals(4, gate.getAdmitted());
+    }
+
+    @Test
+    void refillsAtTheRateUpToTheBurst() throws InterruptedException {
+        CommandGate gate = new CommandGate(20.0, 2);
+        assertTrue(gate.tryAcquire("alice"));
+        assertTrue(gate.tryAcquire("alice"));
+        assertFalse(gate.tryAcquire("alice"));
+
+        // One token every 50 ms
+        Thread.sleep(75);
+        assertTrue(gate.tryAcquire("alice"));
+
+        // A long idle period refills no more than the burst
+        Thread.sleep(500);
+        assertTrue(gate.tryAcquire("alice"));
+        assertTrue(gate.tryAcquire("alice"));
+        assertFalse(gate.tryAcquire("alice"));
+        assertEquals(2, gate.getRateLimited("alice"));
+    }
+
+    @Test
+    void forgottenSessionStartsWithAFullBucket() {
+        CommandGate gate = new CommandGate(0.001, 1);
+        assertTrue(gate.tryAcquire("alice"));
+        assertFalse(gate.tryAcquire("alice"));
+
+        gate.forget("alice");
+        assertEquals(0, gate.getRateLimited("alice"));
+        assertTrue(gate.tryAcquire("alice"));
+        assertEquals(1, gate.getRateLimited());
+    }
+
+    @Test
+    void zeroRateDisablesTheLimit() {
+        CommandGate gate = new CommandGate(0, 1);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(gate.tryAcquire("alice"));
+        }
+        assertEquals(100, gate.getAdmitted());
+        assertEquals(0, gate.getRateLimited());
+    }
+
+    @Test
+    void countsSupersededCommands() {
+        CommandGate gate = new CommandGate(1.0, 1);
+        gate.recordSuperseded();
+        gate.recordSuperseded();
+        assertEquals(2, gate.getSuperseded());
+    }
+}
@@ -0,0 +1,88 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.LatestValue;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+
+class LatestValueStoreTest {
+    private static final long T0 = 1_700_000_000_000_000_000L;
+    private static final long MILLI = 1_000_000L;
+
+    private SensorRegistry registry;
+    private LatestValueStore store;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SensorRegistry(16);
+        store = new LatestValueStore(registry);
+    }
+
+    private SensorBatch batch(int sensorId, long epochNanos, double value) {
+        SensorBatch batch = new SensorBatch(1);
+        batch.add(sensorId, "Temperature", epochNanos, value, SensorData.NOT_STAMPED);
+        batch.setCode(0, registry.codeOf(sensorId, "Temperature"));
+        return batch;
+    }
+
+    @Test
+    void newerReadingReplacesTheValue() {
+        store.onBatch("COM1", batch(1, T0, 20.0));
+        store.onBatch("COM1", batch(1, T0 + MILLI, 21.5));
+
+        LatestValue latest = store.get(1);
+        assertEquals(21.5, latest.value());
+        assertEquals(SensorBatch.toInstant(T0 + MILLI), latest.timestamp());
+        assertEquals("Temperature", latest.type());
+        assertEquals(T0 + MILLI, store.getEpochNanos(registry.lookup(1)));
+        assertEquals(21.5, store.getValue(registry.lookup(1)));
+    }
+
+    @Test
+    void olderReadingIsRejectedAndCounted() {
+        int code = registry.codeOf(1, "Temperature");
+        assertTrue(store.update(code, 20.0, T0 + 5 * MILLI, 0));
+        assertFalse(store.update(code, 99.0, T0 + 4 * MILLI, QualityFlags.ANOMALY));
+        store.onBatch("COM1", batch(1, T0, 98.0));
+
+        assertEquals(20.0, store.getValue(code));
+        assertEquals(T0 + 5 * MILLI, store.getEpochNanos(code));
+        assertEquals(0, store.get(1).quality());
+        assertEquals(2, store.getOutOfOrderCount());
+
+        // A reading stamped with the same instant is not older
+        assertTrue(store.update(code, 20.5, T0 + 5 * MILLI, 0));
+        assertEquals(20.5, store.getValue(code));
+        assertEquals(2, store.getOutOfOrderCount());
+    }
+
+    @Test
+    void snapshotHoldsEverySensorThatHasReported() {
+        store.onBatch("COM1", batch(1, T0, 20.0));
+        store.onBatch("COM1", batch(2, T0 + MILLI, 101.3));
+        store.onBatch("COM1", batch(1, T0 + 2 * MILLI, 20.25));
+        // Registered, e.g. by a configured interval, but never reported
+        registry.codeOf(3, "Pressure");
+        store.markQuality(registry.lookup(2), QualityFlags.ANOMALY, true);
+
+        List<LatestValue> snapshot = store.snapshot();
+        assertEquals(List.of(
+            new LatestValue(1, "Temperature", 20.25, SensorBatch.toInstant(T0 + 2 * MILLI), 0),
+            new LatestValue(2, "Temperature", 101.3, SensorBatch.toInstant(T0 + MILLI), QualityFlags.ANOMALY)),
+            snapshot);
+        assertNull(store.get(3));
+        assertNull(store.get(4));
+        assertEquals(Instant.ofEpochSecond(1_700_000_000L), SensorBatch.toInstant(T0));
+    }
+}
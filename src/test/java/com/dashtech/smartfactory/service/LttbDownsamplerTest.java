@@ -0,0 +1,80 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LttbDownsamplerTest {
+
+    private static final long WEEK_MILLIS = 7L * 24 * 3600 * 1000;
+
+    private record Point(long timestamp, double value) {
+    }
+
+    private static List<Point> finish(LttbDownsampler downsampler) {
+        List<Point> points = new ArrayList<>();
+        int delivered = downsampler.finish((t, v) -> points.add(new Point(t, v)));
+        assertEquals(points.size(), delivered);
+        return points;
+    }
+
+    @Test
+    void passesShortStreamsThroughUnchanged() {
+        LttbDownsampler downsampler = new LttbDownsampler(0, 100, 10);
+        for (int i = 0; i < 10; i++) {
+            downsampler.accept(i * 10, i);
+        }
+
+        List<Point> points = finish(downsampler);
+        assertEquals(10, points.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Point(i * 10, i), points.get(i));
+        }
+        assertEquals(0, finish(new LttbDownsampler(0, 100, 10)).size());
+    }
+
+    @Test
+    void keepsAtMostThresholdPointsInOrderWithBothEnds() {
+        for (int threshold : new int[] {3, 4, 800}) {
+            LttbDownsampler downsampler = new LttbDownsampler(0, WEEK_MILLIS, threshold);
+            Random random = new Random(1);
+            int count = 60_480;
+            for (int i = 0; i < count; i++) {
+                downsampler.accept(i * 10_000L, Math.sin(i / 500.0) + random.nextGaussian() * 0.01);
+            }
+
+            List<Point> points = finish(downsampler);
+            assertEquals(count, downsampler.getReceived());
+            assertTrue(points.size() <= threshold, threshold + ": " + points.size());
+            assertEquals(0, points.get(0).timestamp());
+            assertEquals((count - 1) * 10_000L, points.get(points.size() - 1).timestamp());
+            for (int i = 1; i < points.size(); i++) {
+                assertTrue(points.get(i).timestamp() > points.get(i - 1).timestamp());
+            }
+        }
+    }
+
+    @Test
+    void keepsPeaksAndDips() {
+        LttbDownsampler downsampler = new LttbDownsampler(0, WEEK_MILLIS, 800);
+        for (int i = 0; i < 604_800; i++) {
+            double value = i == 123_456 ? 50 : i == 400_000 ? -50 : Math.sin(i / 5000.0);
+            downsampler.accept(i * 1000L, value);
+        }
+
+        List<Point> points = finish(downsampler);
+        assertTrue(points.contains(new Point(123_456_000L, 50)));
+        assertTrue(points.contains(new Point(400_000_000L, -50)));
+    }
+
+    @Test
+    void rejectsThresholdBelowThree() {
+        assertThrows(IllegalArgumentException.class, () -> new LttbDownsampler(0, 1, LttbDownsampler.MIN_THRESHOLD - 1));
+    }
+}
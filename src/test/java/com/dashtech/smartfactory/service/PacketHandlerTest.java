@@ -0,0 +1,140 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.SerialPacket;
+
+class PacketHandlerTest {
+    private final List<Float> values = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+    private final List<String> checksumFailures = new ArrayList<>();
+    private final List<String> errors = new ArrayList<>();
+
+    private final PacketHandler.PacketCallback callback = new PacketHandler.PacketCallback() {
+        @Override
+        public void onSensorData(byte sensorId, byte dataType, float value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onCommandResponse(byte actuatorId, byte commandType) {
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.add(error);
+        }
+
+        @Override
+        public void onChecksumFailure(String error) {
+            checksumFailures.add(error);
+        }
+
+        @Override
+        public void onTextLine(String line) {
+            if (line.contains("bad")) {
+                throw new IllegalStateException("rejected");
+            }
+            lines.add(line);
+        }
+    };
+
+    private static byte[] sensorFrame(float value) {
+        return SerialPacket.createSensorPacket((byte) 1, SerialPacket.DataType.TEMPERATURE, value).toBytes();
+    }
+
+    @Test
+    void decodesFramesSplitAcrossReads() {
+        PacketHandler handler = new PacketHandler("test", PacketHandler.MIN_BUFFER_SIZE, callback);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 500; i++) {
+            stream.writeBytes(sensorFrame(i));
+            if (i % 50 == 0) {
+                stream.writeBytes(("Sensor[01] Type[01] Value[" + i + ".00]\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        byte[] bytes = stream.toByteArray();
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            handler.processIncomingData(bytes, offset, Math.min(7, bytes.length - offset));
+        }
+
+        assertEquals(500, values.size());
+        assertEquals(499f, values.get(499));
+        assertEquals(10, lines.size());
+        assertEquals(0, handler.getPendingBytes());
+    }
+
+    @Test
+    void byteBufferInputNeverGrowsTheReceiveBuffer() {
+        PacketHandler handler = new PacketHandler("test", PacketHandler.MIN_BUFFER_SIZE, callback);
+        ByteBuffer data = ByteBuffer.allocateDirect(9 * 1_000);
+        for (int i = 0; i < 1_000; i++) {
+            data.put(sensorFrame(i));
+        }
+        // A partial frame stays pending across calls and is completed by the next one
+        data.flip().limit(data.limit() - 4);
+        handler.processIncomingData(data, System.nanoTime());
+        assertEquals(999, values.size());
+        assertEquals(5, handler.getPendingBytes());
+
+        data.limit(data.capacity());
+        handler.processIncomingData(data, System.nanoTime());
+        assertEquals(1_000, values.size());
+        assertEquals(0, handler.getPendingBytes());
+    }
+
+    @Test
+    void reportsCorruptFramesApartFromLineFailures() {
+        PacketHandler handler = new PacketHandler(callback);
+        byte[] corrupt = sensorFrame(1.5f);
+        corrupt[corrupt.length - 1] ^= 0x5A;
+        handler.processIncomingData(corrupt);
+        handler.processIncomingData("Sensor[01] bad line\n".getBytes(StandardCharsets.US_ASCII));
+        handler.processIncomingData(sensorFrame(2.5f));
+
+        assertEquals(1, checksumFailures.size());
+        assertEquals(1, errors.size());
+        assertEquals(List.of(2.5f), values);
+    }
+
+    @Test
+    void resynchronisesOnFramesAfterNoiseAndCorruptFrames() {
+        PacketHandler handler = new PacketHandler(callback);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        // Line noise with stray 'S' bytes, one of them followed by a newline
+        stream.writeBytes(new byte[] {0x53, 0x00, 0x53, 0x0A, 0x53, 0x65, 0x7F});
+        // A frame failing its checksum whose payload is full of 'S' bytes
+        byte[] corrupt = sensorFrame(Float.intBitsToFloat(0x53535353));
+        corrupt[corrupt.length - 1] ^= 0x5A;
+        stream.writeBytes(corrupt);
+        for (int i = 0; i < 20; i++) {
+            stream.writeBytes(sensorFrame(i));
+        }
+        handler.processIncomingData(stream.toByteArray());
+
+        assertEquals(1, checksumFailures.size());
+        assertEquals(20, values.size());
+        assertEquals(19f, values.get(19));
+        assertEquals(List.of(), lines);
+        assertEquals(0, handler.getPendingBytes());
+    }
+
+    @Test
+    void waitsForASplitLinePrefix() {
+        PacketHandler handler = new PacketHandler(callback);
+        handler.processIncomingData("Sen".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(3, handler.getPendingBytes());
+        handler.processIncomingData("sor[01] Type[01] Value[1.00]\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(List.of("Sensor[01] Type[01] Value[1.00]"), lines);
+        assertEquals(0, handler.getPendingBytes());
+    }
+}
@@ -0,0 +1,201 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.DeadbandConfig;
+import com.dashtech.smartfactory.model.QualityFlags;
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.SensorType;
+
+class ReportByExceptionFilterTest {
+    private static final int SENSOR = 7;
+    private static final String SOURCE = "COM1";
+
+    private record Reported(String source, long epochMillis, double value) {
+    }
+
+    private SensorRegistry registry;
+    private final List<Reported> reported = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SensorRegistry(16);
+        reported.clear();
+    }
+
+    private ReportByExceptionFilter filter(DeadbandConfig.Mode mode, double deviation, long maxIntervalMillis) {
+        return filter(mode, deviation, maxIntervalMillis, 10_000);
+    }
+
+    private ReportByExceptionFilter filter(DeadbandConfig.Mode mode, double deviation, long maxIntervalMillis,
+            long maxHoldMillis) {
+        ReportByExceptionFilter filter = new ReportByExceptionFilter(registry,
+            new DeadbandConfig(null, null, mode, deviation, 0, maxIntervalMillis), maxHoldMillis);
+        filter.addDownstream((source, batch) -> {
+            for (int i = 0; i < batch.size(); i++) {
+                assertNotNull(source);
+                reported.add(new Reported(source, batch.epochMillis(i), batch.value(i)));
+            }
+        });
+        return filter;
+    }
+
+    private void send(ReportByExceptionFilter filter, String source, long epochMillis, double value, int quality) {
+        sendNanos(filter, source, epochMillis * 1_000_000L, value, quality);
+    }
+
+    private void sendNanos(ReportByExceptionFilter filter, String source, long epochNanos, double value, int quality) {
+        SensorBatch batch = new SensorBatch(1);
+        int row = batch.add(SENSOR, SensorType.TEMPERATURE.getCode(), epochNanos, value,
+            SensorData.NOT_STAMPED);
+        batch.setCode(row, registry.codeOf(SENSOR, batch.type(row)));
+        batch.markQuality(row, quality);
+        filter.onBatch(source, batch);
+    }
+
+    private void send(ReportByExceptionFilter filter, long epochMillis, double value) {
+        send(filter, SOURCE, epochMillis, value, QualityFlags.GOOD);
+    }
+
+    @Test
+    void deadbandReportsOnlyChangesBeyondTheBand() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.DEADBAND, 1.0, 0);
+        double[] values = {10, 10.5, 10.9, 11.2, 11.0, 9.0};
+        for (int i = 0; i < values.length; i++) {
+            send(filter, i * 1000L, values[i]);
+        }
+
+        assertEquals(List.of(10.0, 11.2, 9.0), reported.stream().map(Reported::value).toList());
+        assertEquals(6, filter.getTotals().received());
+    }
+
+    @Test
+    void swingingDoorReconstructsSignalWithinDeviation() {
+        double deviation = 0.5;
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, deviation, 0);
+        long[] times = new long[200];
+        double[] values = new double[200];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = i * 1000L;
+            values[i] = i < 100 ? i * 0.1 : 10 + 3 * Math.sin(i / 7.0);
+            send(filter, times[i], values[i]);
+        }
+        // The last held point is reported by the next reading outside the door; force it with a flagged one
+        send(filter, SOURCE, 200_000L, values[199], QualityFlags.ANOMALY);
+
+        // Archiving each end point at its actual value bounds the error by twice the deviation
+        assertTrue(reported.size() < 100, "compressed to " + reported.size());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(values[i], interpolate(times[i]), 2 * deviation + 1e-9, "t=" + times[i]);
+        }
+    }
+
+    private double interpolate(long t) {
+        for (int i = 1; i < reported.size(); i++) {
+            Reported a = reported.get(i - 1);
+            Reported b = reported.get(i);
+            if (t >= a.epochMillis() && t <= b.epochMillis()) {
+                return b.epochMillis() == a.epochMillis() ? b.value()
+                    : a.value() + (b.value() - a.value()) * (t - a.epochMillis()) / (b.epochMillis() - a.epochMillis());
+            }
+        }
+        throw new AssertionError("No reported segment covers " + t);
+    }
+
+    @Test
+    void flaggedReadingFlushesHeldPointFirst() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 0);
+        send(filter, 0, 1.0);
+        send(filter, 1000, 1.1);
+        send(filter, 2000, 1.2);
+        send(filter, SOURCE, 3000, 1.3, QualityFlags.ANOMALY);
+
+        assertEquals(List.of(0L, 2000L, 3000L), reported.stream().map(Reported::epochMillis).toList());
+    }
+
+    @Test
+    void heartbeatFlushesHeldPointFirst() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 5000);
+        send(filter, 0, 1.0);
+        send(filter, 1000, 1.0);
+        send(filter, 6000, 1.0);
+
+        assertEquals(List.of(0L, 1000L, 6000L), reported.stream().map(Reported::epochMillis).toList());
+    }
+
+    @Test
+    void nonFiniteValuesAreDroppedWithoutDisturbingTheDoor() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 0);
+        send(filter, 0, 1.0);
+        send(filter, 1000, 1.1);
+        send(filter, 2000, Double.NaN);
+        send(filter, 3000, Double.POSITIVE_INFINITY);
+        send(filter, 4000, 1.4);
+        send(filter, 5000, 9.0);
+
+        assertEquals(List.of(0L, 4000L), reported.stream().map(Reported::epochMillis).toList());
+        assertTrue(reported.stream().allMatch(r -> Double.isFinite(r.value())));
+    }
+
+    @Test
+    void heldPointFromAnotherSourceKeepsItsSource() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 0);
+        send(filter, "COM1", 0, 1.0, QualityFlags.GOOD);
+        send(filter, "COM1", 1000, 1.0, QualityFlags.GOOD);
+        send(filter, "tcp/10.0.0.5", 2000, 5.0, QualityFlags.GOOD);
+
+        assertEquals(List.of(new Reported("COM1", 0, 1.0), new Reported("COM1", 1000, 1.0)), reported);
+    }
+
+    @Test
+    void stepInTheSameMillisecondIsReported() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 0);
+        sendNanos(filter, SOURCE, 1_000_000_000L, 1.0, QualityFlags.GOOD);
+        sendNanos(filter, SOURCE, 1_000_000_000L, 1.2, QualityFlags.GOOD);
+        sendNanos(filter, SOURCE, 1_000_000_000L, 5.0, QualityFlags.GOOD);
+        sendNanos(filter, SOURCE, 1_000_400_000L, 9.0, QualityFlags.GOOD);
+        sendNanos(filter, SOURCE, 1_000_800_000L, 1.0, QualityFlags.GOOD);
+
+        assertEquals(List.of(1.0, 5.0, 9.0), reported.stream().map(Reported::value).toList());
+    }
+
+    @Test
+    void sweepReportsEndPointOfASilentSensor() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 0, 5000);
+        send(filter, 0, 1.0);
+        send(filter, 1000, 1.1);
+
+        filter.sweep(5_999_000_000L);
+        assertEquals(List.of(0L), reported.stream().map(Reported::epochMillis).toList());
+        filter.sweep(6_000_000_000L);
+        assertEquals(List.of(new Reported(SOURCE, 0, 1.0), new Reported(SOURCE, 1000, 1.1)), reported);
+
+        // The door reopens from the swept point
+        send(filter, 2000, 1.2);
+        filter.sweep(6_000_000_000L);
+        assertEquals(2, reported.size());
+    }
+
+    @Test
+    void stopReportsHeldEndPoints() {
+        ReportByExceptionFilter filter = filter(DeadbandConfig.Mode.SWINGING_DOOR, 0.5, 0);
+        filter.start();
+        send(filter, 0, 1.0);
+        send(filter, 1000, 1.1);
+        send(filter, 2000, 1.2);
+        assertEquals(1, reported.size());
+
+        filter.stop();
+        assertEquals(List.of(0L, 2000L), reported.stream().map(Reported::epochMillis).toList());
+        assertEquals(2, filter.getTotals().reported());
+    }
+}
@@ -0,0 +1,138 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SensorHistoryBufferTest {
+    private static final int SENSOR = 12;
+    private static final int POINTS = 8;
+
+    private SensorRegistry registry;
+    private SensorHistoryBuffer buffer;
+    private int code;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SensorRegistry(16);
+        buffer = new SensorHistoryBuffer(registry, POINTS, 1024 * 1024);
+        code = registry.codeOf(SENSOR, "Temperature");
+    }
+
+    // Points at 1000, 2000, ... with the value equal to the second
+    private void append(int from, int to) {
+        for (int second = from; second <= to; second++) {
+            buffer.append(code, second * 1000L, second);
+        }
+    }
+
+    private List<Long> timestamps(long fromMillis, long toMillis) {
+        List<Long> timestamps = new ArrayList<>();
+        buffer.forEach(SENSOR, fromMillis, toMillis, (t, v) -> {
+            assertEquals(t / 1000.0, v);
+            timestamps.add(t);
+        });
+        return timestamps;
+    }
+
+    @Test
+    void keepsTheNewestPointsOnceTheRingWrapsAround() {
+        append(1, 5);
+        assertEquals(1000, buffer.oldestTimestamp(SENSOR));
+        assertEquals(List.of(1000L, 2000L, 3000L, 4000L, 5000L), timestamps(0, Long.MAX_VALUE));
+
+        append(6, 19);
+        assertEquals(12_000, buffer.oldestTimestamp(SENSOR));
+        assertEquals(List.of(12_000L, 13_000L, 14_000L, 15_000L, 16_000L, 17_000L, 18_000L, 19_000L),
+            timestamps(0, Long.MAX_VALUE));
+        assertTrue(buffer.covers(SENSOR, 12_000));
+        assertFalse(buffer.covers(SENSOR, 11_999));
+    }
+
+    @Test
+    void readsInclusiveRangesAcrossTheWrap() {
+        append(1, 13);
+
+        assertEquals(List.of(7000L, 8000L, 9000L, 10_000L), timestamps(7000, 10_000));
+        assertEquals(List.of(9000L, 10_000L), timestamps(8500, 10_500));
+        assertEquals(List.of(6000L), timestamps(0, 6000));
+        assertEquals(List.of(), timestamps(13_001, 20_000));
+        assertEquals(List.of(), timestamps(0, 5999));
+
+        long[] times = new long[3];
+        double[] values = new double[3];
+        assertEquals(3, buffer.read(SENSOR, 8000, 20_000, times, values));
+        assertArrayEquals(new long[] { 8000, 9000, 10_000 }, times);
+        assertArrayEquals(new double[] { 8, 9, 10 }, values);
+    }
+
+    @Test
+    void returnsNothingForSensorsWithoutARing() {
+        assertEquals(Long.MIN_VALUE, buffer.oldestTimestamp(SENSOR));
+        assertFalse(buffer.covers(SENSOR, 0));
+        assertEquals(0, buffer.forEach(99, 0, Long.MAX_VALUE, (t, v) -> { }));
+
+        // A budget below one ring retains nothing
+        SensorHistoryBuffer tiny = new SensorHistoryBuffer(registry, POINTS, 16);
+        tiny.append(code, 1000, 1);
+        assertEquals(0, tiny.forEach(SENSOR, 0, Long.MAX_VALUE, (t, v) -> { }));
+        assertEquals(0, tiny.getAllocatedBytes());
+    }
+
+    @Test
+    void backfillsOlderPointsIntoFreeCapacityOnce() {
+        append(10, 12);
+        assertTrue(buffer.claimBackfill(SENSOR));
+        assertFalse(buffer.claimBackfill(SENSOR));
+
+        // Newest first; 10 is already retained and is skipped
+        long[] times = { 10_000, 9000, 8000, 7000, 6000, 5000, 4000 };
+        double[] values = { 10, 9, 8, 7, 6, 5, 4 };
+        assertEquals(5, buffer.backfill(SENSOR, times, values, times.length));
+        assertEquals(List.of(5000L, 6000L, 7000L, 8000L, 9000L, 10_000L, 11_000L, 12_000L),
+            timestamps(0, Long.MAX_VALUE));
+
+        append(13, 14);
+        assertEquals(7000, buffer.oldestTimestamp(SENSOR));
+    }
+
+    @Test
+    void readersSeeOrderedPointsWhileAWriterAppends() throws Exception {
+        int total = 200_000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            long[] times = new long[POINTS];
+            double[] values = new double[POINTS];
+            started.countDown();
+            while (!done.get() && failure.get() == null) {
+                int n = buffer.read(SENSOR, 0, Long.MAX_VALUE, times, values);
+                for (int i = 0; i < n; i++) {
+                    if (values[i] != times[i] / 1000.0 || (i > 0 && times[i] != times[i - 1] + 1000)) {
+                        failure.set("torn read at " + i + ": " + times[i] + " = " + values[i]);
+                    }
+                }
+            }
+        });
+        reader.start();
+        started.await();
+        append(1, total);
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get(), failure.get());
+        assertEquals((total - POINTS + 1) * 1000L, buffer.oldestTimestamp(SENSOR));
+    }
+}
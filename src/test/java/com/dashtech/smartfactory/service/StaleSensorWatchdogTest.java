@@ -0,0 +1,157 @@
+package com.dashtech.smartfactory.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.SensorHealthEvent;
+import com.dashtech.smartfactory.model.SensorType;
+
+class StaleSensorWatchdogTest {
+    private static final long TICK_MILLIS = 10;
+    private static final int INTERVAL_MILLIS = 100;
+    private static final long MILLI = 1_000_000L;
+
+    private SensorRegistry registry;
+    private final List<SensorHealthEvent> events = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SensorRegistry(64);
+        events.clear();
+    }
+
+    private StaleSensorWatchdog watchdog() {
+        StaleSensorWatchdog watchdog = new StaleSensorWatchdog(registry, new LatestValueStore(registry),
+            TICK_MILLIS, 64, INTERVAL_MILLIS, 2);
+        watchdog.addListener(events::add);
+        return watchdog;
+    }
+
+    private int code(int sensorId) {
+        return registry.codeOf(sensorId, SensorType.TEMPERATURE.name());
+    }
+
+    @Test
+    void silentSensorGoesStaleOnceAfterThreshold() {
+        StaleSensorWatchdog watchdog = watchdog();
+        int code = code(1);
+        watchdog.touch(code, 0);
+        watchdog.tick(0);
+
+        watchdog.tick(190 * MILLI);
+        assertFalse(watchdog.isStale(code));
+
+        watchdog.tick(210 * MILLI);
+        watchdog.tick(2_000 * MILLI);
+        assertTrue(watchdog.isStale(code));
+        assertEquals(1, events.size());
+        assertEquals(SensorHealthEvent.State.STALE, events.get(0).state());
+        assertEquals(List.of(1), watchdog.getStaleSensorIds());
+    }
+
+    @Test
+    void readingsMoveTheDeadlineWithoutRefiling() {
+        StaleSensorWatchdog watchdog = watchdog();
+        int code = code(1);
+        for (long t = 0; t <= 5_000; t += 150) {
+            watchdog.touch(code, t * MILLI);
+            watchdog.tick(t * MILLI);
+        }
+
+        assertFalse(watchdog.isStale(code));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void readingAfterStaleRecoversAndWatchesAgain() {
+        StaleSensorWatchdog watchdog = watchdog();
+        int code = code(1);
+        watchdog.touch(code, 0);
+        watchdog.tick(0);
+        watchdog.tick(300 * MILLI);
+
+        watchdog.touch(code, 310 * MILLI);
+        assertFalse(watchdog.isStale(code));
+        watchdog.tick(320 * MILLI);
+        watchdog.tick(600 * MILLI);
+
+        assertEquals(List.of(SensorHealthEvent.State.STALE, SensorHealthEvent.State.RECOVERED,
+            SensorHealthEvent.State.STALE), events.stream().map(SensorHealthEvent::state).toList());
+        assertEquals(2, watchdog.getStaleEvents());
+        assertEquals(1, watchdog.getRecoveredEvents());
+    }
+
+    @Test
+    void concurrentReadingsNeverFileASensorTwice() throws InterruptedException {
+        StaleSensorWatchdog watchdog = watchdog();
+        Map<Integer, SensorHealthEvent.State> lastState = new ConcurrentHashMap<>();
+        AtomicBoolean alternates = new AtomicBoolean(true);
+        watchdog.addListener(event -> {
+            SensorHealthEvent.State previous = lastState.put(event.sensorId(), event.state());
+            if (previous == event.state() || (previous == null && event.state() == SensorHealthEvent.State.RECOVERED)) {
+                alternates.set(false);
+            }
+        });
+        int sensors = 32;
+        int[] codes = new int[sensors];
+        for (int i = 0; i < sensors; i++) {
+            codes[i] = code(i);
+        }
+        AtomicLong clock = new AtomicLong();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!stop.get()) {
+                watchdog.touch(codes[random.nextInt(sensors)], clock.get());
+            }
+            done.countDown();
+        });
+        reader.start();
+        for (int step = 0; step < 20_000; step++) {
+            watchdog.tick(clock.addAndGet(TICK_MILLIS * MILLI));
+        }
+        stop.set(true);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // Once readings stop, every sensor still in the wheel must go stale exactly once more
+        long end = clock.get() + 10_000 * MILLI;
+        for (long t = clock.get(); t <= end; t += TICK_MILLIS * MILLI) {
+            watchdog.tick(t);
+        }
+        assertTrue(alternates.get(), "STALE and RECOVERED must alternate per sensor");
+        assertEquals(sensors, watchdog.getStaleSensorIds().size());
+        assertEquals(watchdog.getStaleEvents(), watchdog.getRecoveredEvents() + sensors);
+    }
+
+    @Test
+    void closedWatchdogCanBeStartedAgain() throws InterruptedException {
+        StaleSensorWatchdog watchdog = watchdog();
+        CountDownLatch stale = new CountDownLatch(1);
+        watchdog.addListener(event -> stale.countDown());
+        watchdog.start();
+        watchdog.close();
+
+        watchdog.start();
+        try {
+            watchdog.touch(code(1), System.nanoTime());
+            assertTrue(stale.await(5, TimeUnit.SECONDS));
+        } finally {
+            watchdog.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.dashtech.smartfactory.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTest {
+
+    @Test
+    void quantilesStayWithinRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 1; i <= 10_000; i++) {
+            sketch.add(i);
+        }
+        for (double q : new double[] {0.0, 0.25, 0.5, 0.9, 0.99, 1.0}) {
+            double exact = 1 + Math.floor(q * 9_999);
+            assertEquals(exact, sketch.quantile(q), exact * 0.01, "q=" + q);
+        }
+    }
+
+    @Test
+    void ordersNegativeZeroAndPositiveValues() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(-100);
+        sketch.add(0);
+        sketch.add(100);
+
+        assertEquals(-100, sketch.quantile(0), 1);
+        assertEquals(0, sketch.quantile(0.5));
+        assertEquals(100, sketch.quantile(1), 1);
+        assertEquals(1, sketch.getZeroCount());
+    }
+
+    @Test
+    void ignoresNonFiniteValues() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(Double.POSITIVE_INFINITY);
+        sketch.add(Double.NEGATIVE_INFINITY);
+        sketch.add(Double.NaN);
+        sketch.add(5);
+
+        assertEquals(1, sketch.getCount());
+        assertEquals(5, sketch.quantile(0.5), 0.05);
+    }
+
+    @Test
+    void collapsesLowestBucketsBeyondMaxBuckets() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+        sketch.add(3e38);
+        sketch.add(1e-8);
+        for (int i = 0; i < 1_000; i++) {
+            sketch.add(1e-7 * (i + 1));
+        }
+        sketch.add(2e38);
+
+        assertTrue(sketch.getPositiveCounts().length <= 64);
+        assertEquals(1_003, sketch.getCount());
+        assertEquals(3e38, sketch.quantile(1), 3e38 * 0.01);
+        assertEquals(2e38, sketch.quantile(1_001.0 / 1_002), 2e38 * 0.01);
+    }
+
+    @Test
+    void keepsAccuracyAcrossWideRangeWithinMaxBuckets() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(1e-9 * 2);
+        sketch.add(3e38);
+
+        assertTrue(sketch.getPositiveCounts().length <= QuantileSketch.DEFAULT_MAX_BUCKETS);
+        assertEquals(3e38, sketch.quantile(1), 3e38 * 0.01);
+    }
+
+    @Test
+    void mergeMatchesSingleSketch() {
+        QuantileSketch all = new QuantileSketch();
+        QuantileSketch left = new QuantileSketch();
+        QuantileSketch right = new QuantileSketch();
+        for (int i = -500; i < 500; i++) {
+            all.add(i * 1.5);
+            (i % 2 == 0 ? left : right).add(i * 1.5);
+        }
+        left.merge(right);
+
+        assertEquals(all.getCount(), left.getCount());
+        for (double q = 0; q <= 1; q += 0.1) {
+            assertEquals(all.quantile(q), left.quantile(q), "q=" + q);
+        }
+    }
+
+    @Test
+    void resetReusesBuckets() {
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+        sketch.add(1e30);
+        sketch.add(1e-5);
+        sketch.reset();
+        sketch.add(10);
+        sketch.add(20);
+
+        assertEquals(2, sketch.getCount());
+        assertEquals(10, sketch.quantile(0), 0.1);
+        assertEquals(20, sketch.quantile(1), 0.2);
+    }
+}
@@ -0,0 +1,75 @@
+package com.dashtech.smartfactory.virtual;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class ExpressionCompilerTest {
+
+    private static double evaluate(CompiledExpression expression, double... values) {
+        return expression.evaluate(new CompiledExpression.Inputs() {
+            @Override
+            public double value(int input) {
+                return values[input];
+            }
+
+            @Override
+            public double window(int input, WindowFunction function) {
+                return values[input] * 10;
+            }
+        }, new double[expression.getMaxStack()]);
+    }
+
+    @Test
+    void foldsConstantExpressionToOneInstruction() {
+        CompiledExpression expression = ExpressionCompiler.compile("2 * (3 + 4) - sqrt(16) / 2 ^ 2");
+
+        assertEquals(1, expression.getInstructionCount());
+        assertEquals(13, evaluate(expression), 1e-12);
+    }
+
+    @Test
+    void foldsConstantOperandsAroundSensorReferences() {
+        CompiledExpression folded = ExpressionCompiler.compile("s1 * (9 / 5) + 32");
+        CompiledExpression unfolded = ExpressionCompiler.compile("s1 * 1.8 + 32");
+
+        assertEquals(unfolded.getInstructionCount(), folded.getInstructionCount());
+        assertEquals(5, folded.getInstructionCount());
+        assertEquals(212, evaluate(folded, 100), 1e-12);
+    }
+
+    @Test
+    void foldsUnaryFunctionsOfConstants() {
+        CompiledExpression expression = ExpressionCompiler.compile("s1 + -abs(-3) + max(exp(0), log(1))");
+
+        assertEquals(5, expression.getInstructionCount());
+        assertEquals(8, evaluate(expression, 10), 1e-12);
+    }
+
+    @Test
+    void doesNotFoldAcrossSensorReferences() {
+        CompiledExpression expression = ExpressionCompiler.compile("1 + s1 + 2");
+
+        assertEquals(5, expression.getInstructionCount());
+        assertEquals(13, evaluate(expression, 10), 1e-12);
+    }
+
+    @Test
+    void sharesInputsAndCountsWindowCost() {
+        CompiledExpression expression = ExpressionCompiler.compile("s4 - mean(s4) + s7");
+
+        assertArrayEquals(new int[] {4, 7}, expression.getInputSensorIds());
+        assertEquals(-25, evaluate(expression, 5, 20), 1e-12);
+        assertEquals(expression.getInstructionCount() + 25, expression.getCost());
+    }
+
+    @Test
+    void rejectsMalformedExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile(""));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("s1 +"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("(s1 * 2"));
+        assertThrows(IllegalArgumentException.class, () -> ExpressionCompiler.compile("s1 2"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.dashtech.smartfactory.virtual;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.SensorBatch;
+import com.dashtech.smartfactory.model.SensorData;
+import com.dashtech.smartfactory.model.VirtualSensorDefinition;
+import com.dashtech.smartfactory.service.LatestValueStore;
+import com.dashtech.smartfactory.service.SensorIngestService;
+import com.dashtech.smartfactory.stats.StatisticsEngine;
+
+class VirtualSensorEngineTest {
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private record Output(int sensorId, double value) {
+    }
+
+    private SensorIngestService ingest;
+    private LatestValueStore latestValues;
+    private final List<Output> outputs = new ArrayList<>();
+    private long epochNanos = 1_700_000_000L * SECOND_NANOS;
+
+    @BeforeEach
+    void setUp() {
+        ingest = SensorIngestService.createIsolated();
+        latestValues = new LatestValueStore(ingest.getRegistry());
+        ingest.addBatchListener(latestValues);
+        ingest.addBatchListener((source, batch) -> {
+            if (VirtualSensorEngine.SOURCE.equals(source)) {
+                for (int i = 0, n = batch.size(); i < n; i++) {
+                    outputs.add(new Output(batch.sensorId(i), batch.value(i)));
+                }
+            }
+        });
+    }
+
+    private VirtualSensorEngine engine(long budgetPerSecond, VirtualSensorDefinition... definitions) {
+        VirtualSensorEngine engine = new VirtualSensorEngine(ingest.getRegistry(), latestValues,
+            StatisticsEngine.create(ingest.getRegistry()), ingest, budgetPerSecond);
+        engine.setDefinitions(List.of(definitions));
+        ingest.addBatchListener(engine);
+        return engine;
+    }
+
+    private void read(String source, int sensorId, double value) {
+        epochNanos += 1_000_000L;
+        SensorBatch batch = new SensorBatch(1);
+        batch.add(sensorId, "Temperature", epochNanos, value, SensorData.NOT_STAMPED);
+        ingest.ingest(source, batch);
+    }
+
+    private void read(int sensorId, double value) {
+        read("COM1", sensorId, value);
+    }
+
+    @Test
+    void recomputesOnlyDependentsOfAChangedInput() {
+        VirtualSensorEngine engine = engine(Long.MAX_VALUE,
+            new VirtualSensorDefinition(100, null, "s1 - s2"),
+            new VirtualSensorDefinition(101, null, "s3 * 2"),
+            new VirtualSensorDefinition(102, null, "s100 * 10"));
+
+        read(1, 5);
+        read(2, 3);
+        assertEquals(2, engine.getEvaluations(100));
+        assertEquals(0, engine.getEvaluations(101));
+        // The first reading finds s2 missing and publishes nothing
+        assertEquals(List.of(new Output(100, 2), new Output(102, 20)), outputs);
+
+        // An unchanged value does not recompute
+        read(2, 3);
+        assertEquals(2, engine.getEvaluations(100));
+        assertEquals(1, engine.getEvaluations(102));
+
+        read(3, 4);
+        assertEquals(2, engine.getEvaluations(100));
+        assertEquals(1, engine.getEvaluations(101));
+        assertEquals(new Output(101, 8), outputs.get(outputs.size() - 1));
+        assertEquals(4, engine.getEvaluations());
+    }
+
+    @Test
+    void skipsRecomputesOnceTheSecondsBudgetIsSpent() {
+        CompiledExpression expression = ExpressionCompiler.compile("s1 + 1");
+        VirtualSensorEngine engine = engine(2L * expression.getCost(), new VirtualSensorDefinition(100, null, "s1 + 1"));
+
+        read(1, 1);
+        read(1, 2);
+        read(1, 3);
+        assertEquals(2, engine.getEvaluations(100));
+        assertEquals(1, engine.getSkipped(100));
+        assertEquals(1, engine.getSkippedOverBudget());
+
+        epochNanos += SECOND_NANOS;
+        read(1, 4);
+        assertEquals(3, engine.getEvaluations(100));
+        assertEquals(new Output(100, 5), outputs.get(outputs.size() - 1));
+    }
+
+    @Test
+    void rejectsCyclesAndKeepsThePreviousDefinitions() {
+        VirtualSensorEngine engine = engine(Long.MAX_VALUE, new VirtualSensorDefinition(100, null, "s1 + 1"));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.setDefinitions(List.of(
+            new VirtualSensorDefinition(200, null, "s201 + 1"),
+            new VirtualSensorDefinition(201, null, "s202 + 1"),
+            new VirtualSensorDefinition(202, null, "s200 + 1"))));
+        assertThrows(IllegalArgumentException.class, () -> engine.setDefinitions(List.of(
+            new VirtualSensorDefinition(300, null, "s300 * 2"))));
+
+        assertEquals(List.of(new VirtualSensorDefinition(100, null, "s1 + 1")), engine.getDefinitions());
+        read(1, 1);
+        assertEquals(List.of(new Output(100, 2)), outputs);
+    }
+
+    @Test
+    void rejectsIdsOfPhysicalSensors() {
+        read(7, 20);
+        VirtualSensorEngine engine = engine(Long.MAX_VALUE, new VirtualSensorDefinition(100, null, "s1 + 1"));
+
+        assertThrows(IllegalArgumentException.class, () -> engine.setDefinitions(List.of(
+            new VirtualSensorDefinition(7, null, "s1 + 1"))));
+
+        // Redefining a virtual sensor that has published is not a collision
+        read(1, 1);
+        engine.setDefinitions(List.of(new VirtualSensorDefinition(100, null, "s1 + 2")));
+        assertEquals(3, engine.evaluateNow(100));
+    }
+
+    @Test
+    void ignoresPhysicalReadingsUnderAVirtualId() {
+        VirtualSensorEngine engine = engine(Long.MAX_VALUE,
+            new VirtualSensorDefinition(100, null, "s1 + 1"),
+            new VirtualSensorDefinition(101, null, "s100 * 10"));
+
+        read(1, 1);
+        read("COM2", 100, 50);
+        read("COM2", 100, 60);
+
+        assertEquals(2, engine.getCollisions());
+        assertEquals(1, engine.getEvaluations(101));
+        assertEquals(List.of(new Output(100, 2), new Output(101, 20)), outputs);
+    }
+}
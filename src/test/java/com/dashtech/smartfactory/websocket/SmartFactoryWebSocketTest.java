@@ -0,0 +1,112 @@
+package com.dashtech.smartfactory.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.dashtech.smartfactory.model.ActuatorCommand;
+import com.dashtech.smartfactory.model.CommandGroup;
+import com.dashtech.smartfactory.model.CommandResult;
+import com.dashtech.smartfactory.model.DatabaseConfig;
+import com.dashtech.smartfactory.service.DatabaseService;
+import com.dashtech.smartfactory.util.JsonUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+
+class SmartFactoryWebSocketTest {
+    private final List<String> sent = new ArrayList<>();
+    private final Session session = session("test-session", sent);
+    private final SmartFactoryWebSocket endpoint = new SmartFactoryWebSocket();
+
+    // A session without an outbox, so replies are sent directly and recorded
+    private static Session session(String id, List<String> sent) {
+        RemoteEndpoint.Basic remote = (RemoteEndpoint.Basic) Proxy.newProxyInstance(
+            SmartFactoryWebSocketTest.class.getClassLoader(), new Class<?>[] {RemoteEndpoint.Basic.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("sendText")) {
+                    sent.add((String) args[0]);
+                }
+                return null;
+            });
+        return (Session) Proxy.newProxyInstance(
+            SmartFactoryWebSocketTest.class.getClassLoader(), new Class<?>[] {Session.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getId" -> id;
+                case "getBasicRemote" -> remote;
+                case "hashCode" -> id.hashCode();
+                case "equals" -> proxy == args[0];
+                case "toString" -> "Session " + id;
+                default -> null;
+            });
+    }
+
+    // A database whose pool has been disposed, so every insert fails
+    private static DatabaseService closedDatabase() {
+        DatabaseService database = DatabaseService.createIsolated(
+            DatabaseConfig.createInMemory("websocket-test-" + UUID.randomUUID()));
+        database.close();
+        return database;
+    }
+
+    private JsonNode onlyReply() throws Exception {
+        assertEquals(1, sent.size(), sent.toString());
+        return JsonUtil.mapper().readTree(sent.get(0));
+    }
+
+    @AfterEach
+    void resetDatabase() {
+        SmartFactoryWebSocket.setDatabaseService(null);
+    }
+
+    @Test
+    void acknowledgesCommandWhenTheLogCannotBeWritten() throws Exception {
+        SmartFactoryWebSocket.setDatabaseService(closedDatabase());
+        ActuatorCommand command = ActuatorCommand.create(3, "ON");
+
+        endpoint.completeCommand(session, command, CommandResult.acknowledged(1, command, 1, 2_000_000), null);
+
+        JsonNode reply = onlyReply();
+        assertEquals("commandAck", reply.get("type").asText());
+        assertEquals(3, reply.get("actuatorId").asInt());
+    }
+
+    @Test
+    void reportsFailedCommandWithoutADatabase() throws Exception {
+        ActuatorCommand command = ActuatorCommand.create(4, "OFF");
+
+        endpoint.completeCommand(session, command, null, new TimeoutException("No acknowledgement"));
+
+        JsonNode reply = onlyReply();
+        assertEquals("error", reply.get("type").asText());
+        assertTrue(reply.get("message").asText().contains("No acknowledgement"));
+    }
+
+    @Test
+    void sendsGroupOutcomeWhenTheLogCannotBeWritten() throws Exception {
+        SmartFactoryWebSocket.setDatabaseService(closedDatabase());
+        ActuatorCommand on = ActuatorCommand.create(1, "ON");
+        ActuatorCommand off = ActuatorCommand.create(2, "OFF");
+        CommandGroup group = CommandGroup.create("changeover", List.of(on, off));
+
+        endpoint.completeGroup(session, group, List.of(
+            CompletableFuture.completedFuture(CommandResult.acknowledged(1, on, 1, 1_000_000)),
+            CompletableFuture.failedFuture(new TimeoutException("No acknowledgement"))));
+
+        JsonNode reply = onlyReply();
+        assertEquals("groupAck", reply.get("type").asText());
+        assertEquals(1, reply.get("confirmed").asInt());
+        assertEquals(1, reply.get("failed").asInt());
+        assertEquals(2, reply.get("results").size());
+    }
+}